@@ -19,6 +19,7 @@
 package org.oscim.android;
 
 import android.annotation.SuppressLint;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.Point;
 import android.opengl.GLSurfaceView;
@@ -42,6 +43,7 @@ import org.oscim.backend.GLAdapter;
 import org.oscim.core.Tile;
 import org.oscim.map.Map;
 import org.oscim.renderer.MapRenderer;
+import org.oscim.utils.MemoryPressure;
 import org.oscim.utils.Parameters;
 
 import javax.microedition.khronos.egl.EGLConfig;
@@ -183,6 +185,19 @@ public class MapView extends GLSurfaceView {
         mMap.pause(false);
     }
 
+    /**
+     * Forward {@link ComponentCallbacks2#onTrimMemory(int)}
+     * to release caches and pools of the map.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL)
+            mMap.trimMemory(MemoryPressure.CRITICAL);
+        else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+            mMap.trimMemory(MemoryPressure.MODERATE);
+    }
+
     @SuppressLint("ClickableViewAccessibility")
     @Override
     public boolean onTouchEvent(android.view.MotionEvent motionEvent) {
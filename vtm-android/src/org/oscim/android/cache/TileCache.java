@@ -21,6 +21,7 @@ package org.oscim.android.cache;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteOpenHelper;
@@ -28,24 +29,63 @@ import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 import android.os.ParcelFileDescriptor;
 import org.oscim.core.Tile;
+import org.oscim.tiling.CacheMetadata;
 import org.oscim.tiling.ITileCache;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
+/**
+ * SQLite tile cache. Tiles are written behind by a single background thread
+ * in batched transactions, pending tiles are served from memory. Access times
+ * are collected in memory and flushed with the next batch. Tiles are stored
+ * with their {@link CacheMetadata} for revalidation. When the size of
+ * the stored tile data exceeds {@link #setCacheSize(long)} the least recently
+ * used tiles are evicted, a limited number per transaction.
+ */
 public class TileCache implements ITileCache {
 
     private static final Logger log = Logger.getLogger(TileCache.class.getName());
     static final boolean dbg = false;
 
+    /**
+     * Max number of tiles written in one transaction.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * Time in ms to collect further tiles before a batch is committed.
+     */
+    private static final long BATCH_DELAY = 200;
+
+    /**
+     * Max bytes of tile data waiting to be written, loader threads block beyond.
+     */
+    private static final int MAX_PENDING_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Max number of tiles evicted in one transaction.
+     */
+    private static final int EVICT_BATCH = 32;
+
     class CacheTileReader implements TileReader {
         final InputStream mInputStream;
         final Tile mTile;
+        final CacheMetadata mMetadata;
 
         public CacheTileReader(Tile tile, InputStream is) {
+            this(tile, is, null);
+        }
+
+        CacheTileReader(Tile tile, InputStream is, CacheMetadata metadata) {
             mTile = tile;
             mInputStream = is;
+            mMetadata = metadata;
         }
 
         @Override
@@ -57,11 +97,17 @@ public class TileCache implements ITileCache {
         public InputStream getInputStream() {
             return mInputStream;
         }
+
+        @Override
+        public CacheMetadata getMetadata() {
+            return mMetadata;
+        }
     }
 
     class CacheTileWriter implements TileWriter {
         final ByteArrayOutputStream mOutputStream;
         final Tile mTile;
+        CacheMetadata mMetadata;
 
         CacheTileWriter(Tile tile, ByteArrayOutputStream os) {
             mTile = tile;
@@ -78,9 +124,24 @@ public class TileCache implements ITileCache {
             return mOutputStream;
         }
 
+        @Override
+        public void setMetadata(CacheMetadata metadata) {
+            mMetadata = metadata;
+        }
+
         @Override
         public void complete(boolean success) {
-            saveTile(mTile, mOutputStream, success);
+            saveTile(mTile, mOutputStream, success, mMetadata);
+        }
+    }
+
+    static final class PendingTile {
+        final byte[] data;
+        CacheMetadata metadata;
+
+        PendingTile(byte[] data, CacheMetadata metadata) {
+            this.data = data;
+            this.metadata = metadata;
         }
     }
 
@@ -88,11 +149,38 @@ public class TileCache implements ITileCache {
     private final SQLiteHelper dbHelper;
     private final SQLiteDatabase mDatabase;
     private final SQLiteStatement mStmtGetTile;
-    private final SQLiteStatement mStmtPutTile;
 
-    //private final SQLiteStatement mStmtUpdateTile;
+    /* used by the writer thread only */
+    private final SQLiteStatement mStmtPutTile;
+    private final SQLiteStatement mStmtGetSize;
+    private final SQLiteStatement mStmtUpdateTile;
+    private final SQLiteStatement mStmtUpdateMetadata;
+    private final SQLiteStatement mStmtDeleteTile;
+    private long mDataSize;
+
+    /* guarded by mLock */
+    private final Object mLock = new Object();
+    private final LinkedHashMap<Long, PendingTile> mPending = new LinkedHashMap<>();
+    private final HashSet<Long> mAccessed = new HashSet<>();
+    private final HashMap<Long, CacheMetadata> mUpdates = new HashMap<>();
+    private int mPendingBytes;
+    private long mCacheSize = Long.MAX_VALUE;
+    private boolean mClear;
+    private boolean mTrim;
+    private boolean mClosed;
+
+    private final Thread mWriter;
 
     public void dispose() {
+        synchronized (mLock) {
+            mClosed = true;
+            mLock.notifyAll();
+        }
+        try {
+            mWriter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         if (mDatabase.isOpen())
             mDatabase.close();
     }
@@ -117,16 +205,40 @@ public class TileCache implements ITileCache {
                 " WHERE x=? AND y=? AND z = ?");
 
         mStmtPutTile = mDatabase.compileStatement("" +
-                "INSERT INTO " + TABLE_NAME +
-                " (x, y, z, time, last_access, data)" +
-                " VALUES(?,?,?,?,?,?)");
+                "INSERT OR REPLACE INTO " + TABLE_NAME +
+                " (x, y, z, time, last_access, size, expires, etag, modified, data)" +
+                " VALUES(?,?,?,?,?,?,?,?,?,?)");
+
+        mStmtGetSize = mDatabase.compileStatement("" +
+                "SELECT " + COLUMN_SIZE +
+                " FROM " + TABLE_NAME +
+                " WHERE x=? AND y=? AND z=?");
 
-        //mStmtUpdateTile = mDatabase.compileStatement("" +
-        //        "UPDATE " + TABLE_NAME +
-        //        "  SET last_access=?" +
-        //        "  WHERE x=? AND y=? AND z=?");
+        mStmtUpdateTile = mDatabase.compileStatement("" +
+                "UPDATE " + TABLE_NAME +
+                "  SET last_access=?" +
+                "  WHERE x=? AND y=? AND z=?");
+
+        mStmtUpdateMetadata = mDatabase.compileStatement("" +
+                "UPDATE " + TABLE_NAME +
+                "  SET time=?, last_access=?, expires=?, etag=?, modified=?" +
+                "  WHERE x=? AND y=? AND z=?");
+
+        mStmtDeleteTile = mDatabase.compileStatement("" +
+                "DELETE FROM " + TABLE_NAME +
+                " WHERE x=? AND y=? AND z=?");
 
         mCacheBuffers = new ArrayList<ByteArrayOutputStream>();
+
+        mWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, "TileCacheWriter");
+        mWriter.setDaemon(true);
+        mWriter.setPriority(Thread.MIN_PRIORITY);
+        mWriter.start();
     }
 
     @Override
@@ -146,13 +258,15 @@ public class TileCache implements ITileCache {
     static final String COLUMN_TIME = "time";
     static final String COLUMN_ACCESS = "last_access";
     static final String COLUMN_DATA = "data";
-
-    //static final String COLUMN_SIZE = "size";
+    static final String COLUMN_SIZE = "size";
+    static final String COLUMN_EXPIRES = "expires";
+    static final String COLUMN_ETAG = "etag";
+    static final String COLUMN_MODIFIED = "modified";
 
     class SQLiteHelper extends SQLiteOpenHelper {
 
         //private static final String DATABASE_NAME = "tile.db";
-        private static final int DATABASE_VERSION = 1;
+        private static final int DATABASE_VERSION = 3;
 
         private static final String TILE_SCHEMA =
                 "CREATE TABLE "
@@ -161,11 +275,18 @@ public class TileCache implements ITileCache {
                         + "y INTEGER NOT NULL,"
                         + "z INTEGER NOT NULL,"
                         + COLUMN_TIME + " LONG NOT NULL,"
-                        //+ COLUMN_SIZE + " LONG NOT NULL,"
+                        + COLUMN_SIZE + " LONG NOT NULL,"
                         + COLUMN_ACCESS + " LONG NOT NULL,"
+                        + COLUMN_EXPIRES + " LONG NOT NULL,"
+                        + COLUMN_ETAG + " TEXT,"
+                        + COLUMN_MODIFIED + " TEXT,"
                         + COLUMN_DATA + " BLOB,"
                         + "PRIMARY KEY(x,y,z));";
 
+        private static final String ACCESS_INDEX =
+                "CREATE INDEX " + TABLE_NAME + "_" + COLUMN_ACCESS
+                        + " ON " + TABLE_NAME + "(" + COLUMN_ACCESS + ");";
+
         public SQLiteHelper(Context context, String dbName) {
             super(context, dbName, null, DATABASE_VERSION);
         }
@@ -174,6 +295,7 @@ public class TileCache implements ITileCache {
         public void onCreate(SQLiteDatabase db) {
             log.fine("create table");
             db.execSQL(TILE_SCHEMA);
+            db.execSQL(ACCESS_INDEX);
         }
 
         @Override
@@ -190,6 +312,17 @@ public class TileCache implements ITileCache {
     }
 
     public void saveTile(Tile tile, ByteArrayOutputStream data, boolean success) {
+        saveTile(tile, data, success, null);
+    }
+
+    /**
+     * Queue the tile to be written by the writer thread. Blocks while too
+     * much tile data is waiting to be written.
+     *
+     * @param metadata the metadata of the tile, may be null.
+     */
+    public void saveTile(Tile tile, ByteArrayOutputStream data, boolean success,
+                         CacheMetadata metadata) {
         byte[] bytes = null;
 
         if (success)
@@ -206,16 +339,23 @@ public class TileCache implements ITileCache {
         if (!success)
             return;
 
-        synchronized (mStmtPutTile) {
-            mStmtPutTile.bindLong(1, tile.tileX);
-            mStmtPutTile.bindLong(2, tile.tileY);
-            mStmtPutTile.bindLong(3, tile.zoomLevel);
-            mStmtPutTile.bindLong(4, 0);
-            mStmtPutTile.bindLong(5, 0);
-            mStmtPutTile.bindBlob(6, bytes);
-
-            mStmtPutTile.execute();
-            mStmtPutTile.clearBindings();
+        Long key = key(tile);
+        synchronized (mLock) {
+            while (mPendingBytes > MAX_PENDING_BYTES && !mClosed) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (mClosed)
+                return;
+
+            PendingTile prev = mPending.put(key, new PendingTile(bytes, metadata));
+            mPendingBytes += bytes.length - (prev == null ? 0 : prev.data.length);
+            mUpdates.remove(key);
+            mLock.notifyAll();
         }
     }
 
@@ -251,11 +391,21 @@ public class TileCache implements ITileCache {
         //if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.HONEYCOMB)
         //    return getTileApi11(tile);
 
+        Long key = key(tile);
+        synchronized (mLock) {
+            PendingTile pending = mPending.get(key);
+            if (pending != null)
+                return new CacheTileReader(tile, new ByteArrayInputStream(pending.data),
+                        pending.metadata);
+        }
+
         mQueryVals[0] = String.valueOf(tile.zoomLevel);
         mQueryVals[1] = String.valueOf(tile.tileX);
         mQueryVals[2] = String.valueOf(tile.tileY);
 
         Cursor cursor = mDatabase.rawQuery("SELECT " + COLUMN_DATA +
+                ", " + COLUMN_TIME + ", " + COLUMN_EXPIRES +
+                ", " + COLUMN_ETAG + ", " + COLUMN_MODIFIED +
                 " FROM " + TABLE_NAME +
                 " WHERE z=? AND x=? AND y=?", mQueryVals);
 
@@ -268,17 +418,270 @@ public class TileCache implements ITileCache {
         }
 
         InputStream in = new ByteArrayInputStream(cursor.getBlob(0));
+        CacheMetadata metadata = new CacheMetadata(cursor.getLong(1), cursor.getLong(2),
+                cursor.getString(3), cursor.getString(4));
         cursor.close();
 
+        /* access time is written with the next batch */
+        synchronized (mLock) {
+            if (mAccessed.add(key) && mAccessed.size() >= BATCH_SIZE)
+                mLock.notifyAll();
+        }
+
         if (dbg)
             log.fine("load tile " + tile);
 
-        return new CacheTileReader(tile, in);
+        return new CacheTileReader(tile, in, metadata);
+    }
+
+    @Override
+    public void updateMetadata(Tile tile, CacheMetadata metadata) {
+        Long key = key(tile);
+        synchronized (mLock) {
+            PendingTile pending = mPending.get(key);
+            if (pending != null)
+                pending.metadata = metadata;
+            else
+                mUpdates.put(key, metadata);
+            mLock.notifyAll();
+        }
     }
 
+    /**
+     * @param size the max size of the stored tile data in bytes, least
+     *             recently used tiles are evicted beyond. 0 removes all tiles
+     *             and keeps the current limit.
+     */
     @Override
     public void setCacheSize(long size) {
-        if (size == 0)
-            mDatabase.execSQL("DELETE FROM " + TABLE_NAME);
+        synchronized (mLock) {
+            if (size == 0) {
+                mPending.clear();
+                mPendingBytes = 0;
+                mAccessed.clear();
+                mUpdates.clear();
+                mClear = true;
+            } else {
+                mCacheSize = size;
+                mTrim = true;
+            }
+            mLock.notifyAll();
+        }
+    }
+
+    private void runWriter() {
+        try {
+            SQLiteStatement stmt = mDatabase.compileStatement("" +
+                    "SELECT COALESCE(SUM(" + COLUMN_SIZE + "), 0)" +
+                    " FROM " + TABLE_NAME);
+            mDataSize = stmt.simpleQueryForLong();
+            stmt.close();
+        } catch (SQLException e) {
+            log.severe(e.toString());
+        }
+
+        Long[] keys = new Long[BATCH_SIZE];
+        PendingTile[] tiles = new PendingTile[BATCH_SIZE];
+
+        while (true) {
+            int count = 0;
+            Long[] accessed;
+            HashMap<Long, CacheMetadata> updates = null;
+            boolean clear;
+            long limit;
+
+            synchronized (mLock) {
+                try {
+                    while (!mClosed && !mClear && !mTrim && mPending.isEmpty()
+                            && mUpdates.isEmpty() && mAccessed.size() < BATCH_SIZE)
+                        mLock.wait();
+
+                    /* collect more tiles for this transaction */
+                    if (!mClosed && !mClear && mPending.size() < BATCH_SIZE)
+                        mLock.wait(BATCH_DELAY);
+                } catch (InterruptedException e) {
+                    mClosed = true;
+                }
+
+                if (mClosed && !mClear && mPending.isEmpty() && mUpdates.isEmpty()
+                        && mAccessed.isEmpty())
+                    break;
+
+                for (Map.Entry<Long, PendingTile> e : mPending.entrySet()) {
+                    if (count == BATCH_SIZE)
+                        break;
+                    keys[count] = e.getKey();
+                    tiles[count] = e.getValue();
+                    count++;
+                }
+                accessed = mAccessed.toArray(new Long[mAccessed.size()]);
+                mAccessed.clear();
+                if (!mUpdates.isEmpty()) {
+                    updates = new HashMap<>(mUpdates);
+                    mUpdates.clear();
+                }
+
+                clear = mClear;
+                mClear = false;
+                mTrim = false;
+                limit = mCacheSize;
+            }
+
+            boolean trim = false;
+            try {
+                trim = writeBatch(keys, tiles, count, accessed, updates, clear, limit);
+            } catch (SQLException e) {
+                log.severe(e.toString());
+            }
+
+            synchronized (mLock) {
+                /* keep tiles that were replaced in the meantime */
+                for (int i = 0; i < count; i++) {
+                    if (mPending.get(keys[i]) == tiles[i]) {
+                        mPending.remove(keys[i]);
+                        mPendingBytes -= tiles[i].data.length;
+                    }
+                    keys[i] = null;
+                    tiles[i] = null;
+                }
+                mTrim |= trim;
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return true when the cache still exceeds the limit.
+     */
+    private boolean writeBatch(Long[] keys, PendingTile[] tiles, int count, Long[] accessed,
+                               HashMap<Long, CacheMetadata> updates, boolean clear, long limit) {
+        long now = System.currentTimeMillis();
+        boolean trim = false;
+
+        mDatabase.beginTransactionNonExclusive();
+        try {
+            if (clear) {
+                mDatabase.execSQL("DELETE FROM " + TABLE_NAME);
+                mDataSize = 0;
+            }
+
+            for (int i = 0; i < count; i++) {
+                long key = keys[i];
+                bindKey(mStmtGetSize, key, 1);
+                try {
+                    mDataSize -= mStmtGetSize.simpleQueryForLong();
+                } catch (SQLiteDoneException e) {
+                    /* new tile */
+                }
+
+                byte[] data = tiles[i].data;
+                CacheMetadata metadata = tiles[i].metadata;
+
+                bindKey(mStmtPutTile, key, 1);
+                mStmtPutTile.bindLong(5, now);
+                mStmtPutTile.bindLong(6, data.length);
+                bindMetadata(mStmtPutTile, metadata, now, 4, 7);
+                mStmtPutTile.bindBlob(10, data);
+                mStmtPutTile.execute();
+                mStmtPutTile.clearBindings();
+
+                mDataSize += data.length;
+            }
+
+            if (updates != null) {
+                for (Map.Entry<Long, CacheMetadata> e : updates.entrySet()) {
+                    mStmtUpdateMetadata.bindLong(2, now);
+                    bindMetadata(mStmtUpdateMetadata, e.getValue(), now, 1, 3);
+                    bindKey(mStmtUpdateMetadata, e.getKey(), 6);
+                    mStmtUpdateMetadata.execute();
+                    mStmtUpdateMetadata.clearBindings();
+                }
+            }
+
+            for (Long key : accessed) {
+                mStmtUpdateTile.bindLong(1, now);
+                bindKey(mStmtUpdateTile, key, 2);
+                mStmtUpdateTile.execute();
+            }
+
+            if (mDataSize > limit)
+                trim = evict(limit);
+
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+
+        if (dbg)
+            log.fine("wrote " + count + " tiles, size " + mDataSize);
+
+        return trim;
+    }
+
+    /**
+     * Delete up to EVICT_BATCH least recently used tiles.
+     *
+     * @return true when the cache still exceeds the limit.
+     */
+    private boolean evict(long limit) {
+        Cursor cursor = mDatabase.rawQuery("SELECT x, y, z, " + COLUMN_SIZE +
+                " FROM " + TABLE_NAME +
+                " ORDER BY " + COLUMN_ACCESS +
+                " LIMIT " + EVICT_BATCH, null);
+
+        ArrayList<long[]> rows = new ArrayList<>(EVICT_BATCH);
+        long size = mDataSize;
+        while (size > limit && cursor.moveToNext()) {
+            rows.add(new long[]{cursor.getLong(0), cursor.getLong(1), cursor.getLong(2)});
+            size -= cursor.getLong(3);
+        }
+        cursor.close();
+
+        for (long[] row : rows) {
+            mStmtDeleteTile.bindLong(1, row[0]);
+            mStmtDeleteTile.bindLong(2, row[1]);
+            mStmtDeleteTile.bindLong(3, row[2]);
+            mStmtDeleteTile.execute();
+        }
+        mDataSize = size;
+
+        if (dbg)
+            log.fine("evicted " + rows.size() + " tiles, size " + mDataSize);
+
+        return size > limit && rows.size() == EVICT_BATCH;
+    }
+
+    /**
+     * Bind fetch time at timeIndex and expires, etag, modified from index.
+     */
+    private static void bindMetadata(SQLiteStatement stmt, CacheMetadata metadata, long now,
+                                     int timeIndex, int index) {
+        if (metadata == null) {
+            stmt.bindLong(timeIndex, now);
+            stmt.bindLong(index, 0);
+            stmt.bindNull(index + 1);
+            stmt.bindNull(index + 2);
+            return;
+        }
+        stmt.bindLong(timeIndex, metadata.fetchTime);
+        stmt.bindLong(index, metadata.expires);
+        if (metadata.etag != null)
+            stmt.bindString(index + 1, metadata.etag);
+        else
+            stmt.bindNull(index + 1);
+        if (metadata.lastModified != null)
+            stmt.bindString(index + 2, metadata.lastModified);
+        else
+            stmt.bindNull(index + 2);
+    }
+
+    private static Long key(Tile tile) {
+        return ((long) tile.zoomLevel << 58) | ((long) tile.tileX << 29) | tile.tileY;
+    }
+
+    private static void bindKey(SQLiteStatement stmt, long key, int index) {
+        stmt.bindLong(index, (key >>> 29) & 0x1fffffff);
+        stmt.bindLong(index + 1, key & 0x1fffffff);
+        stmt.bindLong(index + 2, key >>> 58);
     }
 }
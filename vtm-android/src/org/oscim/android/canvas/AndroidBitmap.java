@@ -26,7 +26,9 @@ import org.oscim.backend.CanvasAdapter;
 import org.oscim.utils.GraphicUtils;
 import org.oscim.utils.IOUtils;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
 import static android.graphics.Bitmap.Config.ARGB_8888;
@@ -35,14 +37,60 @@ public class AndroidBitmap implements org.oscim.backend.canvas.Bitmap {
     Bitmap mBitmap;
 
     public AndroidBitmap(InputStream inputStream) {
-        Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
+        mBitmap = toTextureFormat(BitmapFactory.decodeStream(inputStream));
+    }
+
+    /**
+     * Decode into the memory of reuse when it is large enough, decoded
+     * bitmaps are mutable to be reusable in turn.
+     *
+     * @return reuse or a new bitmap.
+     */
+    static AndroidBitmap decode(InputStream inputStream, org.oscim.backend.canvas.Bitmap reuse)
+            throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = ARGB_8888;
+        options.inMutable = true;
+
+        Bitmap target = null;
+        if (reuse instanceof AndroidBitmap) {
+            Bitmap bitmap = ((AndroidBitmap) reuse).mBitmap;
+            if (bitmap != null && !bitmap.isRecycled() && bitmap.isMutable())
+                target = bitmap;
+        }
+        if (target == null)
+            return new AndroidBitmap(toTextureFormat(BitmapFactory.decodeStream(inputStream, null, options)));
+
+        /* decoding fails when target is too small, retry without it */
+        if (!inputStream.markSupported())
+            inputStream = new BufferedInputStream(inputStream);
+        inputStream.mark(Integer.MAX_VALUE);
+
+        options.inBitmap = target;
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeStream(inputStream, null, options);
+        } catch (IllegalArgumentException e) {
+            inputStream.reset();
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeStream(inputStream, null, options);
+        }
+        if (bitmap == target)
+            return (AndroidBitmap) reuse;
+
+        return new AndroidBitmap(toTextureFormat(bitmap));
+    }
+
+    private static Bitmap toTextureFormat(Bitmap bitmap) {
+        if (bitmap == null)
+            return null;
         try {
             GLUtils.getType(bitmap);
             GLUtils.getInternalFormat(bitmap);
         } catch (IllegalArgumentException e) {
             bitmap = bitmap.copy(ARGB_8888, false);
         }
-        mBitmap = bitmap;
+        return bitmap;
     }
 
     public AndroidBitmap(InputStream inputStream, int width, int height, int percent) {
@@ -60,6 +60,11 @@ public final class AndroidGraphics extends CanvasAdapter {
         return new AndroidBitmap(inputStream);
     }
 
+    @Override
+    public Bitmap decodeBitmapImpl(InputStream inputStream, Bitmap reuse) throws IOException {
+        return AndroidBitmap.decode(inputStream, reuse);
+    }
+
     @Override
     public Bitmap decodeBitmapImpl(InputStream inputStream, int width, int height, int percent) {
         return new AndroidBitmap(inputStream, width, height, percent);
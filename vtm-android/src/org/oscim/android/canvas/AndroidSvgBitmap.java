@@ -55,10 +55,11 @@ public class AndroidSvgBitmap extends AndroidBitmap {
         }
     }
 
+    /**
+     * Parsed documents are independent, symbols are rendered in parallel.
+     */
     private static android.graphics.Bitmap getResourceBitmapImpl(InputStream inputStream, int width, int height, int percent) throws IOException {
-        synchronized (SVG.getVersion()) {
-            return getResourceBitmap(inputStream, CanvasAdapter.getScale(), DEFAULT_SIZE, width, height, percent);
-        }
+        return getResourceBitmap(inputStream, CanvasAdapter.getScale(), DEFAULT_SIZE, width, height, percent);
     }
 
     public AndroidSvgBitmap(InputStream inputStream, int width, int height, int percent) throws IOException {
@@ -0,0 +1,95 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.core.Tile;
+import org.oscim.tiling.source.geojson.GeojsonTileSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of vector tiles into MapElements.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DecoderBenchmark {
+
+    private static final Tile GEOJSON_TILE = new Tile(8710, 5390, (byte) 14);
+
+    private byte[] mMvtData;
+    private byte[] mGeojsonData;
+
+    private org.oscim.tiling.source.mvt.TileDecoder mMvtDecoder;
+    private org.oscim.tiling.source.geojson.TileDecoder mGeojsonDecoder;
+
+    private final ConsumingSink mSink = new ConsumingSink();
+
+    @Setup
+    public void setup() throws IOException {
+        mMvtData = Fixtures.readResource(Fixtures.MVT_TILE);
+        mGeojsonData = Fixtures.geojson(GEOJSON_TILE, 500);
+
+        mMvtDecoder = new org.oscim.tiling.source.mvt.TileDecoder();
+        mGeojsonDecoder = new org.oscim.tiling.source.geojson.TileDecoder(
+                new GeojsonTileSource("http://localhost", "/{Z}/{X}/{Y}.json") {
+                    @Override
+                    public void decodeTags(MapElement mapElement, Map<String, Object> properties) {
+                        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+                            Tag tag = rewriteTag(entry.getKey(), entry.getValue());
+                            if (tag != null)
+                                mapElement.tags.add(tag);
+                        }
+                    }
+                });
+    }
+
+    @Benchmark
+    public boolean mvt(Blackhole bh) throws IOException {
+        mSink.bh = bh;
+        return mMvtDecoder.decode(new Tile(0, 0, (byte) 0), mSink,
+                new ByteArrayInputStream(mMvtData));
+    }
+
+    @Benchmark
+    public boolean geojson(Blackhole bh) throws IOException {
+        mSink.bh = bh;
+        return mGeojsonDecoder.decode(GEOJSON_TILE, mSink,
+                new ByteArrayInputStream(mGeojsonData));
+    }
+
+    static class ConsumingSink extends Fixtures.Sink {
+        Blackhole bh;
+
+        @Override
+        public void process(MapElement element) {
+            bh.consume(element.getNumPoints());
+            bh.consume(element.tags.size());
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.core.MapElement;
+import org.oscim.core.MercatorProjection;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.TileSource;
+import org.oscim.tiling.source.mvt.TileDecoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Deterministic input data of the benchmarks.
+ */
+public final class Fixtures {
+
+    /**
+     * Vector tile 0/0/0 in OpenMapTiles schema, shared with vtm-tests.
+     */
+    public static final String MVT_TILE = "/mvt-test.pbf";
+
+    private static final long SEED = 42;
+
+    private Fixtures() {
+    }
+
+    public static byte[] readResource(String name) throws IOException {
+        InputStream is = Fixtures.class.getResourceAsStream(name);
+        if (is == null)
+            throw new IOException("missing resource " + name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            for (int n; (n = is.read(buf)) >= 0; )
+                out.write(buf, 0, n);
+            return out.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * @return copies of the elements of the MVT fixture.
+     */
+    public static List<MapElement> mvtElements() throws IOException {
+        final List<MapElement> elements = new ArrayList<>();
+        new TileDecoder().decode(new Tile(0, 0, (byte) 0), new Sink() {
+            @Override
+            public void process(MapElement element) {
+                elements.add(new MapElement(element));
+            }
+        }, new ByteArrayInputStream(readResource(MVT_TILE)));
+        return elements;
+    }
+
+    /**
+     * @return GeoJSON FeatureCollection of polygons and lines within tile.
+     */
+    public static byte[] geojson(Tile tile, int count) {
+        Random rnd = new Random(SEED);
+        StringBuilder sb = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                sb.append(',');
+            boolean polygon = (i & 1) == 0;
+            sb.append("{\"type\":\"Feature\",\"properties\":{")
+                    .append(polygon ? "\"building\":\"yes\"" : "\"highway\":\"residential\"")
+                    .append(",\"name\":\"f").append(i).append("\"},\"geometry\":{\"type\":\"")
+                    .append(polygon ? "Polygon\",\"coordinates\":[[" : "LineString\",\"coordinates\":[");
+
+            float[] points = polygon ? ring(rnd, 16) : line(rnd, 16);
+            int n = points.length / 2;
+            for (int j = 0; j <= n; j++) {
+                if (j == n && !polygon)
+                    break;
+                int k = (j % n) * 2;
+                if (j > 0)
+                    sb.append(',');
+                double x = (tile.tileX + points[k] / Tile.SIZE) / (1 << tile.zoomLevel);
+                double y = (tile.tileY + points[k + 1] / Tile.SIZE) / (1 << tile.zoomLevel);
+                sb.append(String.format(Locale.ROOT, "[%.7f,%.7f]",
+                        MercatorProjection.toLongitude(x), MercatorProjection.toLatitude(y)));
+            }
+            sb.append(polygon ? "]]}}" : "]}}");
+        }
+        sb.append("]}");
+        return sb.toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+    /**
+     * @return polygons with numPoints each, partly crossing the tile border.
+     */
+    public static List<GeometryBuffer> polygons(int count, int numPoints) {
+        Random rnd = new Random(SEED);
+        List<GeometryBuffer> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            GeometryBuffer g = new GeometryBuffer(numPoints, 2);
+            g.startPolygon();
+            float[] points = ring(rnd, numPoints);
+            for (int k = 0; k < points.length; k += 2)
+                g.addPoint(points[k], points[k + 1]);
+            result.add(g);
+        }
+        return result;
+    }
+
+    /**
+     * @return lines with numPoints each, partly crossing the tile border.
+     */
+    public static List<GeometryBuffer> lines(int count, int numPoints) {
+        Random rnd = new Random(SEED);
+        List<GeometryBuffer> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            GeometryBuffer g = new GeometryBuffer(numPoints, 2);
+            g.startLine();
+            float[] points = line(rnd, numPoints);
+            for (int k = 0; k < points.length; k += 2)
+                g.addPoint(points[k], points[k + 1]);
+            result.add(g);
+        }
+        return result;
+    }
+
+    /**
+     * Star shaped ring around a random center.
+     */
+    private static float[] ring(Random rnd, int numPoints) {
+        float cx = rnd.nextFloat() * Tile.SIZE * 1.2f - Tile.SIZE * 0.1f;
+        float cy = rnd.nextFloat() * Tile.SIZE * 1.2f - Tile.SIZE * 0.1f;
+        float r = 4 + rnd.nextFloat() * Tile.SIZE / 8;
+        float[] points = new float[numPoints * 2];
+        for (int i = 0; i < numPoints; i++) {
+            double a = -2 * Math.PI * i / numPoints;
+            float d = r * (0.6f + 0.4f * rnd.nextFloat());
+            points[i * 2] = cx + (float) Math.cos(a) * d;
+            points[i * 2 + 1] = cy + (float) Math.sin(a) * d;
+        }
+        return points;
+    }
+
+    /**
+     * Random walk starting at a random position.
+     */
+    private static float[] line(Random rnd, int numPoints) {
+        float x = rnd.nextFloat() * Tile.SIZE;
+        float y = rnd.nextFloat() * Tile.SIZE;
+        float[] points = new float[numPoints * 2];
+        for (int i = 0; i < numPoints; i++) {
+            x += rnd.nextFloat() * 24 - 12;
+            y += rnd.nextFloat() * 24 - 12;
+            points[i * 2] = x;
+            points[i * 2 + 1] = y;
+        }
+        return points;
+    }
+
+    /**
+     * Serves the MVT fixture for every tile.
+     */
+    public static class MvtTileSource extends TileSource {
+
+        public MvtTileSource() {
+            super(0, 14, 14);
+        }
+
+        @Override
+        public ITileDataSource getDataSource() {
+            final byte[] data;
+            try {
+                data = readResource(MVT_TILE);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return new ITileDataSource() {
+                private final TileDecoder mDecoder = new TileDecoder();
+
+                @Override
+                public void query(MapTile tile, ITileDataSink sink) {
+                    try {
+                        mDecoder.decode(tile, sink, new ByteArrayInputStream(data));
+                        sink.completed(QueryResult.SUCCESS);
+                    } catch (IOException e) {
+                        sink.completed(QueryResult.FAILED);
+                    }
+                }
+
+                @Override
+                public void dispose() {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            };
+        }
+
+        @Override
+        public OpenResult open() {
+            return OpenResult.SUCCESS;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Sink ignoring everything but elements.
+     */
+    public abstract static class Sink implements ITileDataSink {
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+        }
+    }
+}
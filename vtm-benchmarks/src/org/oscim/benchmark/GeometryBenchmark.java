@@ -0,0 +1,139 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.oscim.backend.canvas.Paint.Cap;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.core.Tile;
+import org.oscim.headless.HeadlessMap;
+import org.oscim.renderer.bucket.LineBucket;
+import org.oscim.renderer.bucket.RenderBuckets;
+import org.oscim.theme.styles.LineStyle;
+import org.oscim.utils.Tessellator;
+import org.oscim.utils.geom.PolyLabel;
+import org.oscim.utils.geom.SimplifyVW;
+import org.oscim.utils.geom.TileClipper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Geometry processing done by the TileLoaders, on a batch of
+ * {@link #COUNT} polygons or lines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeometryBenchmark {
+
+    private static final int COUNT = 200;
+
+    @Param({"16", "256"})
+    public int numPoints;
+
+    private GeometryBuffer[] mPolygons;
+    private GeometryBuffer[] mLines;
+
+    private final GeometryBuffer mGeom = new GeometryBuffer(1024, 16);
+    private final GeometryBuffer mMesh = new GeometryBuffer(1024, 16);
+
+    private final TileClipper mClipper = new TileClipper(0, 0, Tile.SIZE, Tile.SIZE);
+    private final SimplifyVW mSimplify = new SimplifyVW();
+    private final PolyLabel mPolyLabel = new PolyLabel();
+
+    private final RenderBuckets mBuckets = new RenderBuckets();
+    private LineStyle mLineStyle;
+
+    @Setup
+    public void setup() {
+        /* Tessellator is native */
+        HeadlessMap.init();
+
+        List<GeometryBuffer> polygons = Fixtures.polygons(COUNT, numPoints);
+        mPolygons = polygons.toArray(new GeometryBuffer[0]);
+        List<GeometryBuffer> lines = Fixtures.lines(COUNT, numPoints);
+        mLines = lines.toArray(new GeometryBuffer[0]);
+
+        mLineStyle = LineStyle.builder()
+                .strokeWidth(2)
+                .cap(Cap.ROUND)
+                .build();
+    }
+
+    /**
+     * Copy single ring or line of src to the scratch buffer.
+     */
+    private GeometryBuffer copy(GeometryBuffer src) {
+        GeometryBuffer g = mGeom.clear();
+        if (src.isPoly())
+            g.startPolygon();
+        else
+            g.startLine();
+
+        float[] points = src.points;
+        for (int i = 0, n = src.index[0]; i < n; i += 2)
+            g.addPoint(points[i], points[i + 1]);
+        return g;
+    }
+
+    @Benchmark
+    public void tileClipper(Blackhole bh) {
+        for (GeometryBuffer p : mPolygons)
+            bh.consume(mClipper.clip(copy(p)));
+        for (GeometryBuffer l : mLines)
+            bh.consume(mClipper.clip(copy(l)));
+    }
+
+    @Benchmark
+    public void simplifyVW(Blackhole bh) {
+        for (GeometryBuffer p : mPolygons) {
+            GeometryBuffer g = copy(p);
+            mSimplify.simplify(g, 4);
+            bh.consume(g.pointNextPos);
+        }
+    }
+
+    @Benchmark
+    public void polyLabel(Blackhole bh) {
+        for (GeometryBuffer p : mPolygons)
+            bh.consume(mPolyLabel.get(p, null, null));
+    }
+
+    @Benchmark
+    public void tessellate(Blackhole bh) {
+        for (GeometryBuffer p : mPolygons)
+            bh.consume(Tessellator.tessellate(p, mMesh));
+    }
+
+    @Benchmark
+    public void lineBucketAddLine(Blackhole bh) {
+        LineBucket bucket = mBuckets.addLineBucket(0, mLineStyle);
+        for (GeometryBuffer l : mLines)
+            bucket.addLine(l);
+        for (GeometryBuffer p : mPolygons)
+            bucket.addLine(p);
+        bh.consume(mBuckets.getSize());
+        mBuckets.clear();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.oscim.core.BoundingBox;
+import org.oscim.core.MapElement;
+import org.oscim.core.MercatorProjection;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.TileSource.OpenResult;
+import org.oscim.tiling.source.mapfile.MapFileTileSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading tiles from a map file, given by the 'vtm.benchmark.mapfile' system
+ * property (gradle -PmapFile=...). Tiles around the center of the map are
+ * queried in turn.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MapFileBenchmark {
+
+    /**
+     * Tiles are queried from a square of GRID x GRID tiles.
+     */
+    private static final int GRID = 4;
+
+    @Param({"10", "14", "16"})
+    public int zoom;
+
+    private MapFileTileSource mTileSource;
+    private ITileDataSource mDataSource;
+    private MapTile[] mTiles;
+    private int mTile;
+
+    private final Sink mSink = new Sink();
+
+    @Setup
+    public void setup() {
+        String file = System.getProperty("vtm.benchmark.mapfile");
+        if (file == null)
+            throw new IllegalStateException("no map file set");
+
+        mTileSource = new MapFileTileSource();
+        mTileSource.setMapFile(file);
+        OpenResult result = mTileSource.open();
+        if (!result.isSuccess())
+            throw new IllegalStateException(result.getErrorMessage());
+
+        mDataSource = mTileSource.getDataSource();
+
+        BoundingBox box = mTileSource.getMapInfo().boundingBox;
+        int cx = MercatorProjection.longitudeToTileX(box.getCenterPoint().getLongitude(), (byte) zoom);
+        int cy = MercatorProjection.latitudeToTileY(box.getCenterPoint().getLatitude(), (byte) zoom);
+
+        mTiles = new MapTile[GRID * GRID];
+        for (int y = 0; y < GRID; y++)
+            for (int x = 0; x < GRID; x++)
+                mTiles[y * GRID + x] = new MapTile(cx + x - GRID / 2, cy + y - GRID / 2, zoom);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mDataSource.dispose();
+        mTileSource.close();
+    }
+
+    @Benchmark
+    public QueryResult query(Blackhole bh) {
+        mSink.bh = bh;
+        mSink.result = null;
+        mDataSource.query(mTiles[mTile], mSink);
+        mTile = (mTile + 1) % mTiles.length;
+        return mSink.result;
+    }
+
+    static class Sink extends Fixtures.Sink {
+        Blackhole bh;
+        QueryResult result;
+
+        @Override
+        public void process(MapElement element) {
+            bh.consume(element.getNumPoints());
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            this.result = result;
+        }
+    }
+}
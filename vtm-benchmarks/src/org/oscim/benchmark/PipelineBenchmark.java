@@ -0,0 +1,73 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.oscim.core.BoundingBox;
+import org.oscim.headless.HeadlessBenchmark;
+import org.oscim.headless.HeadlessMap;
+import org.oscim.headless.TimedTileSource;
+import org.oscim.layers.tile.vector.VectorTileLayer;
+import org.oscim.layers.tile.vector.labeling.LabelLayer;
+import org.oscim.theme.internal.VtmThemes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole tile pipeline of a {@link HeadlessMap}: decoding, theme,
+ * buckets, labels and upload, for the views covering a small area.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PipelineBenchmark {
+
+    private static final BoundingBox BOX = new BoundingBox(53.05, 8.75, 53.10, 8.85);
+
+    private HeadlessMap mMap;
+    private HeadlessBenchmark mBenchmark;
+
+    @Setup
+    public void setup() {
+        HeadlessMap.init();
+        mMap = new HeadlessMap(1024, 768);
+
+        TimedTileSource tileSource = new TimedTileSource(new Fixtures.MvtTileSource());
+        VectorTileLayer l = mMap.setBaseMap(tileSource);
+        mMap.layers().add(new LabelLayer(mMap, l));
+        mMap.setTheme(VtmThemes.OPENMAPTILES);
+
+        mBenchmark = new HeadlessBenchmark(mMap, tileSource);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mMap.destroy();
+    }
+
+    @Benchmark
+    public HeadlessBenchmark.Report views() throws InterruptedException {
+        /* drop cached tiles */
+        mMap.clearMap();
+        return mBenchmark.run(BOX, 12, 14);
+    }
+}
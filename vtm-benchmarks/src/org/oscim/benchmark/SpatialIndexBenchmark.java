@@ -0,0 +1,104 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.oscim.core.Box;
+import org.oscim.utils.QuadTree;
+import org.oscim.utils.RTree;
+import org.oscim.utils.SpatialIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insertion and window queries of {@link RTree} and {@link QuadTree},
+ * with boxes of marker or label size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpatialIndexBenchmark {
+
+    private static final int EXTENTS = Short.MAX_VALUE + 1;
+    private static final int QUERIES = 100;
+
+    @Param({"RTree", "QuadTree"})
+    public String index;
+
+    @Param({"10000"})
+    public int count;
+
+    private Box[] mBoxes;
+    private Box[] mQueries;
+    private SpatialIndex<Box> mIndex;
+    private final List<Box> mResults = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+        mBoxes = boxes(rnd, count, 64);
+        mQueries = boxes(rnd, QUERIES, 2048);
+
+        mIndex = create();
+        for (Box b : mBoxes)
+            mIndex.insert(b, b);
+    }
+
+    private SpatialIndex<Box> create() {
+        if ("RTree".equals(index))
+            return new RTree<>();
+        return new QuadTree<>(EXTENTS, 16);
+    }
+
+    private static Box[] boxes(Random rnd, int n, int maxSize) {
+        Box[] boxes = new Box[n];
+        for (int i = 0; i < n; i++) {
+            double x = rnd.nextDouble() * EXTENTS - EXTENTS / 2;
+            double y = rnd.nextDouble() * EXTENTS - EXTENTS / 2;
+            double w = 1 + rnd.nextDouble() * maxSize;
+            double h = 1 + rnd.nextDouble() * maxSize;
+            boxes[i] = new Box(x, y, x + w, y + h);
+        }
+        return boxes;
+    }
+
+    @Benchmark
+    public int insert() {
+        SpatialIndex<Box> index = create();
+        for (Box b : mBoxes)
+            index.insert(b, b);
+        return index.size();
+    }
+
+    @Benchmark
+    public int search() {
+        int found = 0;
+        for (Box q : mQueries) {
+            mResults.clear();
+            found += mIndex.search(q, mResults).size();
+        }
+        return found;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.oscim.core.MapElement;
+import org.oscim.headless.HeadlessMap;
+import org.oscim.theme.IRenderTheme;
+import org.oscim.theme.ThemeLoader;
+import org.oscim.theme.internal.VtmThemes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching all elements of the MVT fixture with a bundled theme.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ThemeBenchmark {
+
+    @Param({"OPENMAPTILES"})
+    public VtmThemes theme;
+
+    @Param({"10", "14", "17"})
+    public int zoom;
+
+    private IRenderTheme mTheme;
+    private MapElement[] mElements;
+
+    @Setup
+    public void setup() throws IOException {
+        HeadlessMap.init();
+        mTheme = ThemeLoader.load(theme);
+
+        List<MapElement> elements = Fixtures.mvtElements();
+        mElements = elements.toArray(new MapElement[0]);
+    }
+
+    @Benchmark
+    public void matchElement(Blackhole bh) {
+        for (MapElement e : mElements)
+            bh.consume(mTheme.matchElement(e.type, e.tags, zoom));
+    }
+}
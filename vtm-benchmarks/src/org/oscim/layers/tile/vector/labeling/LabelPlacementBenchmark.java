@@ -0,0 +1,88 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.vector.labeling;
+
+import org.oscim.benchmark.Fixtures;
+import org.oscim.core.MapPosition;
+import org.oscim.headless.HeadlessMap;
+import org.oscim.layers.tile.ZoomLimiter;
+import org.oscim.layers.tile.vector.VectorTileLayer;
+import org.oscim.theme.internal.VtmThemes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Placing the labels of all tiles in view from scratch, i.e. the work of
+ * the {@link LabelLayer} worker after the map was moved to a new area.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LabelPlacementBenchmark {
+
+    @Param({"12", "14"})
+    public int zoom;
+
+    private HeadlessMap mMap;
+    private LabelPlacement mPlacement;
+    private final LabelTask mTask = new LabelTask();
+
+    @Setup
+    public void setup() throws InterruptedException {
+        HeadlessMap.init();
+        mMap = new HeadlessMap(1024, 768);
+
+        VectorTileLayer l = mMap.setBaseMap(new Fixtures.MvtTileSource());
+        mMap.layers().add(new LabelLayer(mMap, l));
+        mMap.setTheme(VtmThemes.OPENMAPTILES);
+
+        mMap.setMapPosition(new MapPosition(53.08, 8.8, 1 << zoom));
+        if (!mMap.awaitIdle(60000))
+            throw new IllegalStateException("tiles not loaded");
+
+        ZoomLimiter zoomLimiter = new ZoomLimiter(l.getManager(),
+                mMap.viewport().getMinZoomLevel(), mMap.viewport().getMaxZoomLevel(),
+                mMap.viewport().getMaxZoomLevel());
+        mPlacement = new LabelPlacement(mMap, l.tileRenderer(), zoomLimiter);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPlacement.cleanup();
+        mMap.destroy();
+    }
+
+    @Benchmark
+    public boolean updateLabels() {
+        /* place from scratch at a 'new' position */
+        mPlacement.cleanup();
+        mTask.pos.scale = 0;
+
+        boolean changed = mPlacement.updateLabels(mTask);
+
+        mTask.textLayer.clear();
+        mTask.symbolLayer.clear();
+        return changed;
+    }
+}
@@ -18,7 +18,6 @@
  */
 package org.oscim.awt;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.utils.BufferUtils;
 import org.oscim.backend.CanvasAdapter;
 import org.oscim.backend.GL;
@@ -28,20 +27,41 @@ import org.oscim.utils.GraphicUtils;
 import org.oscim.utils.IOUtils;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.util.Iterator;
 import java.util.logging.Logger;
 
+import static org.oscim.backend.GLAdapter.gl;
+
 public class AwtBitmap implements Bitmap {
     private static final Logger log = Logger.getLogger(AwtBitmap.class.getName());
 
     BufferedImage bitmap;
 
+    /**
+     * GL.RGB or GL.RGBA when the pixels are stored in the byte order of
+     * the texture format and premultiplied, see {@link #decode(InputStream, Bitmap)}.
+     */
+    private int mTextureFormat;
+
     public AwtBitmap(int width, int height, int format) {
         bitmap = new BufferedImage(width, height, format != 0 ? format : BufferedImage.TYPE_INT_ARGB);
 
@@ -70,6 +90,97 @@ public class AwtBitmap implements Bitmap {
             this.bitmap.coerceData(true);
     }
 
+    private AwtBitmap(BufferedImage bitmap, int textureFormat) {
+        this.bitmap = bitmap;
+        mTextureFormat = textureFormat;
+    }
+
+    /**
+     * Decode RGB and RGBA images in the byte order of the texture format,
+     * so that they can be uploaded without conversion. Decodes into reuse
+     * when it was decoded this way with the same size and format.
+     *
+     * @return reuse or a new bitmap.
+     */
+    static AwtBitmap decode(InputStream inputStream, Bitmap reuse) throws IOException {
+        ImageInputStream iis = ImageIO.createImageInputStream(inputStream);
+        if (iis == null)
+            throw new IOException("cannot read image");
+
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext())
+                throw new IOException("unsupported image format");
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+
+                ImageTypeSpecifier type = reader.getRawImageType(0);
+                int bands = type != null ? type.getNumBands() : 0;
+                if (bands != 3 && bands != 4) {
+                    /* e.g. palette or grayscale */
+                    return new AwtBitmap(reader.read(0));
+                }
+
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int format = bands == 4 ? GL.RGBA : GL.RGB;
+
+                AwtBitmap target = null;
+                if (reuse instanceof AwtBitmap) {
+                    AwtBitmap r = (AwtBitmap) reuse;
+                    if (r.mTextureFormat == format && r.getWidth() == width && r.getHeight() == height)
+                        target = r;
+                }
+                if (target == null)
+                    target = new AwtBitmap(createTextureImage(width, height, format == GL.RGBA), format);
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setDestination(target.bitmap);
+                reader.read(0, param);
+
+                if (format == GL.RGBA)
+                    premultiply(target.getTextureData());
+
+                return target;
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            iis.close();
+        }
+    }
+
+    private static BufferedImage createTextureImage(int width, int height, boolean alpha) {
+        int bands = alpha ? 4 : 3;
+        int[] offsets = alpha ? new int[]{0, 1, 2, 3} : new int[]{0, 1, 2};
+        ColorModel cm = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                alpha, alpha, alpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE,
+                DataBuffer.TYPE_BYTE);
+        WritableRaster raster = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE,
+                width, height, width * bands, bands, offsets, null);
+        return new BufferedImage(cm, raster, alpha, null);
+    }
+
+    /**
+     * Image readers write unpremultiplied samples, also into premultiplied images.
+     */
+    private static void premultiply(byte[] rgba) {
+        for (int i = 0; i < rgba.length; i += 4) {
+            int a = rgba[i + 3] & 0xff;
+            if (a == 255)
+                continue;
+            rgba[i] = (byte) ((rgba[i] & 0xff) * a / 255);
+            rgba[i + 1] = (byte) ((rgba[i + 1] & 0xff) * a / 255);
+            rgba[i + 2] = (byte) ((rgba[i + 2] & 0xff) * a / 255);
+        }
+    }
+
+    private byte[] getTextureData() {
+        return ((DataBufferByte) bitmap.getRaster().getDataBuffer()).getData();
+    }
+
     @Override
     public int getWidth() {
         return bitmap.getWidth();
@@ -82,7 +193,9 @@ public class AwtBitmap implements Bitmap {
 
     @Override
     public int[] getPixels() {
-        return null;
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        return bitmap.getRGB(0, 0, width, height, null, 0, width);
     }
 
     @Override
@@ -95,11 +208,18 @@ public class AwtBitmap implements Bitmap {
     private static final int[] tmpPixel = new int[TextureBucket.TEXTURE_HEIGHT
             * TextureBucket.TEXTURE_WIDTH];
 
+    private static ByteBuffer tmpByteBuffer;
+
     private static final boolean WRITE_TEX = false;
     private int dbgCnt;
 
     @Override
     public void uploadToTexture(boolean replace) {
+        if (mTextureFormat != 0) {
+            uploadTextureData();
+            return;
+        }
+
         int[] pixels;
         IntBuffer buffer;
 
@@ -141,10 +261,31 @@ public class AwtBitmap implements Bitmap {
         buffer.put(pixels, 0, bitmap.getWidth() * bitmap.getHeight());
         buffer.flip();
 
-        Gdx.gl20.glTexImage2D(GL.TEXTURE_2D, 0, GL.RGBA, bitmap.getWidth(),
+        gl.texImage2D(GL.TEXTURE_2D, 0, GL.RGBA, bitmap.getWidth(),
                 bitmap.getHeight(), 0, GL.RGBA, GL.UNSIGNED_BYTE, buffer);
     }
 
+    private void uploadTextureData() {
+        byte[] data = getTextureData();
+
+        /* textures are uploaded on the GL thread only */
+        if (tmpByteBuffer == null || tmpByteBuffer.capacity() < data.length)
+            tmpByteBuffer = BufferUtils.newByteBuffer(data.length);
+        ByteBuffer buffer = tmpByteBuffer;
+        buffer.clear();
+        buffer.put(data);
+        buffer.flip();
+
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (mTextureFormat == GL.RGB)
+            gl.pixelStorei(GL.UNPACK_ALIGNMENT, 1);
+        gl.texImage2D(GL.TEXTURE_2D, 0, mTextureFormat, width, height, 0,
+                mTextureFormat, GL.UNSIGNED_BYTE, buffer);
+        if (mTextureFormat == GL.RGB)
+            gl.pixelStorei(GL.UNPACK_ALIGNMENT, 4);
+    }
+
     @Override
     public void recycle() {
     }
@@ -181,6 +322,7 @@ public class AwtBitmap implements Bitmap {
             graphics.drawImage(bitmap, 0, 0, width, height, null);
             graphics.dispose();
             bitmap = resizedImage;
+            mTextureFormat = 0;
         }
     }
 }
@@ -14,8 +14,8 @@
  */
 package org.oscim.awt;
 
-import com.kitfox.svg.SVGCache;
 import com.kitfox.svg.SVGDiagram;
+import com.kitfox.svg.SVGUniverse;
 import com.kitfox.svg.app.beans.SVGIcon;
 
 import org.oscim.backend.CanvasAdapter;
@@ -33,16 +33,33 @@ public class AwtSvgBitmap extends AwtBitmap {
      */
     public static float DEFAULT_SIZE = 400f;
 
+    /**
+     * SVG universes are not thread-safe, symbols are rendered in parallel
+     * with one per thread.
+     */
+    private static final ThreadLocal<SVGUniverse> UNIVERSE = new ThreadLocal<SVGUniverse>() {
+        @Override
+        protected SVGUniverse initialValue() {
+            return new SVGUniverse();
+        }
+    };
+
     public static BufferedImage getResourceBitmap(InputStream inputStream, float scaleFactor, float defaultSize, int width, int height, int percent) throws IOException {
+        return getResourceBitmap(UNIVERSE.get(), inputStream, scaleFactor, defaultSize, width, height, percent);
+    }
+
+    private static BufferedImage getResourceBitmap(SVGUniverse universe, InputStream inputStream, float scaleFactor, float defaultSize, int width, int height, int percent) throws IOException {
+        URI uri = null;
         try {
-            URI uri = SVGCache.getSVGUniverse().loadSVG(inputStream, Integer.toString(inputStream.hashCode()));
-            SVGDiagram diagram = SVGCache.getSVGUniverse().getDiagram(uri);
+            uri = universe.loadSVG(inputStream, Integer.toString(inputStream.hashCode()));
+            SVGDiagram diagram = universe.getDiagram(uri);
 
             double scale = scaleFactor / Math.sqrt((diagram.getHeight() * diagram.getWidth()) / defaultSize);
 
             float[] bmpSize = GraphicUtils.imageSize(diagram.getWidth(), diagram.getHeight(), (float) scale, width, height, percent);
 
             SVGIcon icon = new SVGIcon();
+            icon.setSvgUniverse(universe);
             icon.setAntiAlias(true);
             icon.setAutosize(SVGIcon.AUTOSIZE_STRETCH);
             icon.setPreferredSize(new Dimension((int) bmpSize[0], (int) bmpSize[1]));
@@ -53,13 +70,15 @@ public class AwtSvgBitmap extends AwtBitmap {
             return bufferedImage;
         } catch (Exception e) {
             throw new IOException(e);
+        } finally {
+            /* names are not unique, do not keep the diagram */
+            if (uri != null)
+                universe.removeDocument(uri);
         }
     }
 
     private static BufferedImage getResourceBitmapImpl(InputStream inputStream, int width, int height, int percent) throws IOException {
-        synchronized (SVGCache.getSVGUniverse()) {
-            return getResourceBitmap(inputStream, CanvasAdapter.getScale(), DEFAULT_SIZE, width, height, percent);
-        }
+        return getResourceBitmap(inputStream, CanvasAdapter.getScale(), DEFAULT_SIZE, width, height, percent);
     }
 
     public AwtSvgBitmap(InputStream inputStream, int width, int height, int percent) throws IOException {
@@ -0,0 +1,40 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.headless;
+
+import org.oscim.backend.AssetAdapter;
+
+import java.io.InputStream;
+
+/**
+ * Reads assets from the class path, where the vtm jar provides them.
+ */
+public class HeadlessAssets extends AssetAdapter {
+
+    private final String mPathPrefix;
+
+    private HeadlessAssets(String path) {
+        mPathPrefix = path;
+    }
+
+    @Override
+    protected InputStream openFileAsStream(String fileName) {
+        return HeadlessAssets.class.getClassLoader().getResourceAsStream(mPathPrefix + fileName);
+    }
+
+    public static void init(String path) {
+        AssetAdapter.init(new HeadlessAssets(path));
+    }
+}
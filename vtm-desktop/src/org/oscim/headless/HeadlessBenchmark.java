@@ -0,0 +1,153 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.headless;
+
+import org.oscim.core.BoundingBox;
+import org.oscim.core.MapPosition;
+import org.oscim.core.MercatorProjection;
+import org.oscim.core.Tile;
+
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Measures the tile pipeline of a {@link HeadlessMap} by moving the view
+ * over a bounding box for a range of zoom levels.
+ * <p/>
+ * Usage:
+ * <pre>
+ * HeadlessMap map = new HeadlessMap(1024, 768);
+ * TimedTileSource tileSource = new TimedTileSource(mapFileTileSource);
+ * VectorTileLayer l = map.setBaseMap(tileSource);
+ * map.layers().add(new LabelLayer(map, l));
+ * map.setTheme(VtmThemes.DEFAULT);
+ *
+ * Report report = new HeadlessBenchmark(map, tileSource).run(box, 12, 17);
+ * </pre>
+ */
+public class HeadlessBenchmark {
+    private static final Logger log = Logger.getLogger(HeadlessBenchmark.class.getName());
+
+    private final HeadlessMap mMap;
+    private final TimedTileSource mTileSource;
+
+    private long mTimeout = 60000;
+
+    public HeadlessBenchmark(HeadlessMap map, TimedTileSource tileSource) {
+        mMap = map;
+        mTileSource = tileSource;
+    }
+
+    /**
+     * Set max time in milliseconds to wait for tiles of a view.
+     */
+    public void setTimeout(long timeout) {
+        mTimeout = timeout;
+    }
+
+    /**
+     * Show all views covering box, for each zoom level from zoomMin to zoomMax,
+     * and wait for their tiles to be loaded and uploaded.
+     */
+    public Report run(BoundingBox box, int zoomMin, int zoomMax) throws InterruptedException {
+        double minX = MercatorProjection.longitudeToX(box.getMinLongitude());
+        double maxX = MercatorProjection.longitudeToX(box.getMaxLongitude());
+        double minY = MercatorProjection.latitudeToY(box.getMaxLatitude());
+        double maxY = MercatorProjection.latitudeToY(box.getMinLatitude());
+
+        /* start with a settled map */
+        mMap.awaitIdle(mTimeout);
+
+        mTileSource.reset();
+        mMap.resetStats();
+
+        Report report = new Report();
+        MapPosition pos = new MapPosition();
+        long start = System.nanoTime();
+
+        for (int zoom = zoomMin; zoom <= zoomMax; zoom++) {
+            double scale = 1 << zoom;
+            double w = mMap.getWidth() / (Tile.SIZE * scale);
+            double h = mMap.getHeight() / (Tile.SIZE * scale);
+
+            for (double y = minY + h / 2; y - h / 2 < maxY; y += h) {
+                for (double x = minX + w / 2; x - w / 2 < maxX; x += w) {
+                    pos.setX(x).setY(y).setScale(scale);
+                    mMap.setMapPosition(pos);
+                    report.views++;
+
+                    if (!mMap.awaitIdle(mTimeout)) {
+                        log.warning("timeout at " + pos);
+                        report.timeouts++;
+                    }
+                }
+            }
+        }
+
+        report.nanos = System.nanoTime() - start;
+        report.tiles = mTileSource.tiles.get();
+        report.failed = mTileSource.failed.get();
+        report.elements = mTileSource.elements.get();
+        report.decodeNanos = mTileSource.decodeNanos.get();
+        report.processNanos = mTileSource.processNanos.get();
+        report.completeNanos = mTileSource.completeNanos.get();
+        report.renderNanos = mMap.getRenderNanos();
+        report.frames = mMap.getFrames();
+        report.bufferBytes = mMap.getGL().getBufferBytes();
+        report.textureBytes = mMap.getGL().getTextureBytes();
+        return report;
+    }
+
+    /**
+     * Results of a run. Stage times are summed over all TileLoaders, so
+     * that they can exceed the elapsed time.
+     */
+    public static class Report {
+        public int views;
+        public int timeouts;
+        public long nanos;
+
+        public long tiles;
+        public long failed;
+        public long elements;
+
+        public long decodeNanos;
+        public long processNanos;
+        public long completeNanos;
+        public long renderNanos;
+        public long frames;
+
+        public long bufferBytes;
+        public long textureBytes;
+
+        public double getTilesPerSecond() {
+            return nanos > 0 ? tiles * 1e9 / nanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "views=%d timeouts=%d time=%.1fms%n"
+                            + "tiles=%d failed=%d elements=%d tiles/s=%.1f%n"
+                            + "decode=%.1fms process=%.1fms complete=%.1fms render=%.1fms frames=%d%n"
+                            + "buffers=%dkB textures=%dkB",
+                    views, timeouts, nanos / 1e6,
+                    tiles, failed, elements, getTilesPerSecond(),
+                    decodeNanos / 1e6, processNanos / 1e6, completeNanos / 1e6,
+                    renderNanos / 1e6, frames,
+                    bufferBytes / 1024, textureBytes / 1024);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.headless;
+
+import org.oscim.backend.GL;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.IntBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link GL} that does not render anything, but counts the data uploaded
+ * by the renderer. Object names are handed out in sequence and shaders
+ * always compile, so that the renderers run their regular code paths.
+ */
+public class HeadlessGL implements InvocationHandler {
+
+    private final GL mGL;
+
+    private final AtomicLong mBufferBytes = new AtomicLong();
+    private final AtomicLong mTextureBytes = new AtomicLong();
+    private final AtomicLong mDrawCalls = new AtomicLong();
+
+    private final AtomicInteger mNames = new AtomicInteger();
+
+    public HeadlessGL() {
+        mGL = (GL) Proxy.newProxyInstance(GL.class.getClassLoader(),
+                new Class<?>[]{GL.class}, this);
+    }
+
+    public GL getGL() {
+        return mGL;
+    }
+
+    /**
+     * @return bytes uploaded with bufferData and bufferSubData.
+     */
+    public long getBufferBytes() {
+        return mBufferBytes.get();
+    }
+
+    /**
+     * @return bytes uploaded with texImage2D and texSubImage2D.
+     */
+    public long getTextureBytes() {
+        return mTextureBytes.get();
+    }
+
+    public long getDrawCalls() {
+        return mDrawCalls.get();
+    }
+
+    public void reset() {
+        mBufferBytes.set(0);
+        mTextureBytes.set(0);
+        mDrawCalls.set(0);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        switch (name) {
+            case "bufferData":
+                mBufferBytes.addAndGet((Integer) args[1]);
+                return null;
+            case "bufferSubData":
+                mBufferBytes.addAndGet((Integer) args[2]);
+                return null;
+            case "texImage2D":
+                mTextureBytes.addAndGet(textureBytes(args, 3, 4, 6));
+                return null;
+            case "texSubImage2D":
+                mTextureBytes.addAndGet(textureBytes(args, 4, 5, 6));
+                return null;
+            case "drawArrays":
+            case "drawElements":
+                mDrawCalls.incrementAndGet();
+                return null;
+            case "genBuffers":
+            case "genTextures":
+            case "genFramebuffers":
+            case "genRenderbuffers":
+                genNames((Integer) args[0], (IntBuffer) args[1]);
+                return null;
+            case "createProgram":
+            case "createShader":
+                return mNames.incrementAndGet();
+            case "getShaderiv":
+            case "getProgramiv":
+                /* compile and link status */
+                ((IntBuffer) args[2]).put(0, GL.TRUE);
+                return null;
+            case "getIntegerv":
+                if ((Integer) args[0] == GL.MAX_TEXTURE_SIZE)
+                    ((IntBuffer) args[1]).put(0, 4096);
+                return null;
+            case "checkFramebufferStatus":
+                return GL.FRAMEBUFFER_COMPLETE;
+            case "getString":
+                return "headless";
+            case "getShaderInfoLog":
+            case "getProgramInfoLog":
+                return "";
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "HeadlessGL";
+        }
+        return defaultValue(method.getReturnType());
+    }
+
+    private static long textureBytes(Object[] args, int width, int height, int format) {
+        int bpp = 4;
+        int f = (Integer) args[format];
+        if (f == GL.ALPHA || f == GL.LUMINANCE)
+            bpp = 1;
+        return (long) (Integer) args[width] * (Integer) args[height] * bpp;
+    }
+
+    private void genNames(int n, IntBuffer names) {
+        int pos = names.position();
+        for (int i = 0; i < n; i++)
+            names.put(pos + i, mNames.incrementAndGet());
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class)
+            return Boolean.FALSE;
+        if (type == int.class)
+            return 0;
+        if (type == float.class)
+            return 0f;
+        if (type == long.class)
+            return 0L;
+        return null;
+    }
+}
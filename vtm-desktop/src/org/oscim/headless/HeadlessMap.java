@@ -0,0 +1,358 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.headless;
+
+import com.badlogic.gdx.utils.SharedLibraryLoader;
+import org.oscim.awt.AwtGraphics;
+import org.oscim.backend.DateTime;
+import org.oscim.backend.DateTimeAdapter;
+import org.oscim.backend.GLAdapter;
+import org.oscim.layers.Layer;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.TileLayer;
+import org.oscim.layers.tile.TileSet;
+import org.oscim.map.Map;
+import org.oscim.renderer.MapRenderer;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+
+/**
+ * A {@link Map} without a surface, e.g. to measure the tile pipeline on a
+ * build server or to prepare tiles server-side. Rendering goes to a
+ * {@link HeadlessGL}.
+ * <p/>
+ * The map is driven from the thread that created it: tasks posted by other
+ * threads, e.g. TileLoaders, only run in {@link #step()} in the order they
+ * were posted. Delayed tasks run when the virtual clock is advanced by
+ * {@link #advanceTime(long)}, or by {@link #awaitIdle(long)} when nothing
+ * else is pending. Layers posting periodic tasks, e.g. location animations,
+ * never become idle.
+ * <p/>
+ * Backend globals must be initialized before, see {@link #init()}.
+ */
+public class HeadlessMap extends Map {
+
+    private final int mWidth;
+    private final int mHeight;
+
+    private final HeadlessGL mGL;
+    private final MapRenderer mMapRenderer;
+
+    private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+    private final PriorityQueue<DelayedTask> mDelayedTasks = new PriorityQueue<>();
+    private long mTime;
+    private long mSequence;
+
+    /* tasks running on the AsyncExecutor, guarded by mTasks */
+    private int mAsyncTasks;
+
+    private boolean mUpdateRequest;
+    private boolean mRenderRequest;
+
+    private long mFrames;
+    private long mRenderNanos;
+
+    private final TileSet mTileSet = new TileSet();
+
+    public static void init() {
+        // load native library
+        new SharedLibraryLoader().load("vtm-jni");
+        // init globals
+        AwtGraphics.init();
+        HeadlessAssets.init("assets/");
+        DateTimeAdapter.init(new DateTime());
+    }
+
+    public HeadlessMap(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+
+        mGL = new HeadlessGL();
+        GLAdapter.init(mGL.getGL());
+
+        mMapRenderer = new MapRenderer(this);
+
+        viewport().setViewSize(width, height);
+        mMapRenderer.onSurfaceCreated();
+        mMapRenderer.onSurfaceChanged(width, height);
+    }
+
+    public HeadlessGL getGL() {
+        return mGL;
+    }
+
+    /**
+     * @return number of frames rendered.
+     */
+    public long getFrames() {
+        return mFrames;
+    }
+
+    /**
+     * @return time spent rendering frames, including compilation and upload of tiles.
+     */
+    public long getRenderNanos() {
+        return mRenderNanos;
+    }
+
+    public void resetStats() {
+        mFrames = 0;
+        mRenderNanos = 0;
+        mGL.reset();
+    }
+
+    /**
+     * Run pending tasks and render a frame when requested.
+     *
+     * @return true when anything was done.
+     */
+    public boolean step() {
+        boolean done = runTasks();
+
+        boolean update;
+        boolean render;
+        synchronized (mTasks) {
+            update = mUpdateRequest;
+            render = mRenderRequest || update;
+            mUpdateRequest = false;
+            mRenderRequest = false;
+        }
+
+        if (update)
+            prepareFrame();
+
+        if (render) {
+            long time = System.nanoTime();
+            mMapRenderer.onDrawFrame();
+            mRenderNanos += System.nanoTime() - time;
+            mFrames++;
+        }
+        return done || render;
+    }
+
+    private boolean runTasks() {
+        boolean done = false;
+        while (true) {
+            Runnable task;
+            synchronized (mTasks) {
+                task = mTasks.poll();
+            }
+            if (task == null)
+                return done;
+            task.run();
+            done = true;
+        }
+    }
+
+    /**
+     * Advance the virtual clock and queue delayed tasks that are due.
+     */
+    public void advanceTime(long millis) {
+        synchronized (mTasks) {
+            mTime += millis;
+            while (!mDelayedTasks.isEmpty() && mDelayedTasks.peek().time <= mTime)
+                mTasks.add(mDelayedTasks.poll().action);
+        }
+    }
+
+    /**
+     * Advance the virtual clock to the next delayed task.
+     *
+     * @return false when no delayed task is pending.
+     */
+    private boolean advanceToNextTask() {
+        synchronized (mTasks) {
+            if (mDelayedTasks.isEmpty())
+                return false;
+            advanceTime(Math.max(0, mDelayedTasks.peek().time - mTime));
+        }
+        return true;
+    }
+
+    /**
+     * @return true when no task, including delayed and async tasks, is
+     * pending and all tiles in view are loaded and uploaded. Animations,
+     * e.g. fading in tiles, may still be running.
+     */
+    public boolean isIdle() {
+        synchronized (mTasks) {
+            if (!mTasks.isEmpty() || !mDelayedTasks.isEmpty() || mAsyncTasks > 0)
+                return false;
+        }
+        for (Layer layer : layers()) {
+            if (!(layer instanceof TileLayer))
+                continue;
+
+            ((TileLayer) layer).getManager().getActiveTiles(mTileSet);
+            try {
+                for (int i = 0; i < mTileSet.cnt; i++) {
+                    MapTile tile = mTileSet.tiles[i];
+                    if (tile.state(MapTile.State.LOADING))
+                        return false;
+                    if (tile.isVisible && tile.state(MapTile.State.NEW_DATA))
+                        return false;
+                }
+            } finally {
+                mTileSet.releaseTiles();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Step until {@link #isIdle()}, waiting for TileLoaders and async tasks.
+     * Delayed tasks are run by advancing the virtual clock when nothing else
+     * is pending.
+     *
+     * @return false when timeout elapsed before.
+     */
+    public boolean awaitIdle(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true) {
+            boolean done = step();
+            if (isIdle())
+                return true;
+            if (System.currentTimeMillis() > deadline)
+                return false;
+            if (!done) {
+                synchronized (mTasks) {
+                    if (!mTasks.isEmpty() || mUpdateRequest || mRenderRequest)
+                        continue;
+                }
+                if (advanceToNextTask())
+                    continue;
+                synchronized (mTasks) {
+                    if (mTasks.isEmpty() && !mUpdateRequest && !mRenderRequest)
+                        mTasks.wait(1);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void updateMap() {
+        updateMap(true);
+    }
+
+    @Override
+    public void updateMap(boolean redraw) {
+        synchronized (mTasks) {
+            mUpdateRequest = true;
+            mTasks.notifyAll();
+        }
+    }
+
+    @Override
+    public void render() {
+        if (mClearMap) {
+            updateMap(false);
+            return;
+        }
+        synchronized (mTasks) {
+            mRenderRequest = true;
+            mTasks.notifyAll();
+        }
+    }
+
+    @Override
+    public boolean post(Runnable action) {
+        synchronized (mTasks) {
+            mTasks.add(action);
+            mTasks.notifyAll();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean postDelayed(Runnable action, long delay) {
+        synchronized (mTasks) {
+            mDelayedTasks.add(new DelayedTask(action, mTime + delay, mSequence++));
+        }
+        return true;
+    }
+
+    @Override
+    public void addTask(final Runnable task) {
+        synchronized (mTasks) {
+            mAsyncTasks++;
+        }
+        super.addTask(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    /* results of async tasks, e.g. labels, are polled
+                     * when rendering: render once they are done */
+                    synchronized (mTasks) {
+                        mAsyncTasks--;
+                        mRenderRequest = true;
+                        mTasks.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public int getScreenWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getScreenHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void beginFrame() {
+    }
+
+    @Override
+    public void doneFrame(boolean needsRedraw) {
+        if (needsRedraw)
+            updateMap(true);
+    }
+
+    private static class DelayedTask implements Comparable<DelayedTask> {
+        final Runnable action;
+        final long time;
+        final long sequence;
+
+        DelayedTask(Runnable action, long time, long sequence) {
+            this.action = action;
+            this.time = time;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(DelayedTask o) {
+            if (time != o.time)
+                return time < o.time ? -1 : 1;
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.headless;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.TileSource;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps a {@link TileSource} to measure the stages of tile loading:
+ * <ul>
+ * <li>decode: reading and decoding by the data source</li>
+ * <li>process: matching the theme and building buckets for each element</li>
+ * <li>complete: hooks, e.g. labels, and preparing the buckets</li>
+ * </ul>
+ */
+public class TimedTileSource extends TileSource {
+
+    private final TileSource mTileSource;
+
+    final AtomicLong tiles = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+    final AtomicLong elements = new AtomicLong();
+    final AtomicLong decodeNanos = new AtomicLong();
+    final AtomicLong processNanos = new AtomicLong();
+    final AtomicLong completeNanos = new AtomicLong();
+
+    public TimedTileSource(TileSource tileSource) {
+        super(tileSource.getZoomLevelMin(), tileSource.getZoomLevelMax(),
+                tileSource.getOverZoom());
+        mTileSource = tileSource;
+        mAlpha = tileSource.getAlpha();
+        mFadeSteps = tileSource.getFadeSteps();
+        mName = tileSource.getName();
+        mTileSize = tileSource.getTileSize();
+    }
+
+    public TileSource getTileSource() {
+        return mTileSource;
+    }
+
+    @Override
+    public ITileDataSource getDataSource() {
+        return new TimedDataSource(mTileSource.getDataSource());
+    }
+
+    @Override
+    public OpenResult open() {
+        return mTileSource.open();
+    }
+
+    @Override
+    public void close() {
+        mTileSource.close();
+    }
+
+    @Override
+    public String getVersion() {
+        return mTileSource.getVersion();
+    }
+
+    public void reset() {
+        tiles.set(0);
+        failed.set(0);
+        elements.set(0);
+        decodeNanos.set(0);
+        processNanos.set(0);
+        completeNanos.set(0);
+    }
+
+    /**
+     * Used by a single TileLoader.
+     */
+    class TimedDataSource implements ITileDataSource, ITileDataSink {
+        private final ITileDataSource mDataSource;
+
+        private ITileDataSink mSink;
+        private long mStart;
+        private long mProcessNanos;
+        private long mElements;
+
+        TimedDataSource(ITileDataSource dataSource) {
+            mDataSource = dataSource;
+        }
+
+        @Override
+        public void query(MapTile tile, ITileDataSink sink) {
+            mSink = sink;
+            mProcessNanos = 0;
+            mElements = 0;
+            mStart = System.nanoTime();
+            mDataSource.query(tile, this);
+        }
+
+        @Override
+        public void process(MapElement element) {
+            long time = System.nanoTime();
+            mSink.process(element);
+            mProcessNanos += System.nanoTime() - time;
+            mElements++;
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+            long time = System.nanoTime();
+            mSink.setTileImage(bitmap);
+            mProcessNanos += System.nanoTime() - time;
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            long time = System.nanoTime();
+            decodeNanos.addAndGet(time - mStart - mProcessNanos);
+            processNanos.addAndGet(mProcessNanos);
+            elements.addAndGet(mElements);
+            if (result == QueryResult.SUCCESS)
+                tiles.incrementAndGet();
+            else
+                failed.incrementAndGet();
+
+            mSink.completed(result);
+            completeNanos.addAndGet(System.nanoTime() - time);
+        }
+
+        @Override
+        public void dispose() {
+            mDataSource.dispose();
+        }
+
+        @Override
+        public void cancel() {
+            mDataSource.cancel();
+        }
+    }
+}
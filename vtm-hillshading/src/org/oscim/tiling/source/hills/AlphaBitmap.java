@@ -0,0 +1,388 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.hills;
+
+import org.oscim.backend.GL;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.backend.canvas.Color;
+import org.oscim.renderer.MapRenderer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static org.oscim.backend.GLAdapter.gl;
+
+/**
+ * Single channel bitmap of a shading intensity in a fixed color.
+ * <p/>
+ * Uploaded as 8-bit alpha texture when the color is black, otherwise
+ * expanded to premultiplied RGBA on upload. Stored in tile caches in a
+ * raw format with optional fast compression, see {@link #write(OutputStream, boolean)}.
+ */
+public class AlphaBitmap implements Bitmap {
+
+    private static final int MAGIC = 0x56484131; // VHA1
+
+    private static final int COMPRESSION_NONE = 0;
+    private static final int COMPRESSION_DEFLATE = 1;
+
+    private static final byte[] PNG_SIGNATURE = {
+            (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    private int mWidth;
+    private int mHeight;
+    private final int mColor;
+
+    /**
+     * Alpha values by row, may be shared with other bitmaps and
+     * must not be modified.
+     */
+    private byte[] mAlpha;
+
+    public AlphaBitmap(int width, int height, int color, byte[] alpha) {
+        if (alpha.length != width * height)
+            throw new IllegalArgumentException("invalid alpha size: " + alpha.length);
+        mWidth = width;
+        mHeight = height;
+        mColor = color;
+        mAlpha = alpha;
+    }
+
+    /**
+     * Extract the alpha channel of an ARGB bitmap.
+     */
+    public static AlphaBitmap fromBitmap(Bitmap bitmap, int color) {
+        int[] pixels = bitmap.getPixels();
+        byte[] alpha = new byte[pixels.length];
+        for (int i = 0; i < pixels.length; i++)
+            alpha[i] = (byte) (pixels[i] >>> 24);
+        return new AlphaBitmap(bitmap.getWidth(), bitmap.getHeight(), color, alpha);
+    }
+
+    /**
+     * @return true when the stream starts with the raw format, the
+     * stream is reset to its start. The stream must support mark.
+     */
+    public static boolean isRaw(InputStream is) throws IOException {
+        is.mark(4);
+        try {
+            int magic = new DataInputStream(is).readInt();
+            return magic == MAGIC;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            is.reset();
+        }
+    }
+
+    public static AlphaBitmap read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readInt() != MAGIC)
+            throw new IOException("not a raw alpha bitmap");
+
+        int compression = in.readUnsignedByte();
+        int width = in.readInt();
+        int height = in.readInt();
+        int color = in.readInt();
+        if (width <= 0 || height <= 0 || width > 4096 || height > 4096)
+            throw new IOException("invalid size: " + width + "x" + height);
+
+        byte[] alpha = new byte[width * height];
+        if (compression == COMPRESSION_DEFLATE) {
+            Inflater inflater = new Inflater();
+            try {
+                new DataInputStream(new InflaterInputStream(is, inflater)).readFully(alpha);
+            } finally {
+                inflater.end();
+            }
+        } else if (compression == COMPRESSION_NONE) {
+            in.readFully(alpha);
+        } else {
+            throw new IOException("unsupported compression: " + compression);
+        }
+
+        return new AlphaBitmap(width, height, color, alpha);
+    }
+
+    /**
+     * @param compress deflate the alpha values with {@link Deflater#BEST_SPEED}.
+     */
+    public void write(OutputStream os, boolean compress) throws IOException {
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(MAGIC);
+        out.writeByte(compress ? COMPRESSION_DEFLATE : COMPRESSION_NONE);
+        out.writeInt(mWidth);
+        out.writeInt(mHeight);
+        out.writeInt(mColor);
+        out.flush();
+
+        if (compress) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                DeflaterOutputStream dos = new DeflaterOutputStream(os, deflater);
+                dos.write(mAlpha);
+                dos.finish();
+            } finally {
+                deflater.end();
+            }
+        } else {
+            os.write(mAlpha);
+        }
+        os.flush();
+    }
+
+    /**
+     * Scale a quarter of this bitmap to full size with bilinear interpolation,
+     * e.g. to derive a child tile from its parent.
+     *
+     * @param dx 0 for the left, 1 for the right half
+     * @param dy 0 for the top, 1 for the bottom half
+     */
+    public AlphaBitmap getQuarter(int dx, int dy) {
+        int w = mWidth;
+        int h = mHeight;
+        byte[] src = mAlpha;
+        byte[] dst = new byte[w * h];
+
+        float offX = dx * w / 2f - 0.25f;
+        float offY = dy * h / 2f - 0.25f;
+
+        for (int y = 0; y < h; y++) {
+            float sy = Math.max(offY + y * 0.5f, 0);
+            int y0 = Math.min((int) sy, h - 1);
+            int y1 = Math.min(y0 + 1, h - 1);
+            float fy = sy - y0;
+
+            for (int x = 0; x < w; x++) {
+                float sx = Math.max(offX + x * 0.5f, 0);
+                int x0 = Math.min((int) sx, w - 1);
+                int x1 = Math.min(x0 + 1, w - 1);
+                float fx = sx - x0;
+
+                float top = (src[y0 * w + x0] & 0xff) * (1 - fx) + (src[y0 * w + x1] & 0xff) * fx;
+                float bottom = (src[y1 * w + x0] & 0xff) * (1 - fx) + (src[y1 * w + x1] & 0xff) * fx;
+                dst[y * w + x] = (byte) (top * (1 - fy) + bottom * fy + 0.5f);
+            }
+        }
+        return new AlphaBitmap(w, h, mColor, dst);
+    }
+
+    /**
+     * @return a bitmap sharing the alpha values, to be recycled independently.
+     */
+    public AlphaBitmap duplicate() {
+        return new AlphaBitmap(mWidth, mHeight, mColor, mAlpha);
+    }
+
+    public int getColor() {
+        return mColor;
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void recycle() {
+        mAlpha = null;
+    }
+
+    @Override
+    public int[] getPixels() {
+        int rgb = mColor & 0xffffff;
+        int[] pixels = new int[mAlpha.length];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = (mAlpha[i] & 0xff) << 24 | rgb;
+        return pixels;
+    }
+
+    @Override
+    public void eraseColor(int color) {
+        /* alpha may be shared */
+        byte a = (byte) Color.a(color);
+        byte[] alpha = new byte[mWidth * mHeight];
+        if (a != 0) {
+            for (int i = 0; i < alpha.length; i++)
+                alpha[i] = a;
+        }
+        mAlpha = alpha;
+    }
+
+    /**
+     * Always specifies the whole texture, as textures of a pool may
+     * have been created with a different format. Only use on GL Thread,
+     * uploads from the temporary buffers of {@link MapRenderer}.
+     */
+    @Override
+    public void uploadToTexture(boolean replace) {
+        ByteBuffer buf;
+        if ((mColor & 0xffffff) == 0) {
+            buf = MapRenderer.getByteBuffer(mAlpha.length);
+            buf.put(mAlpha);
+            buf.flip();
+
+            gl.pixelStorei(GL.UNPACK_ALIGNMENT, 1);
+            gl.texImage2D(GL.TEXTURE_2D, 0, GL.ALPHA, mWidth, mHeight, 0,
+                    GL.ALPHA, GL.UNSIGNED_BYTE, buf);
+            gl.pixelStorei(GL.UNPACK_ALIGNMENT, 4);
+        } else {
+            int r = Color.r(mColor);
+            int g = Color.g(mColor);
+            int b = Color.b(mColor);
+
+            buf = MapRenderer.getByteBuffer(mAlpha.length * 4);
+            for (byte value : mAlpha) {
+                int a = value & 0xff;
+                buf.put((byte) (r * a / 255));
+                buf.put((byte) (g * a / 255));
+                buf.put((byte) (b * a / 255));
+                buf.put(value);
+            }
+            buf.flip();
+
+            gl.texImage2D(GL.TEXTURE_2D, 0, GL.RGBA, mWidth, mHeight, 0,
+                    GL.RGBA, GL.UNSIGNED_BYTE, buf);
+        }
+    }
+
+    @Override
+    public boolean isValid() {
+        return mAlpha != null;
+    }
+
+    /**
+     * Encode as RGBA PNG in the color of this bitmap. For tile caches
+     * prefer {@link #write(OutputStream, boolean)}.
+     */
+    @Override
+    public byte[] getPngEncodedData() {
+        int r = Color.r(mColor);
+        int g = Color.g(mColor);
+        int b = Color.b(mColor);
+
+        /* rows with filter type 'none' */
+        byte[] raw = new byte[mHeight * (mWidth * 4 + 1)];
+        for (int y = 0, pos = 0; y < mHeight; y++) {
+            raw[pos++] = 0;
+            for (int x = 0, i = y * mWidth; x < mWidth; x++, i++) {
+                raw[pos++] = (byte) r;
+                raw[pos++] = (byte) g;
+                raw[pos++] = (byte) b;
+                raw[pos++] = mAlpha[i];
+            }
+        }
+
+        try {
+            ByteArrayOutputStream data = new ByteArrayOutputStream(raw.length / 4);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                DeflaterOutputStream dos = new DeflaterOutputStream(data, deflater);
+                dos.write(raw);
+                dos.finish();
+            } finally {
+                deflater.end();
+            }
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+            DataOutputStream hdr = new DataOutputStream(header);
+            hdr.writeInt(mWidth);
+            hdr.writeInt(mHeight);
+            hdr.writeByte(8); // bit depth
+            hdr.writeByte(6); // RGBA
+            hdr.writeByte(0); // deflate
+            hdr.writeByte(0); // adaptive filtering
+            hdr.writeByte(0); // no interlace
+
+            ByteArrayOutputStream os = new ByteArrayOutputStream(data.size() + 64);
+            DataOutputStream out = new DataOutputStream(os);
+            out.write(PNG_SIGNATURE);
+            writeChunk(out, "IHDR", header.toByteArray());
+            writeChunk(out, "IDAT", data.toByteArray());
+            writeChunk(out, "IEND", new byte[0]);
+            return os.toByteArray();
+        } catch (IOException e) {
+            /* not thrown by byte array streams */
+            return null;
+        }
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data)
+            throws IOException {
+        byte[] name = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data);
+
+        out.writeInt(data.length);
+        out.write(name);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Resample the alpha values with bilinear interpolation.
+     */
+    @Override
+    public void scaleTo(int width, int height) {
+        if (width == mWidth && height == mHeight)
+            return;
+
+        int w = mWidth;
+        int h = mHeight;
+        byte[] src = mAlpha;
+        byte[] dst = new byte[width * height];
+
+        float scaleX = (float) w / width;
+        float scaleY = (float) h / height;
+
+        for (int y = 0; y < height; y++) {
+            float sy = Math.max((y + 0.5f) * scaleY - 0.5f, 0);
+            int y0 = Math.min((int) sy, h - 1);
+            int y1 = Math.min(y0 + 1, h - 1);
+            float fy = sy - y0;
+
+            for (int x = 0; x < width; x++) {
+                float sx = Math.max((x + 0.5f) * scaleX - 0.5f, 0);
+                int x0 = Math.min((int) sx, w - 1);
+                int x1 = Math.min(x0 + 1, w - 1);
+                float fx = sx - x0;
+
+                float top = (src[y0 * w + x0] & 0xff) * (1 - fx) + (src[y0 * w + x1] & 0xff) * fx;
+                float bottom = (src[y1 * w + x0] & 0xff) * (1 - fx) + (src[y1 * w + x1] & 0xff) * fx;
+                dst[y * width + x] = (byte) (top * (1 - fy) + bottom * fy + 0.5f);
+            }
+        }
+        /* alpha may be shared, replaced instead of modified */
+        mAlpha = dst;
+        mWidth = width;
+        mHeight = height;
+    }
+}
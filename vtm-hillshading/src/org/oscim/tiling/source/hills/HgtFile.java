@@ -0,0 +1,144 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.hills;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Elevations of a one degree cell in SRTM HGT format, memory-mapped
+ * on first access. Rows run from north to south, columns from west
+ * to east, the outer rows and columns overlap with neighboring cells.
+ */
+public class HgtFile {
+
+    /**
+     * Elevation of samples without data.
+     */
+    public static final short VOID = Short.MIN_VALUE;
+
+    private static final Pattern NAME = Pattern.compile("([ns])(\\d{1,2})([ew])(\\d{1,3})\\.hgt");
+
+    public final File file;
+
+    /**
+     * Latitude of the south edge.
+     */
+    public final int lat;
+
+    /**
+     * Longitude of the west edge.
+     */
+    public final int lon;
+
+    /**
+     * Number of rows and columns, e.g. 1201 or 3601.
+     */
+    public final int size;
+
+    private volatile ByteBuffer mBuffer;
+
+    private HgtFile(File file, int lat, int lon, int size) {
+        this.file = file;
+        this.lat = lat;
+        this.lon = lon;
+        this.size = size;
+    }
+
+    /**
+     * @return the cell of file, or null when the name or size
+     * does not match the HGT format, e.g. N47E011.hgt.
+     */
+    public static HgtFile create(File file) {
+        Matcher m = NAME.matcher(file.getName().toLowerCase(Locale.ENGLISH));
+        if (!m.matches())
+            return null;
+
+        int lat = Integer.parseInt(m.group(2));
+        int lon = Integer.parseInt(m.group(4));
+        if (m.group(1).equals("s"))
+            lat = -lat;
+        if (m.group(3).equals("w"))
+            lon = -lon;
+
+        long samples = file.length() / 2;
+        int size = (int) Math.round(Math.sqrt(samples));
+        if (size < 2 || (long) size * size != samples)
+            return null;
+
+        return new HgtFile(file, lat, lon, size);
+    }
+
+    /**
+     * @return elevation in meters or {@link #VOID}.
+     */
+    public short getElevation(int row, int col) {
+        return buffer().getShort((row * size + col) << 1);
+    }
+
+    private ByteBuffer buffer() {
+        ByteBuffer buffer = mBuffer;
+        if (buffer == null) {
+            synchronized (this) {
+                buffer = mBuffer;
+                if (buffer == null) {
+                    buffer = map();
+                    mBuffer = buffer;
+                }
+            }
+        }
+        return buffer;
+    }
+
+    private ByteBuffer map() {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            /* the mapping remains valid after closing the channel */
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.BIG_ENDIAN);
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot map " + file, e);
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Release the mapping, it is unmapped by the garbage collector.
+     */
+    public void close() {
+        mBuffer = null;
+    }
+
+    @Override
+    public String toString() {
+        return "HgtFile [" + file.getName() + ", size=" + size + "]";
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.hills;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of the HGT files in a folder and its subfolders by cell.
+ */
+public class HgtFolder {
+
+    private final Map<Integer, HgtFile> mFiles = new HashMap<>();
+
+    public HgtFolder(File folder) {
+        scan(folder);
+    }
+
+    private void scan(File folder) {
+        File[] files = folder.listFiles();
+        if (files == null)
+            return;
+
+        for (File file : files) {
+            if (file.isDirectory()) {
+                scan(file);
+                continue;
+            }
+            HgtFile hgt = HgtFile.create(file);
+            if (hgt == null)
+                continue;
+
+            /* prefer the higher resolution of duplicate cells */
+            HgtFile other = mFiles.get(cellKey(hgt.lat, hgt.lon));
+            if (other == null || other.size < hgt.size)
+                mFiles.put(cellKey(hgt.lat, hgt.lon), hgt);
+        }
+    }
+
+    /**
+     * @param lat latitude of the south edge
+     * @param lon longitude of the west edge
+     * @return the cell or null when not available.
+     */
+    public HgtFile get(int lat, int lon) {
+        if (lon >= 180)
+            lon -= 360;
+        else if (lon < -180)
+            lon += 360;
+        return mFiles.get(cellKey(lat, lon));
+    }
+
+    public int size() {
+        return mFiles.size();
+    }
+
+    public void close() {
+        for (HgtFile file : mFiles.values())
+            file.close();
+    }
+
+    static int cellKey(int lat, int lon) {
+        return (lat + 90) * 360 + (lon + 180);
+    }
+}
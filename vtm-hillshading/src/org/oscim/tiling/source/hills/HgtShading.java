@@ -0,0 +1,419 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.hills;
+
+import org.oscim.core.MercatorProjection;
+import org.oscim.core.Point;
+import org.oscim.core.Tile;
+import org.oscim.utils.LRUCache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * Shades tiles from the cells of a {@link HgtFolder}.
+ * <p/>
+ * Each cell is shaded on a pyramid of levels, level n samples every 2^n-th
+ * elevation, and tiles sample the level matching their resolution. Levels
+ * are shaded lazily in blocks, which are kept in a LRU cache shared by all
+ * tiles. Tiles are shaded in bands on a worker pool shared by all instances.
+ */
+public class HgtShading {
+
+    private static final Logger log = Logger.getLogger(HgtShading.class.getName());
+
+    /**
+     * Samples per side of a block, the last row and column is repeated in
+     * the next block so that interpolation never crosses blocks.
+     */
+    static final int BLOCK = 128;
+
+    private static final int BLOCK_STRIDE = BLOCK + 1;
+
+    /**
+     * Rows of a tile shaded by one task.
+     */
+    private static final int BAND_HEIGHT = 32;
+
+    private static final int MAX_LEVEL = 10;
+
+    private static final double METERS_PER_DEGREE = 111320;
+
+    private static volatile ExecutorService sExecutor;
+
+    private final HgtFolder mFolder;
+    private final float mExaggeration;
+    private final double mLightX;
+    private final double mLightY;
+    private final double mLightZ;
+
+    private final LRUCache<Long, byte[]> mBlocks;
+    private final Map<Long, FutureTask<byte[]>> mPending = new HashMap<>();
+
+    /**
+     * @param azimuth      direction of the light in degrees clockwise from north
+     * @param altitude     angle of the light in degrees above the horizon
+     * @param exaggeration factor applied to elevations
+     * @param cacheSize    amount of blocks to keep, about 16kB each
+     */
+    public HgtShading(HgtFolder folder, double azimuth, double altitude,
+                      float exaggeration, int cacheSize) {
+        mFolder = folder;
+        mExaggeration = exaggeration;
+
+        double az = Math.toRadians(azimuth);
+        double alt = Math.toRadians(altitude);
+        mLightX = Math.sin(az) * Math.cos(alt);
+        mLightY = Math.cos(az) * Math.cos(alt);
+        mLightZ = Math.sin(alt);
+
+        mBlocks = new LRUCache<>(cacheSize);
+    }
+
+    /**
+     * @param magnitude max alpha of the shading, 0 to 255
+     * @return alpha values of the tile by row.
+     */
+    public byte[] render(Tile tile, final int magnitude) {
+        final long mapSize = tile.mapSize;
+        final Point origin = tile.getOrigin();
+
+        final double[] lats = new double[Tile.SIZE];
+        final double[] lons = new double[Tile.SIZE];
+        for (int i = 0; i < Tile.SIZE; i++) {
+            lats[i] = MercatorProjection.pixelYToLatitude(origin.y + i + 0.5, mapSize);
+            lons[i] = MercatorProjection.pixelXToLongitude(origin.x + i + 0.5, mapSize);
+        }
+
+        final byte[] alpha = new byte[Tile.SIZE * Tile.SIZE];
+
+        int numBands = Tile.SIZE / BAND_HEIGHT;
+        @SuppressWarnings("unchecked")
+        FutureTask<Void>[] bands = new FutureTask[numBands];
+        ExecutorService executor = getExecutor();
+        for (int i = 0; i < numBands; i++) {
+            final int y = i * BAND_HEIGHT;
+            bands[i] = new FutureTask<>(new Runnable() {
+                @Override
+                public void run() {
+                    renderBand(y, y + BAND_HEIGHT, lats, lons, mapSize, magnitude, alpha);
+                }
+            }, null);
+            executor.execute(bands[i]);
+        }
+
+        /* help with bands not yet taken by the pool, running
+         * a started or completed task does nothing */
+        for (FutureTask<Void> band : bands)
+            band.run();
+
+        for (FutureTask<Void> band : bands) {
+            try {
+                band.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return alpha;
+    }
+
+    private void renderBand(int y0, int y1, double[] lats, double[] lons,
+                            long mapSize, int magnitude, byte[] alpha) {
+        HgtFile file = null;
+        int cellLat = Integer.MIN_VALUE;
+        int cellLon = Integer.MIN_VALUE;
+        int level = 0, step = 1, samples = 0;
+        double offset = 0;
+
+        byte[] block = null;
+        int blockX = -1, blockY = -1;
+
+        for (int y = y0; y < y1; y++) {
+            double lat = lats[y];
+            int cLat = (int) Math.floor(lat);
+
+            for (int x = 0; x < Tile.SIZE; x++) {
+                double lon = lons[x];
+                int cLon = (int) Math.floor(lon);
+
+                if (cLat != cellLat || cLon != cellLon) {
+                    cellLat = cLat;
+                    cellLon = cLon;
+                    file = mFolder.get(cLat, cLon);
+                    block = null;
+                    if (file != null) {
+                        level = getLevel(file.size, mapSize);
+                        step = 1 << level;
+                        samples = getSamples(file.size, level);
+                        offset = getOffset(level);
+                    }
+                }
+                if (file == null)
+                    continue;
+
+                int last = file.size - 1;
+                double row = ((cellLat + 1 - lat) * last - offset) / step;
+                double col = ((lon - cellLon) * last - offset) / step;
+                row = Math.min(Math.max(row, 0), samples - 1);
+                col = Math.min(Math.max(col, 0), samples - 1);
+
+                int r = Math.min((int) row, samples - 2);
+                int c = Math.min((int) col, samples - 2);
+                float fy = (float) (row - r);
+                float fx = (float) (col - c);
+
+                int bx = c / BLOCK;
+                int by = r / BLOCK;
+                if (block == null || bx != blockX || by != blockY) {
+                    block = getBlock(file, level, bx, by);
+                    blockX = bx;
+                    blockY = by;
+                }
+
+                int i = (r - by * BLOCK) * BLOCK_STRIDE + (c - bx * BLOCK);
+                float top = (block[i] & 0xff) * (1 - fx) + (block[i + 1] & 0xff) * fx;
+                float bottom = (block[i + BLOCK_STRIDE] & 0xff) * (1 - fx)
+                        + (block[i + BLOCK_STRIDE + 1] & 0xff) * fx;
+                float shade = top * (1 - fy) + bottom * fy;
+
+                alpha[y * Tile.SIZE + x] = (byte) (shade * magnitude / 255 + 0.5f);
+            }
+        }
+    }
+
+    /**
+     * @return the block, shaded by the calling thread unless it is cached
+     * or already being shaded by another thread.
+     */
+    byte[] getBlock(final HgtFile file, final int level, final int bx, final int by) {
+        Long key = ((long) HgtFolder.cellKey(file.lat, file.lon) << 32)
+                | ((long) level << 24) | ((long) by << 12) | bx;
+
+        FutureTask<byte[]> task;
+        boolean owner = false;
+        synchronized (mBlocks) {
+            byte[] block = mBlocks.get(key);
+            if (block != null)
+                return block;
+
+            task = mPending.get(key);
+            if (task == null) {
+                task = new FutureTask<>(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() {
+                        return shadeBlock(file, level, bx, by);
+                    }
+                });
+                mPending.put(key, task);
+                owner = true;
+            }
+        }
+
+        if (owner)
+            task.run();
+
+        try {
+            byte[] block = task.get();
+            if (owner) {
+                synchronized (mBlocks) {
+                    mBlocks.put(key, block);
+                }
+            }
+            return block;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (owner) {
+                synchronized (mBlocks) {
+                    mPending.remove(key);
+                }
+            }
+        }
+    }
+
+    private byte[] shadeBlock(HgtFile file, int level, int bx, int by) {
+        int step = 1 << level;
+        int half = step >> 1;
+        int last = file.size - 1;
+        double offset = getOffset(level);
+
+        /* elevations with a border of one sample */
+        int w = BLOCK_STRIDE + 2;
+        float[] elevations = new float[w * w];
+        int row0 = by * BLOCK - 1;
+        int col0 = bx * BLOCK - 1;
+        for (int i = 0; i < w; i++) {
+            for (int j = 0; j < w; j++)
+                elevations[i * w + j] = getElevation(file, (row0 + i) * step, (col0 + j) * step, half);
+        }
+
+        double dy = step * METERS_PER_DEGREE / last;
+        byte[] block = new byte[BLOCK_STRIDE * BLOCK_STRIDE];
+
+        for (int i = 0; i < BLOCK_STRIDE; i++) {
+            double lat = file.lat + 1 - ((by * BLOCK + i) * step + offset) / last;
+            double dx = Math.max(dy * Math.cos(Math.toRadians(lat)), 1);
+
+            for (int j = 0; j < BLOCK_STRIDE; j++) {
+                int k = (i + 1) * w + (j + 1);
+                double dzdx = (elevations[k + 1] - elevations[k - 1]) / (2 * dx) * mExaggeration;
+                double dzdy = (elevations[k - w] - elevations[k + w]) / (2 * dy) * mExaggeration;
+
+                double intensity = (mLightZ - dzdx * mLightX - dzdy * mLightY)
+                        / Math.sqrt(dzdx * dzdx + dzdy * dzdy + 1);
+
+                /* darken slopes turned away from the light, flat is transparent */
+                double shade = (mLightZ - intensity) / mLightZ;
+                shade = Math.min(Math.max(shade, 0), 1);
+                block[i * BLOCK_STRIDE + j] = (byte) (shade * 255 + 0.5);
+            }
+        }
+        return block;
+    }
+
+    /**
+     * @return mean of the valid samples at row, col and half a step
+     * further, or 0 when none is valid.
+     */
+    private float getElevation(HgtFile file, int row, int col, int half) {
+        if (half == 0) {
+            short e = getSample(file, row, col);
+            return e == HgtFile.VOID ? 0 : e;
+        }
+        int sum = 0;
+        int count = 0;
+        for (int i = 0; i <= half; i += half) {
+            for (int j = 0; j <= half; j += half) {
+                short e = getSample(file, row + i, col + j);
+                if (e != HgtFile.VOID) {
+                    sum += e;
+                    count++;
+                }
+            }
+        }
+        return count == 0 ? 0 : (float) sum / count;
+    }
+
+    /**
+     * @return the elevation, read from the neighboring cell when row or
+     * col is outside of the cell. Clamped when there is no neighbor.
+     */
+    private short getSample(HgtFile file, int row, int col) {
+        int last = file.size - 1;
+        if (row >= 0 && row <= last && col >= 0 && col <= last)
+            return file.getElevation(row, col);
+
+        int lat = file.lat;
+        int lon = file.lon;
+        int r = row;
+        int c = col;
+        if (r < 0) {
+            r += last;
+            lat++;
+        } else if (r > last) {
+            r -= last;
+            lat--;
+        }
+        if (c < 0) {
+            c += last;
+            lon--;
+        } else if (c > last) {
+            c -= last;
+            lon++;
+        }
+
+        HgtFile neighbor = mFolder.get(lat, lon);
+        if (neighbor != null && neighbor.size == file.size
+                && r >= 0 && r <= last && c >= 0 && c <= last)
+            return neighbor.getElevation(r, c);
+
+        return file.getElevation(Math.min(Math.max(row, 0), last),
+                Math.min(Math.max(col, 0), last));
+    }
+
+    /**
+     * @return the coarsest level with at least one sample per pixel.
+     */
+    static int getLevel(int size, long mapSize) {
+        double samplesPerPixel = 360.0 * (size - 1) / mapSize;
+        int level = 0;
+        while (level < MAX_LEVEL && samplesPerPixel >= 2
+                && getSamples(size, level + 1) > 2) {
+            samplesPerPixel /= 2;
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * @return samples per row and column of a cell on level.
+     */
+    static int getSamples(int size, int level) {
+        return ((size - 1) >> level) + 1;
+    }
+
+    /**
+     * @return the position of samples on level relative to the
+     * elevations they are derived from.
+     */
+    static double getOffset(int level) {
+        return level == 0 ? 0 : (1 << level) / 4.0;
+    }
+
+    public void clear() {
+        synchronized (mBlocks) {
+            mBlocks.clear();
+        }
+    }
+
+    private static ExecutorService getExecutor() {
+        ExecutorService executor = sExecutor;
+        if (executor == null) {
+            synchronized (HgtShading.class) {
+                executor = sExecutor;
+                if (executor == null) {
+                    int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+                    log.fine("shading with " + threads + " threads");
+                    executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                        private int mCount;
+
+                        @Override
+                        public synchronized Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "HgtShading-" + ++mCount);
+                            thread.setDaemon(true);
+                            thread.setPriority(Thread.NORM_PRIORITY - 1);
+                            return thread;
+                        }
+                    });
+                    sExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+}
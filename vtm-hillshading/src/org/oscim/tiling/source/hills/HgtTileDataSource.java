@@ -0,0 +1,115 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.hills;
+
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileCache;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.source.ITileDecoder;
+import org.oscim.utils.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.logging.Logger;
+
+/**
+ * Reads tiles of a {@link HgtTileSource} from the tile cache or shades them.
+ */
+public class HgtTileDataSource implements ITileDataSource {
+
+    private static final Logger log = Logger.getLogger(HgtTileDataSource.class.getName());
+
+    private final HgtTileSource mTileSource;
+    private final ITileDecoder mTileDecoder;
+
+    public HgtTileDataSource(HgtTileSource tileSource, ITileDecoder tileDecoder) {
+        mTileSource = tileSource;
+        mTileDecoder = tileDecoder;
+    }
+
+    @Override
+    public void query(MapTile tile, ITileDataSink sink) {
+        // Out of zoom bounds, load nothing
+        if (tile.zoomLevel > mTileSource.getZoomLevelMax() || tile.zoomLevel < mTileSource.getZoomLevelMin()) {
+            sink.completed(QueryResult.SUCCESS);
+            return;
+        }
+
+        HgtShading shading = mTileSource.mShading;
+        if (shading == null) {
+            sink.completed(QueryResult.FAILED);
+            return;
+        }
+
+        ITileCache cache = mTileSource.tileCache;
+        if (cache != null) {
+            ITileCache.TileReader c = cache.getTile(tile);
+            if (c != null) {
+                InputStream is = c.getInputStream();
+                try {
+                    if (mTileDecoder.decode(tile, sink, is)) {
+                        sink.completed(QueryResult.SUCCESS);
+                        return;
+                    }
+                } catch (IOException e) {
+                    log.fine(tile + " Cache read: " + e);
+                } finally {
+                    IOUtils.closeQuietly(is);
+                }
+            }
+        }
+
+        QueryResult res = QueryResult.FAILED;
+        ITileCache.TileWriter cacheWriter = null;
+        try {
+            byte[] alpha = shading.render(tile, mTileSource.mMagnitude);
+            AlphaBitmap bitmap = new AlphaBitmap(Tile.SIZE, Tile.SIZE, mTileSource.mColor, alpha);
+
+            if (cache != null) {
+                cacheWriter = cache.writeTile(tile);
+                OutputStream os = cacheWriter.getOutputStream();
+                try {
+                    bitmap.write(os, mTileSource.isCompressCache());
+                } catch (IOException e) {
+                    log.severe(e.toString());
+                } finally {
+                    IOUtils.closeQuietly(os);
+                }
+            }
+
+            sink.setTileImage(bitmap);
+            res = QueryResult.SUCCESS;
+        } catch (Throwable t) {
+            log.severe(tile + " " + t);
+        } finally {
+            if (cacheWriter != null)
+                cacheWriter.complete(res == QueryResult.SUCCESS);
+
+            sink.completed(res);
+        }
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    @Override
+    public void cancel() {
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.hills;
+
+import org.oscim.backend.canvas.Color;
+import org.oscim.map.Viewport;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.TileSource;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+/**
+ * Hillshading from a folder of HGT files, without the Mapsforge renderer.
+ * <p/>
+ * HGT files are memory-mapped and shaded on a pyramid of levels cached in
+ * blocks, see {@link HgtShading}. Tiles are cached in the raw format of
+ * {@link AlphaBitmap}, use {@link HillshadingTileSource.TileDecoder} to read them.
+ */
+public class HgtTileSource extends TileSource {
+
+    private static final Logger log = Logger.getLogger(HgtTileSource.class.getName());
+
+    /**
+     * Amount of shaded blocks to keep, about 16kB each.
+     */
+    private static final int BLOCK_CACHE_SIZE = 512;
+
+    private final File mDemFolder;
+    final int mMagnitude;
+    final int mColor;
+
+    private double mAzimuth = 315;
+    private double mAltitude = 45;
+    private float mExaggeration = 1;
+    private int mBlockCacheSize = BLOCK_CACHE_SIZE;
+    private boolean mCompressCache = true;
+
+    private HgtFolder mFolder;
+    HgtShading mShading;
+
+    public HgtTileSource(File demFolder) {
+        this(Viewport.MIN_ZOOM_LEVEL, Viewport.MAX_ZOOM_LEVEL, demFolder, 128, Color.BLACK);
+    }
+
+    /**
+     * @param magnitude max alpha of the shading, 0 to 255
+     */
+    public HgtTileSource(int zoomMin, int zoomMax, File demFolder, int magnitude, int color) {
+        super(zoomMin, zoomMax);
+        mDemFolder = demFolder;
+        mMagnitude = Math.min(Math.max(magnitude, 0), 255);
+        mColor = color;
+    }
+
+    /**
+     * Set the direction of the light, must be called before {@link #open()}.
+     *
+     * @param azimuth  degrees clockwise from north, default is 315
+     * @param altitude degrees above the horizon, default is 45
+     */
+    public void setLight(double azimuth, double altitude) {
+        mAzimuth = azimuth;
+        mAltitude = altitude;
+    }
+
+    /**
+     * Set the factor applied to elevations, must be called before {@link #open()}.
+     */
+    public void setExaggeration(float exaggeration) {
+        mExaggeration = exaggeration;
+    }
+
+    /**
+     * Set the number of shaded blocks kept in memory, must be called before {@link #open()}.
+     */
+    public void setBlockCacheSize(int blockCacheSize) {
+        mBlockCacheSize = blockCacheSize;
+    }
+
+    /**
+     * Compress tiles stored in the tile cache, enabled by default.
+     */
+    public void setCompressCache(boolean compress) {
+        mCompressCache = compress;
+    }
+
+    public boolean isCompressCache() {
+        return mCompressCache;
+    }
+
+    @Override
+    public ITileDataSource getDataSource() {
+        return new HgtTileDataSource(this, new HillshadingTileSource.TileDecoder());
+    }
+
+    @Override
+    public OpenResult open() {
+        if (mDemFolder == null || !mDemFolder.isDirectory())
+            return new OpenResult("not a folder: " + mDemFolder);
+
+        HgtFolder folder = new HgtFolder(mDemFolder);
+        if (folder.size() == 0)
+            return new OpenResult("no hgt files in " + mDemFolder);
+
+        log.fine("found " + folder.size() + " hgt files");
+
+        mFolder = folder;
+        mShading = new HgtShading(folder, mAzimuth, mAltitude, mExaggeration, mBlockCacheSize);
+        return OpenResult.SUCCESS;
+    }
+
+    @Override
+    public void close() {
+        if (mShading != null) {
+            mShading.clear();
+            mShading = null;
+        }
+        if (mFolder != null) {
+            mFolder.close();
+            mFolder = null;
+        }
+    }
+}
@@ -25,7 +25,6 @@ import org.mapsforge.map.layer.hills.*;
 import org.mapsforge.map.layer.renderer.HillshadingContainer;
 import org.oscim.backend.CanvasAdapter;
 import org.oscim.backend.canvas.Bitmap;
-import org.oscim.backend.canvas.Canvas;
 import org.oscim.core.Point;
 import org.oscim.core.Tile;
 import org.oscim.layers.tile.MapTile;
@@ -40,6 +39,7 @@ import java.io.*;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
@@ -87,12 +87,26 @@ public class HillshadingTileDataSource implements ITileDataSource {
 
         ITileCache cache = mTileSource.tileCache;
 
+        AlphaBitmap bitmap = mTileSource.getRecentTile(zoomLevel, tile.tileX, tile.tileY);
+        if (bitmap != null) {
+            sink.setTileImage(bitmap.duplicate());
+            sink.completed(QueryResult.SUCCESS);
+            return;
+        }
+
         // Try to load from cache
         if (cache != null) {
             ITileCache.TileReader c = cache.getTile(tile);
             if (c != null) {
-                InputStream is = c.getInputStream();
+                InputStream is = new BufferedInputStream(c.getInputStream());
                 try {
+                    if (AlphaBitmap.isRaw(is)) {
+                        bitmap = AlphaBitmap.read(is);
+                        mTileSource.putRecentTile(tile, bitmap);
+                        sink.setTileImage(bitmap.duplicate());
+                        sink.completed(QueryResult.SUCCESS);
+                        return;
+                    }
                     if (mTileDecoder.decode(tile, sink, is)) {
                         sink.completed(QueryResult.SUCCESS);
                         return;
@@ -105,6 +119,18 @@ public class HillshadingTileDataSource implements ITileDataSource {
             }
         }
 
+        // Scale from parent tile, beyond DEM resolution
+        if (zoomLevel >= mTileSource.getUpscaleZoomLevel()) {
+            AlphaBitmap parent = mTileSource.getRecentTile(zoomLevel - 1, tile.tileX >> 1, tile.tileY >> 1);
+            if (parent != null) {
+                bitmap = parent.getQuarter(tile.tileX & 1, tile.tileY & 1);
+                mTileSource.putRecentTile(tile, bitmap);
+                sink.setTileImage(bitmap.duplicate());
+                sink.completed(QueryResult.SUCCESS);
+                return;
+            }
+        }
+
         // Create a new hillshading tile and set the sink
         createTile(tile, sink, cache);
     }
@@ -128,9 +154,10 @@ public class HillshadingTileDataSource implements ITileDataSource {
 
             if (checkZoomLevelCoarse(zoomLevel, mHillsRenderConfig)) {
                 // Init tile bitmap to hold all the shaded parts
-                Bitmap tileBitmap = CanvasAdapter.newBitmap(Tile.SIZE, Tile.SIZE, 0);
-                Canvas canvas = CanvasAdapter.newCanvas();
-                canvas.setBitmap(tileBitmap);
+                org.mapsforge.core.graphics.Bitmap mapsforgeBitmap = mTileSource.mGraphicFactory.createBitmap(Tile.SIZE, Tile.SIZE, true);
+                org.mapsforge.core.graphics.Canvas canvas = mTileSource.mGraphicFactory.createCanvas();
+                canvas.setBitmap(mapsforgeBitmap);
+                AtomicBoolean shaded = new AtomicBoolean();
 
                 final Point origin = tile.getOrigin();
 
@@ -150,7 +177,7 @@ public class HillshadingTileDataSource implements ITileDataSource {
                 final Deque<HillShadingUtils.SilentFutureTask> deque = new ArrayDeque<>();
 
                 for (int shadingLeftLon = (int) Math.floor(maptileLeftLon); shadingLeftLon <= maptileRightLon; shadingLeftLon += ShadingLonStep) {
-                    final HillShadingUtils.SilentFutureTask code = renderLatStrip(shadingLeftLon, zoomLevel, tile, maptileBottomLat, maptileTopLat, maptileLeftLon, maptileRightLon, effectiveMagnitude, effectiveColor, canvas);
+                    final HillShadingUtils.SilentFutureTask code = renderLatStrip(shadingLeftLon, zoomLevel, tile, maptileBottomLat, maptileTopLat, maptileLeftLon, maptileRightLon, effectiveMagnitude, effectiveColor, canvas, shaded);
                     deque.addLast(code);
                 }
 
@@ -158,21 +185,32 @@ public class HillshadingTileDataSource implements ITileDataSource {
                     deque.pollFirst().get();
                 }
 
-                if (!tileBitmap.isValid()) {
-                    log.fine(tile + " invalid bitmap");
-                    return;
+                // Keep only the shading intensity, no need to convert unshaded tiles
+                AlphaBitmap bitmap;
+                if (shaded.get()) {
+                    Bitmap tileBitmap = bitmapMapsforgeToVtm(mapsforgeBitmap);
+                    mapsforgeBitmap.decrementRefCount();
+                    if (!tileBitmap.isValid()) {
+                        log.fine(tile + " invalid bitmap");
+                        return;
+                    }
+                    bitmap = AlphaBitmap.fromBitmap(tileBitmap, effectiveColor);
+                    tileBitmap.recycle();
+                } else {
+                    mapsforgeBitmap.decrementRefCount();
+                    bitmap = new AlphaBitmap(Tile.SIZE, Tile.SIZE, effectiveColor, new byte[Tile.SIZE * Tile.SIZE]);
                 }
+                mTileSource.putRecentTile(tile, bitmap);
 
                 // Set tile bitmap to sink
-                sink.setTileImage(tileBitmap);
+                sink.setTileImage(bitmap.duplicate());
 
                 // Write to cache
                 if (cache != null) {
                     cacheWriter = cache.writeTile(tile);
                     OutputStream outputStream = cacheWriter.getOutputStream();
                     try {
-                        byte[] pngBytes = tileBitmap.getPngEncodedData();
-                        outputStream.write(pngBytes);
+                        bitmap.write(outputStream, mTileSource.isCompressCache());
                     } catch (IOException e) {
                         log.severe(e.toString());
                     } finally {
@@ -204,7 +242,7 @@ public class HillshadingTileDataSource implements ITileDataSource {
         return retVal;
     }
 
-    private HillShadingUtils.SilentFutureTask renderLatStrip(final int shadingLeftLon, final byte zoomLevel, final MapTile tile, final double maptileBottomLat, final double maptileTopLat, final double maptileLeftLon, final double maptileRightLon, final float effectiveMagnitude, final int effectiveColor, final Canvas canvas) {
+    private HillShadingUtils.SilentFutureTask renderLatStrip(final int shadingLeftLon, final byte zoomLevel, final MapTile tile, final double maptileBottomLat, final double maptileTopLat, final double maptileLeftLon, final double maptileRightLon, final float effectiveMagnitude, final int effectiveColor, final org.mapsforge.core.graphics.Canvas canvas, final AtomicBoolean shaded) {
         Callable<Boolean> runnable = new Callable<Boolean>() {
             public Boolean call() {
                 try {
@@ -294,17 +332,11 @@ public class HillshadingTileDataSource implements ITileDataSource {
                         final Rectangle maptileRect = new Rectangle(maptileSubrectLeft, maptileSubrectTop, maptileSubrectRight, maptileSubrectBottom);
                         final HillshadingContainer hillShape = new HillshadingContainer(shadingTile, effectiveMagnitude, effectiveColor, hillsRect, maptileRect);
 
-                        // Render ShapeContainer to a Mapsforge bitmap
-                        org.mapsforge.core.graphics.Bitmap mapsforgeBitmap = mTileSource.mGraphicFactory.createBitmap(Tile.SIZE, Tile.SIZE, true);
-                        org.mapsforge.core.graphics.Canvas mapsforgeCanvas = mTileSource.mGraphicFactory.createCanvas();
-                        mapsforgeCanvas.setBitmap(mapsforgeBitmap);
-                        mapsforgeCanvas.shadeBitmap(hillShape.bitmap, hillShape.hillsRect, hillShape.tileRect, hillShape.magnitude, hillShape.color, true);
-
-                        // Convert Mapsforge bitmap to VTM bitmap
-                        Bitmap bitmap = bitmapMapsforgeToVtm(mapsforgeBitmap);
-
-                        // Draw shaded bitmap on the tile bitmap
-                        canvas.drawBitmap(bitmap, 0, 0);
+                        // Render ShapeContainer to the tile bitmap, strips are shaded in parallel
+                        synchronized (canvas) {
+                            canvas.shadeBitmap(hillShape.bitmap, hillShape.hillsRect, hillShape.tileRect, hillShape.magnitude, hillShape.color, true);
+                        }
+                        shaded.set(true);
                     }
                 } catch (Throwable t) {
                     log.severe(t.toString());
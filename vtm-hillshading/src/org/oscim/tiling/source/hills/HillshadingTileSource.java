@@ -28,7 +28,9 @@ import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.TileSource;
 import org.oscim.tiling.source.ITileDecoder;
+import org.oscim.utils.LRUCache;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.logging.Logger;
@@ -37,12 +39,21 @@ public class HillshadingTileSource extends TileSource {
 
     private static final Logger log = Logger.getLogger(HillshadingTileSource.class.getName());
 
+    /**
+     * Amount of shaded tiles kept in memory to derive tiles of the next zoom level.
+     */
+    private static final int RECENT_TILES = 32;
+
     final DemFolder mDemFolder;
     final ShadingAlgorithm mAlgorithm;
     final int mMagnitude;
     final int mColor;
     final GraphicFactory mGraphicFactory;
 
+    private boolean mCompressCache = true;
+    private int mUpscaleZoomLevel = 15;
+    private final LRUCache<Long, AlphaBitmap> mRecentTiles = new LRUCache<>(RECENT_TILES);
+
     public HillshadingTileSource(DemFolder demFolder, GraphicFactory graphicFactory) {
         this(Viewport.MIN_ZOOM_LEVEL, Viewport.MAX_ZOOM_LEVEL, demFolder, new AdaptiveClasyHillShading(), 128, Color.BLACK, graphicFactory);
     }
@@ -56,6 +67,46 @@ public class HillshadingTileSource extends TileSource {
         mGraphicFactory = graphicFactory;
     }
 
+    /**
+     * Compress tiles stored in the tile cache, enabled by default.
+     */
+    public void setCompressCache(boolean compress) {
+        mCompressCache = compress;
+    }
+
+    public boolean isCompressCache() {
+        return mCompressCache;
+    }
+
+    /**
+     * Set the zoom level from which tiles are scaled from their parent tile
+     * when it was shaded recently, instead of shading from DEM. Beyond the
+     * DEM resolution this looks the same. Default is 15.
+     */
+    public void setUpscaleZoomLevel(int zoomLevel) {
+        mUpscaleZoomLevel = zoomLevel;
+    }
+
+    public int getUpscaleZoomLevel() {
+        return mUpscaleZoomLevel;
+    }
+
+    AlphaBitmap getRecentTile(int zoomLevel, int tileX, int tileY) {
+        synchronized (mRecentTiles) {
+            return mRecentTiles.get(tileKey(zoomLevel, tileX, tileY));
+        }
+    }
+
+    void putRecentTile(Tile tile, AlphaBitmap bitmap) {
+        synchronized (mRecentTiles) {
+            mRecentTiles.put(tileKey(tile.zoomLevel, tile.tileX, tile.tileY), bitmap);
+        }
+    }
+
+    private static long tileKey(int zoomLevel, int tileX, int tileY) {
+        return ((long) zoomLevel << 56) | ((long) tileX << 28) | tileY;
+    }
+
     @Override
     public ITileDataSource getDataSource() {
         return new HillshadingTileDataSource(this, new TileDecoder());
@@ -69,6 +120,9 @@ public class HillshadingTileSource extends TileSource {
     @Override
     public void close() {
         getDataSource().dispose();
+        synchronized (mRecentTiles) {
+            mRecentTiles.clear();
+        }
     }
 
     public static class TileDecoder implements ITileDecoder {
@@ -77,6 +131,15 @@ public class HillshadingTileSource extends TileSource {
         public boolean decode(Tile tile, ITileDataSink sink, InputStream is)
                 throws IOException {
 
+            if (!is.markSupported())
+                is = new BufferedInputStream(is);
+
+            if (AlphaBitmap.isRaw(is)) {
+                sink.setTileImage(AlphaBitmap.read(is));
+                return true;
+            }
+
+            /* tiles cached as PNG by previous versions */
             Bitmap bitmap = CanvasAdapter.decodeBitmap(is);
             if (!bitmap.isValid()) {
                 log.fine(tile + " invalid bitmap");
@@ -22,17 +22,20 @@ package org.oscim.tiling.source;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 import org.oscim.core.Tile;
+import org.oscim.tiling.CacheMetadata;
 
-import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.util.Map.Entry;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
 
-public class OkHttpEngine implements HttpEngine {
+public class OkHttpEngine implements RangeHttpEngine, ConditionalHttpEngine {
 
     private static final Logger log = Logger.getLogger(OkHttpEngine.class.getName());
 
@@ -40,7 +43,103 @@ public class OkHttpEngine implements HttpEngine {
     private final UrlTileSource mTileSource;
 
     private InputStream mInputStream;
-    private byte[] mCachedData;
+    private Tee mTee;
+    private final byte[] mBuffer = new byte[8192];
+    private boolean mNotModified;
+    private CacheMetadata mResponseMetadata;
+
+    /**
+     * Streams the response to the decoder and writes the read bytes through
+     * to the cache, see LwHttp.Buffer.
+     */
+    static final class Tee extends FilterInputStream {
+        private final long mContentLength;
+        private final byte[] mBuffer;
+        private OutputStream mCache;
+        private long mBytesRead;
+
+        /**
+         * @param contentLength the expected length or -1 when unknown.
+         * @param buffer        reused for skipping and draining.
+         */
+        Tee(InputStream in, long contentLength, byte[] buffer) {
+            super(in);
+            mContentLength = contentLength;
+            mBuffer = buffer;
+        }
+
+        void setCache(OutputStream cache) {
+            mCache = cache;
+        }
+
+        boolean hasCache() {
+            return mCache != null;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int data = super.read();
+            if (data >= 0) {
+                mBytesRead++;
+                if (mCache != null)
+                    mCache.write(data);
+            }
+            return data;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int byteCount) throws IOException {
+            int len = super.read(buffer, offset, byteCount);
+            if (len > 0) {
+                mBytesRead += len;
+                if (mCache != null)
+                    mCache.write(buffer, offset, len);
+            }
+            return len;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            /* skipped bytes must reach the cache */
+            long skipped = 0;
+            while (skipped < n) {
+                int len = read(mBuffer, 0, (int) Math.min(n - skipped, mBuffer.length));
+                if (len < 0)
+                    break;
+                skipped += len;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void mark(int readlimit) {
+        }
+
+        @Override
+        public void reset() throws IOException {
+            throw new IOException("mark not supported");
+        }
+
+        /**
+         * Read the rest of the response into the cache.
+         *
+         * @return true when the whole response was read.
+         */
+        boolean finishedReading() {
+            try {
+                while (read(mBuffer, 0, mBuffer.length) >= 0) ;
+            } catch (IOException e) {
+                log.fine(e.toString());
+                return false;
+            }
+            return mContentLength < 0 || mBytesRead == mContentLength;
+        }
+    }
 
     public static class OkHttpFactory implements HttpEngine.Factory {
         private final OkHttpClient.Builder mClientBuilder;
@@ -74,19 +173,67 @@ public class OkHttpEngine implements HttpEngine {
         if (tile == null) {
             throw new IllegalArgumentException("Tile cannot be null.");
         }
+        sendRequest(tile, -1, 0);
+    }
+
+    @Override
+    public void sendRequest(Tile tile, long offset, int length) throws IOException {
+        sendRequest(tile, offset, length, null);
+    }
+
+    @Override
+    public void sendRequest(Tile tile, CacheMetadata cached) throws IOException {
+        sendRequest(tile, -1, 0, cached);
+    }
+
+    @Override
+    public boolean isNotModified() {
+        return mNotModified;
+    }
+
+    @Override
+    public CacheMetadata getResponseMetadata() {
+        return mResponseMetadata;
+    }
+
+    private void sendRequest(Tile tile, long offset, int length, CacheMetadata cached) {
+        close();
+        mNotModified = false;
+        mResponseMetadata = null;
         try {
             URL url = new URL(mTileSource.getTileUrl(tile));
             Request.Builder builder = new Request.Builder()
                     .url(url);
             for (Entry<String, String> opt : mTileSource.getRequestHeader().entrySet())
                 builder.addHeader(opt.getKey(), opt.getValue());
+            if (offset >= 0)
+                builder.addHeader("Range", "bytes=" + offset + "-" + (offset + length - 1));
+            if (cached != null) {
+                if (cached.etag != null)
+                    builder.addHeader("If-None-Match", cached.etag);
+                if (cached.lastModified != null)
+                    builder.addHeader("If-Modified-Since", cached.lastModified);
+            }
             Request request = builder.build();
             Response response = mClient.newCall(request).execute();
+            mNotModified = response.code() == 304;
+            mResponseMetadata = CacheHeaders.parse(response.receivedResponseAtMillis(),
+                    response.header("Cache-Control"), response.header("Expires"),
+                    response.header("ETag"), response.header("Last-Modified"));
+            ResponseBody body = response.body();
+            InputStream is = body.byteStream();
+            long contentLength = body.contentLength();
+            /* not decompressed by OkHttp when the request set Accept-Encoding */
+            if ("gzip".equalsIgnoreCase(response.header("Content-Encoding"))) {
+                is = new GZIPInputStream(is);
+                contentLength = -1;
+            }
             if (mTileSource.tileCache != null) {
-                mCachedData = response.body().bytes();
-                mInputStream = new ByteArrayInputStream(mCachedData);
+                /* the cache receives the bytes as decoded */
+                mTee = new Tee(is, contentLength, mBuffer);
+                mInputStream = mTee;
             } else
-                mInputStream = response.body().byteStream();
+                mInputStream = is;
         } catch (Exception e) {
             log.severe(e.toString());
         }
@@ -103,21 +250,23 @@ public class OkHttpEngine implements HttpEngine {
             log.severe(e.toString());
         }
         mInputStream = null;
+        mTee = null;
     }
 
     @Override
     public void setCache(OutputStream os) {
-        if (mTileSource.tileCache != null) {
-            try {
-                os.write(mCachedData);
-            } catch (IOException e) {
-                log.severe(e.toString());
-            }
-        }
+        if (mTee != null)
+            mTee.setCache(os);
     }
 
+    /**
+     * @return false when the response could not be read completely into
+     * the cache.
+     */
     @Override
     public boolean requestCompleted(boolean success) {
+        if (success && mTee != null && mTee.hasCache())
+            success = mTee.finishedReading();
         close();
         return success;
     }
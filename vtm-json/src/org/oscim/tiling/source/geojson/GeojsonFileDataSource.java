@@ -0,0 +1,62 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.geojson;
+
+import org.oscim.core.MapElement;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+
+import java.util.logging.Logger;
+
+/**
+ * Reads tiles from a {@link GeojsonTileIndex}. One instance per TileLoader.
+ */
+public class GeojsonFileDataSource implements ITileDataSource {
+    private static final Logger log = Logger.getLogger(GeojsonFileDataSource.class.getName());
+
+    private final GeojsonTileIndex mTileIndex;
+    private final MapElement mElement;
+
+    public GeojsonFileDataSource(GeojsonTileIndex tileIndex) {
+        mTileIndex = tileIndex;
+        mElement = new MapElement();
+        mElement.layer = 5;
+    }
+
+    @Override
+    public void query(MapTile tile, ITileDataSink sink) {
+        if (mTileIndex == null) {
+            sink.completed(QueryResult.FAILED);
+            return;
+        }
+        try {
+            mTileIndex.query(tile, sink, mElement);
+            sink.completed(QueryResult.SUCCESS);
+        } catch (Exception e) {
+            log.severe(e.toString());
+            sink.completed(QueryResult.FAILED);
+        }
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    @Override
+    public void cancel() {
+    }
+}
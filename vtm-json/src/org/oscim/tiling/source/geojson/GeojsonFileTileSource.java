@@ -0,0 +1,187 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.geojson;
+
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.layers.tile.buildings.BuildingLayer;
+import org.oscim.map.Viewport;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.OverzoomTileDataSource;
+import org.oscim.tiling.TileSource;
+import org.oscim.utils.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Serves a local GeoJSON FeatureCollection, e.g. a large file exported for offline use.
+ * <p/>
+ * The file is read once on {@link #open()} into a {@link GeojsonTileIndex},
+ * tiles are clipped and simplified on demand from memory.
+ */
+public class GeojsonFileTileSource extends TileSource {
+    private static final Logger log = Logger.getLogger(GeojsonFileTileSource.class.getName());
+
+    /**
+     * Amount of tiles that the tile index should keep.
+     */
+    private static final int TILE_CACHE_SIZE = 256;
+
+    /**
+     * Simplification tolerance in pixels.
+     */
+    private static final float TOLERANCE = 0.5f;
+
+    /**
+     * Buffer around tiles in pixels, to avoid clipping artifacts at tile borders.
+     */
+    private static final float BUFFER = 8;
+
+    private final Map<String, Tag> mTags = new HashMap<>();
+
+    private InputStream mInputStream;
+    private int mTileCacheSize = TILE_CACHE_SIZE;
+    private GeojsonTileIndex mTileIndex;
+
+    public GeojsonFileTileSource() {
+        this(Viewport.MIN_ZOOM_LEVEL, Viewport.MAX_ZOOM_LEVEL);
+    }
+
+    public GeojsonFileTileSource(int zoomMin, int zoomMax) {
+        this(zoomMin, zoomMax, BuildingLayer.MIN_ZOOM);
+    }
+
+    /**
+     * @param overZoom zoom level up to which tiles are indexed, features are
+     *                 not simplified at this level and scaled beyond.
+     */
+    public GeojsonFileTileSource(int zoomMin, int zoomMax, int overZoom) {
+        super(zoomMin, zoomMax, overZoom);
+    }
+
+    public boolean setGeojsonFile(String filename) {
+        setOption("file", filename);
+
+        File file = new File(filename);
+
+        return file.exists() && file.isFile() && file.canRead();
+    }
+
+    public void setGeojsonInputStream(InputStream inputStream) {
+        mInputStream = inputStream;
+    }
+
+    /**
+     * Set the number of tiles kept in memory, must be called before {@link #open()}.
+     */
+    public void setTileCacheSize(int tileCacheSize) {
+        mTileCacheSize = tileCacheSize;
+    }
+
+    @Override
+    public OpenResult open() {
+        if (mInputStream == null && !options.containsKey("file"))
+            return new OpenResult("no geojson file set");
+
+        InputStream is = mInputStream;
+        try {
+            if (is == null) {
+                File file = new File(options.get("file"));
+
+                // check if the file exists and is readable
+                if (!file.exists()) {
+                    return new OpenResult("file does not exist: " + file);
+                } else if (!file.isFile()) {
+                    return new OpenResult("not a file: " + file);
+                } else if (!file.canRead()) {
+                    return new OpenResult("cannot read file: " + file);
+                }
+                is = new FileInputStream(file);
+            }
+
+            long time = System.currentTimeMillis();
+
+            GeojsonTileIndex tileIndex = new GeojsonTileIndex(this, mOverZoom,
+                    mTileCacheSize, TOLERANCE, BUFFER);
+            tileIndex.load(new BufferedInputStream(is));
+            mTileIndex = tileIndex;
+
+            /* tags are only interned while loading */
+            mTags.clear();
+
+            log.fine("indexed " + tileIndex.getNumFeatures() + " features in "
+                    + (System.currentTimeMillis() - time) + "ms");
+
+            return OpenResult.SUCCESS;
+        } catch (IOException e) {
+            log.severe(e.toString());
+            return new OpenResult(e.toString());
+        } finally {
+            IOUtils.closeQuietly(is);
+            mInputStream = null;
+        }
+    }
+
+    @Override
+    public ITileDataSource getDataSource() {
+        return new OverzoomTileDataSource(new GeojsonFileDataSource(mTileIndex), mOverZoom);
+    }
+
+    @Override
+    public void close() {
+        if (mTileIndex != null) {
+            mTileIndex.clear();
+            mTileIndex = null;
+        }
+    }
+
+    /**
+     * Add tags of feature properties to mapElement, may be overridden
+     * to filter or rewrite properties. Called while loading.
+     */
+    public void decodeTags(MapElement mapElement, Map<String, Object> properties) {
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            Tag tag = rewriteTag(entry.getKey(), entry.getValue());
+            if (tag != null)
+                mapElement.tags.add(tag);
+        }
+    }
+
+    /**
+     * Returns a shared Tag instance for key and value, so that
+     * equal properties of all features are stored only once.
+     */
+    public Tag rewriteTag(String key, Object value) {
+        if (value == null)
+            return null;
+
+        String val = (value instanceof String) ? (String) value : String.valueOf(value);
+
+        String k = key + "=" + val;
+        Tag tag = mTags.get(k);
+        if (tag == null) {
+            tag = new Tag(key, val);
+            mTags.put(k, tag);
+        }
+        return tag;
+    }
+}
@@ -0,0 +1,693 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.geojson;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.utils.ArrayUtils;
+import org.oscim.utils.LRUCache;
+import org.oscim.utils.RTree;
+import org.oscim.utils.SpatialIndex;
+import org.oscim.utils.geom.SimplifyDP;
+import org.oscim.utils.geom.TileClipper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static com.fasterxml.jackson.core.JsonToken.END_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.END_OBJECT;
+import static com.fasterxml.jackson.core.JsonToken.FIELD_NAME;
+import static com.fasterxml.jackson.core.JsonToken.START_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.START_OBJECT;
+import static com.fasterxml.jackson.core.JsonToken.VALUE_FALSE;
+import static com.fasterxml.jackson.core.JsonToken.VALUE_NUMBER_FLOAT;
+import static com.fasterxml.jackson.core.JsonToken.VALUE_NUMBER_INT;
+import static com.fasterxml.jackson.core.JsonToken.VALUE_STRING;
+import static com.fasterxml.jackson.core.JsonToken.VALUE_TRUE;
+import static org.oscim.core.MercatorProjection.latitudeToY;
+import static org.oscim.core.MercatorProjection.longitudeToX;
+
+/**
+ * In-memory tile index of a GeoJSON FeatureCollection (in the spirit of geojson-vt).
+ * <p/>
+ * The input is streamed once and all features are kept in projected, quantized
+ * integer coordinates together with a spatial index. Tiles are created lazily on
+ * first request by clipping and simplifying the intersecting features, and are
+ * kept in a bounded LRU so that revisited tiles do not need to be rebuilt.
+ */
+public class GeojsonTileIndex {
+
+    /**
+     * Quantization of the mercator [0..1] range, precise enough for zoom level 22.
+     */
+    static final int WORLD_BITS = 30;
+    private static final double WORLD_SIZE = 1 << WORLD_BITS;
+
+    private static final char[] FIELD_FEATURES = "features".toCharArray();
+    private static final char[] FIELD_GEOMETRY = "geometry".toCharArray();
+    private static final char[] FIELD_PROPERTIES = "properties".toCharArray();
+    private static final char[] FIELD_COORDINATES = "coordinates".toCharArray();
+    private static final char[] FIELD_TYPE = "type".toCharArray();
+
+    private static final char[] LINESTRING = "LineString".toCharArray();
+    private static final char[] POLYGON = "Polygon".toCharArray();
+    private static final char[] POINT = "Point".toCharArray();
+    private static final char[] MULTI_LINESTRING = "MultiLineString".toCharArray();
+    private static final char[] MULTI_POLYGON = "MultiPolygon".toCharArray();
+    private static final char[] MULTI_POINT = "MultiPoint".toCharArray();
+
+    /**
+     * A feature in quantized world coordinates. Index semantics are the
+     * same as {@link org.oscim.core.GeometryBuffer#index}.
+     */
+    static final class Feature {
+        final GeometryType type;
+        final int[] points;
+        final int[] index;
+        final Tag[] tags;
+
+        Feature(GeometryType type, int[] points, int[] index, Tag[] tags) {
+            this.type = type;
+            this.points = points;
+            this.index = index;
+            this.tags = tags;
+        }
+    }
+
+    /**
+     * Clipped and simplified features of one tile, packed into flat arrays.
+     */
+    static final class IndexedTile {
+        final float[] points;
+        final int[] index;
+        /* per feature: number of index entries */
+        final int[] indexCount;
+        /* per feature: number of point coordinates */
+        final int[] pointCount;
+        final GeometryType[] types;
+        final Tag[][] tags;
+
+        IndexedTile(float[] points, int[] index, int[] indexCount, int[] pointCount,
+                    GeometryType[] types, Tag[][] tags) {
+            this.points = points;
+            this.index = index;
+            this.indexCount = indexCount;
+            this.pointCount = pointCount;
+            this.types = types;
+            this.tags = tags;
+        }
+
+        int size() {
+            return types.length;
+        }
+    }
+
+    private final GeojsonFileTileSource mTileSource;
+    private final RTree<Feature> mFeatures = new RTree<>();
+    private final LRUCache<Long, IndexedTile> mTiles;
+    private final int mMaxZoom;
+    private final float mTolerance;
+    private final float mBuffer;
+
+    private int mNumFeatures;
+
+    /**
+     * @param tileSource the source providing tag decoding.
+     * @param maxZoom    zoom level at which features are no longer simplified.
+     * @param maxTiles   maximum number of tiles to keep in memory.
+     * @param tolerance  simplification tolerance in pixels.
+     * @param buffer     tile buffer in pixels around each tile.
+     */
+    GeojsonTileIndex(GeojsonFileTileSource tileSource, int maxZoom, int maxTiles,
+                     float tolerance, float buffer) {
+        mTileSource = tileSource;
+        mMaxZoom = maxZoom;
+        mTiles = new LRUCache<>(maxTiles);
+        mTolerance = tolerance;
+        mBuffer = buffer;
+    }
+
+    public int getNumFeatures() {
+        return mNumFeatures;
+    }
+
+    /**
+     * Write the features of tile into sink.
+     *
+     * @return false when no feature intersects the tile.
+     */
+    boolean query(Tile tile, ITileDataSink sink, MapElement element) {
+        IndexedTile t = getTile(tile);
+        if (t.size() == 0)
+            return false;
+
+        int pointPos = 0;
+        int indexPos = 0;
+        for (int i = 0, n = t.size(); i < n; i++) {
+            int numPoints = t.pointCount[i];
+            int numIndex = t.indexCount[i];
+
+            element.clear();
+            element.tags.set(t.tags[i]);
+            element.type = t.types[i];
+
+            float[] pts = element.ensurePointSize(numPoints >> 1, false);
+            System.arraycopy(t.points, pointPos, pts, 0, numPoints);
+            int[] idx = element.ensureIndexSize(numIndex + 1, false);
+            System.arraycopy(t.index, indexPos, idx, 0, numIndex);
+            idx[numIndex] = -1;
+            element.pointNextPos = numPoints;
+            element.indexCurrentPos = numIndex - 1;
+
+            pointPos += numPoints;
+            indexPos += numIndex;
+
+            sink.process(element);
+        }
+        return true;
+    }
+
+    IndexedTile getTile(Tile tile) {
+        Long key = key(tile);
+        IndexedTile t;
+        synchronized (mTiles) {
+            t = mTiles.get(key);
+        }
+        if (t != null)
+            return t;
+
+        t = createTile(tile);
+
+        synchronized (mTiles) {
+            mTiles.put(key, t);
+        }
+        return t;
+    }
+
+    void clear() {
+        synchronized (mTiles) {
+            mTiles.clear();
+        }
+        synchronized (mFeatures) {
+            mFeatures.clear();
+        }
+        mNumFeatures = 0;
+    }
+
+    private static Long key(Tile tile) {
+        return ((long) tile.zoomLevel << 58) | ((long) tile.tileX << 29) | tile.tileY;
+    }
+
+    private IndexedTile createTile(Tile tile) {
+        double size = Tile.SIZE;
+        int shift = WORLD_BITS - tile.zoomLevel;
+        double scale = size / (1 << shift);
+        double ox = (double) tile.tileX * (1 << shift);
+        double oy = (double) tile.tileY * (1 << shift);
+
+        /* search with the tile buffer, in world units */
+        double buf = mBuffer / scale;
+        double[] min = {ox - buf, oy - buf};
+        double[] max = {ox + (1 << shift) + buf, oy + (1 << shift) + buf};
+
+        List<Feature> features = new ArrayList<>();
+        synchronized (mFeatures) {
+            mFeatures.search(min, max, new FeatureCollector(features), null);
+        }
+
+        boolean simplify = tile.zoomLevel < mMaxZoom;
+        float minSize = simplify ? mTolerance : 0;
+
+        MapElement geom = new MapElement();
+        TileClipper clipper = new TileClipper(-mBuffer, -mBuffer,
+                (float) size + mBuffer, (float) size + mBuffer);
+        SimplifyDP simplifyDP = new SimplifyDP();
+        float sqTolerance = mTolerance * mTolerance;
+
+        TileBuilder builder = new TileBuilder();
+
+        for (Feature f : features) {
+            geom.clear();
+            if (!project(f, geom, ox, oy, scale, mBuffer, minSize))
+                continue;
+
+            if (geom.type != GeometryType.POINT) {
+                if (!clipper.clip(geom))
+                    continue;
+                if (simplify)
+                    simplifyDP.simplify(geom, sqTolerance);
+            }
+            builder.add(geom, f.tags);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Project feature to tile pixel coordinates.
+     *
+     * @return false when the feature is too small to be visible.
+     */
+    private static boolean project(Feature f, MapElement geom, double ox, double oy,
+                                   double scale, float buffer, float minSize) {
+        int[] points = f.points;
+        int[] index = f.index;
+
+        if (f.type == GeometryType.POINT) {
+            geom.startPoints();
+            float max = Tile.SIZE + buffer;
+            for (int i = 0, n = index[0]; i < n; i += 2) {
+                float x = (float) ((points[i] - ox) * scale);
+                float y = (float) ((points[i + 1] - oy) * scale);
+                if (x < -buffer || y < -buffer || x > max || y > max)
+                    continue;
+                geom.addPoint(x, y);
+            }
+            return geom.pointNextPos > 0;
+        }
+
+        boolean poly = f.type == GeometryType.POLY;
+        boolean newPoly = true;
+        float xmin = Float.MAX_VALUE, ymin = Float.MAX_VALUE;
+        float xmax = -Float.MAX_VALUE, ymax = -Float.MAX_VALUE;
+
+        int pointPos = 0;
+        for (int i = 0, n = index.length; i < n; i++) {
+            int len = index[i];
+            if (len < 0)
+                break;
+            if (len == 0) {
+                newPoly = true;
+                continue;
+            }
+            if (!poly)
+                geom.startLine();
+            else if (newPoly)
+                geom.startPolygon();
+            else
+                geom.startHole();
+            newPoly = false;
+
+            for (int end = pointPos + len; pointPos < end; pointPos += 2) {
+                float x = (float) ((points[pointPos] - ox) * scale);
+                float y = (float) ((points[pointPos + 1] - oy) * scale);
+                geom.addPoint(x, y);
+                if (x < xmin)
+                    xmin = x;
+                if (x > xmax)
+                    xmax = x;
+                if (y < ymin)
+                    ymin = y;
+                if (y > ymax)
+                    ymax = y;
+            }
+        }
+        /* drop features smaller than the simplification tolerance */
+        return (xmax - xmin) >= minSize || (ymax - ymin) >= minSize;
+    }
+
+    private static final class FeatureCollector implements SpatialIndex.SearchCb<Feature> {
+        private final List<Feature> mResult;
+
+        FeatureCollector(List<Feature> result) {
+            mResult = result;
+        }
+
+        @Override
+        public boolean call(Feature item, Object context) {
+            mResult.add(item);
+            return true;
+        }
+    }
+
+    private static final class TileBuilder {
+        float[] points = new float[1024];
+        int[] index = new int[64];
+        int[] indexCount = new int[16];
+        int[] pointCount = new int[16];
+        List<GeometryType> types = new ArrayList<>();
+        List<Tag[]> tags = new ArrayList<>();
+        int pointPos, indexPos, count;
+
+        void add(MapElement geom, Tag[] featureTags) {
+            int numIndex = 0;
+            int numPoints = 0;
+            if (geom.type == GeometryType.POINT) {
+                /* points have no end marker */
+                numIndex = 1;
+                numPoints = geom.index[0];
+            } else {
+                for (int i = 0, n = geom.index.length; i < n; i++) {
+                    int len = geom.index[i];
+                    if (len < 0)
+                        break;
+                    numIndex++;
+                    numPoints += len;
+                }
+            }
+            if (numPoints == 0)
+                return;
+
+            if (pointPos + numPoints > points.length)
+                points = Arrays.copyOf(points, Math.max(points.length * 2, pointPos + numPoints));
+            if (indexPos + numIndex > index.length)
+                index = Arrays.copyOf(index, Math.max(index.length * 2, indexPos + numIndex));
+            if (count == indexCount.length) {
+                indexCount = Arrays.copyOf(indexCount, count * 2);
+                pointCount = Arrays.copyOf(pointCount, count * 2);
+            }
+
+            System.arraycopy(geom.points, 0, points, pointPos, numPoints);
+            System.arraycopy(geom.index, 0, index, indexPos, numIndex);
+            pointPos += numPoints;
+            indexPos += numIndex;
+            indexCount[count] = numIndex;
+            pointCount[count] = numPoints;
+            types.add(geom.type);
+            tags.add(featureTags);
+            count++;
+        }
+
+        IndexedTile build() {
+            return new IndexedTile(Arrays.copyOf(points, pointPos),
+                    Arrays.copyOf(index, indexPos),
+                    Arrays.copyOf(indexCount, count),
+                    Arrays.copyOf(pointCount, count),
+                    types.toArray(new GeometryType[count]),
+                    tags.toArray(new Tag[count][]));
+        }
+    }
+
+    /**
+     * Stream all features of a GeoJSON FeatureCollection into the index.
+     */
+    void load(InputStream is) throws IOException {
+        JsonParser jp = new JsonFactory().createParser(is);
+        FeatureParser parser = new FeatureParser();
+
+        for (JsonToken t; (t = jp.nextToken()) != null; ) {
+            if (t == FIELD_NAME && match(jp, FIELD_FEATURES)) {
+                if (jp.nextToken() != START_ARRAY)
+                    continue;
+
+                while ((t = jp.nextToken()) != null) {
+                    if (t == START_OBJECT)
+                        parser.parseFeature(jp);
+
+                    if (t == END_ARRAY)
+                        break;
+                }
+            }
+        }
+        jp.close();
+    }
+
+    private void addFeature(GeometryType type, int[] points, int numPoints,
+                            int[] index, int numIndex, Tag[] tags) {
+
+        int xmin = Integer.MAX_VALUE, ymin = Integer.MAX_VALUE;
+        int xmax = Integer.MIN_VALUE, ymax = Integer.MIN_VALUE;
+        for (int i = 0; i < numPoints; i += 2) {
+            int x = points[i];
+            int y = points[i + 1];
+            if (x < xmin)
+                xmin = x;
+            if (x > xmax)
+                xmax = x;
+            if (y < ymin)
+                ymin = y;
+            if (y > ymax)
+                ymax = y;
+        }
+        Feature f = new Feature(type, Arrays.copyOf(points, numPoints),
+                Arrays.copyOf(index, numIndex), tags);
+
+        synchronized (mFeatures) {
+            mFeatures.insert(new double[]{xmin, ymin}, new double[]{xmax, ymax}, f);
+        }
+        mNumFeatures++;
+    }
+
+    /**
+     * Reusable parser state for one feature at a time.
+     */
+    private final class FeatureParser {
+        private final LinkedHashMap<String, Object> mTagMap = new LinkedHashMap<>();
+        private final MapElement mTagElement = new MapElement(1, 1);
+
+        private int[] mPoints = new int[1024];
+        private int[] mIndex = new int[16];
+        private int mPointPos;
+        private int mIndexPos;
+        private GeometryType mType;
+
+        void parseFeature(JsonParser jp) throws IOException {
+            mTagMap.clear();
+            mTagElement.tags.clear();
+            mType = GeometryType.NONE;
+            mPointPos = 0;
+            mIndexPos = 0;
+            mIndex[0] = 0;
+
+            for (JsonToken t; (t = jp.nextToken()) != null; ) {
+                if (t == FIELD_NAME) {
+                    if (match(jp, FIELD_GEOMETRY)) {
+                        if (jp.nextToken() == START_OBJECT)
+                            parseGeometry(jp);
+                        continue;
+                    }
+                    if (match(jp, FIELD_PROPERTIES)) {
+                        if (jp.nextToken() == START_OBJECT)
+                            parseProperties(jp);
+                        continue;
+                    }
+                    /* skip id, bbox and foreign members */
+                    jp.nextToken();
+                    jp.skipChildren();
+                    continue;
+                }
+                if (t == END_OBJECT)
+                    break;
+            }
+
+            if (mType == GeometryType.NONE || mPointPos == 0)
+                return;
+
+            mTileSource.decodeTags(mTagElement, mTagMap);
+            if (mTagElement.tags.size() == 0)
+                return;
+
+            addFeature(mType, mPoints, mPointPos, mIndex, mIndexPos + 1,
+                    mTagElement.tags.asArray());
+        }
+
+        private void parseProperties(JsonParser jp) throws IOException {
+            for (JsonToken t; (t = jp.nextToken()) != null; ) {
+                if (t == FIELD_NAME) {
+                    String text = jp.getCurrentName();
+
+                    t = jp.nextToken();
+                    if (t == VALUE_STRING) {
+                        mTagMap.put(text, jp.getText());
+                    } else if (t == VALUE_NUMBER_INT || t == VALUE_NUMBER_FLOAT) {
+                        mTagMap.put(text, jp.getNumberValue());
+                    } else if (t == VALUE_TRUE || t == VALUE_FALSE) {
+                        mTagMap.put(text, jp.getBooleanValue());
+                    } else {
+                        jp.skipChildren();
+                    }
+                    continue;
+                }
+                if (t == END_OBJECT)
+                    break;
+            }
+        }
+
+        private void parseGeometry(JsonParser jp) throws IOException {
+            boolean multi = false;
+            GeometryType type = GeometryType.NONE;
+
+            for (JsonToken t; (t = jp.nextToken()) != null; ) {
+                if (t == FIELD_NAME) {
+                    if (match(jp, FIELD_COORDINATES)) {
+                        if (jp.nextToken() != START_ARRAY)
+                            continue;
+                        mType = type;
+                        if (multi) {
+                            parseMulti(jp, type);
+                        } else {
+                            if (type == GeometryType.POLY)
+                                parsePolygon(jp);
+                            else if (type == GeometryType.LINE)
+                                parseLineString(jp);
+                            else if (type == GeometryType.POINT)
+                                parseCoordinate(jp);
+                            else
+                                jp.skipChildren();
+                        }
+                    } else if (match(jp, FIELD_TYPE)) {
+                        multi = false;
+
+                        jp.nextToken();
+
+                        if (match(jp, LINESTRING))
+                            type = GeometryType.LINE;
+                        else if (match(jp, POLYGON))
+                            type = GeometryType.POLY;
+                        else if (match(jp, POINT))
+                            type = GeometryType.POINT;
+                        else if (match(jp, MULTI_LINESTRING)) {
+                            type = GeometryType.LINE;
+                            multi = true;
+                        } else if (match(jp, MULTI_POLYGON)) {
+                            type = GeometryType.POLY;
+                            multi = true;
+                        } else if (match(jp, MULTI_POINT)) {
+                            type = GeometryType.POINT;
+                            multi = true;
+                        }
+                    } else {
+                        jp.nextToken();
+                        jp.skipChildren();
+                    }
+                    continue;
+                }
+                if (t == END_OBJECT)
+                    break;
+            }
+        }
+
+        private void parseMulti(JsonParser jp, GeometryType type) throws IOException {
+            for (JsonToken t; (t = jp.nextToken()) != null; ) {
+                if (t == END_ARRAY)
+                    break;
+
+                if (t == START_ARRAY) {
+                    if (type == GeometryType.POLY)
+                        parsePolygon(jp);
+                    else if (type == GeometryType.LINE)
+                        parseLineString(jp);
+                    else if (type == GeometryType.POINT)
+                        parseCoordinate(jp);
+                }
+            }
+        }
+
+        private void parsePolygon(JsonParser jp) throws IOException {
+            /* separate polygons of a multipolygon by a 0 index */
+            if (mPointPos > 0) {
+                startIndex();
+                startIndex();
+            }
+            int ring = 0;
+            for (JsonToken t; (t = jp.nextToken()) != null; ) {
+                if (t == START_ARRAY) {
+                    if (ring > 0)
+                        startIndex();
+                    ring++;
+                    parseCoordSequence(jp);
+                    /* drop the closing point */
+                    if (mIndex[mIndexPos] >= 2) {
+                        mIndex[mIndexPos] -= 2;
+                        mPointPos -= 2;
+                    }
+                    continue;
+                }
+                if (t == END_ARRAY)
+                    break;
+            }
+        }
+
+        private void parseLineString(JsonParser jp) throws IOException {
+            if (mPointPos > 0)
+                startIndex();
+            parseCoordSequence(jp);
+        }
+
+        private void startIndex() {
+            if (++mIndexPos == mIndex.length)
+                mIndex = Arrays.copyOf(mIndex, mIndexPos * 2);
+            mIndex[mIndexPos] = 0;
+        }
+
+        private void parseCoordSequence(JsonParser jp) throws IOException {
+            for (JsonToken t; (t = jp.nextToken()) != null; ) {
+                if (t == START_ARRAY) {
+                    parseCoordinate(jp);
+                    continue;
+                }
+                if (t == END_ARRAY)
+                    break;
+            }
+        }
+
+        private void parseCoordinate(JsonParser jp) throws IOException {
+            int pos = 0;
+            double x = 0, y = 0;
+
+            for (JsonToken t; (t = jp.nextToken()) != null; ) {
+                if (t == VALUE_NUMBER_FLOAT || t == VALUE_NUMBER_INT) {
+                    // avoid String allocation (by getDouble...)
+                    char[] val = jp.getTextCharacters();
+                    int offset = jp.getTextOffset();
+                    int length = jp.getTextLength();
+                    double c = ArrayUtils.parseNumber(val, offset, offset + length);
+
+                    if (pos == 0)
+                        x = c;
+                    if (pos == 1)
+                        y = c;
+
+                    pos++;
+                    continue;
+                }
+                if (t == END_ARRAY)
+                    break;
+            }
+
+            if (mPointPos + 2 > mPoints.length)
+                mPoints = Arrays.copyOf(mPoints, mPoints.length * 2);
+
+            mPoints[mPointPos++] = (int) (longitudeToX(x) * WORLD_SIZE);
+            mPoints[mPointPos++] = (int) (latitudeToY(y) * WORLD_SIZE);
+            mIndex[mIndexPos] += 2;
+        }
+    }
+
+    private static boolean match(JsonParser jp, char[] fieldName) throws IOException {
+        int length = jp.getTextLength();
+        if (length != fieldName.length)
+            return false;
+
+        char[] val = jp.getTextCharacters();
+        int offset = jp.getTextOffset();
+
+        for (int i = 0; i < length; i++) {
+            if (fieldName[i] != val[i + offset])
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,250 @@
+package org.oscim.backend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.backend.canvas.Canvas;
+import org.oscim.backend.canvas.Paint;
+import org.oscim.theme.ThemeCallback;
+import org.oscim.theme.XmlThemeResourceProvider;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class SvgCacheTest {
+
+    private static final byte[] SVG = "<svg width='10' height='20'/>".getBytes();
+
+    private final TestAdapter adapter = new TestAdapter();
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        CanvasAdapter.init(adapter);
+        dir = File.createTempFile("svgcache", "");
+        dir.delete();
+    }
+
+    @After
+    public void tearDown() {
+        CanvasAdapter.setSvgCache(null);
+        CanvasAdapter.g = null;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void shouldRasterizeOnce() throws IOException {
+        SvgCache cache = new SvgCache(1 << 20);
+        Bitmap a = cache.getBitmap(new ByteArrayInputStream(SVG), 0, 0, 100);
+        Bitmap b = cache.getBitmap(new ByteArrayInputStream(SVG), 0, 0, 100);
+
+        assertEquals(1, adapter.rasterized.get());
+        assertNotSame(a, b);
+        assertEquals(a.getWidth(), b.getWidth());
+        assertEquals(a.getHeight(), b.getHeight());
+
+        cache.getBitmap(new ByteArrayInputStream(SVG), 0, 0, 200);
+        assertEquals(2, adapter.rasterized.get());
+        cache.dispose();
+    }
+
+    @Test
+    public void shouldRasterizeAgainForOtherScale() throws IOException {
+        SvgCache cache = new SvgCache(1 << 20);
+        cache.getBitmap(new ByteArrayInputStream(SVG), 0, 0, 100);
+
+        float userScale = CanvasAdapter.userScale;
+        CanvasAdapter.userScale = 2;
+        try {
+            cache.getBitmap(new ByteArrayInputStream(SVG), 0, 0, 100);
+        } finally {
+            CanvasAdapter.userScale = userScale;
+        }
+        assertEquals(2, adapter.rasterized.get());
+        cache.dispose();
+    }
+
+    @Test
+    public void shouldPersist() throws IOException {
+        SvgCache cache = new SvgCache(1 << 20, dir);
+        cache.getBitmap(new ByteArrayInputStream(SVG), 10, 10, 100);
+        cache.dispose();
+
+        cache = new SvgCache(1 << 20, dir);
+        Bitmap bitmap = cache.getBitmap(new ByteArrayInputStream(SVG), 10, 10, 100);
+        assertEquals(1, adapter.rasterized.get());
+        assertEquals(10, bitmap.getWidth());
+
+        cache.clear();
+        cache.getBitmap(new ByteArrayInputStream(SVG), 10, 10, 100);
+        assertEquals(2, adapter.rasterized.get());
+        cache.dispose();
+    }
+
+    @Test
+    public void shouldUsePrefetched() throws IOException {
+        SvgCache cache = new SvgCache(1 << 20);
+        adapter.delay = 100;
+        for (int i = 1; i <= 4; i++)
+            cache.prefetch(new ByteArrayInputStream(SVG), i, i, 100);
+        for (int i = 1; i <= 4; i++)
+            assertEquals(i, cache.getBitmap(new ByteArrayInputStream(SVG), i, i, 100).getWidth());
+        assertEquals(4, adapter.rasterized.get());
+        cache.dispose();
+    }
+
+    @Test
+    public void shouldEvictFromMemory() throws IOException {
+        SvgCache cache = new SvgCache(TestBitmap.PNG_SIZE);
+        cache.getBitmap(new ByteArrayInputStream(SVG), 1, 1, 100);
+        cache.getBitmap(new ByteArrayInputStream(SVG), 2, 2, 100);
+        cache.getBitmap(new ByteArrayInputStream(SVG), 1, 1, 100);
+        assertEquals(3, adapter.rasterized.get());
+        cache.dispose();
+    }
+
+    @Test
+    public void shouldDecodeOnceWhileThemeLoads() throws IOException {
+        SvgCache cache = new SvgCache(1 << 20);
+        cache.getBitmap(new ByteArrayInputStream(SVG), 10, 10, 100);
+
+        cache.beginThemeLoad();
+        Bitmap a = cache.getBitmap(new ByteArrayInputStream(SVG), 10, 10, 100);
+        Bitmap b = cache.getBitmap(new ByteArrayInputStream(SVG), 10, 10, 100);
+        assertEquals(1, adapter.decoded.get());
+        assertNotSame(a, b);
+        assertEquals(10, b.getWidth());
+        cache.endThemeLoad();
+
+        cache.getBitmap(new ByteArrayInputStream(SVG), 10, 10, 100);
+        assertEquals(2, adapter.decoded.get());
+        assertEquals(1, adapter.rasterized.get());
+        cache.dispose();
+    }
+
+    static class TestBitmap implements Bitmap {
+        static final int PNG_SIZE = 8;
+
+        final int width, height;
+
+        TestBitmap(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public void recycle() {
+        }
+
+        @Override
+        public int[] getPixels() {
+            return new int[width * height];
+        }
+
+        @Override
+        public void eraseColor(int color) {
+        }
+
+        @Override
+        public void uploadToTexture(boolean replace) {
+        }
+
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+
+        @Override
+        public byte[] getPngEncodedData() {
+            return new byte[]{0, 0, 0, (byte) width, 0, 0, 0, (byte) height};
+        }
+
+        @Override
+        public void scaleTo(int width, int height) {
+        }
+    }
+
+    static class TestAdapter extends CanvasAdapter {
+        final AtomicInteger rasterized = new AtomicInteger();
+        final AtomicInteger decoded = new AtomicInteger();
+        volatile long delay;
+
+        @Override
+        protected Canvas newCanvasImpl() {
+            return (Canvas) Proxy.newProxyInstance(Canvas.class.getClassLoader(),
+                    new Class<?>[]{Canvas.class}, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            return null;
+                        }
+                    });
+        }
+
+        @Override
+        protected Paint newPaintImpl() {
+            return null;
+        }
+
+        @Override
+        protected Bitmap newBitmapImpl(int width, int height, int format) {
+            return new TestBitmap(width, height);
+        }
+
+        @Override
+        protected Bitmap decodeBitmapImpl(InputStream inputStream) throws IOException {
+            decoded.incrementAndGet();
+            DataInputStream in = new DataInputStream(inputStream);
+            return new TestBitmap(in.readInt(), in.readInt());
+        }
+
+        @Override
+        protected Bitmap decodeBitmapImpl(InputStream inputStream, int width, int height, int percent) throws IOException {
+            return decodeBitmapImpl(inputStream);
+        }
+
+        @Override
+        protected Bitmap decodeSvgBitmapImpl(InputStream inputStream, int width, int height, int percent) throws IOException {
+            assertTrue(inputStream.read() >= 0);
+            rasterized.incrementAndGet();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            int size = width > 0 ? width : percent / 10;
+            return new TestBitmap(size, width > 0 ? height : size);
+        }
+
+        @Override
+        protected Bitmap loadBitmapAssetImpl(String relativePathPrefix, String src, XmlThemeResourceProvider resourceProvider, int width, int height, int percent, ThemeCallback themeCallback) {
+            return null;
+        }
+    }
+}
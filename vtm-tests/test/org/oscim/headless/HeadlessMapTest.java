@@ -0,0 +1,102 @@
+package org.oscim.headless;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.MapElement;
+import org.oscim.core.MapPosition;
+import org.oscim.core.Tag;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.vector.VectorTileLayer;
+import org.oscim.layers.tile.vector.labeling.LabelLayer;
+import org.oscim.renderer.BucketRenderer;
+import org.oscim.theme.internal.VtmThemes;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.TileSource;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.oscim.tiling.QueryResult.SUCCESS;
+
+public class HeadlessMapTest {
+
+    private HeadlessMap map;
+
+    @Before
+    public void setUp() {
+        HeadlessMap.init();
+        map = new HeadlessMap(512, 512);
+    }
+
+    @After
+    public void tearDown() {
+        map.destroy();
+    }
+
+    @Test
+    public void shouldRenderLabels() throws Exception {
+        VectorTileLayer l = map.setBaseMap(new LabelTileSource());
+        LabelLayer labels = new LabelLayer(map, l);
+        map.layers().add(labels);
+        map.setTheme(VtmThemes.DEFAULT);
+        map.setMapPosition(new MapPosition(0, 0, 1 << 14));
+
+        assertTrue(map.awaitIdle(10000));
+        assertTrue(map.getFrames() > 0);
+        /* labels are placed by a delayed task and uploaded as textures */
+        assertNotNull(((BucketRenderer) labels.getRenderer()).buckets.get());
+        assertTrue(map.getGL().getTextureBytes() > 0);
+    }
+
+    static class LabelTileSource extends TileSource {
+        LabelTileSource() {
+            super(0, 18);
+        }
+
+        @Override
+        public ITileDataSource getDataSource() {
+            return new ITileDataSource() {
+                private final MapElement e = new MapElement();
+
+                @Override
+                public void query(MapTile tile, ITileDataSink sink) {
+                    e.clear();
+                    e.startPoints();
+                    e.addPoint(Tile.SIZE / 2, Tile.SIZE / 2);
+                    e.tags.add(new Tag("place", "city"));
+                    e.tags.add(new Tag("name", tile.toString()));
+                    sink.process(e);
+
+                    e.clear();
+                    e.startLine();
+                    e.addPoint(0, Tile.SIZE / 4);
+                    e.addPoint(Tile.SIZE, Tile.SIZE / 4);
+                    e.tags.add(new Tag("highway", "primary"));
+                    e.tags.add(new Tag("name", "Highway Rd"));
+                    sink.process(e);
+
+                    sink.completed(SUCCESS);
+                }
+
+                @Override
+                public void dispose() {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            };
+        }
+
+        @Override
+        public OpenResult open() {
+            return OpenResult.SUCCESS;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
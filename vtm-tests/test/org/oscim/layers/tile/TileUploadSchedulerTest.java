@@ -0,0 +1,27 @@
+package org.oscim.layers.tile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TileUploadSchedulerTest {
+
+    @Test
+    public void shouldAdaptBudgetToFrameTime() {
+        long time = 1000000;
+        TileUploadScheduler.beginFrame(time);
+
+        /* slow frames without uploads */
+        for (int i = 0; i < 20; i++)
+            TileUploadScheduler.beginFrame(time += 50);
+        Assert.assertTrue(TileUploadScheduler.getFrameBudget() < TileUploadScheduler.BUDGET);
+        Assert.assertTrue(TileUploadScheduler.getFrameBudget() >= TileUploadScheduler.MIN_BUDGET);
+
+        for (int i = 0; i < 50; i++)
+            TileUploadScheduler.beginFrame(time += 10);
+        Assert.assertEquals(TileUploadScheduler.BUDGET, TileUploadScheduler.getFrameBudget(), 0);
+
+        /* idle intervals are not sampled */
+        TileUploadScheduler.beginFrame(time += 5000);
+        Assert.assertEquals(TileUploadScheduler.BUDGET, TileUploadScheduler.getFrameBudget(), 0);
+    }
+}
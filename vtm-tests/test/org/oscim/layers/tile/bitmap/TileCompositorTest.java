@@ -0,0 +1,211 @@
+package org.oscim.layers.tile.bitmap;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileCache;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.TileSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TileCompositorTest {
+
+    private static int[] fill(int size, int argb) {
+        int[] pixels = new int[size * size];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = argb;
+        return pixels;
+    }
+
+    @Test
+    public void shouldPackAndUnpack() {
+        Assert.assertEquals(0xff102030, PixelBitmap.unpack(PixelBitmap.pack(0x10, 0x20, 0x30, 0xff)));
+        Assert.assertEquals(0, PixelBitmap.unpack(PixelBitmap.pack(0, 0, 0, 0)));
+        /* premultiplied by half */
+        Assert.assertEquals(0x80fd0000, PixelBitmap.unpack(PixelBitmap.pack(0x7f, 0, 0, 0x80)));
+    }
+
+    @Test
+    public void shouldDownsampleChildrenToQuadrants() {
+        int size = 4;
+        int[][] children = {
+                fill(size, 0xffff0000),
+                fill(size, 0xff00ff00),
+                fill(size, 0xff0000ff),
+                fill(size, 0x00000000)};
+
+        int[] pixels = TileCompositor.downsample(children, size, size);
+
+        Assert.assertEquals(0xffff0000, PixelBitmap.unpack(pixels[0]));
+        Assert.assertEquals(0xff00ff00, PixelBitmap.unpack(pixels[size - 1]));
+        Assert.assertEquals(0xff0000ff, PixelBitmap.unpack(pixels[(size - 1) * size]));
+        Assert.assertEquals(0, PixelBitmap.unpack(pixels[size * size - 1]));
+    }
+
+    @Test
+    public void shouldAverageInPremultipliedSpace() {
+        int size = 2;
+        int[] child = {0xffffffff, 0x00000000, 0x00000000, 0x00000000};
+        int[][] children = {child, child, child, child};
+
+        int[] pixels = TileCompositor.downsample(children, size, size);
+
+        /* transparent pixels do not darken the color */
+        Assert.assertEquals(0x40ffffff, PixelBitmap.unpack(pixels[0]));
+    }
+
+    @Test
+    public void shouldUpscaleRegion() {
+        int size = 8;
+        int[] parent = fill(size, 0xff000000);
+        /* right half white */
+        for (int y = 0; y < size; y++)
+            for (int x = size / 2; x < size; x++)
+                parent[y * size + x] = 0xffffffff;
+
+        int[] left = TileCompositor.upscale(parent.clone(), size, size, 1, 0, 0);
+        int[] right = TileCompositor.upscale(parent.clone(), size, size, 1, 1, 1);
+
+        Assert.assertEquals(0xff000000, PixelBitmap.unpack(left[0]));
+        Assert.assertEquals(0xffffffff, PixelBitmap.unpack(right[size * size - 1]));
+        /* interpolated at the border of the halves */
+        int border = PixelBitmap.unpack(left[size - 1]) & 0xff;
+        Assert.assertTrue(border > 0 && border < 255);
+    }
+
+    @Test
+    public void shouldScaleBitmap() {
+        int size = 4;
+        int[] pixels = PixelBitmap.pack(fill(size, 0xff00ff00));
+        pixels[0] = PixelBitmap.pack(0, 0, 0, 0);
+        PixelBitmap bitmap = new PixelBitmap(size, size, pixels);
+
+        bitmap.scaleTo(size * 2, size);
+        Assert.assertEquals(size * 2, bitmap.getWidth());
+        Assert.assertEquals(size * 2 * size, bitmap.getPixels().length);
+        Assert.assertEquals(0, bitmap.getPixels()[0]);
+        Assert.assertEquals(0xff00ff00, bitmap.getPixels()[size * 2 * size - 1]);
+        Assert.assertNull(bitmap.getPngEncodedData());
+    }
+
+    @Test
+    public void shouldQueryAncestorOnce() {
+        FakeTileSource tileSource = new FakeTileSource();
+        FakeDataSource dataSource = new FakeDataSource();
+        TileCompositor compositor = new TileCompositor(tileSource, dataSource);
+
+        /* all overzoomed tiles of ancestor 0/0/2, the bitmap pool is disabled */
+        for (int i = 0; i < 4; i++) {
+            Tile tile = new Tile(i & 1, i >> 1, (byte) 3);
+            Assert.assertNotNull(compositor.upscale(tile));
+        }
+        Assert.assertEquals(1, dataSource.queries);
+
+        /* the cached ancestor is not modified by upscaling */
+        Assert.assertEquals(0xff00ff00, compositor.upscale(new Tile(0, 0, (byte) 3)).getPixels()[0]);
+    }
+
+    @Test
+    public void shouldNotDecodeWithMissingChild() {
+        FakeTileSource tileSource = new FakeTileSource();
+        FakeCache cache = new FakeCache();
+        tileSource.tileCache = cache;
+        TileCompositor compositor = new TileCompositor(tileSource, new FakeDataSource());
+
+        for (int i = 0; i < 3; i++)
+            cache.tiles.put(new Tile(i & 1, i >> 1, (byte) 2), new byte[]{1, 2, 3});
+
+        Assert.assertNull(compositor.downsample(new Tile(0, 0, (byte) 1)));
+        Assert.assertEquals(0, cache.reads);
+    }
+
+    private static class FakeTileSource extends TileSource {
+        FakeTileSource() {
+            super(0, 2);
+        }
+
+        @Override
+        public ITileDataSource getDataSource() {
+            return new FakeDataSource();
+        }
+
+        @Override
+        public OpenResult open() {
+            return OpenResult.SUCCESS;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class FakeDataSource implements ITileDataSource {
+        int queries;
+
+        @Override
+        public void query(MapTile tile, ITileDataSink sink) {
+            queries++;
+            sink.setTileImage(new PixelBitmap(4, 4, PixelBitmap.pack(fill(4, 0xff00ff00))));
+            sink.completed(QueryResult.SUCCESS);
+        }
+
+        @Override
+        public void dispose() {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+
+    private static class FakeCache implements ITileCache {
+        final Map<Tile, byte[]> tiles = new HashMap<>();
+        int reads;
+
+        @Override
+        public TileWriter writeTile(Tile tile) {
+            return null;
+        }
+
+        @Override
+        public TileReader getTile(final Tile tile) {
+            final byte[] data = tiles.get(tile);
+            if (data == null)
+                return null;
+            return new TileReader() {
+                @Override
+                public Tile getTile() {
+                    return tile;
+                }
+
+                @Override
+                public InputStream getInputStream() {
+                    return new ByteArrayInputStream(data) {
+                        @Override
+                        public synchronized int read() {
+                            reads++;
+                            return super.read();
+                        }
+
+                        @Override
+                        public synchronized int read(byte[] b, int off, int len) {
+                            reads++;
+                            return super.read(b, off, len);
+                        }
+                    };
+                }
+            };
+        }
+
+        @Override
+        public void setCacheSize(long size) {
+        }
+    }
+}
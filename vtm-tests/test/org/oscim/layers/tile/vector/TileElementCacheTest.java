@@ -0,0 +1,194 @@
+package org.oscim.layers.tile.vector;
+
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.MapPosition;
+import org.oscim.core.Tag;
+import org.oscim.core.Tile;
+import org.oscim.headless.HeadlessMap;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.theme.internal.VtmThemes;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.TileSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TileElementCacheTest {
+
+    private static final Tag[] ROAD = {new Tag("highway", "primary")};
+    private static final Tag[] BUILDING = {new Tag("building", "yes")};
+
+    private static void addElements(ITileDataSink sink, MapElement e) {
+        e.clear();
+        e.startLine();
+        e.addPoint(0, Tile.SIZE / 4);
+        e.addPoint(Tile.SIZE, Tile.SIZE / 4);
+        e.tags.set(ROAD);
+        e.layer = 5;
+        sink.process(e);
+
+        e.clear();
+        e.startPolygon();
+        e.addPoint(10, 10);
+        e.addPoint(50, 10);
+        e.addPoint(50, 50);
+        e.startHole();
+        e.addPoint(20, 20);
+        e.addPoint(30, 20);
+        e.addPoint(30, 30);
+        e.tags.set(BUILDING);
+        e.setLabelPosition(30, 30);
+        sink.process(e);
+    }
+
+    private static class Collector implements ITileDataSink {
+        final List<MapElement> elements = new ArrayList<>();
+
+        @Override
+        public void process(MapElement element) {
+            elements.add(new MapElement(element));
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+        }
+    }
+
+    private static TileElementCache.Elements record() {
+        final TileElementCache.Recorder recorder = new TileElementCache.Recorder();
+        addElements(new Collector() {
+            @Override
+            public void process(MapElement element) {
+                recorder.add(element);
+            }
+        }, new MapElement());
+        return new TileElementCache.Elements(recorder);
+    }
+
+    @Test
+    public void shouldReplayRecordedElements() {
+        TileElementCache cache = new TileElementCache(1 << 20);
+        Tile tile = new Tile(1, 2, (byte) 3);
+        assertNull(cache.get(tile));
+        cache.put(tile, record());
+        assertTrue(cache.getSize() > 0);
+
+        Collector sink = new Collector();
+        cache.get(tile).replay(new MapElement(), sink);
+        assertEquals(2, sink.elements.size());
+
+        MapElement line = sink.elements.get(0);
+        assertEquals(GeometryType.LINE, line.type);
+        assertEquals(5, line.layer);
+        assertArrayEquals(ROAD, line.tags.asArray());
+        assertEquals(4, line.pointNextPos);
+        assertEquals(Tile.SIZE, line.points[2], 0);
+        assertNull(line.labelPosition);
+
+        MapElement poly = sink.elements.get(1);
+        assertEquals(GeometryType.POLY, poly.type);
+        assertArrayEquals(BUILDING, poly.tags.asArray());
+        assertEquals(12, poly.pointNextPos);
+        /* copied without the end marker */
+        assertArrayEquals(new int[]{6, 6}, poly.index);
+        assertEquals(30, poly.labelPosition.x, 0);
+        assertEquals(30, poly.labelPosition.y, 0);
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() {
+        TileElementCache.Elements elements = record();
+        TileElementCache cache = new TileElementCache(elements.size * 2);
+        Tile a = new Tile(0, 0, (byte) 1);
+        Tile b = new Tile(1, 0, (byte) 1);
+        Tile c = new Tile(0, 1, (byte) 1);
+        cache.put(a, elements);
+        cache.put(b, elements);
+        assertNotNull(cache.get(a));
+        cache.put(c, elements);
+
+        assertNotNull(cache.get(a));
+        assertNull(cache.get(b));
+        assertNotNull(cache.get(c));
+        assertEquals(elements.size * 2, cache.getSize());
+    }
+
+    @Test
+    public void shouldRestyleWithoutQuery() throws Exception {
+        HeadlessMap.init();
+        HeadlessMap map = new HeadlessMap(256, 256);
+        try {
+            CountingTileSource tileSource = new CountingTileSource();
+            VectorTileLayer l = map.setBaseMap(tileSource);
+            l.setElementCacheSize(1 << 20);
+            map.setTheme(VtmThemes.DEFAULT);
+            map.setMapPosition(new MapPosition(0, 0, 1 << 14));
+            assertTrue(map.awaitIdle(10000));
+
+            int queries = tileSource.queries.get();
+            assertTrue(queries > 0);
+            assertTrue(l.getElementCache().getSize() > 0);
+
+            map.setTheme(VtmThemes.OSMARENDER);
+            assertTrue(map.awaitIdle(10000));
+            assertEquals(queries, tileSource.queries.get());
+        } finally {
+            map.destroy();
+        }
+    }
+
+    static class CountingTileSource extends TileSource {
+        final AtomicInteger queries = new AtomicInteger();
+
+        CountingTileSource() {
+            super(0, 18);
+        }
+
+        @Override
+        public ITileDataSource getDataSource() {
+            return new ITileDataSource() {
+                private final MapElement e = new MapElement();
+
+                @Override
+                public void query(MapTile tile, ITileDataSink sink) {
+                    queries.incrementAndGet();
+                    addElements(sink, e);
+                    sink.completed(QueryResult.SUCCESS);
+                }
+
+                @Override
+                public void dispose() {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            };
+        }
+
+        @Override
+        public OpenResult open() {
+            return OpenResult.SUCCESS;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.oscim.renderer;
+
+import org.junit.After;
+import org.junit.Test;
+import org.oscim.utils.MemoryPressure;
+import org.oscim.utils.Parameters;
+
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NativeBufferPoolTest {
+
+    private final int mIdleFrames = Parameters.BUFFER_IDLE_FRAMES;
+
+    @After
+    public void tearDown() {
+        Parameters.BUFFER_IDLE_FRAMES = mIdleFrames;
+    }
+
+    @Test
+    public void shouldUseSizeClasses() {
+        assertEquals(0, NativeBufferPool.sizeClass(1));
+        assertEquals(0, NativeBufferPool.sizeClass(1 << 15));
+        assertEquals(1, NativeBufferPool.sizeClass((1 << 15) + 1));
+        assertEquals(5, NativeBufferPool.sizeClass(1 << 20));
+    }
+
+    @Test
+    public void shouldReuseBuffersOfSameClass() {
+        NativeBufferPool pool = new NativeBufferPool();
+
+        ShortBuffer sb = pool.getShortBuffer(100);
+        assertTrue(sb.capacity() >= 100);
+        pool.getShortBuffer(1 << 20);
+        assertEquals((1 << 15) + (1 << 21), pool.getAllocatedBytes());
+        pool.releaseBuffers();
+
+        /* small request does not take the large buffer */
+        pool.getShortBuffer(100);
+        pool.releaseBuffers();
+        assertEquals(1, pool.getReuses());
+        assertEquals(2, pool.getAllocations());
+        assertEquals((1 << 15) + (1 << 21), pool.getPooledBytes());
+    }
+
+    @Test
+    public void shouldReleaseIdleBuffers() {
+        Parameters.BUFFER_IDLE_FRAMES = 4;
+        NativeBufferPool pool = new NativeBufferPool();
+
+        pool.getShortBuffer(100);
+        pool.getShortBuffer(1 << 20);
+        pool.releaseBuffers();
+        long peak = pool.getAllocatedBytes();
+
+        for (int i = 0; i < 3; i++) {
+            pool.getShortBuffer(100);
+            pool.releaseBuffers();
+        }
+        /* window with the large buffer in use */
+        assertEquals(peak, pool.getAllocatedBytes());
+
+        for (int i = 0; i < 4; i++) {
+            pool.getShortBuffer(100);
+            pool.releaseBuffers();
+        }
+        assertEquals(1 << 15, pool.getAllocatedBytes());
+        assertEquals(peak, pool.getPeakBytes());
+        assertEquals(1 << 21, pool.getReleasedBytes());
+    }
+
+    @Test
+    public void shouldTrim() {
+        Parameters.BUFFER_IDLE_FRAMES = 0;
+        NativeBufferPool pool = new NativeBufferPool();
+
+        for (int i = 0; i < 4; i++)
+            pool.getIntBuffer(100);
+        pool.releaseBuffers();
+
+        assertEquals(2 << 15, pool.trim(MemoryPressure.MODERATE));
+        assertEquals(2 << 15, pool.trim(MemoryPressure.CRITICAL));
+        assertEquals(0, pool.getAllocatedBytes());
+    }
+}
@@ -0,0 +1,147 @@
+package org.oscim.renderer.bucket;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.Tile;
+import org.oscim.utils.Parameters;
+
+public class BitmapPoolTest {
+
+    private static class TestBitmap implements Bitmap {
+        final int size;
+        boolean recycled;
+
+        TestBitmap() {
+            this(256);
+        }
+
+        TestBitmap(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public int getWidth() {
+            return size;
+        }
+
+        @Override
+        public int getHeight() {
+            return size;
+        }
+
+        @Override
+        public void recycle() {
+            recycled = true;
+        }
+
+        @Override
+        public int[] getPixels() {
+            return null;
+        }
+
+        @Override
+        public void eraseColor(int color) {
+        }
+
+        @Override
+        public void uploadToTexture(boolean replace) {
+        }
+
+        @Override
+        public boolean isValid() {
+            return !recycled;
+        }
+
+        @Override
+        public byte[] getPngEncodedData() {
+            return null;
+        }
+
+        @Override
+        public void scaleTo(int width, int height) {
+        }
+    }
+
+    private final Object mSource = new Object();
+    private int mPoolSize;
+
+    @Before
+    public void setUp() {
+        mPoolSize = Parameters.BITMAP_POOL_SIZE;
+        Parameters.BITMAP_POOL_SIZE = 2;
+        BitmapPool.get().clear();
+    }
+
+    @After
+    public void tearDown() {
+        BitmapPool.get().clear();
+        Parameters.BITMAP_POOL_SIZE = mPoolSize;
+    }
+
+    @Test
+    public void shouldReturnReleasedTile() {
+        BitmapPool pool = BitmapPool.get();
+        TestBitmap bitmap = new TestBitmap();
+        pool.release(BitmapPool.key(mSource, new Tile(1, 2, (byte) 3)), bitmap);
+
+        Assert.assertNull(pool.get(BitmapPool.key(new Object(), new Tile(1, 2, (byte) 3))));
+        Assert.assertNull(pool.get(BitmapPool.key(mSource, new Tile(2, 1, (byte) 3))));
+        Assert.assertSame(bitmap, pool.get(BitmapPool.key(mSource, new Tile(1, 2, (byte) 3))));
+        Assert.assertEquals(0, pool.size());
+        Assert.assertFalse(bitmap.recycled);
+    }
+
+    @Test
+    public void shouldFindLeastRecentlyReleased() {
+        BitmapPool pool = BitmapPool.get();
+        TestBitmap a = new TestBitmap();
+        TestBitmap b = new TestBitmap();
+        TestBitmap c = new TestBitmap();
+        pool.release(BitmapPool.key(mSource, new Tile(0, 0, (byte) 1)), a);
+        pool.release(BitmapPool.key(mSource, new Tile(1, 0, (byte) 1)), b);
+        pool.release(BitmapPool.key(mSource, new Tile(0, 1, (byte) 1)), c);
+
+        /* bounded by Parameters.BITMAP_POOL_SIZE */
+        Assert.assertTrue(a.recycled);
+        Assert.assertEquals(2, pool.size());
+
+        Assert.assertSame(b, pool.get(pool.findReusable(mSource, TestBitmap.class, 256, 256)));
+        Assert.assertSame(c, pool.get(pool.findReusable(mSource, TestBitmap.class, 256, 256)));
+        Assert.assertNull(pool.findReusable(mSource, TestBitmap.class, 256, 256));
+        Assert.assertFalse(b.recycled);
+        Assert.assertFalse(c.recycled);
+    }
+
+    @Test
+    public void shouldFindReusableOfSourceTypeAndSize() {
+        Parameters.BITMAP_POOL_SIZE = 4;
+        BitmapPool pool = BitmapPool.get();
+        TestBitmap other = new TestBitmap();
+        TestBitmap small = new TestBitmap(128);
+        TestBitmap bitmap = new TestBitmap();
+        pool.release(BitmapPool.key(new Object(), new Tile(0, 0, (byte) 1)), other);
+        pool.release(BitmapPool.key(mSource, new Tile(1, 0, (byte) 1)), small);
+        pool.release(BitmapPool.key(mSource, new Tile(0, 1, (byte) 1)), bitmap);
+
+        Assert.assertNull(pool.findReusable(mSource, Bitmap.class, 256, 256));
+        Object key = pool.findReusable(mSource, TestBitmap.class, 256, 256);
+        Assert.assertEquals(BitmapPool.key(mSource, new Tile(0, 1, (byte) 1)), key);
+
+        /* not taken until get */
+        Assert.assertEquals(3, pool.size());
+        Assert.assertSame(bitmap, pool.get(key));
+    }
+
+    @Test
+    public void shouldRecycleWhenDisabled() {
+        Parameters.BITMAP_POOL_SIZE = 0;
+        TestBitmap bitmap = new TestBitmap();
+        BitmapPool.get().release(BitmapPool.key(mSource, new Tile(0, 0, (byte) 0)), bitmap);
+
+        Assert.assertTrue(bitmap.recycled);
+        Assert.assertEquals(0, BitmapPool.get().size());
+    }
+}
@@ -0,0 +1,180 @@
+package org.oscim.renderer.bucket;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.oscim.awt.AwtGraphics;
+import org.oscim.headless.HeadlessAssets;
+import org.oscim.theme.RenderTheme;
+import org.oscim.theme.ThemeLoader;
+import org.oscim.theme.ThemeStyleIndex;
+import org.oscim.theme.internal.VtmThemes;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.LineStyle;
+import org.oscim.theme.styles.RenderStyle;
+import org.oscim.theme.styles.SymbolStyle;
+import org.oscim.theme.styles.TextStyle;
+import org.oscim.utils.pool.Inlist;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RenderBucketsCodecTest {
+
+    private static ThemeStyleIndex styles;
+    private static LineStyle line;
+    private static AreaStyle area;
+    private static TextStyle text;
+    private static SymbolStyle symbol;
+
+    @BeforeClass
+    public static void init() {
+        AwtGraphics.init();
+        HeadlessAssets.init("assets/");
+        styles = new ThemeStyleIndex((RenderTheme) ThemeLoader.load(VtmThemes.DEFAULT));
+
+        for (int i = 0; i < styles.size(); i++) {
+            RenderStyle<?> style = styles.get(i);
+            if (line == null && style instanceof LineStyle) {
+                LineStyle l = (LineStyle) style;
+                if (l.stipple == 0 && l.texture == null && !l.outline)
+                    line = l;
+            } else if (area == null && style instanceof AreaStyle)
+                area = (AreaStyle) style;
+            else if (text == null && style instanceof TextStyle)
+                text = (TextStyle) style;
+            else if (symbol == null && style instanceof SymbolStyle)
+                symbol = (SymbolStyle) style;
+        }
+        assertNotNull(line);
+        assertNotNull(area);
+        assertNotNull(text);
+        assertNotNull(symbol);
+    }
+
+    private static RenderBuckets createBuckets() {
+        RenderBuckets buckets = new RenderBuckets();
+
+        LineBucket lb = buckets.getLineBucket(1);
+        lb.line = line;
+        lb.scale = 1.5f;
+        lb.addLine(new float[]{10, 10, 100, 20, 200, 150}, 6, false);
+
+        PolygonBucket pb = buckets.getPolygonBucket(0);
+        pb.area = area;
+        pb.addPolygon(new float[]{0, 0, 50, 0, 50, 50, 0, 50}, new int[]{8, -1});
+
+        buckets.prepare();
+        return buckets;
+    }
+
+    private static TextItem createLabel() {
+        TextItem ti = TextItem.pool.get().set(20, 30, "label", text);
+        ti.x1 = 1;
+        ti.y1 = 2;
+        ti.x2 = 3;
+        ti.y2 = 4;
+        ti.length = 5;
+        ti.edges = 6;
+        return ti;
+    }
+
+    private static SymbolItem createSymbol() {
+        SymbolItem it = SymbolItem.pool.get();
+        if (symbol.bitmap != null)
+            it.set(40, 50, symbol.bitmap, 90, true);
+        else
+            it.set(40, 50, symbol.texture, 90, true);
+        return it;
+    }
+
+    private static short[] getVertices(VertexData vd) {
+        short[] result = new short[vd.countSize()];
+        int pos = 0;
+        for (VertexData.Chunk c = vd.head(); c != null; c = c.next) {
+            System.arraycopy(c.vertices, 0, result, pos, c.used);
+            pos += c.used;
+        }
+        return result;
+    }
+
+    @Test
+    public void shouldRoundTripBucketsAndLabels() {
+        RenderBucketsCodec codec = new RenderBucketsCodec(styles);
+        RenderBuckets buckets = createBuckets();
+        TextItem label = createLabel();
+        SymbolItem sym = createSymbol();
+
+        byte[] data = codec.encode(buckets, label, sym);
+        assertNotNull(data);
+
+        RenderBuckets result = new RenderBuckets();
+        Inlist.List<TextItem> labels = new Inlist.List<>();
+        Inlist.List<SymbolItem> symbols = new Inlist.List<>();
+        assertTrue(codec.decode(data, result, labels, symbols));
+
+        ArrayList<RenderBucket> expected = new ArrayList<>();
+        for (RenderBucket b = buckets.get(); b != null; b = b.next)
+            expected.add(b);
+        ArrayList<RenderBucket> actual = new ArrayList<>();
+        for (RenderBucket b = result.get(); b != null; b = b.next)
+            actual.add(b);
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            RenderBucket e = expected.get(i);
+            RenderBucket a = actual.get(i);
+            assertEquals(e.type, a.type);
+            assertEquals(e.level, a.level);
+            assertEquals(e.numVertices, a.numVertices);
+            assertEquals(e.numIndices, a.numIndices);
+            assertArrayEquals(getVertices(e.vertexItems), getVertices(a.vertexItems));
+            assertArrayEquals(getVertices(e.indiceItems), getVertices(a.indiceItems));
+        }
+        LineBucket lb = (LineBucket) actual.get(1);
+        assertSame(line, lb.line);
+        assertEquals(1.5f, lb.scale, 0);
+        assertSame(area, ((PolygonBucket) actual.get(0)).area);
+
+        TextItem ti = labels.head();
+        assertNotNull(ti);
+        assertNull(ti.next);
+        assertEquals("label", ti.label);
+        assertSame(text.current(), ti.text);
+        assertEquals(label.x, ti.x, 0);
+        assertEquals(label.y, ti.y, 0);
+        assertEquals(label.x1, ti.x1, 0);
+        assertEquals(label.y1, ti.y1, 0);
+        assertEquals(label.x2, ti.x2, 0);
+        assertEquals(label.y2, ti.y2, 0);
+        assertEquals(label.length, ti.length);
+        assertEquals(label.edges, ti.edges);
+
+        SymbolItem it = symbols.head();
+        assertNotNull(it);
+        assertNull(it.next);
+        assertSame(sym.bitmap, it.bitmap);
+        assertSame(sym.texRegion, it.texRegion);
+        assertEquals(sym.x, it.x, 0);
+        assertEquals(sym.y, it.y, 0);
+        assertEquals(sym.rotation, it.rotation, 0);
+        assertTrue(it.billboard);
+    }
+
+    @Test
+    public void shouldRejectInvalidData() {
+        RenderBucketsCodec codec = new RenderBucketsCodec(styles);
+        byte[] data = codec.encode(createBuckets(), null, null);
+        assertNotNull(data);
+
+        byte[] truncated = new byte[data.length / 2];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        assertFalse(codec.decode(truncated, new RenderBuckets(), null, null));
+    }
+}
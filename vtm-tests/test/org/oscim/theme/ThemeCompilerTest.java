@@ -0,0 +1,239 @@
+package org.oscim.theme;
+
+import org.junit.Test;
+import org.oscim.awt.AwtGraphics;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.headless.HeadlessAssets;
+import org.oscim.renderer.bucket.TextureItem;
+import org.oscim.theme.internal.VtmThemes;
+import org.oscim.theme.rule.Rule;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.CircleStyle;
+import org.oscim.theme.styles.ExtrusionStyle;
+import org.oscim.theme.styles.LineStyle;
+import org.oscim.theme.styles.RenderStyle;
+import org.oscim.theme.styles.SymbolStyle;
+import org.oscim.theme.styles.TextStyle;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ThemeCompilerTest {
+
+    private static XmlRenderThemeStyleMenu createMenu() {
+        XmlRenderThemeStyleMenu menu = new XmlRenderThemeStyleMenu("menu", "en", "base");
+        XmlRenderThemeStyleLayer base = menu.createLayer("base", true, true);
+        base.addCategory("roads");
+        base.addTranslation("en", "Base");
+        base.addTranslation("de", "Basis");
+        XmlRenderThemeStyleLayer pois = menu.createLayer("pois", false, true);
+        pois.addCategory("shops");
+        pois.addCategory("food");
+        base.addOverlay(pois);
+        return menu;
+    }
+
+    @Test
+    public void menuRoundTrip() throws IOException {
+        byte[] data = ThemeCompiler.writeMenu(createMenu(), 42);
+
+        final XmlRenderThemeStyleMenu[] result = new XmlRenderThemeStyleMenu[1];
+        Set<String> categories = ThemeCompiler.readCategories(data, 42, new XmlRenderThemeMenuCallback() {
+            @Override
+            public Set<String> getCategories(XmlRenderThemeStyleMenu menu) {
+                result[0] = menu;
+                return new HashSet<>(Arrays.asList("roads"));
+            }
+        });
+        assertEquals(new HashSet<>(Arrays.asList("roads")), categories);
+
+        XmlRenderThemeStyleMenu menu = result[0];
+        assertEquals("menu", menu.getId());
+        assertEquals("en", menu.getDefaultLanguage());
+        assertEquals("base", menu.getDefaultValue());
+        assertEquals(Arrays.asList("base", "pois"), Arrays.asList(menu.getLayers().keySet().toArray()));
+
+        XmlRenderThemeStyleLayer base = menu.getLayer("base");
+        assertTrue(base.isVisible());
+        assertEquals("Basis", base.getTitle("de"));
+        assertEquals(1, base.getOverlays().size());
+        assertSame(menu.getLayer("pois"), base.getOverlays().get(0));
+        assertEquals(new HashSet<>(Arrays.asList("shops", "food")),
+                menu.getLayer("pois").getCategories());
+    }
+
+    @Test
+    public void menuAbsent() throws IOException {
+        byte[] data = ThemeCompiler.writeMenu(null, 42);
+        assertNull(ThemeCompiler.readCategories(data, 42, null));
+    }
+
+    @Test(expected = IOException.class)
+    public void outdatedKey() throws IOException {
+        byte[] data = ThemeCompiler.writeMenu(createMenu(), 42);
+        ThemeCompiler.readCategories(data, 43, null);
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptData() throws IOException {
+        byte[] data = ThemeCompiler.writeMenu(createMenu(), 42);
+        data[data.length - 1] ^= 1;
+        ThemeCompiler.readCategories(data, 42, null);
+    }
+
+    @Test
+    public void categoriesKey() {
+        long key = 42;
+        assertEquals(key, ThemeCompiler.key(key, null));
+
+        Set<String> a = new HashSet<>(Arrays.asList("roads", "shops"));
+        Set<String> b = new HashSet<>(Arrays.asList("shops", "roads"));
+        Set<String> c = new HashSet<>(Arrays.asList("roads"));
+        assertEquals(ThemeCompiler.key(key, a), ThemeCompiler.key(key, b));
+        assertNotEquals(ThemeCompiler.key(key, a), ThemeCompiler.key(key, c));
+    }
+
+    @Test
+    public void themeRoundTrip() throws Exception {
+        AwtGraphics.init();
+        HeadlessAssets.init("assets/");
+        ThemeFile theme = VtmThemes.DEFAULT;
+        byte[] xml = ThemeCompiler.readXml(theme);
+        long key = ThemeCompiler.key(xml, theme);
+
+        ThemeCompiler.Compiler compiler = ThemeCompiler.parse(theme, xml);
+        RenderTheme parsed = compiler.getRenderTheme();
+        RenderTheme cached = ThemeCompiler.readTheme(
+                ThemeCompiler.writeTheme(compiler, key), key, theme);
+
+        assertEquals(parsed.getLevels(), cached.getLevels());
+        assertEquals(parsed.getMapBackground(), cached.getMapBackground());
+        assertEquals(parsed.isMapsforgeTheme(), cached.isMapsforgeTheme());
+        assertRulesEqual("", parsed.getRules(), cached.getRules());
+    }
+
+    @Test
+    public void cachePrunesOldThemes() throws Exception {
+        AwtGraphics.init();
+        File dir = File.createTempFile("themecache", "");
+        dir.delete();
+        FileThemeCache cache = new FileThemeCache(dir, 2);
+        try {
+            for (int i = 0; i < 4; i++) {
+                File xml = new File(dir, "theme" + i + ".xml");
+                FileOutputStream os = new FileOutputStream(xml);
+                os.write(("<rendertheme xmlns=\"http://opensciencemap.org/rendertheme\" version=\"1\">"
+                        + "<m e=\"way\" k=\"highway\"><line stroke=\"#ff00000" + i + "\" width=\"1\"/></m>"
+                        + "</rendertheme>").getBytes("UTF-8"));
+                os.close();
+                cache.getTheme(new ExternalRenderTheme(xml.getPath()));
+            }
+            int themes = 0;
+            for (File file : dir.listFiles()) {
+                if (file.getName().endsWith(".theme"))
+                    themes++;
+            }
+            assertEquals(2, themes);
+        } finally {
+            for (File file : dir.listFiles())
+                file.delete();
+            dir.delete();
+        }
+    }
+
+    private static void assertRulesEqual(String path, Rule[] expected, Rule[] actual)
+            throws IllegalAccessException {
+        assertEquals(path, expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            Rule e = expected[i];
+            Rule a = actual[i];
+            String p = path + "/" + i;
+
+            /* element, zoom, selector and matcher */
+            assertEquals(p, e.toString(), a.toString());
+            assertEquals(p, e.getType(), a.getType());
+            assertEquals(p, e.getSelector(), a.getSelector());
+            assertEquals(p, e.cat, a.cat);
+            assertArrayEquals(p, e.getKeys(), a.getKeys());
+            assertArrayEquals(p, e.getValues(), a.getValues());
+
+            assertEquals(p, e.styles.length, a.styles.length);
+            for (int j = 0; j < e.styles.length; j++)
+                assertStyleEquals(p + " style " + j, e.styles[j], a.styles[j]);
+
+            assertRulesEqual(p, e.subRules, a.subRules);
+        }
+    }
+
+    private static void assertStyleEquals(String path, RenderStyle expected, RenderStyle actual)
+            throws IllegalAccessException {
+        assertEquals(path, expected.getClass(), actual.getClass());
+        assertFieldsEqual(path, builder(expected), builder(actual));
+    }
+
+    private static Object builder(RenderStyle style) {
+        if (style instanceof AreaStyle)
+            return AreaStyle.builder().set((AreaStyle) style);
+        if (style instanceof CircleStyle)
+            return CircleStyle.builder().set((CircleStyle) style);
+        if (style instanceof ExtrusionStyle)
+            return ExtrusionStyle.builder().set((ExtrusionStyle) style);
+        if (style instanceof LineStyle)
+            return LineStyle.builder().set((LineStyle) style);
+        if (style instanceof SymbolStyle)
+            return SymbolStyle.builder().set((SymbolStyle) style);
+        if (style instanceof TextStyle)
+            return TextStyle.builder().set((TextStyle) style);
+        throw new AssertionError("unknown style " + style.getClass());
+    }
+
+    /**
+     * Compare all public fields of the style builders, bitmaps by size.
+     */
+    private static void assertFieldsEqual(String path, Object expected, Object actual)
+            throws IllegalAccessException {
+        for (Field field : expected.getClass().getFields()) {
+            if (Modifier.isStatic(field.getModifiers()))
+                continue;
+            String name = field.getName();
+            /* not part of the style */
+            if (name.equals("themeCallback") || name.equals("src"))
+                continue;
+
+            String p = path + " " + name;
+            Object e = field.get(expected);
+            Object a = field.get(actual);
+            if (e instanceof TextureItem) {
+                TextureItem te = (TextureItem) e;
+                TextureItem ta = (TextureItem) a;
+                assertEquals(p, te.repeat, ta.repeat);
+                assertEquals(p, te.mipmap, ta.mipmap);
+                assertBitmapEquals(p, te.bitmap, ta.bitmap);
+            } else if (e instanceof Bitmap) {
+                assertBitmapEquals(p, (Bitmap) e, (Bitmap) a);
+            } else if (e instanceof float[]) {
+                assertTrue(p, Arrays.equals((float[]) e, (float[]) a));
+            } else {
+                assertEquals(p, e, a);
+            }
+        }
+    }
+
+    private static void assertBitmapEquals(String path, Bitmap expected, Bitmap actual) {
+        assertEquals(path, expected.getWidth(), actual.getWidth());
+        assertEquals(path, expected.getHeight(), actual.getHeight());
+    }
+}
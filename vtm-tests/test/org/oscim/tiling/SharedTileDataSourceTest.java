@@ -0,0 +1,333 @@
+package org.oscim.tiling;
+
+import org.junit.After;
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.bitmap.PixelBitmap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.oscim.tiling.QueryResult.FAILED;
+import static org.oscim.tiling.QueryResult.SUCCESS;
+
+public class SharedTileDataSourceTest {
+
+    private final CountingTileSource tileSource = new CountingTileSource();
+
+    @After
+    public void tearDown() {
+        SharedTileDataSource.clear();
+    }
+
+    @Test
+    public void shouldNotShareWhenDisabled() {
+        assertTrue(tileSource.getLoaderDataSource() instanceof CountingDataSource);
+
+        tileSource.setRequestSharing(true);
+        assertTrue(tileSource.getLoaderDataSource() instanceof SharedTileDataSource);
+    }
+
+    @Test
+    public void shouldLoadOnceForConcurrentLayers() throws Exception {
+        tileSource.setRequestSharing(true);
+        tileSource.delay = 200;
+
+        final Sink[] sinks = new Sink[3];
+        Thread[] threads = new Thread[sinks.length];
+        for (int i = 0; i < sinks.length; i++) {
+            final ITileDataSource dataSource = tileSource.getLoaderDataSource();
+            final Sink sink = sinks[i] = new Sink();
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    dataSource.query(new MapTile(10, 20, 8), sink);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+
+        assertEquals(1, tileSource.queries.get());
+        for (Sink sink : sinks) {
+            assertSame(SUCCESS, sink.result);
+            assertEquals(CountingDataSource.ELEMENTS, sink.elements);
+            assertEquals("water", sink.value);
+        }
+    }
+
+    @Test
+    public void shouldKeepLoadedTiles() {
+        tileSource.setRequestSharing(true);
+
+        Sink first = new Sink();
+        tileSource.getLoaderDataSource().query(new MapTile(10, 20, 8), first);
+        Sink second = new Sink();
+        tileSource.getLoaderDataSource().query(new MapTile(10, 20, 8), second);
+        Sink other = new Sink();
+        tileSource.getLoaderDataSource().query(new MapTile(11, 20, 8), other);
+
+        assertEquals(2, tileSource.queries.get());
+        assertSame(SUCCESS, second.result);
+        assertEquals(CountingDataSource.ELEMENTS, second.elements);
+        assertSame(SUCCESS, other.result);
+    }
+
+    @Test
+    public void shouldDropExpiredTiles() {
+        tileSource.setRequestSharing(true);
+        long holdTime = SharedTileDataSource.HOLD_TIME;
+        SharedTileDataSource.HOLD_TIME = 0;
+        try {
+            tileSource.getLoaderDataSource().query(new MapTile(10, 20, 8), new Sink());
+            tileSource.getLoaderDataSource().query(new MapTile(10, 20, 8), new Sink());
+        } finally {
+            SharedTileDataSource.HOLD_TIME = holdTime;
+        }
+        assertEquals(2, tileSource.queries.get());
+    }
+
+    @Test
+    public void shouldQueryAgainWhenLoadFailed() {
+        tileSource.setRequestSharing(true);
+        tileSource.fail = true;
+
+        Sink first = new Sink();
+        tileSource.getLoaderDataSource().query(new MapTile(10, 20, 8), first);
+        assertSame(FAILED, first.result);
+
+        tileSource.fail = false;
+        Sink second = new Sink();
+        tileSource.getLoaderDataSource().query(new MapTile(10, 20, 8), second);
+
+        assertEquals(2, tileSource.queries.get());
+        assertSame(SUCCESS, second.result);
+        assertEquals(1, SharedTileDataSource.size());
+    }
+
+    @Test
+    public void shouldShareTileImage() {
+        tileSource.setRequestSharing(true);
+        tileSource.image = new int[]{0xff0000ff, 0xff00ff00, 0xffff0000, 0xffffffff};
+
+        Sink first = new Sink();
+        tileSource.getLoaderDataSource().query(new MapTile(10, 20, 8), first);
+        Sink second = new Sink();
+        tileSource.getLoaderDataSource().query(new MapTile(10, 20, 8), second);
+
+        assertEquals(1, tileSource.queries.get());
+        assertTrue(first.bitmap instanceof TestBitmap);
+        assertTrue(second.bitmap instanceof PixelBitmap);
+        assertEquals(2, second.bitmap.getWidth());
+        assertEquals(2, second.bitmap.getHeight());
+        assertArrayEquals(tileSource.image, second.bitmap.getPixels());
+        assertSame(SUCCESS, second.result);
+    }
+
+    @Test
+    public void shouldQueryAgainWhenTileImageUnreadable() {
+        tileSource.setRequestSharing(true);
+        /* backend without pixel access */
+        tileSource.image = new int[0];
+
+        Sink first = new Sink();
+        tileSource.getLoaderDataSource().query(new MapTile(10, 20, 8), first);
+        Sink second = new Sink();
+        tileSource.getLoaderDataSource().query(new MapTile(10, 20, 8), second);
+
+        assertEquals(2, tileSource.queries.get());
+        assertTrue(first.bitmap instanceof TestBitmap);
+        assertTrue(second.bitmap instanceof TestBitmap);
+        assertSame(SUCCESS, second.result);
+        assertEquals(0, SharedTileDataSource.size());
+    }
+
+    @Test
+    public void shouldKeepCancelBeforeQuery() throws Exception {
+        tileSource.setRequestSharing(true);
+        tileSource.delay = 200;
+
+        final ITileDataSource loading = tileSource.getLoaderDataSource();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loading.query(new MapTile(10, 20, 8), new Sink());
+            }
+        });
+        thread.start();
+        while (SharedTileDataSource.size() == 0)
+            Thread.yield();
+
+        ITileDataSource waiting = tileSource.getLoaderDataSource();
+        waiting.cancel();
+        Sink canceled = new Sink();
+        waiting.query(new MapTile(10, 20, 8), canceled);
+        assertSame(FAILED, canceled.result);
+
+        /* the cancel applies to one query only */
+        Sink next = new Sink();
+        waiting.query(new MapTile(10, 20, 8), next);
+        assertSame(SUCCESS, next.result);
+        thread.join();
+    }
+
+    static class Sink implements ITileDataSink {
+        int elements;
+        String value;
+        Bitmap bitmap;
+        QueryResult result;
+
+        @Override
+        public void process(MapElement element) {
+            elements++;
+            value = element.tags.getValue("natural");
+            /* sinks may modify the elements */
+            element.tags.clear();
+            element.points[0] = -1;
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            this.result = result;
+        }
+    }
+
+    static class CountingTileSource extends TileSource {
+        final AtomicInteger queries = new AtomicInteger();
+        volatile long delay;
+        volatile boolean fail;
+        volatile int[] image;
+
+        CountingTileSource() {
+            super(0, 18);
+        }
+
+        @Override
+        public ITileDataSource getDataSource() {
+            return new CountingDataSource(this);
+        }
+
+        @Override
+        public OpenResult open() {
+            return OpenResult.SUCCESS;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    static class CountingDataSource implements ITileDataSource {
+        static final int ELEMENTS = 5;
+
+        private final CountingTileSource mTileSource;
+        private final MapElement mElement = new MapElement();
+
+        CountingDataSource(CountingTileSource tileSource) {
+            mTileSource = tileSource;
+        }
+
+        @Override
+        public void query(MapTile tile, ITileDataSink sink) {
+            mTileSource.queries.incrementAndGet();
+            try {
+                Thread.sleep(mTileSource.delay);
+            } catch (InterruptedException e) {
+                sink.completed(FAILED);
+                return;
+            }
+            if (mTileSource.fail) {
+                sink.completed(FAILED);
+                return;
+            }
+            int[] image = mTileSource.image;
+            if (image != null) {
+                sink.setTileImage(new TestBitmap(2, 2, image));
+                sink.completed(SUCCESS);
+                return;
+            }
+            for (int i = 0; i < ELEMENTS; i++) {
+                mElement.clear();
+                mElement.startPolygon();
+                mElement.addPoint(0, 0);
+                mElement.addPoint(10, 0);
+                mElement.addPoint(10, 10);
+                mElement.tags.add(new Tag("natural", "water"));
+                sink.process(mElement);
+            }
+            sink.completed(SUCCESS);
+        }
+
+        @Override
+        public void dispose() {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+
+    static class TestBitmap implements Bitmap {
+        private final int width, height;
+        private final int[] pixels;
+
+        TestBitmap(int width, int height, int[] pixels) {
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public void recycle() {
+        }
+
+        @Override
+        public int[] getPixels() {
+            return pixels.clone();
+        }
+
+        @Override
+        public void eraseColor(int color) {
+        }
+
+        @Override
+        public void uploadToTexture(boolean replace) {
+        }
+
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+
+        @Override
+        public byte[] getPngEncodedData() {
+            return null;
+        }
+
+        @Override
+        public void scaleTo(int width, int height) {
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.oscim.tiling.source;
+
+import org.junit.Test;
+import org.oscim.tiling.CacheMetadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CacheHeadersTest {
+    private static final long NOW = 1700000000000L;
+
+    @Test
+    public void parse_shouldUseMaxAge() {
+        CacheMetadata m = CacheHeaders.parse(NOW, "public, max-age=60",
+                "Thu, 01 Jan 1970 00:00:00 GMT", "\"abc\"", null);
+        assertEquals(NOW, m.fetchTime);
+        assertEquals(NOW + 60000, m.expires);
+        assertEquals("\"abc\"", m.etag);
+        assertNull(m.lastModified);
+        assertFalse(m.isExpired(NOW + 59999));
+        assertTrue(m.isExpired(NOW + 60000));
+    }
+
+    @Test
+    public void parse_shouldUseExpires() {
+        CacheMetadata m = CacheHeaders.parse(NOW, null,
+                "Tue, 14 Nov 2023 22:14:20 GMT", null, "Mon, 13 Nov 2023 10:00:00 GMT");
+        assertEquals(1700000060000L, m.expires);
+        assertEquals("Mon, 13 Nov 2023 10:00:00 GMT", m.lastModified);
+    }
+
+    @Test
+    public void parse_noCacheShouldExpireImmediately() {
+        assertTrue(CacheHeaders.parse(NOW, "no-cache", null, null, null).isExpired(NOW));
+        assertTrue(CacheHeaders.parse(NOW, null, "0", null, null).isExpired(NOW));
+    }
+
+    @Test
+    public void parse_withoutHeadersShouldNeverExpire() {
+        CacheMetadata m = CacheHeaders.parse(NOW, null, null, null, null);
+        assertEquals(0, m.expires);
+        assertFalse(m.isExpired(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void refresh_shouldKeepValidators() {
+        CacheMetadata cached = new CacheMetadata(NOW, NOW + 1000, "\"abc\"", "Mon, 13 Nov 2023 10:00:00 GMT");
+        CacheMetadata m = cached.refresh(CacheHeaders.parse(NOW + 5000, "max-age=10", null, null, null));
+        assertEquals(NOW + 5000, m.fetchTime);
+        assertEquals(NOW + 15000, m.expires);
+        assertEquals("\"abc\"", m.etag);
+        assertEquals(cached.lastModified, m.lastModified);
+    }
+}
@@ -0,0 +1,226 @@
+package org.oscim.tiling.source;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.Tile;
+import org.oscim.tiling.source.oscimap4.OSciMap4TileSource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LwHttpTest {
+    private ServerSocket server;
+    private Thread serverThread;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int maxRequestsPerConnection = Integer.MAX_VALUE;
+    private UrlTileSource tileSource;
+
+    @Before
+    public void setUp() throws Exception {
+        LwHttp.closeIdleConnections();
+        server = new ServerSocket(0);
+        serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!server.isClosed()) {
+                    try {
+                        final Socket s = server.accept();
+                        connections.incrementAndGet();
+                        new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                serve(s);
+                            }
+                        }).start();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        serverThread.start();
+        tileSource = new OSciMap4TileSource("http://127.0.0.1:" + server.getLocalPort() + "/tiles");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        LwHttp.closeIdleConnections();
+    }
+
+    /**
+     * Answers requests in order with the request path as content. Tiles
+     * with x 404 or 204 are answered with that status.
+     */
+    private void serve(Socket s) {
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+            OutputStream out = s.getOutputStream();
+            for (int n = 1; ; n++) {
+                String line = in.readLine();
+                if (line == null)
+                    break;
+                String path = line.split(" ")[1];
+                while ((line = in.readLine()) != null && !line.isEmpty()) ;
+                requests.incrementAndGet();
+                boolean close = n >= maxRequestsPerConnection;
+                String status = "200 OK";
+                if (path.startsWith("/tiles/10/404/")) {
+                    status = "404 Not Found";
+                    path = "not found";
+                } else if (path.startsWith("/tiles/10/204/")) {
+                    status = "204 No Content";
+                    path = "";
+                }
+                out.write(("HTTP/1.1 " + status + "\r\nContent-Length: " + path.length()
+                        + (close ? "\r\nConnection: close" : "") + "\r\n\r\n" + path).getBytes());
+                out.flush();
+                if (close)
+                    break;
+            }
+        } catch (IOException e) {
+            /* closed */
+        } finally {
+            try {
+                s.close();
+            } catch (IOException e) {
+                /* ignore */
+            }
+        }
+    }
+
+    private static String load(HttpEngine engine, Tile tile) throws IOException {
+        engine.sendRequest(tile);
+        InputStream is = engine.read();
+        StringBuilder sb = new StringBuilder();
+        for (int c; (c = is.read()) >= 0; )
+            sb.append((char) c);
+        assertTrue(engine.requestCompleted(true));
+        return sb.toString();
+    }
+
+    private List<String> loadConcurrently(int threads, final int tiles) throws Exception {
+        final List<String> errors = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final int id = i;
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    HttpEngine engine = tileSource.getHttpEngine();
+                    for (int j = 0; j < tiles; j++) {
+                        try {
+                            String path = load(engine, new Tile(id, j, (byte) 10));
+                            String expected = "/tiles/10/" + id + "/" + j + ".vtm";
+                            if (!expected.equals(path))
+                                throw new IOException(expected + " != " + path);
+                        } catch (Exception e) {
+                            synchronized (errors) {
+                                errors.add(e.toString());
+                            }
+                        }
+                    }
+                    engine.close();
+                }
+            });
+            workers.add(t);
+            t.start();
+        }
+        for (Thread t : workers)
+            t.join();
+        return errors;
+    }
+
+    @Test
+    public void shouldReuseConnection() throws Exception {
+        HttpEngine engine = tileSource.getHttpEngine();
+        assertEquals("/tiles/10/1/2.vtm", load(engine, new Tile(1, 2, (byte) 10)));
+        assertEquals("/tiles/10/3/4.vtm", load(engine, new Tile(3, 4, (byte) 10)));
+
+        /* another instance shares the pooled connection */
+        HttpEngine other = tileSource.getHttpEngine();
+        assertEquals("/tiles/10/5/6.vtm", load(other, new Tile(5, 6, (byte) 10)));
+        assertEquals(1, connections.get());
+    }
+
+    @Test
+    public void shouldPipelineConcurrentRequests() throws Exception {
+        List<String> errors = loadConcurrently(8, 50);
+        assertEquals(errors.toString(), 0, errors.size());
+        /* no requests sent again */
+        assertEquals(400, requests.get());
+        /* connections are replaced after 100 requests */
+        assertTrue(connections.get() <= 400 / 100 + LwHttp.CONNECTIONS_PER_HOST);
+    }
+
+    @Test
+    public void shouldResendWhenServerClosesConnection() throws Exception {
+        maxRequestsPerConnection = 7;
+        List<String> errors = loadConcurrently(8, 50);
+        assertEquals(errors.toString(), 0, errors.size());
+        assertTrue(connections.get() >= 400 / 7);
+    }
+
+    @Test
+    public void shouldRaiseLimitAfterEarlyClose() throws Exception {
+        maxRequestsPerConnection = 1;
+        HttpEngine engine = tileSource.getHttpEngine();
+        assertEquals("/tiles/10/0/0.vtm", load(engine, new Tile(0, 0, (byte) 10)));
+
+        maxRequestsPerConnection = Integer.MAX_VALUE;
+        for (int i = 1; i < 200; i++)
+            assertEquals("/tiles/10/0/" + i + ".vtm", load(engine, new Tile(0, i, (byte) 10)));
+        /* keep-alive is used again */
+        assertTrue(connections.get() < 50);
+    }
+
+    @Test
+    public void shouldKeepPipelineAfterHttpError() throws Exception {
+        int connectionsPerHost = LwHttp.CONNECTIONS_PER_HOST;
+        LwHttp.CONNECTIONS_PER_HOST = 1;
+        try {
+            HttpEngine missing = tileSource.getHttpEngine();
+            HttpEngine empty = tileSource.getHttpEngine();
+            HttpEngine valid = tileSource.getHttpEngine();
+            missing.sendRequest(new Tile(404, 0, (byte) 10));
+            empty.sendRequest(new Tile(204, 0, (byte) 10));
+            valid.sendRequest(new Tile(1, 2, (byte) 10));
+
+            for (HttpEngine engine : new HttpEngine[]{missing, empty}) {
+                try {
+                    engine.read();
+                    fail();
+                } catch (IOException e) {
+                    /* expected */
+                }
+                engine.requestCompleted(false);
+            }
+
+            InputStream is = valid.read();
+            StringBuilder sb = new StringBuilder();
+            for (int c; (c = is.read()) >= 0; )
+                sb.append((char) c);
+            assertTrue(valid.requestCompleted(true));
+            assertEquals("/tiles/10/1/2.vtm", sb.toString());
+        } finally {
+            LwHttp.CONNECTIONS_PER_HOST = connectionsPerHost;
+        }
+        /* the requests after the errors were not sent again */
+        assertEquals(3, requests.get());
+        assertEquals(1, connections.get());
+    }
+}
@@ -0,0 +1,243 @@
+package org.oscim.tiling.source;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.BoundingBox;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache;
+import org.oscim.tiling.source.oscimap4.OSciMap4TileSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TileDownloaderTest {
+    private static final BoundingBox BBOX = new BoundingBox(53.0, 8.0, 53.2, 8.3);
+
+    private OSciMap4TileSource tileSource;
+    private MemoryCache cache;
+    private final List<Tile> requests = new ArrayList<>();
+    private TileDownloader cancelAfter;
+    private int cancelCount;
+    private File progressFile;
+
+    @Before
+    public void setUp() throws Exception {
+        tileSource = new OSciMap4TileSource("http://localhost/tiles");
+        cache = new MemoryCache();
+        tileSource.setCache(cache);
+        tileSource.setHttpEngine(new HttpEngine.Factory() {
+            @Override
+            public HttpEngine create(UrlTileSource tileSource) {
+                return new FakeEngine();
+            }
+        });
+        progressFile = File.createTempFile("download", ".progress");
+        progressFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        progressFile.delete();
+    }
+
+    @Test
+    public void shouldEnumerateRegionPerZoomLevel() {
+        TileDownloader downloader = new TileDownloader(tileSource, BBOX, 8, 12);
+
+        HashSet<Tile> tiles = new HashSet<>();
+        Tile prev = null;
+        for (long i = 0; i < downloader.getTileCount(); i++) {
+            Tile t = downloader.getTile(i);
+            assertTrue(tiles.add(t));
+            if (prev != null)
+                assertTrue(t.zoomLevel >= prev.zoomLevel);
+            prev = t;
+        }
+        /* the region is within one tile at z8 */
+        assertEquals(8, downloader.getTile(0).zoomLevel);
+        assertEquals(1, count(tiles, 8));
+        assertEquals(12, downloader.getTile(downloader.getTileCount() - 1).zoomLevel);
+    }
+
+    @Test
+    public void shouldFetchMissingTilesOnly() throws Exception {
+        TileDownloader downloader = new TileDownloader(tileSource, BBOX, 8, 12);
+        downloader.setThreads(3);
+        downloader.start();
+        downloader.await();
+
+        assertEquals(downloader.getTileCount(), requests.size());
+        assertEquals(downloader.getTileCount(), cache.tiles.size());
+
+        requests.clear();
+        final TileDownloader.Progress[] result = new TileDownloader.Progress[1];
+        downloader.setListener(new Listener() {
+            @Override
+            public void onFinished(TileDownloader d, TileDownloader.Progress progress, boolean canceled) {
+                result[0] = progress;
+            }
+        });
+        downloader.start();
+        downloader.await();
+
+        assertEquals(0, requests.size());
+        assertEquals(downloader.getTileCount(), result[0].skipped);
+        assertEquals(downloader.getTileCount(), result[0].done);
+    }
+
+    @Test
+    public void shouldResumeFromProgressFile() throws Exception {
+        TileDownloader downloader = new TileDownloader(tileSource, BBOX, 8, 12);
+        downloader.setThreads(1);
+        downloader.setProgressFile(progressFile);
+        final boolean[] canceled = new boolean[1];
+        downloader.setListener(new Listener() {
+            @Override
+            public void onFinished(TileDownloader d, TileDownloader.Progress progress, boolean c) {
+                canceled[0] = c;
+            }
+        });
+        cancelAfter = downloader;
+        cancelCount = 5;
+        downloader.start();
+        downloader.await();
+
+        assertTrue(canceled[0]);
+        assertEquals(5, requests.size());
+        assertTrue(progressFile.exists());
+
+        cancelAfter = null;
+        final TileDownloader.Progress[] result = new TileDownloader.Progress[1];
+        downloader = new TileDownloader(tileSource, BBOX, 8, 12);
+        downloader.setProgressFile(progressFile);
+        downloader.setListener(new Listener() {
+            @Override
+            public void onFinished(TileDownloader d, TileDownloader.Progress progress, boolean c) {
+                result[0] = progress;
+                canceled[0] = c;
+            }
+        });
+        downloader.start();
+        downloader.await();
+
+        assertFalse(canceled[0]);
+        /* resumed after the downloaded tiles, without checking them again */
+        assertEquals(0, result[0].skipped);
+        assertEquals(downloader.getTileCount(), requests.size());
+        assertEquals(downloader.getTileCount(), cache.tiles.size());
+        assertFalse(progressFile.exists());
+    }
+
+    private static int count(HashSet<Tile> tiles, int zoom) {
+        int n = 0;
+        for (Tile t : tiles)
+            if (t.zoomLevel == zoom)
+                n++;
+        return n;
+    }
+
+    private abstract static class Listener implements TileDownloader.Listener {
+        @Override
+        public void onProgress(TileDownloader downloader, TileDownloader.Progress progress) {
+        }
+    }
+
+    private class FakeEngine implements HttpEngine {
+        private Tile tile;
+
+        @Override
+        public InputStream read() {
+            return new ByteArrayInputStream(tile.toString().getBytes());
+        }
+
+        @Override
+        public void sendRequest(Tile tile) {
+            this.tile = tile;
+            synchronized (requests) {
+                requests.add(tile);
+                if (cancelAfter != null && requests.size() == cancelCount)
+                    cancelAfter.cancel();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void setCache(OutputStream os) {
+        }
+
+        @Override
+        public boolean requestCompleted(boolean success) {
+            return success;
+        }
+    }
+
+    private static class MemoryCache implements ITileCache {
+        final Map<Tile, byte[]> tiles = new HashMap<>();
+
+        @Override
+        public TileWriter writeTile(final Tile tile) {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            return new TileWriter() {
+                @Override
+                public Tile getTile() {
+                    return tile;
+                }
+
+                @Override
+                public OutputStream getOutputStream() {
+                    return os;
+                }
+
+                @Override
+                public void complete(boolean success) {
+                    if (success) {
+                        synchronized (tiles) {
+                            tiles.put(tile, os.toByteArray());
+                        }
+                    }
+                }
+            };
+        }
+
+        @Override
+        public TileReader getTile(final Tile tile) {
+            final byte[] data;
+            synchronized (tiles) {
+                data = tiles.get(tile);
+            }
+            if (data == null)
+                return null;
+            return new TileReader() {
+                @Override
+                public Tile getTile() {
+                    return tile;
+                }
+
+                @Override
+                public InputStream getInputStream() {
+                    return new ByteArrayInputStream(data);
+                }
+            };
+        }
+
+        @Override
+        public void setCacheSize(long size) {
+        }
+    }
+}
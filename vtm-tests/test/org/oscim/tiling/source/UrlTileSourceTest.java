@@ -56,6 +56,22 @@ public class UrlTileSourceTest {
         assertThat(dataSource.getConnection()).isInstanceOf(OkHttpEngine.class);
     }
 
+    @Test
+    public void shouldShareRevalidator() throws Exception {
+        TileRevalidator first = TileRevalidator.acquire(tileSource);
+        TileRevalidator second = TileRevalidator.acquire(tileSource);
+        assertThat(second).isSameAs(first);
+
+        second.release();
+        assertThat(TileRevalidator.acquire(tileSource)).isSameAs(first);
+        first.release();
+        first.release();
+
+        TileRevalidator other = TileRevalidator.acquire(tileSource);
+        assertThat(other).isNotSameAs(first);
+        other.release();
+    }
+
     class TestTileSource extends UrlTileSource {
         public TestTileSource(String urlString, String tilePath) {
             super(urlString, tilePath);
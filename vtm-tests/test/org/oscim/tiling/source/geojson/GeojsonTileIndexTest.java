@@ -0,0 +1,121 @@
+package org.oscim.tiling.source.geojson;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.MercatorProjection;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.QueryResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GeojsonTileIndexTest {
+
+    private static final String GEOJSON = "{\"type\":\"FeatureCollection\",\"features\":["
+            + "{\"type\":\"Feature\",\"properties\":{\"name\":\"point\"},"
+            + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[10,10]}},"
+            + "{\"type\":\"Feature\",\"properties\":{\"name\":\"line\"},"
+            + "\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[-100,-20],[-90,-30]]}},"
+            + "{\"type\":\"Feature\",\"properties\":{\"name\":\"area\"},"
+            + "\"geometry\":{\"type\":\"Polygon\",\"coordinates\":"
+            + "[[[-30,40],[-25,40],[-25,45],[-30,45],[-30,40]]]}}"
+            + "]}";
+
+    private GeojsonTileIndex index;
+
+    private static class Collector implements ITileDataSink {
+        final List<GeometryType> types = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+        final List<float[]> points = new ArrayList<>();
+
+        @Override
+        public void process(MapElement element) {
+            types.add(element.type);
+            names.add(element.tags.getValue("name"));
+            float[] p = new float[element.pointNextPos];
+            System.arraycopy(element.points, 0, p, 0, p.length);
+            points.add(p);
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        index = new GeojsonTileIndex(new GeojsonFileTileSource(), 14, 16, 0.5f, 8);
+        index.load(new ByteArrayInputStream(GEOJSON.getBytes(Charset.forName("UTF-8"))));
+    }
+
+    private Collector query(int x, int y, int z) {
+        Collector sink = new Collector();
+        index.query(new Tile(x, y, (byte) z), sink, new MapElement());
+        return sink;
+    }
+
+    @Test
+    public void shouldIndexAllFeatures() {
+        assertEquals(3, index.getNumFeatures());
+    }
+
+    @Test
+    public void shouldFindFeaturesOfTile() {
+        Collector sink = query(1, 0, 1);
+        assertEquals(1, sink.names.size());
+        assertEquals("point", sink.names.get(0));
+        assertEquals(GeometryType.POINT, sink.types.get(0));
+
+        float x = (float) ((MercatorProjection.longitudeToX(10) * 2 - 1) * Tile.SIZE);
+        float y = (float) (MercatorProjection.latitudeToY(10) * 2 * Tile.SIZE);
+        assertEquals(x, sink.points.get(0)[0], 0.01f);
+        assertEquals(y, sink.points.get(0)[1], 0.01f);
+
+        sink = query(0, 1, 1);
+        assertEquals(1, sink.names.size());
+        assertEquals("line", sink.names.get(0));
+        assertEquals(GeometryType.LINE, sink.types.get(0));
+
+        sink = query(0, 0, 1);
+        assertEquals(1, sink.names.size());
+        assertEquals("area", sink.names.get(0));
+        assertEquals(GeometryType.POLY, sink.types.get(0));
+        /* closing point is dropped */
+        assertEquals(8, sink.points.get(0).length);
+    }
+
+    @Test
+    public void shouldFindNothingInEmptyTile() {
+        Collector sink = new Collector();
+        assertFalse(index.query(new Tile(1, 1, (byte) 1), sink, new MapElement()));
+        assertTrue(sink.names.isEmpty());
+    }
+
+    @Test
+    public void shouldFindAllFeaturesInWorldTile() {
+        Collector sink = query(0, 0, 0);
+        assertEquals(3, sink.names.size());
+    }
+
+    @Test
+    public void shouldKeepIndexedTile() {
+        Tile tile = new Tile(0, 0, (byte) 1);
+        assertSame(index.getTile(tile), index.getTile(tile));
+    }
+}
@@ -0,0 +1,104 @@
+package org.oscim.tiling.source.hills;
+
+import org.junit.Test;
+import org.oscim.awt.AwtGraphics;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.backend.canvas.Color;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.QueryResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AlphaBitmapTest {
+
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 8;
+
+    private static AlphaBitmap createBitmap(int color) {
+        byte[] alpha = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < alpha.length; i++)
+            alpha[i] = (byte) (i * 7);
+        return new AlphaBitmap(WIDTH, HEIGHT, color, alpha);
+    }
+
+    private static Bitmap decode(byte[] data) throws IOException {
+        final Bitmap[] result = new Bitmap[1];
+        ITileDataSink sink = new ITileDataSink() {
+            @Override
+            public void process(MapElement element) {
+            }
+
+            @Override
+            public void setTileImage(Bitmap bitmap) {
+                result[0] = bitmap;
+            }
+
+            @Override
+            public void completed(QueryResult result) {
+            }
+        };
+        InputStream is = new ByteArrayInputStream(data);
+        assertTrue(new HillshadingTileSource.TileDecoder().decode(new Tile(0, 0, (byte) 0), sink, is));
+        return result[0];
+    }
+
+    private void shouldRoundTripRaw(boolean compress) throws IOException {
+        AlphaBitmap bitmap = createBitmap(0xff336699);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        bitmap.write(os, compress);
+
+        InputStream is = new ByteArrayInputStream(os.toByteArray());
+        assertTrue(AlphaBitmap.isRaw(is));
+        AlphaBitmap result = AlphaBitmap.read(is);
+
+        assertEquals(WIDTH, result.getWidth());
+        assertEquals(HEIGHT, result.getHeight());
+        assertEquals(bitmap.getColor(), result.getColor());
+        assertArrayEquals(bitmap.getPixels(), result.getPixels());
+    }
+
+    @Test
+    public void shouldRoundTripRaw() throws IOException {
+        shouldRoundTripRaw(false);
+    }
+
+    @Test
+    public void shouldRoundTripCompressedRaw() throws IOException {
+        shouldRoundTripRaw(true);
+    }
+
+    @Test
+    public void shouldDecodeRawTile() throws IOException {
+        AlphaBitmap bitmap = createBitmap(Color.BLACK);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        bitmap.write(os, true);
+
+        Bitmap result = decode(os.toByteArray());
+        assertTrue(result instanceof AlphaBitmap);
+        assertArrayEquals(bitmap.getPixels(), result.getPixels());
+    }
+
+    @Test
+    public void shouldDecodeLegacyPngTile() throws IOException {
+        AwtGraphics.init();
+        AlphaBitmap bitmap = createBitmap(Color.BLACK);
+        byte[] png = bitmap.getPngEncodedData();
+        assertFalse(AlphaBitmap.isRaw(new ByteArrayInputStream(png)));
+
+        Bitmap result = decode(png);
+        assertFalse(result instanceof AlphaBitmap);
+        assertEquals(WIDTH, result.getWidth());
+        assertEquals(HEIGHT, result.getHeight());
+        assertArrayEquals(bitmap.getPixels(), result.getPixels());
+    }
+}
@@ -0,0 +1,123 @@
+package org.oscim.tiling.source.hills;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.MercatorProjection;
+import org.oscim.core.Tile;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HgtShadingTest {
+
+    private static final int SIZE = 5;
+
+    /**
+     * Elevation step per sample of the ramp rising to the east.
+     */
+    private static final int STEP = 2000;
+
+    private File folder;
+
+    /**
+     * Write a cell of the ramp, columns continue the ones of the western neighbor.
+     */
+    private File writeCell(String name, int firstCol) throws IOException {
+        File file = new File(folder, name);
+        DataOutputStream os = new DataOutputStream(new FileOutputStream(file));
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++)
+                os.writeShort((firstCol + col) * STEP);
+        }
+        os.close();
+        return file;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        folder = File.createTempFile("hgt", "");
+        assertTrue(folder.delete());
+        assertTrue(folder.mkdir());
+        writeCell("N47E011.hgt", 0);
+        writeCell("N47E012.hgt", SIZE - 1);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        folder.delete();
+    }
+
+    @Test
+    public void shouldReadSamplesAtCellEdges() {
+        HgtFile file = HgtFile.create(new File(folder, "N47E012.hgt"));
+        assertNotNull(file);
+        assertEquals(47, file.lat);
+        assertEquals(12, file.lon);
+        assertEquals(SIZE, file.size);
+
+        /* the west column overlaps with the east column of the neighbor */
+        HgtFile west = HgtFile.create(new File(folder, "N47E011.hgt"));
+        for (int row = 0; row < SIZE; row++)
+            assertEquals(west.getElevation(row, SIZE - 1), file.getElevation(row, 0));
+        assertEquals((2 * SIZE - 2) * STEP, file.getElevation(SIZE - 1, SIZE - 1));
+    }
+
+    @Test
+    public void shouldIgnoreInvalidFiles() throws IOException {
+        File file = new File(folder, "S01W001.hgt");
+        DataOutputStream os = new DataOutputStream(new FileOutputStream(file));
+        os.writeShort(0);
+        os.writeShort(0);
+        os.writeShort(0);
+        os.close();
+        assertNull(HgtFile.create(file));
+        assertNull(HgtFile.create(new File(folder, "readme.txt")));
+
+        HgtFolder hgt = new HgtFolder(folder);
+        assertEquals(2, hgt.size());
+        assertNotNull(hgt.get(47, 11));
+        assertNotNull(hgt.get(47, 12 + 360));
+        assertNull(hgt.get(46, 11));
+    }
+
+    @Test
+    public void shouldShadeAcrossCellEdges() {
+        HgtShading shading = new HgtShading(new HgtFolder(folder), 90, 45, 1, 16);
+
+        /* tile containing the edge between both cells at longitude 12 */
+        byte zoom = 8;
+        long mapSize = MercatorProjection.getMapSize(zoom);
+        int tileX = (int) (MercatorProjection.longitudeToPixelX(12, mapSize) / Tile.SIZE);
+        int tileY = (int) (MercatorProjection.latitudeToPixelY(47.5, mapSize) / Tile.SIZE);
+        Tile tile = new Tile(tileX, tileY, zoom);
+        double west = MercatorProjection.pixelXToLongitude(tileX * Tile.SIZE, mapSize);
+        double east = MercatorProjection.pixelXToLongitude((tileX + 1) * Tile.SIZE, mapSize);
+        assertTrue(west > 11 && west < 12 && east > 12 && east < 13);
+
+        byte[] alpha = shading.render(tile, 255);
+
+        /* the slope is uniform, so is the shading of each row when
+         * samples at the edge are read from the neighboring cell */
+        boolean shaded = false;
+        for (int y = 0; y < Tile.SIZE; y++) {
+            int first = alpha[y * Tile.SIZE] & 0xff;
+            for (int x = 1; x < Tile.SIZE; x++)
+                assertEquals(first, alpha[y * Tile.SIZE + x] & 0xff, 1);
+            shaded |= first > 0;
+        }
+        assertTrue(shaded);
+    }
+}
@@ -0,0 +1,211 @@
+package org.oscim.tiling.source.mapfile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.core.MercatorProjection;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MapFileCancelTest {
+
+    /**
+     * One sub-file at base zoom level 2 with 2x2 blocks of one POI each.
+     */
+    private static final int BASE_ZOOM = 2;
+    private static final int BLOCKS = 2;
+
+    private File file;
+    private MapFileTileSource tileSource;
+
+    private static void writeUnsigned(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static void writeSigned(DataOutputStream out, int value) throws IOException {
+        int sign = value < 0 ? 0x40 : 0;
+        value = Math.abs(value);
+        while ((value & ~0x3f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value | sign);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        writeUnsigned(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] createBlock(int x, int y) throws IOException {
+        /* POI in the center of the base tile */
+        int tileLat = (int) (Projection.tileYToLatitude(y, BASE_ZOOM) * 1E6);
+        int tileLon = (int) (Projection.tileXToLongitude(x, BASE_ZOOM) * 1E6);
+        double size = 1.0 / (1 << BASE_ZOOM);
+        int lat = (int) (MercatorProjection.toLatitude((y + 0.5) * size) * 1E6);
+        int lon = (int) (MercatorProjection.toLongitude((x + 0.5) * size) * 1E6);
+
+        ByteArrayOutputStream poi = new ByteArrayOutputStream();
+        DataOutputStream p = new DataOutputStream(poi);
+        writeSigned(p, lat - tileLat);
+        writeSigned(p, lon - tileLon);
+        p.writeByte(1); // layer 0, 1 tag
+        writeUnsigned(p, 0);
+        p.writeByte(0); // no features
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        DataOutputStream b = new DataOutputStream(block);
+        /* zoom table for zoom levels 0 to 2: POIs and ways */
+        writeUnsigned(b, 1);
+        writeUnsigned(b, 0);
+        for (int i = 0; i < 4; i++)
+            writeUnsigned(b, 0);
+        writeUnsigned(b, poi.size());
+        b.write(poi.toByteArray());
+        return block.toByteArray();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        int indexSize = BLOCKS * BLOCKS * 5;
+        for (int y = 0; y < BLOCKS; y++) {
+            for (int x = 0; x < BLOCKS; x++) {
+                long pointer = indexSize + blocks.size();
+                for (int shift = 32; shift >= 0; shift -= 8)
+                    index.write((int) (pointer >> shift));
+                blocks.write(createBlock(x, y));
+            }
+        }
+        long subFileSize = indexSize + blocks.size();
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream h = new DataOutputStream(header);
+        h.writeInt(3); // version
+        int fileSizePos = h.size();
+        h.writeLong(0);
+        h.writeLong(1500000000000L);
+        /* bounding box within the top left 2x2 tiles of zoom level 2 */
+        h.writeInt(1000000);
+        h.writeInt(-179000000);
+        h.writeInt(80000000);
+        h.writeInt(-1000000);
+        h.writeShort(256);
+        writeString(h, "Mercator");
+        h.writeByte(0); // no optional fields
+        h.writeShort(1);
+        writeString(h, "amenity=cafe");
+        h.writeShort(0);
+        h.writeByte(1);
+        h.writeByte(BASE_ZOOM);
+        h.writeByte(0);
+        h.writeByte(BASE_ZOOM);
+        int startAddressPos = h.size();
+        h.writeLong(0);
+        h.writeLong(subFileSize);
+
+        byte[] magic = "mapsforge binary OSM".getBytes("US-ASCII");
+        long startAddress = magic.length + 4 + header.size();
+        long fileSize = startAddress + subFileSize;
+        byte[] headerData = header.toByteArray();
+        for (int i = 0; i < 8; i++) {
+            headerData[fileSizePos + i] = (byte) (fileSize >> (56 - i * 8));
+            headerData[startAddressPos + i] = (byte) (startAddress >> (56 - i * 8));
+        }
+
+        file = File.createTempFile("test", ".map");
+        DataOutputStream os = new DataOutputStream(new FileOutputStream(file));
+        os.write(magic);
+        os.writeInt(headerData.length);
+        os.write(headerData);
+        os.write(index.toByteArray());
+        os.write(blocks.toByteArray());
+        os.close();
+
+        tileSource = new MapFileTileSource();
+        tileSource.setMapFile(file.getPath());
+        assertTrue(tileSource.open().isSuccess());
+    }
+
+    @After
+    public void tearDown() {
+        tileSource.close();
+        file.delete();
+    }
+
+    private static class Sink implements ITileDataSink {
+        final ITileDataSource dataSource;
+        final boolean cancel;
+        int elements;
+        QueryResult result;
+
+        Sink(ITileDataSource dataSource, boolean cancel) {
+            this.dataSource = dataSource;
+            this.cancel = cancel;
+        }
+
+        @Override
+        public void process(MapElement element) {
+            elements++;
+            if (cancel)
+                dataSource.cancel();
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            this.result = result;
+        }
+    }
+
+    @Test
+    public void shouldReadAllBlocks() {
+        ITileDataSource dataSource = tileSource.getDataSource();
+        Sink sink = new Sink(dataSource, false);
+        dataSource.query(new MapTile(0, 0, 1), sink);
+
+        assertEquals(QueryResult.SUCCESS, sink.result);
+        assertEquals(BLOCKS * BLOCKS, sink.elements);
+        dataSource.dispose();
+    }
+
+    @Test
+    public void shouldStopBetweenBlocksWhenCanceled() {
+        ITileDataSource dataSource = tileSource.getDataSource();
+        Sink sink = new Sink(dataSource, true);
+        dataSource.query(new MapTile(0, 0, 1), sink);
+
+        /* the first block is read, the remaining ones are skipped */
+        assertEquals(QueryResult.FAILED, sink.result);
+        assertEquals(1, sink.elements);
+
+        /* the next query is not affected */
+        sink = new Sink(dataSource, false);
+        dataSource.query(new MapTile(0, 0, 1), sink);
+        assertEquals(QueryResult.SUCCESS, sink.result);
+        assertEquals(BLOCKS * BLOCKS, sink.elements);
+        dataSource.dispose();
+    }
+}
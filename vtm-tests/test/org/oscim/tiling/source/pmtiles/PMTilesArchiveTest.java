@@ -0,0 +1,86 @@
+package org.oscim.tiling.source.pmtiles;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class PMTilesArchiveTest {
+    private File file;
+    private MappedRangeReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        /* root directory: tile id 0 -> "A", tile ids 1-2 -> "BB" (run length 2) */
+        ByteArrayOutputStream dir = new ByteArrayOutputStream();
+        for (int v : new int[]{2, 0, 1, 1, 2, 1, 2, 1, 0})
+            dir.write(v);
+        byte[] directory = dir.toByteArray();
+        byte[] tiles = "ABB".getBytes();
+
+        ByteBuffer header = ByteBuffer.allocate(PMTilesHeader.HEADER_LENGTH)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.put("PMTiles".getBytes()).put((byte) 3);
+        header.putLong(PMTilesHeader.HEADER_LENGTH).putLong(directory.length);
+        header.putLong(PMTilesHeader.HEADER_LENGTH + directory.length).putLong(0);
+        header.putLong(0).putLong(0);
+        header.putLong(PMTilesHeader.HEADER_LENGTH + directory.length).putLong(tiles.length);
+        header.putLong(3).putLong(2).putLong(2);
+        header.put((byte) 1)
+                .put((byte) PMTilesHeader.COMPRESSION_NONE)
+                .put((byte) PMTilesHeader.COMPRESSION_NONE)
+                .put((byte) PMTilesHeader.TILE_TYPE_PNG)
+                .put((byte) 0)
+                .put((byte) 1);
+
+        file = File.createTempFile("test", ".pmtiles");
+        FileOutputStream os = new FileOutputStream(file);
+        os.write(header.array());
+        os.write(directory);
+        os.write(tiles);
+        os.close();
+
+        reader = new MappedRangeReader(file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        reader.close();
+        file.delete();
+    }
+
+    @Test
+    public void zxyToTileId_shouldFollowHilbertCurve() throws Exception {
+        assertThat(PMTilesArchive.zxyToTileId(0, 0, 0)).isEqualTo(0);
+        assertThat(PMTilesArchive.zxyToTileId(1, 0, 0)).isEqualTo(1);
+        assertThat(PMTilesArchive.zxyToTileId(1, 0, 1)).isEqualTo(2);
+        assertThat(PMTilesArchive.zxyToTileId(1, 1, 1)).isEqualTo(3);
+        assertThat(PMTilesArchive.zxyToTileId(1, 1, 0)).isEqualTo(4);
+        assertThat(PMTilesArchive.zxyToTileId(2, 0, 0)).isEqualTo(5);
+    }
+
+    @Test
+    public void header_shouldBeParsed() throws Exception {
+        PMTilesHeader header = new PMTilesArchive(reader).getHeader();
+        assertThat(header.tileType).isEqualTo(PMTilesHeader.TILE_TYPE_PNG);
+        assertThat(header.minZoom).isEqualTo(0);
+        assertThat(header.maxZoom).isEqualTo(1);
+        assertThat(header.isRaster()).isTrue();
+    }
+
+    @Test
+    public void readTile_shouldResolveRunLength() throws Exception {
+        PMTilesArchive archive = new PMTilesArchive(reader);
+        assertThat(new String(archive.readTile(0, 0, 0, reader))).isEqualTo("A");
+        assertThat(new String(archive.readTile(1, 0, 0, reader))).isEqualTo("BB");
+        assertThat(new String(archive.readTile(1, 0, 1, reader))).isEqualTo("BB");
+        assertThat(archive.readTile(1, 1, 1, reader)).isNull();
+    }
+}
@@ -0,0 +1,39 @@
+package org.oscim.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldBucketWithRelativePrecision() {
+        for (long v = 0; v < 1L << 30; v = v * 3 / 2 + 1) {
+            int i = LatencyHistogram.bucketIndex(v);
+            long upper = LatencyHistogram.bucketUpperBound(i);
+            Assert.assertTrue(v <= upper);
+            if (i > 0)
+                Assert.assertTrue(v > LatencyHistogram.bucketUpperBound(i - 1));
+            Assert.assertTrue(upper - v <= v / 16);
+        }
+    }
+
+    @Test
+    public void shouldReportPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        Assert.assertEquals(0, h.getPercentile(50));
+
+        for (int i = 1; i <= 1000; i++)
+            h.record(i * 1000);
+
+        Assert.assertEquals(1000, h.getCount());
+        Assert.assertEquals(1000000, h.getMax());
+        Assert.assertEquals(500500, h.getMean(), 0.1);
+        Assert.assertEquals(500000, h.getPercentile(50), 500000 / 16);
+        Assert.assertEquals(990000, h.getPercentile(99), 990000 / 16);
+        Assert.assertEquals(1000000, h.getPercentile(100));
+
+        h.reset();
+        Assert.assertEquals(0, h.getCount());
+        Assert.assertEquals(0, h.getMax());
+    }
+}
@@ -0,0 +1,61 @@
+package org.oscim.utils.geom;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.core.PointF;
+import org.oscim.core.Tile;
+
+public class PolyLabelTest {
+
+    private static GeometryBuffer square(float x, float y, float size) {
+        GeometryBuffer g = new GeometryBuffer(16, 2);
+        g.startPolygon();
+        g.addPoint(x, y);
+        g.addPoint(x + size, y);
+        g.addPoint(x + size, y + size);
+        g.addPoint(x, y + size);
+        return g;
+    }
+
+    @Test
+    public void shouldFindCenterOfSquare() {
+        PointF p = PolyLabel.get(square(-200, -200, 100));
+        Assert.assertEquals(-150, p.x, PolyLabel.PRECISION);
+        Assert.assertEquals(-150, p.y, PolyLabel.PRECISION);
+    }
+
+    @Test
+    public void shouldAvoidHole() {
+        GeometryBuffer g = square(0, 0, 300);
+        g.startHole();
+        g.addPoint(100, 100);
+        g.addPoint(100, 200);
+        g.addPoint(200, 200);
+        g.addPoint(200, 100);
+
+        PointF p = PolyLabel.get(g);
+        Assert.assertFalse(p.x > 100 && p.x < 200 && p.y > 100 && p.y < 200);
+    }
+
+    @Test
+    public void shouldCacheByTileAndGeometry() {
+        PolyLabelCache cache = new PolyLabelCache(64);
+        Tile tile = new Tile(8800, 5370, (byte) 14);
+        GeometryBuffer g = square(10, 10, 50);
+
+        PolyLabel polyLabel = new PolyLabel();
+        PointF p = polyLabel.get(g, tile, cache);
+        float x = p.x;
+        float y = p.y;
+
+        PointF cached = new PointF();
+        Assert.assertTrue(cache.get(PolyLabelCache.key(tile, g), cached));
+        Assert.assertEquals(x, cached.x, 0);
+        Assert.assertEquals(y, cached.y, 0);
+
+        Tile other = new Tile(8801, 5370, (byte) 14);
+        Assert.assertFalse(cache.get(PolyLabelCache.key(other, g), cached));
+        Assert.assertFalse(cache.get(PolyLabelCache.key(tile, square(10, 10, 51)), cached));
+    }
+}
@@ -0,0 +1,61 @@
+package org.oscim.utils.pool;
+
+import org.junit.Test;
+import org.oscim.utils.MemoryPressure;
+
+import static org.junit.Assert.assertEquals;
+
+public class SyncPoolTest {
+
+    static class Item extends Inlist<Item> {
+    }
+
+    static class ItemPool extends SyncPool<Item> {
+        int freed;
+
+        ItemPool() {
+            super(10);
+        }
+
+        @Override
+        protected Item createItem() {
+            return new Item();
+        }
+
+        @Override
+        protected void freeItem(Item item) {
+            freed++;
+        }
+    }
+
+    private static void fill(ItemPool pool, int items) {
+        for (int i = 0; i < items; i++)
+            pool.release(new Item());
+    }
+
+    @Test
+    public void shouldTrimToFill() {
+        ItemPool pool = new ItemPool();
+        fill(pool, 8);
+        assertEquals(8, pool.getFill());
+
+        assertEquals(4, pool.trim(MemoryPressure.MODERATE.target(pool.getFill())));
+        assertEquals(4, pool.getFill());
+        assertEquals(4, pool.freed);
+
+        assertEquals(4, pool.trim(MemoryPressure.CRITICAL.target(pool.getFill())));
+        assertEquals(0, pool.getFill());
+        assertEquals(0, pool.trim(0));
+    }
+
+    @Test
+    public void shouldReuseAfterTrim() {
+        ItemPool pool = new ItemPool();
+        fill(pool, 2);
+        pool.trim(0);
+
+        Item item = pool.get();
+        pool.release(item);
+        assertEquals(1, pool.getFill());
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling;
+
+import org.oscim.layers.tile.MapTile;
+
+/**
+ * Loaders cannot wait for each other in the browser, queries are passed
+ * on to the data source.
+ */
+public class SharedTileDataSource implements ITileDataSource {
+
+    public static long HOLD_TIME = 2000;
+
+    private final ITileDataSource mDataSource;
+
+    public SharedTileDataSource(TileSource tileSource, ITileDataSource dataSource) {
+        mDataSource = dataSource;
+    }
+
+    public ITileDataSource getDataSource() {
+        return mDataSource;
+    }
+
+    @Override
+    public void query(MapTile tile, ITileDataSink sink) {
+        mDataSource.query(tile, sink);
+    }
+
+    @Override
+    public void dispose() {
+        mDataSource.dispose();
+    }
+
+    @Override
+    public void cancel() {
+        mDataSource.cancel();
+    }
+
+    public static void clear() {
+    }
+
+    public static int size() {
+        return 0;
+    }
+}
@@ -24,6 +24,7 @@ import org.oscim.backend.canvas.Canvas;
 import org.oscim.backend.canvas.Paint;
 import org.oscim.theme.ThemeCallback;
 import org.oscim.theme.XmlThemeResourceProvider;
+import org.oscim.utils.IOUtils;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -81,6 +82,8 @@ public abstract class CanvasAdapter {
      */
     public static float userScale = 1;
 
+    private static ISvgCache svgCache;
+
     /**
      * Create a Canvas.
      *
@@ -136,10 +139,26 @@ public abstract class CanvasAdapter {
      */
     protected abstract Bitmap decodeBitmapImpl(InputStream inputStream, int width, int height, int percent) throws IOException;
 
+    /**
+     * Create {@link Bitmap} from InputStream, reusing the memory of a bitmap
+     * that is no longer needed. Backends may ignore reuse, the default.
+     *
+     * @param inputStream the input stream
+     * @param reuse       bitmap to decode into, may be null
+     * @return reuse when decoded into it, otherwise a new bitmap
+     */
+    protected Bitmap decodeBitmapImpl(InputStream inputStream, Bitmap reuse) throws IOException {
+        return decodeBitmapImpl(inputStream);
+    }
+
     public static Bitmap decodeBitmap(InputStream inputStream) throws IOException {
         return g.decodeBitmapImpl(inputStream);
     }
 
+    public static Bitmap decodeBitmap(InputStream inputStream, Bitmap reuse) throws IOException {
+        return g.decodeBitmapImpl(inputStream, reuse);
+    }
+
     public static Bitmap decodeBitmap(InputStream inputStream, int width, int height, int percent) throws IOException {
         return g.decodeBitmapImpl(inputStream, width, height, percent);
     }
@@ -173,12 +192,65 @@ public abstract class CanvasAdapter {
         return g.loadBitmapAssetImpl(relativePathPrefix, src, resourceProvider, width, height, percent, themeCallback);
     }
 
+    /**
+     * Keep rasterized SVG symbols in a cache, null to always render them.
+     */
+    public static void setSvgCache(ISvgCache cache) {
+        svgCache = cache;
+    }
+
+    public static ISvgCache getSvgCache() {
+        return svgCache;
+    }
+
+    /**
+     * Start rasterizing an SVG symbol in background, when an SVG cache is set.
+     */
+    public static void prefetchBitmapAsset(String relativePathPrefix, String src, XmlThemeResourceProvider resourceProvider, int width, int height, int percent) {
+        ISvgCache cache = svgCache;
+        if (cache == null || src == null || !src.toLowerCase(Locale.ENGLISH).endsWith(".svg"))
+            return;
+
+        InputStream inputStream = null;
+        try {
+            inputStream = openResource(relativePathPrefix, src, resourceProvider);
+            if (inputStream != null)
+                cache.prefetch(inputStream, width, height, percent);
+        } catch (IOException e) {
+            log.fine(src + ": " + e);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
     protected static Bitmap createBitmap(String relativePathPrefix, String src, XmlThemeResourceProvider resourceProvider, int width, int height, int percent, ThemeCallback themeCallback) throws IOException {
         if (src == null || src.length() == 0) {
             // no image source defined
             return null;
         }
 
+        InputStream inputStream = openResource(relativePathPrefix, src, resourceProvider);
+        if (inputStream == null) {
+            log.severe("invalid resource: " + src);
+            return null;
+        }
+
+        Bitmap bitmap;
+        if (src.toLowerCase(Locale.ENGLISH).endsWith(".svg")) {
+            ISvgCache cache = svgCache;
+            if (cache != null)
+                bitmap = cache.getBitmap(inputStream, width, height, percent);
+            else
+                bitmap = decodeSvgBitmap(inputStream, width, height, percent);
+        } else
+            bitmap = decodeBitmap(inputStream, width, height, percent);
+        inputStream.close();
+        if (themeCallback != null)
+            bitmap = themeCallback.getBitmap(bitmap);
+        return bitmap;
+    }
+
+    private static InputStream openResource(String relativePathPrefix, String src, XmlThemeResourceProvider resourceProvider) throws IOException {
         InputStream inputStream = null;
         if (resourceProvider != null) {
             try {
@@ -210,21 +282,7 @@ public abstract class CanvasAdapter {
             /*if (inputStream != null)
                 log.info("internal resource: " + src);*/
         }
-
-        if (inputStream == null) {
-            log.severe("invalid resource: " + src);
-            return null;
-        }
-
-        Bitmap bitmap;
-        if (src.toLowerCase(Locale.ENGLISH).endsWith(".svg"))
-            bitmap = decodeSvgBitmap(inputStream, width, height, percent);
-        else
-            bitmap = decodeBitmap(inputStream, width, height, percent);
-        inputStream.close();
-        if (themeCallback != null)
-            bitmap = themeCallback.getBitmap(bitmap);
-        return bitmap;
+        return inputStream;
     }
 
     private static InputStream inputStreamFromAssets(String relativePathPrefix, String src) throws IOException {
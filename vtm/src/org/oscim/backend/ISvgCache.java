@@ -0,0 +1,53 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.backend;
+
+import org.oscim.backend.canvas.Bitmap;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Keeps rasterized SVG symbols across theme loads,
+ * see {@link CanvasAdapter#setSvgCache(ISvgCache)}.
+ */
+public interface ISvgCache {
+
+    /**
+     * Rasterize the SVG, see {@link CanvasAdapter#decodeSvgBitmap(InputStream, int, int, int)}.
+     *
+     * @return a new bitmap, owned by the caller.
+     */
+    Bitmap getBitmap(InputStream inputStream, int width, int height, int percent) throws IOException;
+
+    /**
+     * Start rasterizing the SVG in background, for a following
+     * {@link #getBitmap(InputStream, int, int, int)} call.
+     */
+    void prefetch(InputStream inputStream, int width, int height, int percent) throws IOException;
+
+    /**
+     * Keep decoded symbols until {@link #endThemeLoad()}, so that symbols
+     * used by several styles are decoded once per theme load.
+     */
+    default void beginThemeLoad() {
+    }
+
+    /**
+     * Release the symbols kept since {@link #beginThemeLoad()}.
+     */
+    default void endThemeLoad() {
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.backend;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.backend.canvas.Canvas;
+import org.oscim.utils.IOUtils;
+import org.oscim.utils.MemoryPressure;
+import org.oscim.utils.Trimmable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * Cache of rasterized SVG symbols, shared by all themes. Symbols are keyed
+ * by the SVG content, the requested size and the display scale and kept as
+ * PNG in memory and optionally in a directory, so that switching themes or
+ * style menus does not render the same SVG again.
+ * <p/>
+ * Prefetched symbols are rasterized in parallel on a worker pool. While a
+ * theme is loading, decoded symbols are kept and copied for further styles
+ * instead of decoding the PNG again.
+ */
+public class SvgCache implements ISvgCache, Trimmable {
+
+    private static final Logger log = Logger.getLogger(SvgCache.class.getName());
+
+    private static final String SUFFIX = ".png";
+
+    private final File mDir;
+    private final long mMaxMemory;
+    private final ExecutorService mExecutor;
+
+    /**
+     * PNG data in access order, guarded by itself.
+     */
+    private final LinkedHashMap<String, byte[]> mMemory = new LinkedHashMap<>(64, 0.75f, true);
+    private long mMemorySize;
+
+    /**
+     * Symbols being rasterized, guarded by mMemory.
+     */
+    private final HashMap<String, Future<byte[]>> mPending = new HashMap<>();
+
+    /**
+     * Decoded symbols while themes are loading, guarded by itself.
+     */
+    private final HashMap<String, Bitmap> mDecoded = new HashMap<>();
+    private int mThemeLoads;
+
+    /**
+     * @param maxMemory maximum bytes of PNG data to keep in memory.
+     */
+    public SvgCache(long maxMemory) {
+        this(maxMemory, null);
+    }
+
+    /**
+     * @param maxMemory maximum bytes of PNG data to keep in memory.
+     * @param dir       directory to persist the symbols, may be null.
+     */
+    public SvgCache(long maxMemory, File dir) {
+        mMaxMemory = maxMemory;
+        mDir = dir;
+        if (mDir != null && !mDir.exists() && !mDir.mkdirs())
+            log.severe("Cannot create SVG cache directory: " + mDir);
+
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        mExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "VtmSvgCache");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public Bitmap getBitmap(InputStream inputStream, int width, int height, int percent) throws IOException {
+        final byte[] svg = readFully(inputStream);
+        String key = key(svg, width, height, percent);
+
+        synchronized (mDecoded) {
+            Bitmap decoded = mDecoded.get(key);
+            if (decoded != null)
+                return copy(decoded);
+        }
+
+        Future<byte[]> pending;
+        byte[] png;
+        synchronized (mMemory) {
+            png = mMemory.get(key);
+            pending = mPending.get(key);
+        }
+        if (png == null && pending != null) {
+            try {
+                png = pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                log.fine("Prefetch failed: " + e.getCause());
+            }
+        }
+        if (png == null) {
+            png = readFile(key);
+            if (png != null)
+                putMemory(key, png);
+        }
+        if (png != null) {
+            Bitmap bitmap = CanvasAdapter.decodeBitmap(new ByteArrayInputStream(png));
+            if (bitmap != null)
+                return keepDecoded(key, bitmap);
+        }
+
+        Bitmap bitmap = CanvasAdapter.decodeSvgBitmap(new ByteArrayInputStream(svg), width, height, percent);
+        if (bitmap != null) {
+            store(key, bitmap);
+            bitmap = keepDecoded(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    @Override
+    public void prefetch(InputStream inputStream, final int width, final int height, final int percent) throws IOException {
+        final byte[] svg = readFully(inputStream);
+        final String key = key(svg, width, height, percent);
+        synchronized (mMemory) {
+            if (mMemory.containsKey(key) || mPending.containsKey(key))
+                return;
+            mPending.put(key, mExecutor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    try {
+                        byte[] png = readFile(key);
+                        if (png != null) {
+                            putMemory(key, png);
+                            return png;
+                        }
+                        Bitmap bitmap = CanvasAdapter.decodeSvgBitmap(new ByteArrayInputStream(svg), width, height, percent);
+                        if (bitmap == null)
+                            return null;
+                        png = store(key, bitmap);
+                        bitmap.recycle();
+                        return png;
+                    } finally {
+                        synchronized (mMemory) {
+                            mPending.remove(key);
+                        }
+                    }
+                }
+            }));
+        }
+    }
+
+    @Override
+    public void beginThemeLoad() {
+        synchronized (mDecoded) {
+            mThemeLoads++;
+        }
+    }
+
+    @Override
+    public void endThemeLoad() {
+        synchronized (mDecoded) {
+            if (mThemeLoads > 0 && --mThemeLoads == 0) {
+                for (Bitmap bitmap : mDecoded.values())
+                    bitmap.recycle();
+                mDecoded.clear();
+            }
+        }
+    }
+
+    /**
+     * Keep the decoded bitmap while a theme is loading.
+     *
+     * @return bitmap, or a copy of it when it is kept.
+     */
+    private Bitmap keepDecoded(String key, Bitmap bitmap) {
+        synchronized (mDecoded) {
+            if (mThemeLoads == 0)
+                return bitmap;
+            Bitmap old = mDecoded.put(key, bitmap);
+            if (old != null)
+                old.recycle();
+            return copy(bitmap);
+        }
+    }
+
+    /**
+     * @return a new bitmap with the pixels of bitmap, owned by the caller.
+     */
+    private static Bitmap copy(Bitmap bitmap) {
+        Bitmap copy = CanvasAdapter.newBitmap(bitmap.getWidth(), bitmap.getHeight(), 0);
+        Canvas canvas = CanvasAdapter.newCanvas();
+        canvas.setBitmap(copy);
+        canvas.drawBitmap(bitmap, 0, 0);
+        return copy;
+    }
+
+    /**
+     * Remove the least recently used symbols from memory, persisted symbols
+     * are kept.
+     */
+    @Override
+    public long trimMemory(MemoryPressure pressure) {
+        synchronized (mMemory) {
+            long size = mMemorySize;
+            long target = pressure == MemoryPressure.CRITICAL ? 0 : size / 2;
+            Iterator<Map.Entry<String, byte[]>> it = mMemory.entrySet().iterator();
+            while (mMemorySize > target && it.hasNext()) {
+                mMemorySize -= it.next().getValue().length;
+                it.remove();
+            }
+            return size - mMemorySize;
+        }
+    }
+
+    /**
+     * Remove all symbols from memory and directory.
+     */
+    public void clear() {
+        synchronized (mMemory) {
+            mMemory.clear();
+            mMemorySize = 0;
+        }
+        if (mDir == null)
+            return;
+        File[] files = mDir.listFiles();
+        if (files == null)
+            return;
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX) || file.getName().endsWith(".tmp"))
+                file.delete();
+        }
+    }
+
+    /**
+     * Stop the worker pool, pending prefetches are dropped.
+     */
+    public void dispose() {
+        mExecutor.shutdownNow();
+        synchronized (mMemory) {
+            mPending.clear();
+        }
+    }
+
+    private byte[] store(String key, Bitmap bitmap) {
+        byte[] png;
+        try {
+            png = bitmap.getPngEncodedData();
+        } catch (Exception e) {
+            log.fine("Cannot encode " + key + ": " + e);
+            return null;
+        }
+        if (png == null)
+            return null;
+        putMemory(key, png);
+        writeFile(key, png);
+        return png;
+    }
+
+    private void putMemory(String key, byte[] png) {
+        synchronized (mMemory) {
+            byte[] old = mMemory.put(key, png);
+            if (old != null)
+                mMemorySize -= old.length;
+            mMemorySize += png.length;
+
+            Iterator<Map.Entry<String, byte[]>> it = mMemory.entrySet().iterator();
+            while (mMemorySize > mMaxMemory && it.hasNext()) {
+                mMemorySize -= it.next().getValue().length;
+                it.remove();
+            }
+        }
+    }
+
+    private byte[] readFile(String key) {
+        if (mDir == null)
+            return null;
+        File file = new File(mDir, key + SUFFIX);
+        if (!file.isFile())
+            return null;
+        FileInputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            return readFully(is);
+        } catch (IOException e) {
+            log.fine("Cannot read " + file + ": " + e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    private void writeFile(String key, byte[] png) {
+        if (mDir == null)
+            return;
+        File file = new File(mDir, key + SUFFIX);
+        File tmp = new File(mDir, key + "." + Thread.currentThread().getId() + ".tmp");
+        FileOutputStream os = null;
+        try {
+            os = new FileOutputStream(tmp);
+            os.write(png);
+            os.close();
+            os = null;
+            if (!tmp.renameTo(file) && !file.isFile())
+                log.fine("Cannot rename " + tmp);
+        } catch (IOException e) {
+            log.fine("Cannot write " + file + ": " + e);
+        } finally {
+            IOUtils.closeQuietly(os);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * @return the file name of the rasterized SVG at the current scale.
+     */
+    static String key(byte[] svg, int width, int height, int percent) {
+        /* 64 bit FNV-1a */
+        long h = 0xcbf29ce484222325L;
+        for (byte b : svg) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return Long.toHexString(h) + "_" + svg.length + "_" + width + "_" + height + "_" + percent
+                + "_" + Integer.toHexString(Float.floatToIntBits(CanvasAdapter.getScale()));
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        byte[] buf = new byte[8192];
+        for (int n; (n = is.read(buf)) >= 0; )
+            out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+}
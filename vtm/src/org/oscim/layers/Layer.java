@@ -59,7 +59,14 @@ public abstract class Layer {
     }
 
     /**
-     * Override to perform clean up of resources before shutdown.
+     * Override to acquire resources when the layer is added to the map.
+     */
+    public void onAttach() {
+    }
+
+    /**
+     * Override to perform clean up of resources when the layer is removed
+     * from the map or the map is destroyed.
      */
     public void onDetach() {
     }
@@ -68,6 +68,13 @@ public class JobQueue {
         return (mJobs == null);
     }
 
+    /**
+     * @return the number of jobs in this queue.
+     */
+    public synchronized int size() {
+        return mJobs == null ? 0 : mJobs.length - mCurrentJob;
+    }
+
     /**
      * @return the most important job from this queue or null, if empty.
      */
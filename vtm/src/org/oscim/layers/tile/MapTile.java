@@ -85,9 +85,9 @@ public class MapTile extends Tile {
     public static final int PROXY_HOLDER = (1 << 6);
 
     /**
-     * Tile state
+     * Tile state, volatile as loaders check for {@link State#CANCEL}
      */
-    byte state = State.NONE;
+    volatile byte state = State.NONE;
 
     /**
      * absolute tile coordinates: tileX,Y / Math.pow(2, zoomLevel)
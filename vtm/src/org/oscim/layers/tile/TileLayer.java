@@ -24,8 +24,10 @@ import org.oscim.layers.Layer;
 import org.oscim.map.Map;
 import org.oscim.map.Map.UpdateListener;
 import org.oscim.tiling.TileSource;
+import org.oscim.utils.MemoryPressure;
+import org.oscim.utils.Trimmable;
 
-public abstract class TileLayer extends Layer implements UpdateListener {
+public abstract class TileLayer extends Layer implements UpdateListener, Trimmable {
 
     private int mNumLoaders = 4;
 
@@ -39,13 +41,26 @@ public abstract class TileLayer extends Layer implements UpdateListener {
 
     protected TileSource mTileSource;
 
+    private final TileMetrics.Gauge mQueueGauge = new TileMetrics.Gauge() {
+        @Override
+        public long getValue() {
+            return mTileManager.getQueueSize();
+        }
+    };
+
+    private final TileMetrics.Gauge mCacheGauge = new TileMetrics.Gauge() {
+        @Override
+        public long getValue() {
+            return mTileManager.getTileCount();
+        }
+    };
+
     public TileLayer(Map map, TileManager tileManager, TileRenderer renderer) {
         super(map);
         renderer.setTileManager(tileManager);
 
         mTileManager = tileManager;
         mRenderer = renderer;
-
     }
 
     public TileLayer(Map map, TileManager tileManager) {
@@ -106,6 +121,12 @@ public abstract class TileLayer extends Layer implements UpdateListener {
         }
     }
 
+    @Override
+    public void onAttach() {
+        TileMetrics.get().addGauge(TileMetrics.QUEUE_SIZE, mQueueGauge);
+        TileMetrics.get().addGauge(TileMetrics.TILE_CACHE_SIZE, mCacheGauge);
+    }
+
     @Override
     public void onDetach() {
         for (TileLoader loader : mTileLoader) {
@@ -115,6 +136,21 @@ public abstract class TileLayer extends Layer implements UpdateListener {
         }
         if (mTileSource != null)
             mTileSource.close();
+
+        TileMetrics.get().removeGauge(mQueueGauge);
+        TileMetrics.get().removeGauge(mCacheGauge);
+    }
+
+    /**
+     * Remove unused tiles from cache and trim the tile source. The memory of
+     * removed tiles is released by the pools it returns to.
+     */
+    @Override
+    public long trimMemory(MemoryPressure pressure) {
+        mTileManager.trimCache(pressure);
+        if (mTileSource instanceof Trimmable)
+            return ((Trimmable) mTileSource).trimMemory(pressure);
+        return 0;
     }
 
     void notifyLoaders() {
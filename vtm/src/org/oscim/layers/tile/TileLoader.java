@@ -19,6 +19,8 @@ package org.oscim.layers.tile;
 
 import org.oscim.backend.canvas.Bitmap;
 import org.oscim.core.MapElement;
+import org.oscim.layers.tile.TileMetrics.Counter;
+import org.oscim.layers.tile.TileMetrics.Stage;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.QueryResult;
 import org.oscim.utils.PausableThread;
@@ -38,6 +40,11 @@ public abstract class TileLoader extends PausableThread implements ITileDataSink
      */
     protected MapTile mTile;
 
+    /**
+     * start of loading the current tile, see {@link TileMetrics#start()}
+     */
+    private long mLoadStart;
+
     public TileLoader(TileManager tileManager) {
         super();
         mTileManager = tileManager;
@@ -59,6 +66,7 @@ public abstract class TileLoader extends PausableThread implements ITileDataSink
         if (mTile == null)
             return;
 
+        mLoadStart = TileMetrics.start();
         try {
             loadTile(mTile);
         } catch (Throwable t) {
@@ -97,6 +105,12 @@ public abstract class TileLoader extends PausableThread implements ITileDataSink
         if (ok && (isCanceled() || isInterrupted()))
             result = QueryResult.FAILED;
 
+        if (mLoadStart != 0) {
+            TileMetrics.stop(Stage.LOAD, mLoadStart);
+            TileMetrics.count(result == SUCCESS ? Counter.TILES_LOADED : Counter.TILES_FAILED);
+            mLoadStart = 0;
+        }
+
         mTileManager.jobCompleted(mTile, result);
         mTile = null;
     }
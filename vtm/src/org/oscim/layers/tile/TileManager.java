@@ -28,6 +28,7 @@ import org.oscim.map.Map;
 import org.oscim.map.Viewport;
 import org.oscim.renderer.BufferObject;
 import org.oscim.tiling.QueryResult;
+import org.oscim.utils.MemoryPressure;
 import org.oscim.utils.ScanBox;
 import org.oscim.utils.quadtree.TileIndex;
 
@@ -401,6 +402,20 @@ public class TileManager {
         return !jobQueue.isEmpty();
     }
 
+    /**
+     * @return the number of tiles waiting to be loaded.
+     */
+    public int getQueueSize() {
+        return jobQueue.size();
+    }
+
+    /**
+     * @return the number of tiles in cache, read without lock.
+     */
+    public int getTileCount() {
+        return mTilesCount;
+    }
+
     public MapTile getTileJob() {
         return jobQueue.poll();
     }
@@ -506,7 +521,29 @@ public class TileManager {
         return true;
     }
 
+    /**
+     * Remove cached tiles that are not in use, the tiles farthest away
+     * from the current position first. Call on main thread.
+     *
+     * @return the number of removed tiles.
+     */
+    public int trimCache(MemoryPressure pressure) {
+        int count = mTilesCount;
+        int remove = count - pressure.target(count);
+        if (remove <= 0)
+            return 0;
+
+        synchronized (mTilelock) {
+            limitCache(mMap.getMapPosition(), remove, true);
+        }
+        return count - mTilesCount;
+    }
+
     private void limitCache(MapPosition pos, int remove) {
+        limitCache(pos, remove, false);
+    }
+
+    private void limitCache(MapPosition pos, int remove, boolean force) {
         MapTile[] tiles = mTiles;
 
         /* count tiles that have new data */
@@ -535,7 +572,7 @@ public class TileManager {
             }
         }
 
-        if ((remove < CACHE_CLEAR_THRESHOLD) && (newTileCnt < MAX_TILES_IN_QUEUE))
+        if (!force && (remove < CACHE_CLEAR_THRESHOLD) && (newTileCnt < MAX_TILES_IN_QUEUE))
             return;
 
         updateDistances(tiles, mTilesEnd, pos);
@@ -0,0 +1,232 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile;
+
+import org.oscim.utils.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latencies, counters and gauges of the tile pipeline, from fetching
+ * tile data to uploading buckets on the GL thread.
+ * <p/>
+ * Recording is disabled by default and then only costs a check of a
+ * static flag. Metrics are shared by all maps as tile sources are not
+ * bound to a map. Recording does not allocate.
+ * <p/>
+ * Stages are measured where they happen, so they overlap: {@link Stage#DECODE}
+ * includes the processing of decoded elements, i.e. {@link Stage#THEME},
+ * {@link Stage#TESSELLATE} and {@link Stage#LABEL}, and {@link Stage#COMPILE}
+ * includes the triangulation of meshes.
+ *
+ * @see org.oscim.map.Map#metrics()
+ */
+public final class TileMetrics {
+
+    public enum Stage {
+        /**
+         * Request and reading of the response, also while it is streamed
+         * into the decoder.
+         */
+        FETCH,
+        /**
+         * Decoding of fetched or cached tile data, without reading the
+         * response.
+         */
+        DECODE,
+        /**
+         * Matching of one element with the theme.
+         */
+        THEME,
+        /**
+         * Conversion of one line, polygon, mesh or circle into vertices.
+         */
+        TESSELLATE,
+        /**
+         * Extraction of labels and symbols of one element.
+         */
+        LABEL,
+        /**
+         * Preparing buckets of a tile on the loader thread.
+         */
+        COMPILE,
+        /**
+         * Compiling and uploading buckets of a tile on the GL thread.
+         */
+        UPLOAD,
+        /**
+         * Loading of a tile, from taking the job until completion.
+         */
+        LOAD
+    }
+
+    public enum Counter {
+        CACHE_HIT,
+        CACHE_MISS,
+        TILES_LOADED,
+        TILES_FAILED
+    }
+
+    /**
+     * Current value of e.g. a queue or cache, read when requested.
+     */
+    public interface Gauge {
+        long getValue();
+    }
+
+    /**
+     * Sum of tiles waiting to be loaded, over all tile layers.
+     */
+    public static final String QUEUE_SIZE = "tiles.queue";
+
+    /**
+     * Sum of tiles kept by tile managers, over all tile layers.
+     */
+    public static final String TILE_CACHE_SIZE = "tiles.cache";
+
+    private static final TileMetrics INSTANCE = new TileMetrics();
+
+    private static volatile boolean enabled;
+
+    private final LatencyHistogram[] mStages;
+    private final AtomicLongArray mCounters;
+
+    private final List<String> mGaugeNames = new ArrayList<>();
+    private final List<Gauge> mGauges = new ArrayList<>();
+
+    private TileMetrics() {
+        Stage[] stages = Stage.values();
+        mStages = new LatencyHistogram[stages.length];
+        for (int i = 0; i < stages.length; i++)
+            mStages[i] = new LatencyHistogram();
+        mCounters = new AtomicLongArray(Counter.values().length);
+    }
+
+    public static TileMetrics get() {
+        return INSTANCE;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    /**
+     * @return start time for {@link #stop(Stage, long)}, 0 when disabled.
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the time since start, unless start is 0.
+     */
+    public static void stop(Stage stage, long start) {
+        if (start != 0)
+            INSTANCE.mStages[stage.ordinal()].record(System.nanoTime() - start);
+    }
+
+    /**
+     * Record a measured time in nanoseconds, when enabled.
+     */
+    public static void record(Stage stage, long nanos) {
+        if (enabled)
+            INSTANCE.mStages[stage.ordinal()].record(nanos);
+    }
+
+    public static void count(Counter counter) {
+        if (enabled)
+            INSTANCE.mCounters.incrementAndGet(counter.ordinal());
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return mStages[stage.ordinal()];
+    }
+
+    public long getCount(Counter counter) {
+        return mCounters.get(counter.ordinal());
+    }
+
+    /**
+     * Add a gauge. Values of gauges with the same name are summed, a gauge
+     * is added only once.
+     */
+    public void addGauge(String name, Gauge gauge) {
+        synchronized (mGauges) {
+            if (mGauges.contains(gauge))
+                return;
+            mGaugeNames.add(name);
+            mGauges.add(gauge);
+        }
+    }
+
+    public void removeGauge(Gauge gauge) {
+        synchronized (mGauges) {
+            int i = mGauges.indexOf(gauge);
+            if (i >= 0) {
+                mGaugeNames.remove(i);
+                mGauges.remove(i);
+            }
+        }
+    }
+
+    /**
+     * @return the sum of the gauges with name.
+     */
+    public long getGauge(String name) {
+        long value = 0;
+        synchronized (mGauges) {
+            for (int i = 0, n = mGauges.size(); i < n; i++) {
+                if (mGaugeNames.get(i).equals(name))
+                    value += mGauges.get(i).getValue();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Reset histograms and counters, gauges are kept.
+     */
+    public void reset() {
+        for (LatencyHistogram h : mStages)
+            h.reset();
+        for (int i = 0, n = mCounters.length(); i < n; i++)
+            mCounters.set(i, 0);
+    }
+
+    /**
+     * @return a report of all metrics, latencies in nanoseconds.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram h = getHistogram(stage);
+            if (h.getCount() == 0)
+                continue;
+            sb.append(stage).append(" [").append(h).append("]\n");
+        }
+        for (Counter counter : Counter.values())
+            sb.append(counter).append('=').append(getCount(counter)).append(' ');
+        sb.append(QUEUE_SIZE).append('=').append(getGauge(QUEUE_SIZE)).append(' ')
+                .append(TILE_CACHE_SIZE).append('=').append(getGauge(TILE_CACHE_SIZE));
+        return sb.toString();
+    }
+}
@@ -18,6 +18,7 @@
 package org.oscim.layers.tile;
 
 import org.oscim.layers.tile.MapTile.TileNode;
+import org.oscim.layers.tile.TileMetrics.Stage;
 import org.oscim.renderer.BufferObject;
 import org.oscim.renderer.GLViewport;
 import org.oscim.renderer.LayerRenderer;
@@ -35,8 +36,19 @@ public abstract class TileRenderer extends LayerRenderer {
      * fade-in time
      */
     protected static final float FADE_TIME = 500;
+
+    /**
+     * @deprecated uploads are limited by {@link TileUploadScheduler}.
+     */
+    @Deprecated
     protected static final int MAX_TILE_LOAD = 8;
 
+    /**
+     * Priority offsets of proxy tiles, uploaded after the visible tiles.
+     */
+    private static final double PRIORITY_PARENT = 1 << 20;
+    private static final double PRIORITY_CHILD = 1 << 21;
+
     private TileManager mTileManager;
 
     protected final TileSet mDrawTiles;
@@ -50,6 +62,13 @@ public abstract class TileRenderer extends LayerRenderer {
 
     private int mUploadSerial;
 
+    /**
+     * Tiles to upload in the current frame, sorted by priority.
+     */
+    private MapTile[] mUploadTiles = new MapTile[16];
+    private double[] mUploadPriority = new double[16];
+    private int mUploadCnt;
+
     public TileRenderer() {
         mUploadSerial = 0;
         mDrawTiles = new TileSet();
@@ -117,7 +136,7 @@ public abstract class TileRenderer extends LayerRenderer {
             }
         }
         /* prepare tiles for rendering */
-        if (compileTileLayers(mDrawTiles.tiles, mDrawTiles.cnt + mProxyTileCnt) > 0) {
+        if (compileTileLayers(v, mDrawTiles.tiles, mDrawTiles.cnt + mProxyTileCnt) > 0) {
             mUploadSerial++;
             BufferObject.checkBufferUsage(false);
         }
@@ -135,10 +154,13 @@ public abstract class TileRenderer extends LayerRenderer {
     }
 
     /**
-     * compile tile layer data and upload to VBOs
+     * compile tile layer data and upload to VBOs, as long as the
+     * frame budget of {@link TileUploadScheduler} permits. Visible
+     * tiles are uploaded first, starting with those nearest to the
+     * view center as they cover the screen most, then proxy tiles.
      */
-    private static int compileTileLayers(MapTile[] tiles, int tileCnt) {
-        int uploadCnt = 0;
+    private int compileTileLayers(GLViewport v, MapTile[] tiles, int tileCnt) {
+        mUploadCnt = 0;
 
         for (int i = 0; i < tileCnt; i++) {
             MapTile tile = tiles[i];
@@ -149,8 +171,10 @@ public abstract class TileRenderer extends LayerRenderer {
             if (tile.state(READY))
                 continue;
 
+            double priority = getCenterDistance(v, tile);
+
             if (tile.state(NEW_DATA)) {
-                uploadCnt += uploadTileData(tile);
+                addUpload(tile, priority);
                 continue;
             }
 
@@ -158,15 +182,15 @@ public abstract class TileRenderer extends LayerRenderer {
             MapTile proxy = tile.holder;
             if (proxy != null && (proxy.state(NEW_DATA) || proxy.state(READY))) {
                 tile.state = NEW_DATA; // Change independently of proxy state, as long as it isn't READY
-                //uploadCnt += uploadTileData(proxy); // Should already been done in separate call
-                uploadCnt += uploadTileData(tile); // Actual tile must be loaded immediately
+                // Proxy upload should already been done in separate call
+                addUpload(tile, priority); // Actual tile must be loaded immediately
                 continue;
             }
 
             /* check near relatives than can serve as proxy */
             proxy = tile.getProxy(PROXY_PARENT, NEW_DATA);
             if (proxy != null) {
-                uploadCnt += uploadTileData(proxy);
+                addUpload(proxy, PRIORITY_PARENT + priority);
                 /* don't load child proxies */
                 continue;
             }
@@ -174,15 +198,74 @@ public abstract class TileRenderer extends LayerRenderer {
             for (int c = 0; c < 4; c++) {
                 proxy = tile.getProxyChild(c, NEW_DATA);
                 if (proxy != null)
-                    uploadCnt += uploadTileData(proxy);
+                    addUpload(proxy, PRIORITY_CHILD + priority);
             }
+        }
+
+        if (mUploadCnt == 0)
+            return 0;
+
+        int uploadCnt = 0;
+        for (int i = 0; i < mUploadCnt; i++) {
+            MapTile tile = mUploadTiles[i];
+            mUploadTiles[i] = null;
 
-            if (uploadCnt >= MAX_TILE_LOAD)
+            /* proxies may be shared by several tiles */
+            if (!tile.state(NEW_DATA))
+                continue;
+
+            RenderBuckets buckets = tile.getBuckets();
+            int size = buckets == null ? 0 : buckets.getSize();
+
+            /* upload at least one tile per frame */
+            if (uploadCnt > 0 && !TileUploadScheduler.hasBudget(size)) {
+                /* continue with next frame */
+                for (; i < mUploadCnt; i++)
+                    mUploadTiles[i] = null;
+                MapRenderer.animate();
                 break;
+            }
+
+            long time = System.nanoTime();
+            uploadCnt += uploadTileData(tile);
+            time = System.nanoTime() - time;
+            TileUploadScheduler.uploaded(size, time);
+            TileMetrics.record(Stage.UPLOAD, time);
         }
         return uploadCnt;
     }
 
+    /**
+     * @return distance of tile center to view center, in tiles.
+     */
+    private static double getCenterDistance(GLViewport v, MapTile tile) {
+        double scale = 1 << tile.zoomLevel;
+        double dx = (tile.x - v.pos.x) * scale + 0.5;
+        double dy = (tile.y - v.pos.y) * scale + 0.5;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Insert tile by ascending priority.
+     */
+    private void addUpload(MapTile tile, double priority) {
+        if (mUploadCnt == mUploadTiles.length) {
+            MapTile[] tiles = new MapTile[mUploadCnt * 2];
+            double[] prio = new double[mUploadCnt * 2];
+            System.arraycopy(mUploadTiles, 0, tiles, 0, mUploadCnt);
+            System.arraycopy(mUploadPriority, 0, prio, 0, mUploadCnt);
+            mUploadTiles = tiles;
+            mUploadPriority = prio;
+        }
+        int i = mUploadCnt++;
+        for (; i > 0 && mUploadPriority[i - 1] > priority; i--) {
+            mUploadTiles[i] = mUploadTiles[i - 1];
+            mUploadPriority[i] = mUploadPriority[i - 1];
+        }
+        mUploadTiles[i] = tile;
+        mUploadPriority[i] = priority;
+    }
+
     private static int uploadTileData(MapTile tile) {
         tile.setState(READY);
         RenderBuckets buckets = tile.getBuckets();
@@ -0,0 +1,110 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile;
+
+import org.oscim.renderer.MapRenderer;
+
+/**
+ * Time budget for compiling and uploading tile data, shared by all
+ * {@link TileRenderer} of a frame. The cost of a tile is predicted from
+ * the size of its buffers and the measured cost of previous uploads.
+ * <p/>
+ * The budget shrinks while frames take longer than {@link #TARGET_FRAME_TIME},
+ * sampled by {@link MapRenderer} for every frame, also without uploads.
+ * Only to be used on the GL thread.
+ */
+public final class TileUploadScheduler {
+
+    /**
+     * Upload budget per frame in milliseconds.
+     */
+    public static float BUDGET = 4;
+
+    /**
+     * Minimum upload budget per frame in milliseconds.
+     */
+    public static float MIN_BUDGET = 1;
+
+    /**
+     * Frame time in milliseconds that frames should keep, i.e. 60 fps.
+     */
+    public static float TARGET_FRAME_TIME = 1000 / 60f;
+
+    /**
+     * Frames further apart are not considered for the frame time, e.g.
+     * when the map was idle.
+     */
+    private static final long MAX_FRAME_INTERVAL = 250;
+
+    /**
+     * Weight of the latest sample in the moving averages.
+     */
+    private static final float SMOOTHING = 0.2f;
+
+    private static long sFrame;
+    private static float sFrameTime = TARGET_FRAME_TIME;
+    private static long sRemaining;
+
+    /**
+     * Estimated nanoseconds per byte of buffer data to compile and upload.
+     */
+    private static float sNanosPerByte = 5;
+
+    private TileUploadScheduler() {
+    }
+
+    /**
+     * Sample the frame time and start the budget for the frame.
+     *
+     * @param frametime the start of the frame in milliseconds.
+     */
+    public static void beginFrame(long frametime) {
+        long interval = frametime - sFrame;
+        if (interval > 0 && interval < MAX_FRAME_INTERVAL)
+            sFrameTime += (interval - sFrameTime) * SMOOTHING;
+        sFrame = frametime;
+
+        sRemaining = (long) (getFrameBudget() * 1000000);
+    }
+
+    /**
+     * @param size the size of tile buffers in bytes.
+     * @return true when a tile of size fits into the remaining budget.
+     */
+    static boolean hasBudget(int size) {
+        return sRemaining >= (long) (size * sNanosPerByte);
+    }
+
+    /**
+     * Account the measured cost of an upload.
+     *
+     * @param size  the size of tile buffers in bytes.
+     * @param nanos the time it took to compile and upload.
+     */
+    static void uploaded(int size, long nanos) {
+        sRemaining -= nanos;
+        if (size > 0)
+            sNanosPerByte += ((float) nanos / size - sNanosPerByte) * SMOOTHING;
+    }
+
+    /**
+     * @return the current upload budget per frame in milliseconds.
+     */
+    public static float getFrameBudget() {
+        if (sFrameTime > TARGET_FRAME_TIME)
+            return Math.max(MIN_BUDGET, BUDGET * TARGET_FRAME_TIME / sFrameTime);
+        return BUDGET;
+    }
+}
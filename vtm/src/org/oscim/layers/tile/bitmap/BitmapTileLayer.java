@@ -29,6 +29,7 @@ import org.oscim.map.Map;
 import org.oscim.renderer.bucket.TextureItem.TexturePool;
 import org.oscim.tiling.TileSource;
 import org.oscim.utils.FastMath;
+import org.oscim.utils.MemoryPressure;
 
 public class BitmapTileLayer extends TileLayer {
 
@@ -39,6 +40,9 @@ public class BitmapTileLayer extends TileLayer {
      */
     private float mBitmapAlpha = 1.0f;
 
+    private boolean mDownsample;
+    private int mOverzoomMax;
+
     public static class FadeStep {
         public final double scaleStart, scaleEnd;
         public final double zoomStart, zoomEnd;
@@ -106,6 +110,33 @@ public class BitmapTileLayer extends TileLayer {
             map().updateMap(true);
     }
 
+    /**
+     * Compose tiles that are not in the tile cache from their four cached
+     * children on loader threads, e.g. when zooming out of a region viewed
+     * before. Disabled by default.
+     */
+    public void setDownsample(boolean downsample) {
+        mDownsample = downsample;
+    }
+
+    public boolean isDownsample() {
+        return mDownsample;
+    }
+
+    /**
+     * Show tiles beyond the max zoom level of the tile source up to zoomMax,
+     * upscaled on loader threads from the tile at the max zoom level.
+     */
+    public void setOverzoom(int zoomMax) {
+        mOverzoomMax = Math.min(zoomMax, mTileSource.getZoomLevelMax() + TileCompositor.MAX_UPSCALE);
+        mTileManager.setZoomLevel(mTileSource.getZoomLevelMin(),
+                Math.max(mOverzoomMax, mTileSource.getZoomLevelMax()));
+    }
+
+    public int getOverzoom() {
+        return mOverzoomMax;
+    }
+
     @Override
     public void onMapEvent(Event event, MapPosition pos) {
         super.onMapEvent(event, pos);
@@ -151,6 +182,11 @@ public class BitmapTileLayer extends TileLayer {
         pool.clear();
     }
 
+    @Override
+    public long trimMemory(MemoryPressure pressure) {
+        return super.trimMemory(pressure) + pool.trimMemory(pressure);
+    }
+
     static final int POOL_FILL = 20;
 
     /**
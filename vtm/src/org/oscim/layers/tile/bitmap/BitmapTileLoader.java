@@ -21,6 +21,7 @@ import org.oscim.core.Tile;
 import org.oscim.layers.tile.MapTile;
 import org.oscim.layers.tile.TileLoader;
 import org.oscim.renderer.bucket.BitmapBucket;
+import org.oscim.renderer.bucket.BitmapPool;
 import org.oscim.renderer.bucket.RenderBuckets;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.TileSource;
@@ -28,22 +29,53 @@ import org.oscim.tiling.TileSource;
 import java.util.logging.Logger;
 
 import static org.oscim.layers.tile.MapTile.State.LOADING;
+import static org.oscim.tiling.QueryResult.FAILED;
+import static org.oscim.tiling.QueryResult.SUCCESS;
 
 public class BitmapTileLoader extends TileLoader {
 
     private static final Logger log = Logger.getLogger(BitmapTileLoader.class.getName());
 
     private final ITileDataSource mTileDataSource;
+    private final TileSource mTileSource;
     private final BitmapTileLayer mLayer;
+    private final TileCompositor mCompositor;
 
     public BitmapTileLoader(BitmapTileLayer tileLayer, TileSource tileSource) {
         super(tileLayer.getManager());
-        mTileDataSource = tileSource.getDataSource();
+        mTileDataSource = tileSource.getLoaderDataSource();
+        mTileSource = tileSource;
         mLayer = tileLayer;
+        mCompositor = new TileCompositor(tileSource, mTileDataSource);
     }
 
     @Override
     protected boolean loadTile(MapTile tile) {
+        /* pixels of recently shown tiles, shared with other layers of the source */
+        Bitmap bitmap = BitmapPool.get().get(BitmapPool.key(mTileSource, tile));
+        if (bitmap != null) {
+            setTileImage(bitmap);
+            completed(SUCCESS);
+            return true;
+        }
+
+        if (tile.zoomLevel > mTileSource.getZoomLevelMax()) {
+            bitmap = mCompositor.upscale(tile);
+            if (bitmap != null)
+                setTileImage(bitmap);
+            completed(bitmap != null ? SUCCESS : FAILED);
+            return bitmap != null;
+        }
+
+        if (mLayer.isDownsample()) {
+            bitmap = mCompositor.downsample(tile);
+            if (bitmap != null) {
+                setTileImage(bitmap);
+                completed(SUCCESS);
+                return true;
+            }
+        }
+
         try {
             mTileDataSource.query(tile, this);
         } catch (Exception e) {
@@ -55,13 +87,16 @@ public class BitmapTileLoader extends TileLoader {
 
     @Override
     public void setTileImage(Bitmap bitmap) {
+        Object key = BitmapPool.key(mTileSource, mTile);
+
         if (isCanceled() || !mTile.state(LOADING)) {
-            bitmap.recycle();
+            BitmapPool.get().release(key, bitmap);
             return;
         }
 
         BitmapBucket l = new BitmapBucket(false);
         l.setBitmap(bitmap, Tile.SIZE, Tile.SIZE, mLayer.pool);
+        l.setBitmapPool(BitmapPool.get(), key);
 
         RenderBuckets buckets = new RenderBuckets();
         buckets.set(l);
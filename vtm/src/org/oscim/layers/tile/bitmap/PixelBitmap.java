@@ -0,0 +1,204 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.bitmap;
+
+import org.oscim.backend.GL;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.renderer.MapRenderer;
+
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import static org.oscim.backend.GLAdapter.gl;
+
+/**
+ * Bitmap of pixels composed on the CPU, stored premultiplied in the
+ * byte order of RGBA textures so that upload needs no conversion.
+ */
+public class PixelBitmap implements Bitmap {
+
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private int mWidth;
+    private int mHeight;
+    private int[] mPixels;
+
+    /**
+     * @param pixels premultiplied pixels, see {@link #pack(int, int, int, int)}.
+     */
+    public PixelBitmap(int width, int height, int[] pixels) {
+        if (pixels.length != width * height)
+            throw new IllegalArgumentException("invalid pixels size: " + pixels.length);
+        mWidth = width;
+        mHeight = height;
+        mPixels = pixels;
+    }
+
+    /**
+     * @return the premultiplied components packed in texture byte order.
+     */
+    public static int pack(int r, int g, int b, int a) {
+        if (LITTLE_ENDIAN)
+            return a << 24 | b << 16 | g << 8 | r;
+        return r << 24 | g << 16 | b << 8 | a;
+    }
+
+    /**
+     * Pack unpremultiplied ARGB pixels in place.
+     *
+     * @return argb
+     */
+    public static int[] pack(int[] argb) {
+        for (int i = 0; i < argb.length; i++) {
+            int color = argb[i];
+            int a = color >>> 24;
+            argb[i] = pack(((color >>> 16) & 0xff) * a / 255,
+                    ((color >>> 8) & 0xff) * a / 255, (color & 0xff) * a / 255, a);
+        }
+        return argb;
+    }
+
+    /**
+     * @return the packed pixel as unpremultiplied ARGB.
+     */
+    public static int unpack(int pixel) {
+        int r, g, b, a;
+        if (LITTLE_ENDIAN) {
+            a = pixel >>> 24;
+            b = (pixel >>> 16) & 0xff;
+            g = (pixel >>> 8) & 0xff;
+            r = pixel & 0xff;
+        } else {
+            r = pixel >>> 24;
+            g = (pixel >>> 16) & 0xff;
+            b = (pixel >>> 8) & 0xff;
+            a = pixel & 0xff;
+        }
+        if (a == 0)
+            return 0;
+        if (a < 255) {
+            r = Math.min(r * 255 / a, 255);
+            g = Math.min(g * 255 / a, 255);
+            b = Math.min(b * 255 / a, 255);
+        }
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void recycle() {
+        mPixels = null;
+    }
+
+    @Override
+    public int[] getPixels() {
+        int[] argb = new int[mPixels.length];
+        for (int i = 0; i < argb.length; i++)
+            argb[i] = unpack(mPixels[i]);
+        return argb;
+    }
+
+    @Override
+    public void eraseColor(int color) {
+        int a = color >>> 24;
+        int pixel = pack(((color >>> 16) & 0xff) * a / 255,
+                ((color >>> 8) & 0xff) * a / 255, (color & 0xff) * a / 255, a);
+        for (int i = 0; i < mPixels.length; i++)
+            mPixels[i] = pixel;
+    }
+
+    @Override
+    public void uploadToTexture(boolean replace) {
+        IntBuffer buf = MapRenderer.getIntBuffer(mPixels.length);
+        buf.put(mPixels);
+        buf.flip();
+
+        gl.texImage2D(GL.TEXTURE_2D, 0, GL.RGBA, mWidth, mHeight, 0,
+                GL.RGBA, GL.UNSIGNED_BYTE, buf);
+    }
+
+    @Override
+    public boolean isValid() {
+        return mPixels != null;
+    }
+
+    /**
+     * Not supported, as on the web backend.
+     *
+     * @return null
+     */
+    @Override
+    public byte[] getPngEncodedData() {
+        return null;
+    }
+
+    /**
+     * Resample the pixels with bilinear interpolation, on the premultiplied
+     * components so that transparent pixels do not bleed their color.
+     */
+    @Override
+    public void scaleTo(int width, int height) {
+        if (width == mWidth && height == mHeight)
+            return;
+
+        int w = mWidth;
+        int h = mHeight;
+        int[] src = mPixels;
+        int[] dst = new int[width * height];
+
+        float scaleX = (float) w / width;
+        float scaleY = (float) h / height;
+
+        for (int y = 0; y < height; y++) {
+            float sy = Math.max((y + 0.5f) * scaleY - 0.5f, 0);
+            int y0 = Math.min((int) sy, h - 1);
+            int y1 = Math.min(y0 + 1, h - 1);
+            float fy = sy - y0;
+
+            for (int x = 0; x < width; x++) {
+                float sx = Math.max((x + 0.5f) * scaleX - 0.5f, 0);
+                int x0 = Math.min((int) sx, w - 1);
+                int x1 = Math.min(x0 + 1, w - 1);
+                float fx = sx - x0;
+
+                int p00 = src[y0 * w + x0];
+                int p01 = src[y0 * w + x1];
+                int p10 = src[y1 * w + x0];
+                int p11 = src[y1 * w + x1];
+
+                /* components are interpolated independent of byte order */
+                int pixel = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    float top = ((p00 >>> shift) & 0xff) * (1 - fx) + ((p01 >>> shift) & 0xff) * fx;
+                    float bottom = ((p10 >>> shift) & 0xff) * (1 - fx) + ((p11 >>> shift) & 0xff) * fx;
+                    pixel |= ((int) (top * (1 - fy) + bottom * fy + 0.5f)) << shift;
+                }
+                dst[y * width + x] = pixel;
+            }
+        }
+        mPixels = dst;
+        mWidth = width;
+        mHeight = height;
+    }
+}
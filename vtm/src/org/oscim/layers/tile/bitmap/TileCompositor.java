@@ -0,0 +1,432 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.bitmap;
+
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.renderer.bucket.BitmapPool;
+import org.oscim.tiling.ITileCache;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.TileSource;
+import org.oscim.utils.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Synthesizes raster tiles on a loader thread from other tiles of the source:
+ * downsampled from four children in the tile cache, or upscaled from the
+ * ancestor at the max zoom level of the source. One instance per loader.
+ */
+public class TileCompositor {
+
+    private static final Logger log = Logger.getLogger(TileCompositor.class.getName());
+
+    /**
+     * Max zoom levels to upscale, beyond pixels of the ancestor become
+     * larger than a tile.
+     */
+    public static final int MAX_UPSCALE = 8;
+
+    /**
+     * Number of ancestors kept with their pixels for upscaling, shared by
+     * all compositors and independent of the bitmap pool.
+     */
+    public static int ANCESTOR_CACHE_SIZE = 4;
+
+    /**
+     * Ancestors by {@link BitmapPool#key(Object, Tile)} in access order,
+     * including the ones being loaded.
+     */
+    private static final LinkedHashMap<Object, Ancestor> sAncestors =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    private final TileSource mTileSource;
+    private final ITileDataSource mDataSource;
+    private final CaptureSink mSink = new CaptureSink();
+
+    private int mWidth;
+    private int mHeight;
+
+    /**
+     * @param dataSource used to load ancestors that are not cached.
+     */
+    public TileCompositor(TileSource tileSource, ITileDataSource dataSource) {
+        mTileSource = tileSource;
+        mDataSource = dataSource;
+    }
+
+    /**
+     * @return the tile downsampled from its four children, or null when the
+     * tile is in the tile cache itself or not all children are available
+     * without loading them.
+     */
+    public Bitmap downsample(Tile tile) {
+        ITileCache cache = mTileSource.tileCache;
+        if (cache == null || tile.zoomLevel >= mTileSource.getZoomLevelMax())
+            return null;
+
+        ITileCache.TileReader reader = cache.getTile(tile);
+        if (reader != null) {
+            IOUtils.closeQuietly(reader.getInputStream());
+            return null;
+        }
+
+        /* check that all children are available before decoding any */
+        Tile[] tiles = new Tile[4];
+        Object[] keys = new Object[4];
+        ITileCache.TileReader[] readers = new ITileCache.TileReader[4];
+        for (int i = 0; i < 4; i++) {
+            tiles[i] = new Tile(tile.tileX * 2 + (i & 1), tile.tileY * 2 + (i >> 1),
+                    (byte) (tile.zoomLevel + 1));
+            keys[i] = BitmapPool.key(mTileSource, tiles[i]);
+            if (BitmapPool.get().contains(keys[i]))
+                continue;
+            readers[i] = cache.getTile(tiles[i]);
+            if (readers[i] == null) {
+                close(readers);
+                return null;
+            }
+        }
+
+        int width = 0, height = 0;
+        int[][] children = new int[4][];
+        for (int i = 0; i < 4; i++) {
+            Bitmap bitmap = null;
+            if (readers[i] == null) {
+                bitmap = BitmapPool.get().get(keys[i]);
+                /* taken by another loader meanwhile */
+                if (bitmap == null)
+                    readers[i] = cache.getTile(tiles[i]);
+            }
+            if (readers[i] != null) {
+                bitmap = decode(readers[i]);
+                readers[i] = null;
+            }
+            if (bitmap == null) {
+                close(readers);
+                return null;
+            }
+            children[i] = getPixels(keys[i], bitmap);
+            if (i == 0) {
+                width = mWidth;
+                height = mHeight;
+            } else if (width != mWidth || height != mHeight) {
+                close(readers);
+                return null;
+            }
+        }
+        if ((width & 1) != 0 || (height & 1) != 0)
+            return null;
+
+        return new PixelBitmap(width, height, downsample(children, width, height));
+    }
+
+    /**
+     * @return the tile upscaled from its ancestor at the max zoom level of
+     * the source, or null when the ancestor is not available.
+     */
+    public Bitmap upscale(Tile tile) {
+        int levels = tile.zoomLevel - mTileSource.getZoomLevelMax();
+        if (levels <= 0 || levels > MAX_UPSCALE)
+            return null;
+
+        Tile ancestor = new Tile(tile.tileX >> levels, tile.tileY >> levels,
+                (byte) (tile.zoomLevel - levels));
+        Ancestor a = loadAncestor(ancestor);
+        if (a == null || (a.width >> levels) == 0 || (a.height >> levels) == 0)
+            return null;
+
+        int mask = (1 << levels) - 1;
+        return new PixelBitmap(a.width, a.height, upscale(a.pixels.clone(), a.width, a.height,
+                levels, tile.tileX & mask, tile.tileY & mask));
+    }
+
+    /**
+     * Load the ancestor once for all its overzoomed tiles, other loaders
+     * wait for the query in flight.
+     *
+     * @return the ancestor, its pixels must not be modified, or null.
+     */
+    private Ancestor loadAncestor(Tile tile) {
+        Object key = BitmapPool.key(mTileSource, tile);
+        Ancestor ancestor;
+        synchronized (sAncestors) {
+            ancestor = sAncestors.get(key);
+            if (ancestor != null) {
+                try {
+                    while (ancestor.loading)
+                        sAncestors.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+                return ancestor.pixels == null ? null : ancestor;
+            }
+            ancestor = new Ancestor();
+            sAncestors.put(key, ancestor);
+        }
+
+        int[] pixels = null;
+        try {
+            pixels = loadPixels(tile, true);
+        } finally {
+            synchronized (sAncestors) {
+                ancestor.loading = false;
+                if (pixels != null) {
+                    ancestor.pixels = pixels;
+                    ancestor.width = mWidth;
+                    ancestor.height = mHeight;
+                } else {
+                    sAncestors.remove(key);
+                }
+                Iterator<Ancestor> it = sAncestors.values().iterator();
+                for (int n = sAncestors.size(); n > ANCESTOR_CACHE_SIZE && it.hasNext(); ) {
+                    if (!it.next().loading) {
+                        it.remove();
+                        n--;
+                    }
+                }
+                sAncestors.notifyAll();
+            }
+        }
+        return pixels == null ? null : ancestor;
+    }
+
+    /**
+     * @param load query the data source when the tile is not cached
+     * @return unpremultiplied ARGB pixels of the tile or null, the
+     * size is stored in mWidth and mHeight.
+     */
+    private int[] loadPixels(Tile tile, boolean load) {
+        Object key = BitmapPool.key(mTileSource, tile);
+        Bitmap bitmap = BitmapPool.get().get(key);
+        if (bitmap == null) {
+            ITileCache cache = mTileSource.tileCache;
+            ITileCache.TileReader reader = cache != null ? cache.getTile(tile) : null;
+            if (reader != null)
+                bitmap = decode(reader);
+        }
+        if (bitmap == null && load)
+            bitmap = query(tile);
+        if (bitmap == null)
+            return null;
+
+        return getPixels(key, bitmap);
+    }
+
+    /**
+     * @return unpremultiplied ARGB pixels of bitmap, the size is stored in
+     * mWidth and mHeight. The bitmap is released to the pool.
+     */
+    private int[] getPixels(Object key, Bitmap bitmap) {
+        mWidth = bitmap.getWidth();
+        mHeight = bitmap.getHeight();
+        int[] pixels = bitmap.getPixels();
+
+        /* keep the pixels for the next tiles */
+        BitmapPool.get().release(key, bitmap);
+
+        return pixels;
+    }
+
+    private static Bitmap decode(ITileCache.TileReader reader) {
+        InputStream is = reader.getInputStream();
+        try {
+            Bitmap bitmap = CanvasAdapter.decodeBitmap(is);
+            if (bitmap != null && bitmap.isValid())
+                return bitmap;
+        } catch (IOException e) {
+            log.fine(reader.getTile() + " Cache read: " + e);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+        return null;
+    }
+
+    private static void close(ITileCache.TileReader[] readers) {
+        for (ITileCache.TileReader reader : readers) {
+            if (reader != null)
+                IOUtils.closeQuietly(reader.getInputStream());
+        }
+    }
+
+    private Bitmap query(Tile tile) {
+        mSink.bitmap = null;
+        mSink.result = null;
+        try {
+            mDataSource.query(new MapTile(tile.tileX, tile.tileY, tile.zoomLevel), mSink);
+        } catch (Exception e) {
+            log.fine(tile + " " + e);
+        }
+        Bitmap bitmap = mSink.bitmap;
+        mSink.bitmap = null;
+        if (bitmap != null && mSink.result != QueryResult.SUCCESS) {
+            bitmap.recycle();
+            return null;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Downsample four tiles of equal, even size to one, by the mean of
+     * premultiplied 2x2 pixels.
+     *
+     * @param children unpremultiplied ARGB pixels, ordered top-left,
+     *                 top-right, bottom-left, bottom-right
+     * @return premultiplied pixels, see {@link PixelBitmap#pack(int, int, int, int)}.
+     */
+    public static int[] downsample(int[][] children, int width, int height) {
+        int[] dst = new int[width * height];
+        int halfW = width / 2;
+        int halfH = height / 2;
+
+        for (int i = 0; i < 4; i++) {
+            int[] src = children[i];
+            int offX = (i & 1) * halfW;
+            int offY = (i >> 1) * halfH;
+
+            for (int y = 0; y < halfH; y++) {
+                int row = 2 * y * width;
+                for (int x = 0; x < halfW; x++) {
+                    int p = row + 2 * x;
+                    int c0 = src[p];
+                    int c1 = src[p + 1];
+                    int c2 = src[p + width];
+                    int c3 = src[p + width + 1];
+
+                    int a0 = c0 >>> 24, a1 = c1 >>> 24, a2 = c2 >>> 24, a3 = c3 >>> 24;
+                    int a = a0 + a1 + a2 + a3;
+                    int r = premultiply(c0 >> 16, a0) + premultiply(c1 >> 16, a1)
+                            + premultiply(c2 >> 16, a2) + premultiply(c3 >> 16, a3);
+                    int g = premultiply(c0 >> 8, a0) + premultiply(c1 >> 8, a1)
+                            + premultiply(c2 >> 8, a2) + premultiply(c3 >> 8, a3);
+                    int b = premultiply(c0, a0) + premultiply(c1, a1)
+                            + premultiply(c2, a2) + premultiply(c3, a3);
+
+                    dst[(offY + y) * width + offX + x] = PixelBitmap.pack(
+                            (r + 2) >> 2, (g + 2) >> 2, (b + 2) >> 2, (a + 2) >> 2);
+                }
+            }
+        }
+        return dst;
+    }
+
+    /**
+     * Scale a region of a tile to full size with bilinear interpolation.
+     *
+     * @param argb   unpremultiplied ARGB pixels, modified
+     * @param levels zoom levels between tile and region, the region is
+     *               (width >> levels) x (height >> levels) pixels
+     * @param dx     column of the region
+     * @param dy     row of the region
+     * @return premultiplied pixels, see {@link PixelBitmap#pack(int, int, int, int)}.
+     */
+    public static int[] upscale(int[] argb, int width, int height, int levels, int dx, int dy) {
+        /* premultiply once, components stay in ARGB order */
+        for (int i = 0; i < argb.length; i++) {
+            int c = argb[i];
+            int a = c >>> 24;
+            if (a < 255) {
+                argb[i] = a << 24 | premultiply(c >> 16, a) << 16
+                        | premultiply(c >> 8, a) << 8 | premultiply(c, a);
+            }
+        }
+
+        float scale = 1f / (1 << levels);
+        float offX = dx * (width >> levels) + scale / 2 - 0.5f;
+        float offY = dy * (height >> levels) + scale / 2 - 0.5f;
+
+        int[] x0 = new int[width];
+        int[] x1 = new int[width];
+        float[] fx = new float[width];
+        for (int x = 0; x < width; x++) {
+            float sx = Math.min(Math.max(offX + x * scale, 0), width - 1);
+            x0[x] = (int) sx;
+            x1[x] = Math.min(x0[x] + 1, width - 1);
+            fx[x] = sx - x0[x];
+        }
+
+        int[] dst = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            float sy = Math.min(Math.max(offY + y * scale, 0), height - 1);
+            int y0 = (int) sy;
+            int y1 = Math.min(y0 + 1, height - 1);
+            float fy = sy - y0;
+            int row0 = y0 * width;
+            int row1 = y1 * width;
+
+            for (int x = 0; x < width; x++) {
+                int c00 = argb[row0 + x0[x]];
+                int c01 = argb[row0 + x1[x]];
+                int c10 = argb[row1 + x0[x]];
+                int c11 = argb[row1 + x1[x]];
+                float f = fx[x];
+
+                dst[y * width + x] = PixelBitmap.pack(
+                        lerp(c00 >> 16, c01 >> 16, c10 >> 16, c11 >> 16, f, fy),
+                        lerp(c00 >> 8, c01 >> 8, c10 >> 8, c11 >> 8, f, fy),
+                        lerp(c00, c01, c10, c11, f, fy),
+                        lerp(c00 >>> 24, c01 >>> 24, c10 >>> 24, c11 >>> 24, f, fy));
+            }
+        }
+        return dst;
+    }
+
+    private static int premultiply(int c, int a) {
+        return (c & 0xff) * a / 255;
+    }
+
+    private static int lerp(int c00, int c01, int c10, int c11, float fx, float fy) {
+        float top = (c00 & 0xff) * (1 - fx) + (c01 & 0xff) * fx;
+        float bottom = (c10 & 0xff) * (1 - fx) + (c11 & 0xff) * fx;
+        return (int) (top * (1 - fy) + bottom * fy + 0.5f);
+    }
+
+    private static class Ancestor {
+        boolean loading = true;
+        int[] pixels;
+        int width, height;
+    }
+
+    private static class CaptureSink implements ITileDataSink {
+        Bitmap bitmap;
+        QueryResult result;
+
+        @Override
+        public void process(MapElement element) {
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+            if (this.bitmap != null)
+                this.bitmap.recycle();
+            this.bitmap = bitmap;
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            this.result = result;
+        }
+    }
+}
@@ -67,7 +67,7 @@ class S3DBTileLoader extends TileLoader {
 
     public S3DBTileLoader(TileManager tileManager, TileSource tileSource) {
         super(tileManager);
-        mTileDataSource = tileSource.getDataSource();
+        mTileDataSource = tileSource.getLoaderDataSource();
 
     }
 
@@ -0,0 +1,281 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.vector;
+
+import org.oscim.core.Tile;
+import org.oscim.utils.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * {@link RenderBucketCache} storing one file per tile in a directory.
+ * The total size of the files is bounded, least recently used tiles
+ * are removed first. Tiles of previous themes or tile source versions
+ * are not removed explicitly, they are evicted as they are not used
+ * anymore. The usage order is kept in the modification time of the files
+ * and restored in background when the cache is created.
+ * <p/>
+ * Layout: dir/version/zoom/x_y
+ */
+public class DiskRenderBucketCache extends RenderBucketCache {
+    private static final Logger log = Logger.getLogger(DiskRenderBucketCache.class.getName());
+
+    private final File mDir;
+    private final long mMaxSize;
+
+    /**
+     * Temporary files older than this are left over from previous runs.
+     */
+    private final long mStaleTime;
+
+    /**
+     * Files in least recently used order, with their size.
+     */
+    private final LinkedHashMap<File, Long> mFiles = new LinkedHashMap<>(1024, 0.75f, true);
+    private long mSize;
+
+    /**
+     * Whether mFiles contains the files found in the directory, guarded by mFiles.
+     */
+    private boolean mScanned;
+    private int mClearCount;
+
+    /**
+     * @param dir     the cache directory, created if it does not exist.
+     * @param maxSize maximum size of the cache in bytes.
+     */
+    public DiskRenderBucketCache(File dir, long maxSize) {
+        mDir = dir;
+        mMaxSize = maxSize;
+        /* allow for coarse file time resolution */
+        mStaleTime = System.currentTimeMillis() - 2000;
+
+        if (!dir.exists() && !dir.mkdirs())
+            log.severe("cannot create cache dir: " + dir);
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                scan();
+            }
+        }, "VtmBucketCacheScan");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Restore usage order from modification time, files used meanwhile
+     * are kept as most recently used.
+     */
+    private void scan() {
+        int clearCount;
+        synchronized (mFiles) {
+            clearCount = mClearCount;
+        }
+        ArrayList<File> files = new ArrayList<>();
+        listFiles(mDir, files, mStaleTime);
+        final Map<File, Long> modified = new HashMap<>();
+        final Map<File, Long> sizes = new HashMap<>();
+        for (File f : files) {
+            modified.put(f, f.lastModified());
+            sizes.put(f, f.length());
+        }
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(modified.get(a), modified.get(b));
+            }
+        });
+
+        synchronized (mFiles) {
+            mScanned = true;
+            if (clearCount != mClearCount)
+                return;
+
+            LinkedHashMap<File, Long> used = new LinkedHashMap<>(mFiles);
+            mFiles.clear();
+            for (File f : files) {
+                if (!used.containsKey(f)) {
+                    long size = sizes.get(f);
+                    mFiles.put(f, size);
+                    mSize += size;
+                }
+            }
+            mFiles.putAll(used);
+            trim();
+        }
+    }
+
+    private static void listFiles(File dir, ArrayList<File> result, long staleTime) {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        for (File f : files) {
+            if (f.isDirectory())
+                listFiles(f, result, staleTime);
+            else if (!f.getName().endsWith(".tmp"))
+                result.add(f);
+            else if (f.lastModified() < staleTime)
+                f.delete();
+        }
+    }
+
+    private File getFile(long version, Tile tile) {
+        return new File(mDir, Long.toHexString(version) + File.separator
+                + tile.zoomLevel + File.separator + tile.tileX + "_" + tile.tileY);
+    }
+
+    @Override
+    protected byte[] read(long version, Tile tile) {
+        File file = getFile(version, tile);
+        Long size;
+        synchronized (mFiles) {
+            size = mFiles.get(file);
+            if (size == null && !mScanned && file.isFile()) {
+                size = file.length();
+                mFiles.put(file, size);
+                mSize += size;
+            }
+        }
+        if (size == null)
+            return null;
+
+        /* keep the usage order for the next start */
+        file.setLastModified(System.currentTimeMillis());
+
+        byte[] data = new byte[size.intValue()];
+        FileInputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            for (int pos = 0, n; pos < data.length; pos += n) {
+                n = is.read(data, pos, data.length - pos);
+                if (n < 0)
+                    throw new IOException("truncated " + file);
+            }
+            return data;
+        } catch (IOException e) {
+            log.fine(e.toString());
+            remove(file);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    @Override
+    protected void write(long version, Tile tile, byte[] data) {
+        File file = getFile(version, tile);
+        File dir = file.getParentFile();
+        if (!dir.exists() && !dir.mkdirs() && !dir.exists()) {
+            log.fine("cannot create " + dir);
+            return;
+        }
+
+        /* write to temporary file first, so that concurrent
+         * readers never see partially written tiles */
+        File tmp = new File(dir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        FileOutputStream os = null;
+        try {
+            os = new FileOutputStream(tmp);
+            os.write(data);
+            os.close();
+            os = null;
+
+            synchronized (mFiles) {
+                Long old = mFiles.remove(file);
+                if (old != null)
+                    mSize -= old;
+                if (!tmp.renameTo(file)) {
+                    file.delete();
+                    if (!tmp.renameTo(file)) {
+                        tmp.delete();
+                        return;
+                    }
+                }
+                mFiles.put(file, (long) data.length);
+                mSize += data.length;
+                trim();
+            }
+        } catch (IOException e) {
+            log.fine(e.toString());
+            tmp.delete();
+        } finally {
+            IOUtils.closeQuietly(os);
+        }
+    }
+
+    private void remove(File file) {
+        synchronized (mFiles) {
+            Long size = mFiles.remove(file);
+            if (size != null)
+                mSize -= size;
+            file.delete();
+        }
+    }
+
+    /**
+     * Remove least recently used files until the cache fits into max size.
+     */
+    private void trim() {
+        Iterator<Map.Entry<File, Long>> it = mFiles.entrySet().iterator();
+        while (mSize > mMaxSize && it.hasNext()) {
+            Map.Entry<File, Long> e = it.next();
+            mSize -= e.getValue();
+            e.getKey().delete();
+            it.remove();
+        }
+    }
+
+    @Override
+    public void clear() {
+        boolean scanned;
+        synchronized (mFiles) {
+            scanned = mScanned;
+            for (File f : mFiles.keySet())
+                f.delete();
+            mFiles.clear();
+            mSize = 0;
+            mClearCount++;
+        }
+        if (!scanned) {
+            /* files not scanned yet */
+            ArrayList<File> files = new ArrayList<>();
+            listFiles(mDir, files, mStaleTime);
+            for (File f : files)
+                f.delete();
+        }
+    }
+
+    /**
+     * @return the current size of the cache in bytes.
+     */
+    public long getSize() {
+        synchronized (mFiles) {
+            return mSize;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.vector;
+
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.vector.labeling.LabelLayer;
+import org.oscim.layers.tile.vector.labeling.LabelTileData;
+import org.oscim.renderer.bucket.RenderBuckets;
+import org.oscim.renderer.bucket.RenderBucketsCodec;
+import org.oscim.renderer.bucket.SymbolItem;
+import org.oscim.renderer.bucket.TextItem;
+import org.oscim.theme.IRenderTheme;
+import org.oscim.theme.RenderTheme;
+import org.oscim.theme.ThemeStyleIndex;
+import org.oscim.tiling.TileSource;
+
+/**
+ * Persistent cache of themed tiles, i.e. the prepared {@link RenderBuckets}
+ * and {@link LabelTileData} created by {@link VectorTileLoader}. A cached tile
+ * is restored without querying the data source and applying the theme.
+ * <p/>
+ * Tiles are keyed by the {@link TileSource#getVersion() version} of the tile
+ * source and the {@link ThemeStyleIndex#getFingerprint() fingerprint} of the
+ * theme, so that changing either makes previously cached tiles unreachable.
+ * Only {@link RenderTheme} instances are supported.
+ * <p/>
+ * Subclasses provide the storage, see {@link DiskRenderBucketCache}.
+ * Methods may be called concurrently by TileLoaders.
+ */
+public abstract class RenderBucketCache {
+
+    private volatile ThemeStyleIndex mStyleIndex;
+    private volatile long mThemeKey;
+    private volatile long mSourceKey;
+
+    /**
+     * @return the stored data for tile in version, or null.
+     */
+    protected abstract byte[] read(long version, Tile tile);
+
+    protected abstract void write(long version, Tile tile, byte[] data);
+
+    /**
+     * Remove all tiles.
+     */
+    public abstract void clear();
+
+    /**
+     * Called by {@link VectorTileLayer} when the theme changes.
+     */
+    public void setTheme(IRenderTheme theme) {
+        if (theme instanceof RenderTheme) {
+            ThemeStyleIndex styleIndex = new ThemeStyleIndex((RenderTheme) theme);
+            mThemeKey = styleIndex.getFingerprint();
+            mStyleIndex = styleIndex;
+        } else {
+            mStyleIndex = null;
+        }
+    }
+
+    /**
+     * Called by {@link VectorTileLayer} when the tile source changes.
+     */
+    public void setTileSource(TileSource tileSource) {
+        mSourceKey = tileSource == null ? 0 : hash(tileSource.getVersion());
+    }
+
+    /**
+     * Restore buckets and labels of tile.
+     *
+     * @param buckets empty buckets of the tile.
+     * @param labels  whether to restore labels.
+     * @return true when the tile was found in cache.
+     */
+    public boolean get(MapTile tile, RenderBuckets buckets, boolean labels) {
+        ThemeStyleIndex styleIndex = mStyleIndex;
+        if (styleIndex == null)
+            return false;
+
+        byte[] data = read(getVersion(labels), tile);
+        if (data == null)
+            return false;
+
+        LabelTileData ld = labels ? new LabelTileData() : null;
+
+        RenderBucketsCodec codec = new RenderBucketsCodec(styleIndex);
+        if (!codec.decode(data, buckets,
+                labels ? ld.labels : null,
+                labels ? ld.symbols : null)) {
+            buckets.clear();
+            if (ld != null) {
+                TextItem.pool.releaseAll(ld.labels.clear());
+                SymbolItem.pool.releaseAll(ld.symbols.clear());
+            }
+            return false;
+        }
+
+        if (ld != null)
+            tile.addData(LabelLayer.LABEL_DATA, ld);
+
+        return true;
+    }
+
+    /**
+     * Store prepared buckets and labels of tile.
+     *
+     * @param labels whether to store labels.
+     */
+    public void put(MapTile tile, RenderBuckets buckets, boolean labels) {
+        ThemeStyleIndex styleIndex = mStyleIndex;
+        if (styleIndex == null)
+            return;
+
+        TextItem ti = null;
+        SymbolItem si = null;
+        if (labels) {
+            LabelTileData ld = (LabelTileData) tile.getData(LabelLayer.LABEL_DATA);
+            if (ld != null) {
+                ti = ld.labels.head();
+                si = ld.symbols.head();
+            }
+        }
+
+        byte[] data = new RenderBucketsCodec(styleIndex).encode(buckets, ti, si);
+        if (data != null)
+            write(getVersion(labels), tile, data);
+    }
+
+    private long getVersion(boolean labels) {
+        long version = mSourceKey * 31 + mThemeKey;
+        return labels ? version * 31 + 1 : version;
+    }
+
+    private static long hash(String s) {
+        long h = 1125899906842597L;
+        for (int i = 0, n = s.length(); i < n; i++)
+            h = 31 * h + s.charAt(i);
+        return h;
+    }
+}
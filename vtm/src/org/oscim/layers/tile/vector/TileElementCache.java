@@ -0,0 +1,224 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.vector;
+
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.PointF;
+import org.oscim.core.Tag;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileDataSink;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory cache of the decoded, untransformed MapElements of tiles.
+ * Used by {@link VectorTileLoader} to apply a new theme without querying
+ * the tile source again. Elements are kept in packed primitive arrays, the
+ * cache is bounded by the estimated size of those in bytes.
+ */
+public class TileElementCache {
+
+    private static final GeometryType[] TYPES = GeometryType.values();
+
+    /* per element: type, layer, level, number of point and index values */
+    private static final int META_SIZE = 5;
+    /* per element: label and centroid position, NaN when not set */
+    private static final int POS_SIZE = 4;
+
+    /**
+     * The packed elements of one tile.
+     */
+    static class Elements {
+        final float[] points;
+        final int[] index;
+        final int[] meta;
+        final float[] positions;
+        final Tag[][] tags;
+        final int size;
+
+        Elements(Recorder r) {
+            points = Arrays.copyOf(r.points, r.numPoints);
+            index = Arrays.copyOf(r.index, r.numIndex);
+            meta = Arrays.copyOf(r.meta, r.numElements * META_SIZE);
+            positions = Arrays.copyOf(r.positions, r.numElements * POS_SIZE);
+            tags = Arrays.copyOf(r.tags, r.numElements);
+
+            int s = 64 + (points.length + index.length + meta.length + positions.length) * 4;
+            for (Tag[] t : tags)
+                s += 16 + t.length * 4;
+            size = s;
+        }
+
+        /**
+         * Pass all elements to sink, reusing element.
+         */
+        void replay(MapElement element, ITileDataSink sink) {
+            for (int i = 0, p = 0, x = 0, n = tags.length; i < n; i++) {
+                int m = i * META_SIZE;
+                int numPoints = meta[m + 3];
+                int numIndex = meta[m + 4];
+
+                element.clear();
+                element.type = TYPES[meta[m]];
+                element.layer = meta[m + 1];
+                element.level = meta[m + 2];
+
+                element.ensurePointSize(numPoints >> 1, false);
+                System.arraycopy(points, p, element.points, 0, numPoints);
+                element.pointNextPos = numPoints;
+                p += numPoints;
+
+                element.ensureIndexSize(numIndex, false);
+                System.arraycopy(index, x, element.index, 0, numIndex);
+                element.index[numIndex] = -1;
+                element.indexCurrentPos = Math.max(numIndex - 1, 0);
+                x += numIndex;
+
+                int pos = i * POS_SIZE;
+                element.labelPosition = Float.isNaN(positions[pos]) ? null
+                        : new PointF(positions[pos], positions[pos + 1]);
+                element.centroidPosition = Float.isNaN(positions[pos + 2]) ? null
+                        : new PointF(positions[pos + 2], positions[pos + 3]);
+
+                element.tags.set(tags[i]);
+
+                sink.process(element);
+            }
+        }
+    }
+
+    /**
+     * Collects the elements of one tile, reused by a TileLoader.
+     */
+    static class Recorder {
+        float[] points = new float[1024];
+        int[] index = new int[256];
+        int[] meta = new int[64 * META_SIZE];
+        float[] positions = new float[64 * POS_SIZE];
+        Tag[][] tags = new Tag[64][];
+
+        int numPoints;
+        int numIndex;
+        int numElements;
+
+        void reset() {
+            numPoints = 0;
+            numIndex = 0;
+            /* drop tag references */
+            Arrays.fill(tags, 0, numElements, null);
+            numElements = 0;
+        }
+
+        void add(MapElement element) {
+            int np = element.pointNextPos;
+
+            /* points carry their count in index[0] */
+            int ni = 0;
+            if (element.type == GeometryType.POINT) {
+                ni = 1;
+            } else {
+                while (ni < element.index.length && element.index[ni] >= 0)
+                    ni++;
+            }
+
+            if (numPoints + np > points.length)
+                points = Arrays.copyOf(points, Math.max(points.length * 2, numPoints + np));
+            if (numIndex + ni > index.length)
+                index = Arrays.copyOf(index, Math.max(index.length * 2, numIndex + ni));
+            if (numElements == tags.length) {
+                int n = numElements * 2;
+                meta = Arrays.copyOf(meta, n * META_SIZE);
+                positions = Arrays.copyOf(positions, n * POS_SIZE);
+                tags = Arrays.copyOf(tags, n);
+            }
+
+            System.arraycopy(element.points, 0, points, numPoints, np);
+            numPoints += np;
+            System.arraycopy(element.index, 0, index, numIndex, ni);
+            numIndex += ni;
+
+            int m = numElements * META_SIZE;
+            meta[m] = element.type.ordinal();
+            meta[m + 1] = element.layer;
+            meta[m + 2] = element.level;
+            meta[m + 3] = np;
+            meta[m + 4] = ni;
+
+            int pos = numElements * POS_SIZE;
+            PointF l = element.labelPosition;
+            positions[pos] = l == null ? Float.NaN : l.x;
+            positions[pos + 1] = l == null ? Float.NaN : l.y;
+            PointF c = element.centroidPosition;
+            positions[pos + 2] = c == null ? Float.NaN : c.x;
+            positions[pos + 3] = c == null ? Float.NaN : c.y;
+
+            tags[numElements++] = element.tags.asArray();
+        }
+    }
+
+    private final LinkedHashMap<Long, Elements> mCache = new LinkedHashMap<>(64, 0.75f, true);
+    private final long mMaxSize;
+    private long mSize;
+
+    /**
+     * @param maxSize the maximum estimated size of cached elements in bytes.
+     */
+    public TileElementCache(long maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    private static Long key(Tile tile) {
+        return ((long) tile.zoomLevel << 58) | ((long) tile.tileX << 29) | tile.tileY;
+    }
+
+    synchronized Elements get(Tile tile) {
+        return mCache.get(key(tile));
+    }
+
+    synchronized void put(Tile tile, Elements elements) {
+        if (elements.size > mMaxSize)
+            return;
+
+        Elements old = mCache.put(key(tile), elements);
+        if (old != null)
+            mSize -= old.size;
+        mSize += elements.size;
+
+        Iterator<Map.Entry<Long, Elements>> it = mCache.entrySet().iterator();
+        while (mSize > mMaxSize && it.hasNext()) {
+            mSize -= it.next().getValue().size;
+            it.remove();
+        }
+    }
+
+    /**
+     * Remove all tiles, e.g. when the tile source changed.
+     */
+    public synchronized void clear() {
+        mCache.clear();
+        mSize = 0;
+    }
+
+    /**
+     * @return the estimated size of cached elements in bytes.
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+}
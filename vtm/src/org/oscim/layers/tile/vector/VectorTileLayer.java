@@ -20,12 +20,15 @@ package org.oscim.layers.tile.vector;
 
 import org.oscim.core.MapElement;
 import org.oscim.layers.tile.*;
+import org.oscim.layers.tile.vector.labeling.LabelTileLoaderHook;
 import org.oscim.map.Map;
 import org.oscim.renderer.bucket.RenderBuckets;
 import org.oscim.theme.IRenderTheme;
 import org.oscim.theme.styles.RenderStyle;
 import org.oscim.tiling.TileSource;
 import org.oscim.tiling.TileSource.OpenResult;
+import org.oscim.utils.MemoryPressure;
+import org.oscim.utils.Trimmable;
 import org.oscim.utils.pool.Inlist.List;
 import org.oscim.utils.pool.LList;
 
@@ -45,6 +48,10 @@ public class VectorTileLayer extends TileLayer {
 
     private IRenderTheme mTheme;
 
+    private RenderBucketCache mBucketCache;
+
+    private TileElementCache mElementCache;
+
     public VectorTileLayer(Map map, TileSource tileSource) {
         this(map, new TileManager(map,
                         100),
@@ -97,7 +104,13 @@ public class VectorTileLayer extends TileLayer {
                 tileSource.getZoomLevelMax());
 
         for (TileLoader l : mTileLoader)
-            ((VectorTileLoader) l).setDataSource(tileSource.getDataSource());
+            ((VectorTileLoader) l).setDataSource(tileSource.getLoaderDataSource());
+
+        if (mBucketCache != null)
+            mBucketCache.setTileSource(tileSource);
+
+        if (mElementCache != null)
+            mElementCache.clear();
 
         mMap.clearMap();
         resumeLoaders();
@@ -127,6 +140,9 @@ public class VectorTileLayer extends TileLayer {
         //    for (TileLoader l : mTileLoader)
         //    ((VectorTileLoader) l).setRenderTheme(theme);
 
+        if (mBucketCache != null)
+            mBucketCache.setTheme(theme);
+
         tileRenderer().setOverdrawColor(theme.getMapBackground());
 
         resumeLoaders();
@@ -136,6 +152,79 @@ public class VectorTileLayer extends TileLayer {
         return mTheme;
     }
 
+    @Override
+    public long trimMemory(MemoryPressure pressure) {
+        long bytes = super.trimMemory(pressure);
+        if (mTheme instanceof Trimmable)
+            bytes += ((Trimmable) mTheme).trimMemory(pressure);
+        return bytes;
+    }
+
+    /**
+     * Set a {@link RenderBucketCache} to persist themed tiles, or null to
+     * disable caching. Tiles are only cached when all loader hooks of this
+     * layer are {@link LabelTileLoaderHook}s, as the output of other hooks
+     * cannot be restored.
+     */
+    public void setBucketCache(RenderBucketCache cache) {
+        pauseLoaders(true);
+        mTileManager.clearJobs();
+
+        mBucketCache = cache;
+        if (cache != null) {
+            cache.setTileSource(mTileSource);
+            cache.setTheme(mTheme);
+        }
+
+        resumeLoaders();
+    }
+
+    /**
+     * @return the RenderBucketCache, or null when not set or when the
+     * hooks of this layer prevent caching.
+     */
+    public RenderBucketCache getBucketCache() {
+        if (mBucketCache == null || mLoaderProcessHooks.head() != null)
+            return null;
+
+        for (LList<TileLoaderThemeHook> th = mLoaderThemeHooks.head(); th != null; th = th.next) {
+            if (!(th.data instanceof LabelTileLoaderHook))
+                return null;
+        }
+        return mBucketCache;
+    }
+
+    /**
+     * Keep the decoded elements of tiles in memory, so that theme changes
+     * are applied without reading the tile source again.
+     *
+     * @param maxSize maximum estimated size of the elements in bytes,
+     *                0 to disable.
+     */
+    public void setElementCacheSize(long maxSize) {
+        pauseLoaders(true);
+        mTileManager.clearJobs();
+
+        mElementCache = maxSize > 0 ? new TileElementCache(maxSize) : null;
+
+        resumeLoaders();
+    }
+
+    public TileElementCache getElementCache() {
+        return mElementCache;
+    }
+
+    /**
+     * @return true when a {@link LabelTileLoaderHook} is registered.
+     */
+    boolean hasLabelHook() {
+        for (LList<TileLoaderThemeHook> th = mLoaderThemeHooks.head(); th != null; th = th.next) {
+            if (th.data instanceof LabelTileLoaderHook)
+                return true;
+        }
+        return false;
+    }
+
     /**
      * Hook to intercept tile data processing. Called concurently by tile
      * loader threads, so dont keep tile specific state.
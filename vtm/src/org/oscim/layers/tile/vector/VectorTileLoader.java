@@ -21,6 +21,8 @@ import org.oscim.core.GeometryBuffer.GeometryType;
 import org.oscim.core.*;
 import org.oscim.layers.tile.MapTile;
 import org.oscim.layers.tile.TileLoader;
+import org.oscim.layers.tile.TileMetrics;
+import org.oscim.layers.tile.TileMetrics.Stage;
 import org.oscim.renderer.bucket.*;
 import org.oscim.theme.IRenderTheme;
 import org.oscim.theme.RenderTheme;
@@ -73,6 +75,19 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
 
     private final VectorTileLayer mTileLayer;
 
+    /**
+     * cache of the current tile, null when the tile is not cached
+     */
+    private RenderBucketCache mBucketCache;
+    private boolean mLabels;
+
+    /**
+     * elements of the current tile are recorded when set
+     */
+    private TileElementCache mElementCache;
+    private final TileElementCache.Recorder mRecorder = new TileElementCache.Recorder();
+    private final MapElement mReplayElement = new MapElement();
+
     public VectorTileLoader(VectorTileLayer tileLayer) {
         super(tileLayer.getManager());
         mTileLayer = tileLayer;
@@ -115,6 +130,31 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
         mLineScale *= 0.4f + 0.6f * ((float) Math.sin(Math.abs(lat) * (Math.PI / 180)));
         mBuckets = new RenderBuckets();
         tile.data = mBuckets;
+        mElementCache = null;
+
+        mBucketCache = mTileLayer.getBucketCache();
+        if (mBucketCache != null) {
+            mLabels = mTileLayer.hasLabelHook();
+            if (mBucketCache.get(tile, mBuckets, mLabels)) {
+                /* restored, dont store it again */
+                mBucketCache = null;
+                completed(QueryResult.SUCCESS);
+                return true;
+            }
+        }
+
+        mElementCache = mTileLayer.getElementCache();
+        if (mElementCache != null) {
+            TileElementCache.Elements elements = mElementCache.get(tile);
+            if (elements != null) {
+                /* apply the current theme to decoded elements */
+                mElementCache = null;
+                elements.replay(mReplayElement, this);
+                completed(QueryResult.SUCCESS);
+                return true;
+            }
+            mRecorder.reset();
+        }
 
         try {
             /* query data source, which calls process() callback */
@@ -137,9 +177,23 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
         mTileLayer.callHooksComplete(mTile, ok);
 
         /* finish buckets- tessellate and cleanup on worker-thread */
+        long time = TileMetrics.start();
         mBuckets.prepare();
+        TileMetrics.stop(Stage.COMPILE, time);
         clearState();
 
+        if (ok && !isCanceled() && mTile.state(LOADING)) {
+            if (mBucketCache != null)
+                mBucketCache.put(mTile, mBuckets, mLabels);
+            if (mElementCache != null)
+                mElementCache.put(mTile, new TileElementCache.Elements(mRecorder));
+        }
+        mBucketCache = null;
+        if (mElementCache != null) {
+            mRecorder.reset();
+            mElementCache = null;
+        }
+
         super.completed(result);
     }
 
@@ -182,6 +236,9 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
         if (isCanceled() || !mTile.state(LOADING))
             return;
 
+        if (mElementCache != null)
+            mRecorder.add(element);
+
         if (mTileLayer.callProcessHooks(mTile, mBuckets, element))
             return;
 
@@ -192,11 +249,15 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
         mElement = element;
 
         /* get and apply render instructions */
+        long time = TileMetrics.start();
+        RenderStyle<?>[] styles = renderTheme.matchElement(element.type, tags, mTile.zoomLevel);
+        TileMetrics.stop(Stage.THEME, time);
+
         if (element.type == GeometryType.POINT) {
-            renderNode(renderTheme.matchElement(element.type, tags, mTile.zoomLevel));
+            renderNode(styles);
         } else {
             mCurBucket = getValidLayer(element.layer) * renderTheme.getLevels() * (element.level > 0 ? element.level : 1);
-            renderWay(renderTheme.matchElement(element.type, tags, mTile.zoomLevel));
+            renderWay(styles);
         }
         clearState();
     }
@@ -250,12 +311,15 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
                 lb.setExtents(-16, Tile.SIZE + 16);
             }
 
+            long time = TileMetrics.start();
             if (line.outline) {
                 lb.addOutline(mCurLineBucket);
+                TileMetrics.stop(Stage.TESSELLATE, time);
                 return;
             }
 
             lb.addLine(mElement);
+            TileMetrics.stop(Stage.TESSELLATE, time);
 
             /* keep reference for outline layer(s) */
             //if (!(lb instanceof LineTexBucket))
@@ -277,7 +341,9 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
             //    lb.scale = w;
             //}
 
+            long time = TileMetrics.start();
             lb.addLine(mElement);
+            TileMetrics.stop(Stage.TESSELLATE, time);
         }
     }
 
@@ -299,6 +365,7 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
         boolean mesh = mElement.tags.contains(Constants.TAG_MAPSFORGE_ISSEA) || mElement.tags.contains(Constants.TAG_MAPSFORGE_NOSEA) || mElement.tags.contains(Constants.TAG_MAPSFORGE_SEA)
                 || mElement.tags.contains(Constants.TAG_FREIZEITKARTE_LAND) || mElement.tags.contains(Constants.TAG_FREIZEITKARTE_MEER);
 
+        long time = TileMetrics.start();
         if (USE_MESH_POLY || area.mesh || mesh) {
             MeshBucket mb = mBuckets.getMeshBucket(nLevel);
             mb.area = area;
@@ -308,11 +375,14 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
             pb.area = area;
             pb.addPolygon(mElement.points, mElement.index);
         }
+        TileMetrics.stop(Stage.TESSELLATE, time);
     }
 
     @Override
     public void renderSymbol(SymbolStyle symbol) {
+        long time = TileMetrics.start();
         mTileLayer.callThemeHooks(mTile, mBuckets, mElement, symbol, 0);
+        TileMetrics.stop(Stage.LABEL, time);
     }
 
     @Override
@@ -325,11 +395,15 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
         int nLevel = mCurBucket + level;
         CircleBucket cb = mBuckets.getCircleBucket(nLevel);
         cb.circle = circle;
+        long time = TileMetrics.start();
         cb.addCircle(mElement);
+        TileMetrics.stop(Stage.TESSELLATE, time);
     }
 
     @Override
     public void renderText(TextStyle text) {
+        long time = TileMetrics.start();
         mTileLayer.callThemeHooks(mTile, mBuckets, mElement, text, 0);
+        TileMetrics.stop(Stage.LABEL, time);
     }
 }
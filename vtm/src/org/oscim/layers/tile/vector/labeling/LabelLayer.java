@@ -34,7 +34,7 @@ import org.oscim.utils.async.SimpleWorker;
 public class LabelLayer extends Layer implements Map.UpdateListener, TileManager.Listener,
         ZoomLimiter.IZoomLimiter {
 
-    static final String LABEL_DATA = LabelLayer.class.getName();
+    public static final String LABEL_DATA = LabelLayer.class.getName();
 
     private static final long MAX_RELABEL_DELAY = 100;
 
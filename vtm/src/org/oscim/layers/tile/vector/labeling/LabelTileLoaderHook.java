@@ -32,6 +32,7 @@ import org.oscim.theme.styles.SymbolStyle;
 import org.oscim.theme.styles.TextStyle;
 import org.oscim.utils.Parameters;
 import org.oscim.utils.geom.PolyLabel;
+import org.oscim.utils.geom.PolyLabelCache;
 
 import static org.oscim.core.GeometryBuffer.GeometryType.*;
 import static org.oscim.layers.tile.vector.labeling.LabelLayer.LABEL_DATA;
@@ -40,6 +41,9 @@ public class LabelTileLoaderHook implements TileLoaderThemeHook {
 
     //public static final LabelTileData EMPTY = new LabelTileData();
 
+    private final PolyLabelCache mPolyLabelCache = Parameters.POLY_LABEL_CACHE > 0
+            ? new PolyLabelCache(Parameters.POLY_LABEL_CACHE) : null;
+
     private LabelTileData get(MapTile tile) {
         // FIXME could be 'this'..
         LabelTileData ld = (LabelTileData) tile.getData(LABEL_DATA);
@@ -94,9 +98,11 @@ public class LabelTileLoaderHook implements TileLoaderThemeHook {
                 float y = 0;
                 if (label == null) {
                     if (Parameters.POLY_LABEL) {
-                        label = PolyLabel.get(element);
+                        PolyLabel polyLabel = PolyLabel.pool.get();
+                        label = polyLabel.get(element, tile, mPolyLabelCache);
                         x = label.x;
                         y = label.y;
+                        polyLabel = PolyLabel.pool.release(polyLabel);
                     } else {
                         int n = element.index[0];
                         for (int i = 0; i < n; ) {
@@ -152,9 +158,11 @@ public class LabelTileLoaderHook implements TileLoaderThemeHook {
                 float y = 0;
                 if (centroid == null) {
                     if (Parameters.POLY_LABEL) {
-                        centroid = PolyLabel.get(element);
+                        PolyLabel polyLabel = PolyLabel.pool.get();
+                        centroid = polyLabel.get(element, tile, mPolyLabelCache);
                         x = centroid.x;
                         y = centroid.y;
+                        polyLabel = PolyLabel.pool.release(polyLabel);
                     } else {
                         int n = element.index[0];
                         for (int i = 0; i < n; ) {
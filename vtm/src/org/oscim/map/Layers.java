@@ -92,6 +92,7 @@ public final class Layers extends AbstractList<Layer> {
         // add zoom limit to tile manager
         if (layer instanceof ZoomLimiter.IZoomLimiter)
             ((ZoomLimiter.IZoomLimiter) layer).addZoomLimit();
+        layer.onAttach();
 
         // bind added group layer
         if (layer instanceof GroupLayer) {
@@ -103,6 +104,7 @@ public final class Layers extends AbstractList<Layer> {
                     mMap.input.bind((InputListener) gl);
                 if (gl instanceof ZoomLimiter.IZoomLimiter)
                     ((ZoomLimiter.IZoomLimiter) gl).addZoomLimit();
+                gl.onAttach();
             }
         }
 
@@ -137,6 +139,9 @@ public final class Layers extends AbstractList<Layer> {
         }
     }
 
+    /**
+     * Remove the layer and detach it, see {@link Layer#onDetach()}.
+     */
     @Override
     public synchronized Layer remove(int index) {
         mDirtyLayers = true;
@@ -173,9 +178,14 @@ public final class Layers extends AbstractList<Layer> {
         }
 
         remove.setEnableHandler(null);
+        remove.onDetach();
         return remove;
     }
 
+    /**
+     * Replace the layer at index and detach the replaced layer, see
+     * {@link Layer#onDetach()}.
+     */
     @Override
     public synchronized Layer set(int index, Layer layer) {
         if (mLayerList.contains(layer)) {
@@ -191,6 +201,7 @@ public final class Layers extends AbstractList<Layer> {
         // add zoom limit to tile manager
         if (layer instanceof ZoomLimiter.IZoomLimiter)
             ((ZoomLimiter.IZoomLimiter) layer).addZoomLimit();
+        layer.onAttach();
 
         // bind added group layer
         if (layer instanceof GroupLayer) {
@@ -202,6 +213,7 @@ public final class Layers extends AbstractList<Layer> {
                     mMap.input.bind((InputListener) gl);
                 if (gl instanceof ZoomLimiter.IZoomLimiter)
                     ((ZoomLimiter.IZoomLimiter) gl).addZoomLimit();
+                gl.onAttach();
             }
         }
 
@@ -233,6 +245,7 @@ public final class Layers extends AbstractList<Layer> {
         }
 
         remove.setEnableHandler(null);
+        remove.onDetach();
         return remove;
     }
 
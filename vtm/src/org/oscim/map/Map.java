@@ -21,27 +21,39 @@
  */
 package org.oscim.map;
 
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.backend.ISvgCache;
 import org.oscim.core.BoundingBox;
 import org.oscim.core.Box;
 import org.oscim.core.MapPosition;
 import org.oscim.event.*;
 import org.oscim.layers.AbstractMapEventLayer;
+import org.oscim.layers.GroupLayer;
 import org.oscim.layers.Layer;
 import org.oscim.layers.MapEventLayer;
 import org.oscim.layers.MapEventLayer2;
 import org.oscim.layers.tile.TileLayer;
+import org.oscim.layers.tile.TileMetrics;
 import org.oscim.layers.tile.vector.OsmTileLayer;
 import org.oscim.layers.tile.vector.VectorTileLayer;
+import org.oscim.renderer.BufferObject;
 import org.oscim.renderer.MapRenderer;
+import org.oscim.renderer.bucket.BitmapPool;
+import org.oscim.renderer.bucket.TextureBucket;
+import org.oscim.renderer.bucket.VertexData;
 import org.oscim.theme.IRenderTheme;
 import org.oscim.theme.ThemeFile;
 import org.oscim.theme.ThemeLoader;
 import org.oscim.tiling.TileSource;
+import org.oscim.utils.MemoryPressure;
 import org.oscim.utils.Parameters;
 import org.oscim.utils.ThreadUtils;
+import org.oscim.utils.Trimmable;
 import org.oscim.utils.async.AsyncExecutor;
 import org.oscim.utils.async.TaskQueue;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 public abstract class Map implements TaskQueue {
@@ -125,6 +137,8 @@ public abstract class Map implements TaskQueue {
 
     protected boolean mClearMap = true;
 
+    private final List<Trimmable> mTrimmables = new ArrayList<>();
+
     public Map() {
         ThreadUtils.init();
 
@@ -232,6 +246,64 @@ public abstract class Map implements TaskQueue {
         mAsyncExecutor.dispose();
     }
 
+    /**
+     * Register a cache or pool to be trimmed by {@link #trimMemory(MemoryPressure)}.
+     * Layers implementing {@link Trimmable} are trimmed without registration.
+     */
+    public void addTrimmable(Trimmable trimmable) {
+        if (!mTrimmables.contains(trimmable))
+            mTrimmables.add(trimmable);
+    }
+
+    public void removeTrimmable(Trimmable trimmable) {
+        mTrimmables.remove(trimmable);
+    }
+
+    /**
+     * Release memory on low memory conditions, e.g. when the system signals
+     * memory pressure while the app is in background. Layer caches are
+     * trimmed first, then the shared pools that take their released items.
+     * GL objects are deleted and pooled native buffers dropped with the next
+     * frame. Call on main thread.
+     *
+     * @return the approximate number of bytes released.
+     */
+    public long trimMemory(MemoryPressure pressure) {
+        ThreadUtils.assertMainThread();
+
+        long bytes = 0;
+        for (Layer layer : mLayers)
+            bytes += trimMemory(layer, pressure);
+        for (Trimmable trimmable : mTrimmables)
+            bytes += trimmable.trimMemory(pressure);
+
+        ISvgCache svgCache = CanvasAdapter.getSvgCache();
+        if (svgCache instanceof Trimmable)
+            bytes += ((Trimmable) svgCache).trimMemory(pressure);
+        bytes += BitmapPool.get().trimMemory(pressure);
+        bytes += TextureBucket.pool.trimMemory(pressure);
+        bytes += VertexData.trimPool(pressure);
+        bytes += BufferObject.trimMemory(pressure);
+        MapRenderer.trimMemory(pressure);
+
+        log.fine("trim memory " + pressure + ": " + bytes / 1024 + "kB");
+
+        /* next frame deletes released GL objects */
+        updateMap(true);
+        return bytes;
+    }
+
+    private static long trimMemory(Layer layer, MemoryPressure pressure) {
+        long bytes = 0;
+        if (layer instanceof Trimmable)
+            bytes += ((Trimmable) layer).trimMemory(pressure);
+        if (layer instanceof GroupLayer) {
+            for (Layer l : ((GroupLayer) layer).layers)
+                bytes += trimMemory(l, pressure);
+        }
+        return bytes;
+    }
+
     /**
      * Request call to onUpdate for all layers. This function can
      * be called from any thread. Request will be handled on main
@@ -396,6 +468,14 @@ public abstract class Map implements TaskQueue {
         return mAnimator;
     }
 
+    /**
+     * @return metrics of the tile pipeline, recorded when enabled
+     * with {@link TileMetrics#setEnabled(boolean)}.
+     */
+    public TileMetrics metrics() {
+        return TileMetrics.get();
+    }
+
     /**
      * This function is run on main-thread before rendering a frame.
      * <p>
@@ -19,10 +19,13 @@ package org.oscim.renderer;
 
 import org.oscim.backend.GL;
 import org.oscim.backend.GLAdapter;
+import org.oscim.utils.MemoryPressure;
+import org.oscim.utils.Parameters;
 import org.oscim.utils.pool.Inlist;
 
 import javax.annotation.CheckReturnValue;
 import java.nio.Buffer;
+import java.util.ArrayList;
 import java.util.logging.Logger;
 
 import static org.oscim.backend.GLAdapter.gl;
@@ -47,6 +50,11 @@ public final class BufferObject extends Inlist<BufferObject> {
      */
     private int target;
 
+    /**
+     * frame when returned to pool
+     */
+    private int released;
+
     private BufferObject(int target, int id) {
         this.id = id;
         this.target = target;
@@ -100,9 +108,30 @@ public final class BufferObject extends Inlist<BufferObject> {
         log.fine("now: " + mBufferMemoryUsage / MB + "MB");
     }
 
-    private static final BufferObject pool[] = new BufferObject[2];
+    /**
+     * Pooled buffers by target and size class of the allocated bytes,
+     * class 0 holds buffers without data.
+     */
+    private static final int NUM_CLASSES = 32;
+    private static final BufferObject[][] pool = new BufferObject[2][NUM_CLASSES];
     private static final int counter[] = new int[2];
 
+    /**
+     * Check for idle buffers every 64 frames.
+     */
+    private static final int IDLE_CHECK_MASK = 63;
+    private static int frame;
+
+    // bytes of buffers deleted as idle or by trimming
+    private static long mReleasedBytes;
+
+    /**
+     * @return the size class of size bytes: floor(log2(size)) + 1, 0 for 0 bytes.
+     */
+    static int sizeClass(int size) {
+        return 32 - Integer.numberOfLeadingZeros(size);
+    }
+
     /**
      * @param target can be GL20.ARRAY_BUFFER or GL20.ELEMENT_ARRAY_BUFFER
      * @param size   requested size in bytes. optional - can be 0.
@@ -110,43 +139,50 @@ public final class BufferObject extends Inlist<BufferObject> {
     public static synchronized BufferObject get(int target, int size) {
 
         int t = (target == GL.ARRAY_BUFFER) ? 0 : 1;
+        int c = sizeClass(size);
+
+        BufferObject bo = null;
+        if (size > 0) {
+            /* buffers of the same size class with more bytes or of the next
+             * class can be updated with bufferSubData, see loadBufferData() */
+            bo = take(t, c, size + 1);
+            if (bo == null && c + 1 < NUM_CLASSES)
+                bo = take(t, c + 1, 0);
+        }
+        if (bo == null)
+            bo = take(t, 0, 0);
 
-        if (pool[t] == null) {
-            if (counter[t] != 0)
-                throw new IllegalStateException("lost objects: " + counter[t]);
+        /* replace the data of a smaller buffer */
+        for (int i = c - 1; bo == null && i > 0; i--)
+            bo = take(t, i, 0);
 
+        if (bo == null) {
             createBuffers(target, 10);
             counter[t] += 10;
+            bo = take(t, 0, 0);
         }
         counter[t]--;
 
-        if (size != 0) {
-            /* find the item with minimal size greater 'size' bytes. */
-            BufferObject bo = pool[t];
-            /* actually points to BufferObject before min */
-            BufferObject min = null;
-            BufferObject prev = null;
-
-            for (; bo != null; bo = bo.next) {
-                if (bo.size > size) {
-                    if (min == null || min.next.size > bo.size)
-                        min = prev;
-                }
-                prev = bo;
-            }
+        return bo;
+    }
 
-            if (min != null && min != pool[t]) {
-                bo = min.next;
-                min.next = bo.next;
+    /**
+     * Remove the first buffer of size class c with at least minSize bytes.
+     */
+    private static BufferObject take(int t, int c, int minSize) {
+        BufferObject prev = null;
+        for (BufferObject bo = pool[t][c]; bo != null; bo = bo.next) {
+            if (bo.size >= minSize) {
+                if (prev == null)
+                    pool[t][c] = bo.next;
+                else
+                    prev.next = bo.next;
                 bo.next = null;
                 return bo;
             }
+            prev = bo;
         }
-
-        BufferObject bo = pool[t];
-        pool[t] = pool[t].next;
-        bo.next = null;
-        return bo;
+        return null;
     }
 
     @CheckReturnValue
@@ -154,13 +190,12 @@ public final class BufferObject extends Inlist<BufferObject> {
         if (bo == null)
             return null;
 
-        // if (counter > 200) {
-        // log.debug("should clear some buffers " + counter);
-        // }
         int t = (bo.target == GL.ARRAY_BUFFER) ? 0 : 1;
+        int c = sizeClass(bo.size);
 
-        bo.next = pool[t];
-        pool[t] = bo;
+        bo.released = frame;
+        bo.next = pool[t][c];
+        pool[t][c] = bo;
         counter[t]++;
 
         return null;
@@ -175,41 +210,166 @@ public final class BufferObject extends Inlist<BufferObject> {
         for (int t = 0; t < 2; t++) {
 
             int removed = 0;
-            BufferObject prev = pool[t];
 
-            if (prev == null) {
-                log.fine("nothing to free");
-                continue;
-            }
+            /* free largest buffers first */
+            for (int c = NUM_CLASSES - 1; c > 0; c--) {
+                while (pool[t][c] != null && removed < 10 && freed <= reduce) {
+                    BufferObject bo = pool[t][c];
+                    pool[t][c] = bo.next;
+                    bo.next = null;
 
-            for (BufferObject bo = pool[t].next; bo != null; ) {
-                if (bo.size > 0) {
                     freed += bo.size;
                     bo.size = 0;
-
                     vboIds[removed++] = bo.id;
-                    prev.next = bo.next;
-                    bo = bo.next;
-
-                    if (removed == 10 || reduce < freed)
-                        break;
-
-                } else {
-                    prev = bo;
-                    bo = bo.next;
                 }
             }
 
             if (removed > 0) {
                 GLUtils.glDeleteBuffers(removed, vboIds);
                 counter[t] -= removed;
+            } else {
+                log.fine("nothing to free");
+            }
+        }
+        mReleasedBytes += freed;
+
+        return freed;
+    }
+
+    /**
+     * Buffers removed from pool by {@link #trimMemory(MemoryPressure)} or
+     * {@link #releaseIdleBuffers()}, deleted on GL thread by {@link #disposeBuffers()}.
+     */
+    private static final ArrayList<Integer> disposedBuffers = new ArrayList<>();
+
+    /**
+     * Free the data of pooled buffers, the buffers are deleted with the
+     * next frame.
+     *
+     * @return the number of bytes released.
+     */
+    public static synchronized long trimMemory(MemoryPressure pressure) {
+        long freed = 0;
+
+        for (int t = 0; t < 2; t++) {
+            int pooled = 0;
+            for (int c = 1; c < NUM_CLASSES; c++) {
+                for (BufferObject bo = pool[t][c]; bo != null; bo = bo.next)
+                    pooled += bo.size;
             }
+            int keep = pressure.target(pooled);
+
+            /* free largest buffers first */
+            for (int c = NUM_CLASSES - 1; c > 0 && pooled > keep; c--) {
+                while (pool[t][c] != null && pooled > keep) {
+                    BufferObject bo = pool[t][c];
+                    pool[t][c] = bo.next;
+                    pooled -= bo.size;
+                    freed += dispose(t, bo);
+                }
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * Free the data of buffers that were not used for
+     * {@link Parameters#BUFFER_IDLE_FRAMES} frames, the buffers are deleted
+     * by {@link #disposeBuffers()}. Call once per frame.
+     */
+    public static synchronized void releaseIdleBuffers() {
+        int idleFrames = Parameters.BUFFER_IDLE_FRAMES;
+        if ((++frame & IDLE_CHECK_MASK) != 0 || idleFrames <= 0)
+            return;
 
+        long freed = 0;
+        for (int t = 0; t < 2; t++) {
+            for (int c = 1; c < NUM_CLASSES; c++) {
+                BufferObject prev = null;
+                for (BufferObject bo = pool[t][c]; bo != null; ) {
+                    BufferObject next = bo.next;
+                    if (frame - bo.released >= idleFrames) {
+                        if (prev == null)
+                            pool[t][c] = next;
+                        else
+                            prev.next = next;
+                        freed += dispose(t, bo);
+                    } else {
+                        prev = bo;
+                    }
+                    bo = next;
+                }
+            }
         }
+        if (freed > 0)
+            log.fine("release idle buffers: " + freed / 1024 + "kB");
+    }
 
+    /**
+     * Free the data of a buffer removed from pool.
+     *
+     * @return the number of bytes released.
+     */
+    private static int dispose(int t, BufferObject bo) {
+        int freed = bo.size;
+        mBufferMemoryUsage -= freed;
+        mReleasedBytes += freed;
+        bo.size = 0;
+        bo.next = null;
+        counter[t]--;
+
+        synchronized (disposedBuffers) {
+            disposedBuffers.add(bo.id);
+        }
         return freed;
     }
 
+    /**
+     * Delete buffers released by {@link #trimMemory(MemoryPressure)} or
+     * {@link #releaseIdleBuffers()}. Only call from GL-Thread.
+     */
+    public static void disposeBuffers() {
+        synchronized (disposedBuffers) {
+            int size = disposedBuffers.size();
+            if (size == 0)
+                return;
+
+            int[] ids = new int[size];
+            for (int i = 0; i < size; i++)
+                ids[i] = disposedBuffers.get(i);
+            disposedBuffers.clear();
+            GLUtils.glDeleteBuffers(size, ids);
+        }
+    }
+
+    /**
+     * @return bytes currently loaded in buffers, used or pooled.
+     */
+    public static int getMemoryUsage() {
+        return mBufferMemoryUsage;
+    }
+
+    /**
+     * @return bytes loaded in pooled buffers.
+     */
+    public static synchronized long getPooledBytes() {
+        long bytes = 0;
+        for (int t = 0; t < 2; t++) {
+            for (int c = 1; c < NUM_CLASSES; c++) {
+                for (BufferObject bo = pool[t][c]; bo != null; bo = bo.next)
+                    bytes += bo.size;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return bytes of buffers freed as idle, by trimming or when exceeding the limit.
+     */
+    public static long getReleasedBytes() {
+        return mReleasedBytes;
+    }
+
     static void createBuffers(int target, int num) {
         int[] mVboIds = GLUtils.glGenBuffers(num);
 
@@ -217,16 +377,18 @@ public final class BufferObject extends Inlist<BufferObject> {
 
         for (int i = 0; i < num; i++) {
             BufferObject bo = new BufferObject(target, mVboIds[i]);
-            bo.next = pool[t];
-            pool[t] = bo;
+            bo.next = pool[t][0];
+            pool[t][0] = bo;
         }
     }
 
     static synchronized void clear() {
         mBufferMemoryUsage = 0;
 
-        pool[0] = null;
-        pool[1] = null;
+        for (int c = 0; c < NUM_CLASSES; c++) {
+            pool[0][c] = null;
+            pool[1][c] = null;
+        }
         counter[0] = 0;
         counter[1] = 0;
     }
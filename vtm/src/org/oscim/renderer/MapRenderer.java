@@ -21,10 +21,13 @@ package org.oscim.renderer;
 import org.oscim.backend.GL;
 import org.oscim.backend.GLAdapter;
 import org.oscim.backend.canvas.Color;
+import org.oscim.layers.tile.TileUploadScheduler;
 import org.oscim.map.Map;
 import org.oscim.renderer.bucket.RenderBuckets;
 import org.oscim.renderer.bucket.TextureItem;
+import org.oscim.utils.MemoryPressure;
 
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
@@ -61,6 +64,7 @@ public class MapRenderer {
     private static boolean rerender;
 
     private static NativeBufferPool mBufferPool;
+    private static volatile MemoryPressure mTrimPressure;
 
     private float viewPortScale = 1;
 
@@ -89,6 +93,7 @@ public class MapRenderer {
     public void onDrawFrame() {
         frametime = System.currentTimeMillis();
         rerender = false;
+        TileUploadScheduler.beginFrame(frametime);
 
         mMap.beginFrame();
 
@@ -102,6 +107,22 @@ public class MapRenderer {
 
         mBufferPool.releaseBuffers();
         TextureItem.disposeTextures();
+        BufferObject.releaseIdleBuffers();
+        BufferObject.disposeBuffers();
+
+        MemoryPressure pressure = mTrimPressure;
+        if (pressure != null) {
+            mTrimPressure = null;
+            long freed = mBufferPool.trim(pressure);
+            log.fine("trim native buffers: " + freed / 1024 + "kB");
+        }
+    }
+
+    /**
+     * Drop pooled native buffers with the next frame.
+     */
+    public static void trimMemory(MemoryPressure pressure) {
+        mTrimPressure = pressure;
     }
 
     private void draw() {
@@ -296,6 +317,17 @@ public class MapRenderer {
         rerender = true;
     }
 
+    /**
+     * @return the pool of temporary native buffers, e.g. for statistics.
+     */
+    public static NativeBufferPool getBufferPool() {
+        return mBufferPool;
+    }
+
+    public static ByteBuffer getByteBuffer(int size) {
+        return mBufferPool.getByteBuffer(size);
+    }
+
     public static FloatBuffer getFloatBuffer(int size) {
         return mBufferPool.getFloatBuffer(size);
     }
@@ -1,8 +1,9 @@
 package org.oscim.renderer;
 
 import org.oscim.renderer.NativeBufferPool.BufferItem;
+import org.oscim.utils.MemoryPressure;
+import org.oscim.utils.Parameters;
 import org.oscim.utils.pool.Inlist;
-import org.oscim.utils.pool.Pool;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -18,61 +19,213 @@ import java.nio.ShortBuffer;
  * always* copied after glBufferData returns...
  * - Somehow it does always copy when using Android GL bindings
  * but not when using libgdx bindings (LWJGL or AndroidGL20)
+ * <p/>
+ * Buffers are pooled by power of two size classes, so that a large
+ * request does not grow a buffer that is reused for small ones. For each
+ * class the pool tracks the high-water mark of buffers used within a frame
+ * and drops pooled buffers above it every
+ * {@link Parameters#BUFFER_IDLE_FRAMES} frames.
  */
-public class NativeBufferPool extends Pool<BufferItem> {
+public class NativeBufferPool {
+
+    /**
+     * Smallest size class, 32kB.
+     */
+    static final int MIN_CLASS = 15;
+
+    /**
+     * Number of size classes, the largest one is 1GB.
+     */
+    static final int NUM_CLASSES = 31 - MIN_CLASS;
 
     static final class BufferItem extends Inlist<BufferItem> {
-        ByteBuffer byteBuffer;
+        final ByteBuffer byteBuffer;
         ShortBuffer sBuffer;
         FloatBuffer fBuffer;
         IntBuffer iBuffer;
 
-        int size;
+        final int sizeClass;
+        final int size;
 
-        void growBuffer(int size) {
-            //log.debug("grow buffer " + size);
-            // 32kb min size
-            if (size < (1 << 15))
-                size = (1 << 15);
+        BufferItem(int sizeClass) {
+            this.sizeClass = sizeClass;
+            this.size = 1 << (MIN_CLASS + sizeClass);
 
             byteBuffer = ByteBuffer
                     .allocateDirect(size)
                     .order(ByteOrder.nativeOrder());
-            this.size = size;
-
-            sBuffer = null;
-            iBuffer = null;
-            fBuffer = null;
         }
     }
 
+    private final BufferItem[] mPools = new BufferItem[NUM_CLASSES];
+    private final int[] mPooled = new int[NUM_CLASSES];
+    private final int[] mUsed = new int[NUM_CLASSES];
+    private final int[] mHighWater = new int[NUM_CLASSES];
+
     private BufferItem mUsedBuffers;
+    private int mFrames;
 
-    @Override
-    protected BufferItem createItem() {
-        // unused;
-        return null;
+    private long mAllocatedBytes;
+    private long mPeakBytes;
+    private long mReleasedBytes;
+    private long mAllocations;
+    private long mReuses;
+
+    /**
+     * @return the size class of buffers holding at least size bytes.
+     */
+    static int sizeClass(int size) {
+        if (size <= 1 << MIN_CLASS)
+            return 0;
+
+        int c = 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_CLASS;
+        if (c >= NUM_CLASSES)
+            throw new IllegalArgumentException("buffer size " + size);
+        return c;
     }
 
-    public BufferItem get(int size) {
-        BufferItem b = mPool;
+    BufferItem get(int size) {
+        int c = sizeClass(size);
+        BufferItem b = mPools[c];
 
         if (b == null) {
-            b = new BufferItem();
+            b = new BufferItem(c);
+            mAllocations++;
+            mAllocatedBytes += b.size;
+            if (mAllocatedBytes > mPeakBytes)
+                mPeakBytes = mAllocatedBytes;
         } else {
-            mPool = b.next;
+            mPools[c] = b.next;
             b.next = null;
+            mPooled[c]--;
+            mReuses++;
         }
-        if (b.size < size)
-            b.growBuffer(size);
+        if (++mUsed[c] > mHighWater[c])
+            mHighWater[c] = mUsed[c];
 
         mUsedBuffers = Inlist.push(mUsedBuffers, b);
 
         return b;
     }
 
+    /**
+     * Only use on GL Thread! Return the buffers used within the frame to
+     * the pool and drop idle buffers.
+     */
     public void releaseBuffers() {
-        mUsedBuffers = releaseAll(mUsedBuffers);
+        for (BufferItem b = mUsedBuffers; b != null; ) {
+            BufferItem next = b.next;
+            int c = b.sizeClass;
+            b.next = mPools[c];
+            mPools[c] = b;
+            mPooled[c]++;
+            mUsed[c] = 0;
+            b = next;
+        }
+        mUsedBuffers = null;
+
+        int idleFrames = Parameters.BUFFER_IDLE_FRAMES;
+        if (idleFrames <= 0 || ++mFrames < idleFrames)
+            return;
+
+        mFrames = 0;
+        for (int c = 0; c < NUM_CLASSES; c++) {
+            drop(c, mHighWater[c]);
+            mHighWater[c] = 0;
+        }
+    }
+
+    /**
+     * Only use on GL Thread! Drop pooled buffers.
+     *
+     * @return the number of bytes released.
+     */
+    public long trim(MemoryPressure pressure) {
+        long freed = 0;
+        for (int c = 0; c < NUM_CLASSES; c++)
+            freed += drop(c, pressure.target(mPooled[c]));
+        return freed;
+    }
+
+    /**
+     * Drop pooled buffers of size class c above keep.
+     */
+    private long drop(int c, int keep) {
+        long freed = 0;
+        while (mPooled[c] > keep) {
+            BufferItem b = mPools[c];
+            mPools[c] = b.next;
+            b.next = null;
+            mPooled[c]--;
+            freed += b.size;
+        }
+        mAllocatedBytes -= freed;
+        mReleasedBytes += freed;
+        return freed;
+    }
+
+    /**
+     * @return bytes of all native buffers held by the pool, used or pooled.
+     */
+    public long getAllocatedBytes() {
+        return mAllocatedBytes;
+    }
+
+    /**
+     * @return bytes of native buffers pooled for reuse.
+     */
+    public long getPooledBytes() {
+        long bytes = 0;
+        for (int c = 0; c < NUM_CLASSES; c++)
+            bytes += (long) mPooled[c] << (MIN_CLASS + c);
+        return bytes;
+    }
+
+    /**
+     * @return the maximum of {@link #getAllocatedBytes()}.
+     */
+    public long getPeakBytes() {
+        return mPeakBytes;
+    }
+
+    /**
+     * @return bytes of native buffers dropped, as idle or by trimming.
+     */
+    public long getReleasedBytes() {
+        return mReleasedBytes;
+    }
+
+    /**
+     * @return number of native buffers allocated.
+     */
+    public long getAllocations() {
+        return mAllocations;
+    }
+
+    /**
+     * @return number of requests served from the pool.
+     */
+    public long getReuses() {
+        return mReuses;
+    }
+
+    @Override
+    public String toString() {
+        return "allocated=" + mAllocatedBytes / 1024 + "kB"
+                + " pooled=" + getPooledBytes() / 1024 + "kB"
+                + " peak=" + mPeakBytes / 1024 + "kB"
+                + " released=" + mReleasedBytes / 1024 + "kB"
+                + " allocations=" + mAllocations
+                + " reuses=" + mReuses;
+    }
+
+    /**
+     * Only use on GL Thread! Get a native ByteBuffer for temporary use.
+     */
+    public ByteBuffer getByteBuffer(int size) {
+        BufferItem b = get(size);
+        b.byteBuffer.clear();
+        return b.byteBuffer;
     }
 
     /**
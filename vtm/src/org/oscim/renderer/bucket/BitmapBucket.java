@@ -36,6 +36,8 @@ public class BitmapBucket extends TextureBucket {
 
     private Bitmap mBitmap;
     private final boolean mReuseBitmap;
+    private BitmapPool mBitmapPool;
+    private Object mBitmapKey;
     private final short[] mVertices;
     private int mWidth, mHeight;
 
@@ -79,6 +81,22 @@ public class BitmapBucket extends TextureBucket {
         t.indices = TextureBucket.INDICES_PER_SPRITE;
     }
 
+    /**
+     * Release the bitmap to pool instead of recycling it when it is
+     * no longer needed, it can then be found by key.
+     */
+    public void setBitmapPool(BitmapPool pool, Object key) {
+        mBitmapPool = pool;
+        mBitmapKey = key;
+    }
+
+    private void releaseBitmap() {
+        if (mBitmapPool != null)
+            mBitmapPool.release(mBitmapKey, mBitmap);
+        else
+            mBitmap.recycle();
+    }
+
     private void setVertices(ShortBuffer vboData) {
         short[] buf = mVertices;
         short w = (short) (mWidth * COORD_SCALE);
@@ -134,7 +152,7 @@ public class BitmapBucket extends TextureBucket {
         textures.upload();
 
         if (!mReuseBitmap) {
-            mBitmap.recycle();
+            releaseBitmap();
             mBitmap = null;
             textures.bitmap = null;
         }
@@ -150,7 +168,7 @@ public class BitmapBucket extends TextureBucket {
             return;
 
         if (!mReuseBitmap)
-            mBitmap.recycle();
+            releaseBitmap();
 
         mBitmap = null;
 
@@ -0,0 +1,178 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer.bucket;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.Tile;
+import org.oscim.utils.MemoryPressure;
+import org.oscim.utils.Parameters;
+import org.oscim.utils.Trimmable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bitmaps of raster tiles that were uploaded to textures, shared by all
+ * bitmap layers and bounded by {@link Parameters#BITMAP_POOL_SIZE}.
+ * <p/>
+ * Released bitmaps keep their pixels and are returned by {@link #get(Object)}
+ * when the tile is loaded again, until the least recently released bitmap is
+ * taken via {@link #findReusable(Object, Class, int, int)} as target for
+ * decoding another tile of the same source, type and size.
+ * Bitmaps in the pool are owned by the pool, taken bitmaps by the caller.
+ */
+public final class BitmapPool implements Trimmable {
+
+    private static final BitmapPool sInstance = new BitmapPool();
+
+    public static BitmapPool get() {
+        return sInstance;
+    }
+
+    private final LinkedHashMap<Object, Bitmap> mBitmaps =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    private BitmapPool() {
+    }
+
+    /**
+     * @return the bitmap with the pixels of key, removed from the pool,
+     * or null.
+     */
+    public synchronized Bitmap get(Object key) {
+        return mBitmaps.remove(key);
+    }
+
+    /**
+     * @return true when the pool has a bitmap with the pixels of key.
+     */
+    public synchronized boolean contains(Object key) {
+        return mBitmaps.containsKey(key);
+    }
+
+    /**
+     * @param source the tile source or layer, as passed to {@link #key(Object, Tile)}
+     * @param type   the class of the bitmap, which implies its format
+     * @return the key of the least recently released bitmap of source with
+     * the given type and size, to take it with {@link #get(Object)}, or null.
+     */
+    public synchronized Object findReusable(Object source, Class<?> type, int width, int height) {
+        for (Map.Entry<Object, Bitmap> e : mBitmaps.entrySet()) {
+            if (!(e.getKey() instanceof Key) || ((Key) e.getKey()).source != source)
+                continue;
+            Bitmap bitmap = e.getValue();
+            if (bitmap.getClass() == type && bitmap.getWidth() == width
+                    && bitmap.getHeight() == height)
+                return e.getKey();
+        }
+        return null;
+    }
+
+    /**
+     * Put a bitmap that is no longer used into the pool, or recycle it when
+     * the pool is disabled. Recycles the least recently released bitmaps
+     * when the pool is full.
+     */
+    public void release(Object key, Bitmap bitmap) {
+        if (bitmap == null)
+            return;
+
+        if (Parameters.BITMAP_POOL_SIZE <= 0 || key == null || !bitmap.isValid()) {
+            bitmap.recycle();
+            return;
+        }
+
+        synchronized (this) {
+            Bitmap old = mBitmaps.put(key, bitmap);
+            if (old != null && old != bitmap)
+                old.recycle();
+
+            Iterator<Bitmap> it = mBitmaps.values().iterator();
+            while (mBitmaps.size() > Parameters.BITMAP_POOL_SIZE) {
+                it.next().recycle();
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return mBitmaps.size();
+    }
+
+    /**
+     * Recycle the least recently released bitmaps.
+     */
+    @Override
+    public synchronized long trimMemory(MemoryPressure pressure) {
+        long bytes = 0;
+        Iterator<Bitmap> it = mBitmaps.values().iterator();
+        for (int size = pressure.target(mBitmaps.size()); mBitmaps.size() > size; ) {
+            Bitmap bitmap = it.next();
+            bytes += (long) bitmap.getWidth() * bitmap.getHeight() * 4;
+            bitmap.recycle();
+            it.remove();
+        }
+        return bytes;
+    }
+
+    /**
+     * Recycle all bitmaps.
+     */
+    public synchronized void clear() {
+        for (Map.Entry<Object, Bitmap> e : mBitmaps.entrySet())
+            e.getValue().recycle();
+        mBitmaps.clear();
+    }
+
+    /**
+     * @param source the tile source or layer the tile belongs to
+     * @return a key for the pixels of tile.
+     */
+    public static Object key(Object source, Tile tile) {
+        return new Key(source, tile.tileX, tile.tileY, tile.zoomLevel);
+    }
+
+    private static final class Key {
+        final Object source;
+        final int x, y, z;
+
+        Key(Object source, int x, int y, int z) {
+            this.source = source;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return x == other.x && y == other.y && z == other.z
+                    && source == other.source;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(source);
+            result = 31 * result + x;
+            result = 31 * result + y;
+            return 31 * result + z;
+        }
+    }
+}
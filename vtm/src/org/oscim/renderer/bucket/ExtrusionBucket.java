@@ -22,13 +22,11 @@ import org.oscim.core.GeometryBuffer;
 import org.oscim.core.Tile;
 import org.oscim.utils.ExtrusionUtils;
 import org.oscim.utils.FastMath;
-import org.oscim.utils.KeyMap;
-import org.oscim.utils.KeyMap.HashItem;
 import org.oscim.utils.Tessellator;
 import org.oscim.utils.geom.LineClipper;
-import org.oscim.utils.pool.Pool;
 
 import java.nio.ShortBuffer;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 import static org.oscim.renderer.MapRenderer.COORD_SCALE;
@@ -65,7 +63,12 @@ public class ExtrusionBucket extends RenderBucket {
 
     private final float mGroundResolution;
 
-    private KeyMap<Vertex> mVertexMap;
+    /**
+     * Initial capacity of the mesh vertex map.
+     */
+    private static final int VERTEX_MAP_SIZE = 2048;
+
+    private VertexMap mVertexMap;
 
     private static final int NORMAL_DIR_MASK = 0xFFFFFFFE;
     //private int numIndexHits = 0;
@@ -108,47 +111,75 @@ public class ExtrusionBucket extends RenderBucket {
 
         mIndices = new VertexData[5];
         mIndices[4] = new VertexData();
-
-        synchronized (vertexPool) {
-            mVertexMap = vertexMapPool.get();
-        }
     }
 
-    static Pool<Vertex> vertexPool = new Pool<Vertex>() {
-        @Override
-        protected Vertex createItem() {
-            return new Vertex();
+    /**
+     * Open addressing hash of mesh vertices to their index, keyed on the
+     * packed x, y, z and normal. Owned by a single bucket, so that loaders
+     * can build meshes concurrently.
+     */
+    static final class VertexMap {
+        private long[] keys;
+        private int[] ids;
+        private int size;
+        private int mask;
+
+        VertexMap(int capacity) {
+            keys = new long[capacity];
+            ids = new int[capacity];
+            Arrays.fill(ids, -1);
+            mask = capacity - 1;
         }
-    };
 
-    static Pool<KeyMap<Vertex>> vertexMapPool = new Pool<KeyMap<Vertex>>() {
-        @Override
-        protected KeyMap<Vertex> createItem() {
-            return new KeyMap<Vertex>(2048);
+        static long key(short x, short y, short z, short n) {
+            return (long) (x & 0xffff) << 48
+                    | (long) (y & 0xffff) << 32
+                    | (long) (z & 0xffff) << 16
+                    | (n & 0xffff);
         }
-    };
-
-    static class Vertex extends HashItem {
-        short x, y, z, n;
-        int id;
 
-        @Override
-        public boolean equals(Object obj) {
-            Vertex o = (Vertex) obj;
-            return x == o.x && y == o.y && z == o.z && n == o.n;
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
         }
 
-        @Override
-        public int hashCode() {
-            return 7 + ((x << 16 | y) ^ (n << 16 | z)) * 31;
+        /**
+         * @return the index of the vertex with key, or put id and return -1
+         * when the key is not contained.
+         */
+        int putIfAbsent(long key, int id) {
+            int i = hash(key) & mask;
+            while (ids[i] >= 0) {
+                if (keys[i] == key)
+                    return ids[i];
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            ids[i] = id;
+            if (++size > (mask >> 1))
+                grow();
+            return -1;
         }
 
-        public Vertex set(short x, short y, short z, short n) {
-            this.x = x;
-            this.y = y;
-            this.z = z;
-            this.n = n;
-            return this;
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldIds = ids;
+            int capacity = oldKeys.length << 1;
+
+            keys = new long[capacity];
+            ids = new int[capacity];
+            Arrays.fill(ids, -1);
+            mask = capacity - 1;
+
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldIds[j] < 0)
+                    continue;
+                int i = hash(oldKeys[j]) & mask;
+                while (ids[i] >= 0)
+                    i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                ids[i] = oldIds[j];
+            }
         }
     }
 
@@ -164,121 +195,93 @@ public class ExtrusionBucket extends RenderBucket {
         int[] index = element.index;
         float[] points = element.points;
 
-        int vertexCnt = numVertices;
-        synchronized (vertexPool) {
-
-            Vertex key = vertexPool.get();
-            double scale = COORD_SCALE * Tile.SIZE / 4096;
-
-            // n is introduced if length increases while processing
-            for (int k = 0, n = index.length; k < n; ) {
-                if (index[k] < 0)
-                    break;
-
-                /* FIXME: workaround: dont overflow max index id. */
-                if (vertexCnt >= 1 << 16)
-                    break;
-
-                // Get position of points for each polygon (which always has 3 points)
-                int vtx1 = index[k++] * 3;
-                int vtx2 = index[k++] * 3;
-                int vtx3 = index[k++] * 3;
-
-                float vx1 = points[vtx1 + 0];
-                float vy1 = points[vtx1 + 1];
-                float vz1 = points[vtx1 + 2];
-
-                float vx2 = points[vtx2 + 0];
-                float vy2 = points[vtx2 + 1];
-                float vz2 = points[vtx2 + 2];
-
-                float vx3 = points[vtx3 + 0];
-                float vy3 = points[vtx3 + 1];
-                float vz3 = points[vtx3 + 2];
-
-                // Calculate normal for color gradient
-                float ax = vx2 - vx1;
-                float ay = vy2 - vy1;
-                float az = vz2 - vz1;
-
-                float bx = vx3 - vx1;
-                float by = vy3 - vy1;
-                float bz = vz3 - vz1;
-
-                // Vector product (c is at right angle to a and b)
-                float cx = ay * bz - az * by;
-                float cy = az * bx - ax * bz;
-                float cz = ax * by - ay * bx;
-
-                double len = Math.sqrt(cx * cx + cy * cy + cz * cz);
-
-                // packing the normal in two bytes
-                int mx = FastMath.clamp(127 + (int) ((cx / len) * 128), 0, 0xff);
-                int my = FastMath.clamp(127 + (int) ((cy / len) * 128), 0, 0xff);
-                short normal = (short) ((my << 8) | (mx & NORMAL_DIR_MASK) | (cz > 0 ? 1 : 0));
-
-                if (key == null)
-                    key = vertexPool.get();
-
-                key.set((short) (vx1 * scale),
-                        (short) (vy1 * scale),
-                        (short) (vz1 * scale),
-                        normal);
-
-                Vertex vertex = mVertexMap.put(key, false);
-
-                if (vertex == null) {
-                    key.id = vertexCnt++;
-                    addMeshIndex(key, true);
-                    key = vertexPool.get();
-                } else {
-                    //numIndexHits++;
-                    addMeshIndex(vertex, false);
-                }
-
-                key.set((short) (vx2 * scale),
-                        (short) (vy2 * scale),
-                        (short) (vz2 * scale),
-                        normal);
+        if (mVertexMap == null)
+            mVertexMap = new VertexMap(VERTEX_MAP_SIZE);
 
-                vertex = mVertexMap.put(key, false);
+        int vertexCnt = numVertices;
+        double scale = COORD_SCALE * Tile.SIZE / 4096;
 
-                if (vertex == null) {
-                    key.id = vertexCnt++;
-                    addMeshIndex(key, true);
-                    key = vertexPool.get();
-                } else {
-                    //numIndexHits++;
-                    addMeshIndex(vertex, false);
-                }
+        // n is introduced if length increases while processing
+        for (int k = 0, n = index.length; k < n; ) {
+            if (index[k] < 0)
+                break;
 
-                key.set((short) (vx3 * scale),
-                        (short) (vy3 * scale),
-                        (short) (vz3 * scale),
-                        (short) normal);
-
-                vertex = mVertexMap.put(key, false);
-                if (vertex == null) {
-                    key.id = vertexCnt++;
-                    addMeshIndex(key, true);
-                    key = vertexPool.get();
-                } else {
-                    //numIndexHits++;
-                    addMeshIndex(vertex, false);
-                }
-            }
+            /* FIXME: workaround: dont overflow max index id. */
+            if (vertexCnt >= 1 << 16)
+                break;
 
-            vertexPool.release(key);
+            // Get position of points for each polygon (which always has 3 points)
+            int vtx1 = index[k++] * 3;
+            int vtx2 = index[k++] * 3;
+            int vtx3 = index[k++] * 3;
+
+            float vx1 = points[vtx1 + 0];
+            float vy1 = points[vtx1 + 1];
+            float vz1 = points[vtx1 + 2];
+
+            float vx2 = points[vtx2 + 0];
+            float vy2 = points[vtx2 + 1];
+            float vz2 = points[vtx2 + 2];
+
+            float vx3 = points[vtx3 + 0];
+            float vy3 = points[vtx3 + 1];
+            float vz3 = points[vtx3 + 2];
+
+            // Calculate normal for color gradient
+            float ax = vx2 - vx1;
+            float ay = vy2 - vy1;
+            float az = vz2 - vz1;
+
+            float bx = vx3 - vx1;
+            float by = vy3 - vy1;
+            float bz = vz3 - vz1;
+
+            // Vector product (c is at right angle to a and b)
+            float cx = ay * bz - az * by;
+            float cy = az * bx - ax * bz;
+            float cz = ax * by - ay * bx;
+
+            double len = Math.sqrt(cx * cx + cy * cy + cz * cz);
+
+            // packing the normal in two bytes
+            int mx = FastMath.clamp(127 + (int) ((cx / len) * 128), 0, 0xff);
+            int my = FastMath.clamp(127 + (int) ((cy / len) * 128), 0, 0xff);
+            short normal = (short) ((my << 8) | (mx & NORMAL_DIR_MASK) | (cz > 0 ? 1 : 0));
+
+            vertexCnt = addMeshVertex((short) (vx1 * scale),
+                    (short) (vy1 * scale),
+                    (short) (vz1 * scale),
+                    normal, vertexCnt);
+
+            vertexCnt = addMeshVertex((short) (vx2 * scale),
+                    (short) (vy2 * scale),
+                    (short) (vz2 * scale),
+                    normal, vertexCnt);
+
+            vertexCnt = addMeshVertex((short) (vx3 * scale),
+                    (short) (vy3 * scale),
+                    (short) (vz3 * scale),
+                    normal, vertexCnt);
         }
         numVertices = vertexCnt;
     }
 
-    private void addMeshIndex(Vertex v, boolean addVertex) {
-        if (addVertex)
-            vertexItems.add(v.x, v.y, v.z, v.n);
+    /**
+     * Add index of the vertex, and the vertex itself when not yet contained.
+     *
+     * @return the new vertex count
+     */
+    private int addMeshVertex(short x, short y, short z, short n, int vertexCnt) {
+        int id = mVertexMap.putIfAbsent(VertexMap.key(x, y, z, n), vertexCnt);
+        if (id < 0) {
+            id = vertexCnt++;
+            vertexItems.add(x, y, z, n);
+        }
+        //else numIndexHits++;
 
-        mIndices[IND_MESH].add((short) v.id);
+        mIndices[IND_MESH].add((short) id);
         numIndices++;
+        return vertexCnt;
     }
 
     //    private void encodeNormal(float v[], int offset) {
@@ -614,7 +617,7 @@ public class ExtrusionBucket extends RenderBucket {
     @Override
     public void clear() {
         mClipper = null;
-        releaseVertexPool();
+        releaseVertexMap();
 
         if (mIndices != null) {
             for (int i = 0; i <= IND_MESH; i++) {
@@ -645,17 +648,11 @@ public class ExtrusionBucket extends RenderBucket {
     @Override
     protected void prepare() {
         mClipper = null;
-        releaseVertexPool();
+        releaseVertexMap();
     }
 
-    void releaseVertexPool() {
-        if (mVertexMap == null)
-            return;
-
-        synchronized (vertexPool) {
-            vertexPool.releaseAll(mVertexMap.releaseItems());
-            mVertexMap = vertexMapPool.release(mVertexMap);
-        }
+    void releaseVertexMap() {
+        mVertexMap = null;
     }
 
     @Override
@@ -272,6 +272,13 @@ public class RenderBuckets extends TileData {
         return bucket;
     }
 
+    /**
+     * @return the size in bytes of vertex and index data to be compiled.
+     */
+    public int getSize() {
+        return (countVboSize() + countIboSize()) * SHORT_BYTES;
+    }
+
     private int countVboSize() {
         int vboSize = 0;
 
@@ -420,14 +427,14 @@ public class RenderBuckets extends TileData {
         }
 
         if (vbo == null)
-            vbo = BufferObject.get(GL.ARRAY_BUFFER, vboSize);
+            vbo = BufferObject.get(GL.ARRAY_BUFFER, vboSize * SHORT_BYTES);
 
         // Set VBO data to READ mode
         vbo.loadBufferData(vboData.flip(), vboSize * SHORT_BYTES);
 
         if (iboSize > 0) {
             if (ibo == null)
-                ibo = BufferObject.get(GL.ELEMENT_ARRAY_BUFFER, iboSize);
+                ibo = BufferObject.get(GL.ELEMENT_ARRAY_BUFFER, iboSize * SHORT_BYTES);
 
             // Set IBO data to READ mode
             ibo.loadBufferData(iboData.flip(), iboSize * SHORT_BYTES);
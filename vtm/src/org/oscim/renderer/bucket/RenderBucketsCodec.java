@@ -0,0 +1,396 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer.bucket;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.renderer.atlas.TextureRegion;
+import org.oscim.renderer.bucket.VertexData.Chunk;
+import org.oscim.theme.ThemeStyleIndex;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.CircleStyle;
+import org.oscim.theme.styles.LineStyle;
+import org.oscim.theme.styles.RenderStyle;
+import org.oscim.theme.styles.SymbolStyle;
+import org.oscim.theme.styles.TextStyle;
+import org.oscim.utils.pool.Inlist;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+import static org.oscim.renderer.bucket.RenderBucket.*;
+
+/**
+ * Compact binary encoding of prepared {@link RenderBuckets} and the labels
+ * of a tile. Styles are stored as index of a {@link ThemeStyleIndex}, so
+ * data can only be decoded with a theme of the same fingerprint.
+ * <p/>
+ * Buckets must be encoded after {@link RenderBuckets#prepare()} and
+ * before compilation, which releases the vertex data.
+ */
+public class RenderBucketsCodec {
+
+    private static final int MAGIC = 0x56544d42; // VTMB
+    private static final int VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ThemeStyleIndex mStyles;
+
+    private ByteBuffer mBuf;
+
+    public RenderBucketsCodec(ThemeStyleIndex styles) {
+        mStyles = styles;
+    }
+
+    /**
+     * @param buckets prepared buckets of the tile.
+     * @param labels  head of the tile labels, may be null.
+     * @param symbols head of the tile symbols, may be null.
+     * @return the encoded data, or null when the buckets contain items
+     * that cannot be encoded, e.g. styles not part of the theme.
+     */
+    public byte[] encode(RenderBuckets buckets, TextItem labels, SymbolItem symbols) {
+        mBuf = ByteBuffer.allocate(1 << 14).order(ByteOrder.nativeOrder());
+        mBuf.putInt(MAGIC);
+        mBuf.putInt(VERSION);
+
+        int cnt = 0;
+        for (RenderBucket b = buckets.get(); b != null; b = b.next)
+            cnt++;
+        mBuf.putInt(cnt);
+
+        for (RenderBucket b = buckets.get(); b != null; b = b.next) {
+            if (!encodeBucket(b))
+                return null;
+        }
+
+        ensure(4);
+        mBuf.putInt(Inlist.size(labels));
+        for (TextItem ti = labels; ti != null; ti = ti.next) {
+            int style = mStyles.indexOf(ti.text);
+            if (style < 0)
+                return null;
+            byte[] label = ti.label.getBytes(UTF8);
+            ensure(35 + label.length);
+            mBuf.putInt(style);
+            mBuf.putInt(label.length);
+            mBuf.put(label);
+            mBuf.putFloat(ti.x);
+            mBuf.putFloat(ti.y);
+            mBuf.putFloat(ti.x1);
+            mBuf.putFloat(ti.y1);
+            mBuf.putFloat(ti.x2);
+            mBuf.putFloat(ti.y2);
+            mBuf.putShort(ti.length);
+            mBuf.put(ti.edges);
+        }
+
+        ensure(4);
+        mBuf.putInt(Inlist.size(symbols));
+        for (SymbolItem it = symbols; it != null; it = it.next) {
+            int style = mStyles.indexOf(it.bitmap != null ? it.bitmap : it.texRegion);
+            if (style < 0 || it.offset != null)
+                return null;
+            ensure(17);
+            mBuf.putInt(style);
+            mBuf.putFloat(it.x);
+            mBuf.putFloat(it.y);
+            mBuf.putFloat(it.rotation);
+            mBuf.put((byte) (it.billboard ? 1 : 0));
+        }
+
+        byte[] data = new byte[mBuf.position()];
+        mBuf.flip();
+        mBuf.get(data);
+        mBuf = null;
+        return data;
+    }
+
+    private boolean encodeBucket(RenderBucket b) {
+        ensure(32);
+        mBuf.put(b.type);
+        mBuf.putInt(b.level);
+        mBuf.putInt(b.numVertices);
+        mBuf.putInt(b.numIndices);
+
+        switch (b.type) {
+            case LINE:
+            case TEXLINE:
+                LineBucket lb = (LineBucket) b;
+                if (!putStyle(lb.line))
+                    return false;
+                mBuf.putFloat(lb.scale);
+                mBuf.putFloat(lb.heightOffset);
+                mBuf.put((byte) (lb.roundCap ? 1 : 0));
+                mBuf.putInt(lb.outlines == null ? -1 : lb.outlines.level);
+                if (b.type == TEXLINE) {
+                    ensure(8);
+                    mBuf.putInt(((LineTexBucket) b).evenQuads);
+                    mBuf.putInt(((LineTexBucket) b).oddQuads);
+                }
+                break;
+            case POLYGON:
+                PolygonBucket pb = (PolygonBucket) b;
+                if (!putStyle(pb.area))
+                    return false;
+                ensure(16);
+                mBuf.putFloat(pb.xmin);
+                mBuf.putFloat(pb.ymin);
+                mBuf.putFloat(pb.xmax);
+                mBuf.putFloat(pb.ymax);
+                break;
+            case MESH:
+                MeshBucket mb = (MeshBucket) b;
+                if (!putStyle(mb.area))
+                    return false;
+                mBuf.putFloat(mb.heightOffset);
+                break;
+            case HAIRLINE:
+                if (!putStyle(((HairLineBucket) b).line))
+                    return false;
+                break;
+            case CIRCLE:
+                if (!putStyle(((CircleBucket) b).circle))
+                    return false;
+                break;
+            default:
+                return false;
+        }
+        putVertexData(b.vertexItems);
+        putVertexData(b.indiceItems);
+        return true;
+    }
+
+    private boolean putStyle(RenderStyle<?> style) {
+        int idx = mStyles.indexOf(style);
+        if (idx < 0)
+            return false;
+        mBuf.putInt(idx);
+        return true;
+    }
+
+    private void putVertexData(VertexData vd) {
+        int size = vd.countSize();
+        ensure(4 + size * 2);
+        mBuf.putInt(size);
+        for (Chunk c = vd.head(); c != null; c = c.next) {
+            mBuf.asShortBuffer().put(c.vertices, 0, c.used);
+            mBuf.position(mBuf.position() + c.used * 2);
+        }
+    }
+
+    private void ensure(int bytes) {
+        if (mBuf.remaining() >= bytes)
+            return;
+        int size = mBuf.capacity();
+        while (size - mBuf.position() < bytes)
+            size *= 2;
+        ByteBuffer buf = ByteBuffer.allocate(size).order(mBuf.order());
+        mBuf.flip();
+        buf.put(mBuf);
+        mBuf = buf;
+    }
+
+    /**
+     * Restore buckets and labels from data created by {@link #encode}.
+     *
+     * @param buckets empty buckets to fill.
+     * @param labels  empty list to fill with labels, may be null.
+     * @param symbols empty list to fill with symbols, may be null.
+     * @return false when data is invalid, the buckets must then be cleared.
+     */
+    public boolean decode(byte[] data, RenderBuckets buckets,
+                          Inlist.List<TextItem> labels, Inlist.List<SymbolItem> symbols) {
+        ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.nativeOrder());
+        try {
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION)
+                return false;
+
+            int numBuckets = buf.getInt();
+            int[] outlines = new int[numBuckets];
+            LineBucket[] lines = new LineBucket[numBuckets];
+
+            for (int i = 0; i < numBuckets; i++) {
+                outlines[i] = -1;
+
+                byte type = buf.get();
+                int level = buf.getInt();
+                int numVertices = buf.getInt();
+                int numIndices = buf.getInt();
+
+                RenderBucket b;
+                switch (type) {
+                    case LINE:
+                    case TEXLINE:
+                        LineStyle line = getStyle(buf, LineStyle.class);
+                        if (line == null)
+                            return false;
+                        LineBucket lb = (type == LINE)
+                                ? buckets.getLineBucket(level)
+                                : buckets.getLineTexBucket(level);
+                        lb.line = line;
+                        lb.scale = buf.getFloat();
+                        lb.heightOffset = buf.getFloat();
+                        lb.roundCap = buf.get() != 0;
+                        outlines[i] = buf.getInt();
+                        if (type == TEXLINE) {
+                            ((LineTexBucket) lb).evenQuads = buf.getInt();
+                            ((LineTexBucket) lb).oddQuads = buf.getInt();
+                        }
+                        lines[i] = lb;
+                        b = lb;
+                        break;
+                    case POLYGON:
+                        AreaStyle area = getStyle(buf, AreaStyle.class);
+                        if (area == null)
+                            return false;
+                        PolygonBucket pb = buckets.getPolygonBucket(level);
+                        pb.area = area;
+                        pb.xmin = buf.getFloat();
+                        pb.ymin = buf.getFloat();
+                        pb.xmax = buf.getFloat();
+                        pb.ymax = buf.getFloat();
+                        b = pb;
+                        break;
+                    case MESH:
+                        AreaStyle mesh = getStyle(buf, AreaStyle.class);
+                        if (mesh == null)
+                            return false;
+                        MeshBucket mb = buckets.getMeshBucket(level);
+                        mb.area = mesh;
+                        mb.heightOffset = buf.getFloat();
+                        b = mb;
+                        break;
+                    case HAIRLINE:
+                        LineStyle hairline = getStyle(buf, LineStyle.class);
+                        if (hairline == null)
+                            return false;
+                        b = buckets.addHairLineBucket(level, hairline);
+                        break;
+                    case CIRCLE:
+                        CircleStyle circle = getStyle(buf, CircleStyle.class);
+                        if (circle == null)
+                            return false;
+                        b = buckets.addCircleBucket(level, circle);
+                        break;
+                    default:
+                        return false;
+                }
+                b.numVertices = numVertices;
+                b.numIndices = numIndices;
+                getVertexData(buf, b.vertexItems);
+                getVertexData(buf, b.indiceItems);
+            }
+
+            /* link outlines to the lines of their level */
+            for (int i = 0; i < numBuckets; i++) {
+                if (outlines[i] < 0)
+                    continue;
+                for (int j = 0; j < numBuckets; j++) {
+                    if (lines[j] != null && lines[j].level == outlines[i]) {
+                        lines[i].outlines = lines[j];
+                        break;
+                    }
+                }
+            }
+
+            /* as VectorTileLoader, buckets keep the theme style and resolve
+             * its current style when drawn, while labels and symbols take the
+             * current style when loaded, see LabelTileLoaderHook */
+            int numLabels = buf.getInt();
+            for (int i = 0; i < numLabels; i++) {
+                TextStyle text = getStyle(buf, TextStyle.class);
+                byte[] bytes = new byte[buf.getInt()];
+                buf.get(bytes);
+                float x = buf.getFloat();
+                float y = buf.getFloat();
+                if (text == null)
+                    return false;
+
+                TextItem ti = TextItem.pool.get();
+                ti.set(x, y, new String(bytes, UTF8), text.current());
+                ti.x1 = buf.getFloat();
+                ti.y1 = buf.getFloat();
+                ti.x2 = buf.getFloat();
+                ti.y2 = buf.getFloat();
+                ti.length = buf.getShort();
+                ti.edges = buf.get();
+                if (labels != null)
+                    labels.push(ti);
+                else
+                    TextItem.pool.release(ti);
+            }
+
+            int numSymbols = buf.getInt();
+            for (int i = 0; i < numSymbols; i++) {
+                SymbolStyle symbol = getStyle(buf, SymbolStyle.class);
+                float x = buf.getFloat();
+                float y = buf.getFloat();
+                float rotation = buf.getFloat();
+                boolean billboard = buf.get() != 0;
+                if (symbol == null)
+                    return false;
+
+                symbol = symbol.current();
+                SymbolItem it = SymbolItem.pool.get();
+                Bitmap bitmap = symbol.bitmap;
+                TextureRegion texture = symbol.texture;
+                if (bitmap != null)
+                    it.set(x, y, bitmap, rotation, billboard);
+                else
+                    it.set(x, y, texture, rotation, billboard);
+                if (symbols != null)
+                    symbols.push(it);
+                else
+                    SymbolItem.pool.release(it);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return false;
+        }
+
+        /* keep original order */
+        if (labels != null)
+            labels.reverse();
+        if (symbols != null)
+            symbols.reverse();
+
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends RenderStyle<T>> T getStyle(ByteBuffer buf, Class<T> type) {
+        RenderStyle<?> style = mStyles.get(buf.getInt());
+        if (style == null || !type.isInstance(style))
+            return null;
+        return (T) style;
+    }
+
+    private static void getVertexData(ByteBuffer buf, VertexData vd) {
+        int size = buf.getInt();
+        if (size > buf.remaining() / 2)
+            throw new BufferUnderflowException();
+
+        for (int pos = 0; pos < size; ) {
+            Chunk chunk = vd.obtainChunk();
+            int n = Math.min(size - pos, VertexData.SIZE - chunk.used);
+            buf.asShortBuffer().get(chunk.vertices, chunk.used, n);
+            buf.position(buf.position() + n * 2);
+            vd.releaseChunk(chunk.used + n);
+            pos += n;
+        }
+    }
+}
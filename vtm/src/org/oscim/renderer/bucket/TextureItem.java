@@ -22,8 +22,11 @@ import org.oscim.backend.CanvasAdapter;
 import org.oscim.backend.GL;
 import org.oscim.backend.canvas.Bitmap;
 import org.oscim.backend.canvas.Color;
+import org.oscim.core.Tile;
 import org.oscim.renderer.GLState;
 import org.oscim.renderer.GLUtils;
+import org.oscim.utils.MemoryPressure;
+import org.oscim.utils.Trimmable;
 import org.oscim.utils.pool.Inlist;
 import org.oscim.utils.pool.SyncPool;
 
@@ -155,7 +158,7 @@ public class TextureItem extends Inlist<TextureItem> {
         return n;
     }
 
-    public static class TexturePool extends SyncPool<TextureItem> {
+    public static class TexturePool extends SyncPool<TextureItem> implements Trimmable {
         private final ArrayList<Bitmap> mBitmaps = new ArrayList<Bitmap>(10);
 
         private final int mHeight;
@@ -189,6 +192,38 @@ public class TextureItem extends Inlist<TextureItem> {
             throw new RuntimeException("use TextureItem.dispose()");
         }
 
+        /**
+         * Free pooled textures and bitmaps, the textures are deleted
+         * with the next frame.
+         */
+        @Override
+        public long trimMemory(MemoryPressure pressure) {
+            long bytes = 0;
+            synchronized (this) {
+                int fill = pressure.target(mFill);
+                while (mPool != null && mFill > fill) {
+                    TextureItem t = mPool;
+                    mPool = t.next;
+                    t.next = null;
+                    if (t.id >= 0) {
+                        /* items of pools without size hold tile textures */
+                        bytes += t.width > 0 ? (long) t.width * t.height * 4
+                                : (long) Tile.SIZE * Tile.SIZE * 4;
+                    }
+                    freeItem(t);
+                    mFill--;
+                }
+            }
+            synchronized (mBitmaps) {
+                for (int size = pressure.target(mBitmaps.size()); mBitmaps.size() > size; ) {
+                    Bitmap bitmap = mBitmaps.remove(mBitmaps.size() - 1);
+                    bytes += (long) bitmap.getWidth() * bitmap.getHeight() * 4;
+                    bitmap.recycle();
+                }
+            }
+            return bytes;
+        }
+
         /**
          * Retrieve a TextureItem from pool.
          */
@@ -18,6 +18,8 @@ package org.oscim.renderer.bucket;
 
 import org.oscim.renderer.bucket.VertexData.Chunk;
 import org.oscim.utils.FastMath;
+import org.oscim.utils.MemoryPressure;
+import org.oscim.utils.Trimmable;
 import org.oscim.utils.pool.Inlist;
 import org.oscim.utils.pool.SyncPool;
 
@@ -93,6 +95,15 @@ public class VertexData extends Inlist.List<Chunk> {
 
     private static final Pool pool = new Pool();
 
+    /**
+     * Free pooled chunks, see {@link Trimmable}.
+     *
+     * @return the number of bytes released.
+     */
+    public static long trimPool(MemoryPressure pressure) {
+        return (long) pool.trim(pressure.target(pool.getFill())) * SIZE * 2;
+    }
+
     public void dispose() {
         pool.releaseAll(super.clear());
         used = SIZE; /* set SIZE to get new item on add */
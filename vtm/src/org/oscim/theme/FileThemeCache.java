@@ -0,0 +1,219 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.theme;
+
+import org.oscim.theme.IRenderTheme.ThemeException;
+import org.oscim.utils.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Keeps compiled render themes in a directory. A theme is parsed from XML
+ * once per XML content, display scale and selected style menu categories,
+ * further loads read the compiled file with the rasterized symbols.
+ * <p/>
+ * Changes of resources referenced by the XML, e.g. SVG symbols, are not
+ * detected, call {@link #clear()} after updating them.
+ * <p/>
+ * Only the most recently used compiled themes are kept, as every change of
+ * the XML, scale or style menu categories creates a new file.
+ */
+public class FileThemeCache implements IThemeCache {
+
+    private static final Logger log = Logger.getLogger(FileThemeCache.class.getName());
+
+    private static final String SUFFIX = ".theme";
+    private static final String MENU_SUFFIX = ".menu";
+
+    /**
+     * Default number of compiled themes to keep.
+     */
+    public static final int MAX_THEMES = 8;
+
+    private final File mDir;
+    private final int mMaxThemes;
+
+    public FileThemeCache(File dir) {
+        this(dir, MAX_THEMES);
+    }
+
+    /**
+     * @param maxThemes number of compiled themes to keep, as well as style menus.
+     */
+    public FileThemeCache(File dir, int maxThemes) {
+        mDir = dir;
+        mMaxThemes = maxThemes;
+        if (!mDir.exists() && !mDir.mkdirs())
+            log.severe("Cannot create theme cache directory: " + mDir);
+    }
+
+    @Override
+    public IRenderTheme getTheme(ThemeFile theme) throws ThemeException {
+        byte[] xml = ThemeCompiler.readXml(theme);
+        long xmlKey = ThemeCompiler.key(xml, theme);
+
+        XmlRenderThemeMenuCallback menuCallback = theme.getMenuCallback();
+        File menuFile = file(xmlKey, MENU_SUFFIX);
+        boolean menuCached = false;
+        Set<String> categories = null;
+        if (menuCallback != null) {
+            byte[] data = read(menuFile);
+            if (data != null) {
+                try {
+                    categories = ThemeCompiler.readCategories(data, xmlKey, menuCallback);
+                    menuCached = true;
+                    touch(menuFile);
+                } catch (IOException e) {
+                    log.fine("Invalid " + menuFile + ": " + e);
+                }
+            }
+        }
+
+        if (menuCallback == null || menuCached) {
+            long key = ThemeCompiler.key(xmlKey, categories);
+            File file = file(key, SUFFIX);
+            byte[] data = read(file);
+            if (data != null) {
+                try {
+                    IRenderTheme renderTheme = ThemeCompiler.readTheme(data, key, theme);
+                    touch(file);
+                    return renderTheme;
+                } catch (Exception e) {
+                    log.fine("Invalid " + file + ": " + e);
+                }
+            }
+        }
+
+        ThemeCompiler.Compiler compiler = ThemeCompiler.parse(theme, xml);
+        RenderTheme renderTheme = compiler.getRenderTheme();
+        if (renderTheme == null)
+            return null;
+
+        try {
+            if (menuCallback != null)
+                write(menuFile, ThemeCompiler.writeMenu(compiler.getMenu(), xmlKey));
+
+            long key = ThemeCompiler.key(xmlKey, compiler.getCategories());
+            write(file(key, SUFFIX), ThemeCompiler.writeTheme(compiler, key));
+        } catch (Exception e) {
+            log.fine("Theme not cached: " + e);
+        }
+        prune(SUFFIX);
+        prune(MENU_SUFFIX);
+        return renderTheme;
+    }
+
+    /**
+     * Delete the least recently used files with suffix beyond the limit.
+     */
+    private void prune(String suffix) {
+        File[] files = mDir.listFiles();
+        if (files == null)
+            return;
+
+        List<File> list = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(suffix))
+                list.add(file);
+        }
+        if (list.size() <= mMaxThemes)
+            return;
+
+        Collections.sort(list, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long ta = a.lastModified();
+                long tb = b.lastModified();
+                return ta < tb ? 1 : (ta > tb ? -1 : 0);
+            }
+        });
+        for (int i = mMaxThemes; i < list.size(); i++) {
+            if (!list.get(i).delete())
+                log.fine("Cannot delete " + list.get(i));
+        }
+    }
+
+    /**
+     * Mark the file as recently used.
+     */
+    private static void touch(File file) {
+        if (!file.setLastModified(System.currentTimeMillis()))
+            log.fine("Cannot touch " + file);
+    }
+
+    /**
+     * Delete all compiled themes.
+     */
+    public void clear() {
+        File[] files = mDir.listFiles();
+        if (files == null)
+            return;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(SUFFIX) || name.endsWith(MENU_SUFFIX) || name.endsWith(".tmp"))
+                file.delete();
+        }
+    }
+
+    private File file(long key, String suffix) {
+        return new File(mDir, Long.toHexString(key) + suffix);
+    }
+
+    private static byte[] read(File file) {
+        if (!file.isFile())
+            return null;
+        FileInputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            byte[] data = new byte[(int) file.length()];
+            int pos = 0;
+            for (int n; pos < data.length && (n = is.read(data, pos, data.length - pos)) >= 0; )
+                pos += n;
+            return pos == data.length ? data : null;
+        } catch (IOException e) {
+            log.fine("Cannot read " + file + ": " + e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream os = new FileOutputStream(tmp);
+        try {
+            os.write(data);
+            os.getFD().sync();
+        } finally {
+            IOUtils.closeQuietly(os);
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("cannot rename " + tmp);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.theme;
+
+import org.oscim.theme.IRenderTheme.ThemeException;
+
+/**
+ * Provides render themes without parsing their XML, see
+ * {@link ThemeLoader#setThemeCache(IThemeCache)}.
+ */
+public interface IThemeCache {
+
+    /**
+     * @param theme the theme to load.
+     * @return the render theme, loaded from the cache or parsed from XML.
+     * @throws ThemeException if the theme cannot be loaded.
+     */
+    IRenderTheme getTheme(ThemeFile theme) throws ThemeException;
+}
@@ -28,6 +28,8 @@ import org.oscim.theme.rule.Rule.RuleVisitor;
 import org.oscim.theme.styles.RenderStyle;
 import org.oscim.utils.ArrayUtils;
 import org.oscim.utils.LRUCache;
+import org.oscim.utils.MemoryPressure;
+import org.oscim.utils.Trimmable;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -35,7 +37,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
-public class RenderTheme implements IRenderTheme {
+public class RenderTheme implements IRenderTheme, Trimmable {
     private static final Logger log = Logger.getLogger(RenderTheme.class.getName());
 
     private static final int MATCHING_CACHE_SIZE = 8192;
@@ -126,6 +128,23 @@ public class RenderTheme implements IRenderTheme {
             rule.dispose();
     }
 
+    /**
+     * Approximate size of a matching cache entry.
+     */
+    private static final int MATCHING_CACHE_ENTRY_BYTES = 128;
+
+    @Override
+    public long trimMemory(MemoryPressure pressure) {
+        long bytes = 0;
+        for (RenderStyleCache cache : mStyleCache) {
+            synchronized (cache) {
+                bytes += (long) cache.cache.trimToSize(pressure.target(cache.cache.size()))
+                        * MATCHING_CACHE_ENTRY_BYTES;
+            }
+        }
+        return bytes;
+    }
+
     @Override
     public int getLevels() {
         return mLevels;
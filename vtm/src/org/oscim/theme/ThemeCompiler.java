@@ -0,0 +1,779 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.theme;
+
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.backend.canvas.Paint.Cap;
+import org.oscim.backend.canvas.Paint.FontFamily;
+import org.oscim.backend.canvas.Paint.FontStyle;
+import org.oscim.core.Tag;
+import org.oscim.renderer.bucket.TextureItem;
+import org.oscim.theme.IRenderTheme.ThemeException;
+import org.oscim.theme.rule.Rule;
+import org.oscim.theme.rule.RuleBuilder;
+import org.oscim.theme.rule.RuleBuilder.RuleType;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.AreaStyle.AreaBuilder;
+import org.oscim.theme.styles.CircleStyle;
+import org.oscim.theme.styles.CircleStyle.CircleBuilder;
+import org.oscim.theme.styles.ExtrusionStyle;
+import org.oscim.theme.styles.ExtrusionStyle.ExtrusionBuilder;
+import org.oscim.theme.styles.LineStyle;
+import org.oscim.theme.styles.LineStyle.LineBuilder;
+import org.oscim.theme.styles.RenderStyle;
+import org.oscim.theme.styles.RenderStyle.StyleBuilder;
+import org.oscim.theme.styles.SymbolStyle;
+import org.oscim.theme.styles.SymbolStyle.SymbolBuilder;
+import org.oscim.theme.styles.TextStyle;
+import org.oscim.theme.styles.TextStyle.TextBuilder;
+import org.oscim.utils.IOUtils;
+import org.oscim.utils.Parameters;
+import org.xmlpull.v1.XmlPullParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Binary format of a parsed render theme: the rule tree, the style
+ * parameters and the rasterized symbols as PNG, so that loading skips XML
+ * parsing and SVG rendering. Used by {@link FileThemeCache}.
+ * <p/>
+ * Each file starts with a key that covers the theme XML and the scale
+ * settings the symbols were rendered with, followed by a checksum of the
+ * content. Resources referenced by the theme are not part of the key.
+ * Themes with texture atlas regions cannot be compiled.
+ */
+final class ThemeCompiler {
+
+    static final int VERSION = 1;
+
+    private static final int MAGIC_THEME = 0x56544d54; // VTMT
+    private static final int MAGIC_MENU = 0x56544d4d; // VTMM
+
+    private static final int AREA = 1;
+    private static final int CIRCLE = 2;
+    private static final int EXTRUSION = 3;
+    private static final int LINE = 4;
+    private static final int SYMBOL = 5;
+    private static final int TEXT = 6;
+
+    private ThemeCompiler() {
+    }
+
+    /**
+     * XmlThemeBuilder keeping the parsed rules.
+     */
+    static final class Compiler extends XmlThemeBuilder {
+        Rule[] rules;
+
+        Compiler(ThemeFile theme, XmlPullParser pullParser) {
+            super(theme, pullParser, null);
+        }
+
+        @Override
+        RenderTheme createTheme(Rule[] rules) {
+            this.rules = rules;
+            return super.createTheme(rules);
+        }
+
+        RenderTheme getRenderTheme() {
+            return mRenderTheme;
+        }
+
+        Set<String> getCategories() {
+            return mCategories;
+        }
+
+        XmlRenderThemeStyleMenu getMenu() {
+            return mRenderThemeStyleMenu;
+        }
+    }
+
+    static byte[] readXml(ThemeFile theme) throws ThemeException {
+        InputStream is = null;
+        try {
+            is = theme.getRenderThemeAsStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+            byte[] buf = new byte[8192];
+            for (int n; (n = is.read(buf)) >= 0; )
+                out.write(buf, 0, n);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new ThemeException(e.toString(), e);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    /**
+     * Parse the theme XML without theme callback.
+     */
+    static Compiler parse(ThemeFile theme, byte[] xml) throws ThemeException {
+        try {
+            XmlPullParser pullParser = XmlThemeBuilder.getXmlPullParserFactory().newPullParser();
+            Compiler compiler = new Compiler(theme, pullParser);
+            XmlThemeBuilder.prefetchSymbols(theme, xml);
+            pullParser.setInput(new ByteArrayInputStream(xml), null);
+            compiler.processRenderTheme();
+            return compiler;
+        } catch (Exception e) {
+            throw new ThemeException(e.toString(), e);
+        }
+    }
+
+    /**
+     * @return the key of the theme XML and the settings affecting its styles.
+     */
+    static long key(byte[] xml, ThemeFile theme) {
+        long h = hash(FNV_OFFSET, VERSION + "," + CanvasAdapter.getScale()
+                + "," + CanvasAdapter.lineScale + "," + CanvasAdapter.symbolScale
+                + "," + Parameters.SYMBOL_SCALING + "," + Parameters.POT_TEXTURES
+                + "," + theme.getRelativePathPrefix());
+        for (byte b : xml) {
+            h ^= b & 0xff;
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * @return the key of the theme XML parsed with the categories.
+     */
+    static long key(long xmlKey, Set<String> categories) {
+        if (categories == null)
+            return xmlKey;
+        List<String> sorted = new ArrayList<>(categories);
+        Collections.sort(sorted);
+        return hash(xmlKey, sorted.toString());
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * 64 bit FNV-1a hash.
+     */
+    private static long hash(long h, CharSequence s) {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            h ^= s.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    /* -------------------------------------------------------------------- */
+
+    static byte[] writeTheme(Compiler compiler, long key) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64 * 1024);
+        new Writer(new DataOutputStream(body)).writeTheme(compiler);
+        return seal(MAGIC_THEME, key, body.toByteArray());
+    }
+
+    /**
+     * @param menu the style menu or null when the theme has none.
+     */
+    static byte[] writeMenu(XmlRenderThemeStyleMenu menu, long xmlKey) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(4096);
+        new Writer(new DataOutputStream(body)).writeMenu(menu);
+        return seal(MAGIC_MENU, xmlKey, body.toByteArray());
+    }
+
+    /**
+     * @param theme receives the Mapsforge flag, as set by parsing the XML.
+     * @throws IOException when data is outdated or invalid.
+     */
+    static RenderTheme readTheme(byte[] data, long key, ThemeFile theme) throws IOException {
+        return new Reader(open(data, MAGIC_THEME, key)).readTheme(theme);
+    }
+
+    /**
+     * @return the categories selected by the menu callback, null when the
+     * theme has no style menu.
+     * @throws IOException when data is outdated or invalid.
+     */
+    static Set<String> readCategories(byte[] data, long xmlKey,
+                                      XmlRenderThemeMenuCallback menuCallback) throws IOException {
+        XmlRenderThemeStyleMenu menu = new Reader(open(data, MAGIC_MENU, xmlKey)).readMenu();
+        if (menu == null)
+            return null;
+        return menuCallback.getCategories(menu);
+    }
+
+    private static byte[] seal(int magic, long key, byte[] body) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(body.length + 32);
+        DataOutputStream out = new DataOutputStream(buf);
+        out.writeInt(magic);
+        out.writeInt(VERSION);
+        out.writeLong(key);
+        out.writeLong(crc.getValue());
+        out.writeInt(body.length);
+        out.write(body);
+        out.flush();
+        return buf.toByteArray();
+    }
+
+    private static DataInputStream open(byte[] data, int magic, long key) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != magic || in.readInt() != VERSION)
+            throw new IOException("unknown format");
+        if (in.readLong() != key)
+            throw new IOException("outdated");
+        long checksum = in.readLong();
+        int length = in.readInt();
+
+        int offset = data.length - length;
+        if (length < 0 || offset != 28)
+            throw new IOException("invalid length");
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        if (crc.getValue() != checksum)
+            throw new IOException("invalid checksum");
+        return in;
+    }
+
+    /* -------------------------------------------------------------------- */
+
+    private static final class Writer {
+        private final DataOutputStream out;
+        private final IdentityHashMap<Object, Integer> styles = new IdentityHashMap<>();
+        private final IdentityHashMap<Object, Integer> bitmaps = new IdentityHashMap<>();
+        private final IdentityHashMap<Object, Integer> textures = new IdentityHashMap<>();
+        private final ArrayList<RenderStyle<?>> styleList = new ArrayList<>();
+        private final ArrayList<Bitmap> bitmapList = new ArrayList<>();
+        private final ArrayList<TextureItem> textureList = new ArrayList<>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeTheme(Compiler c) throws IOException {
+            for (Rule rule : c.rules)
+                collect(rule);
+
+            out.writeBoolean(c.mTheme.isMapsforgeTheme());
+            out.writeInt(c.mMapBackground);
+            out.writeFloat(c.mTextScale);
+            out.writeInt(c.mLevels);
+
+            out.writeInt(c.mTransformKeyMap.size());
+            for (Map.Entry<String, String> e : c.mTransformKeyMap.entrySet()) {
+                writeString(e.getKey());
+                writeString(e.getValue());
+            }
+            out.writeInt(c.mTransformTagMap.size());
+            for (Map.Entry<Tag, Tag> e : c.mTransformTagMap.entrySet()) {
+                writeString(e.getKey().key);
+                writeString(e.getKey().value);
+                writeString(e.getValue().key);
+                writeString(e.getValue().value);
+            }
+
+            out.writeInt(bitmapList.size());
+            for (Bitmap bitmap : bitmapList) {
+                byte[] png = bitmap.getPngEncodedData();
+                if (png == null)
+                    throw new IOException("bitmap encoding not supported");
+                out.writeInt(png.length);
+                out.write(png);
+            }
+
+            out.writeInt(textureList.size());
+            for (TextureItem texture : textureList) {
+                out.writeInt(bitmaps.get(texture.bitmap));
+                out.writeBoolean(texture.repeat);
+                out.writeBoolean(texture.mipmap);
+            }
+
+            out.writeInt(styleList.size());
+            for (RenderStyle<?> style : styleList)
+                writeStyle(style);
+
+            out.writeInt(c.rules.length);
+            for (Rule rule : c.rules)
+                writeRule(rule);
+            out.flush();
+        }
+
+        private void collect(Rule rule) throws IOException {
+            for (RenderStyle<?> style : rule.styles) {
+                if (styles.containsKey(style))
+                    continue;
+                styles.put(style, styleList.size());
+                styleList.add(style);
+
+                if (style instanceof AreaStyle) {
+                    addTexture(((AreaStyle) style).texture);
+                } else if (style instanceof LineStyle) {
+                    addTexture(((LineStyle) style).texture);
+                } else if (style instanceof SymbolStyle) {
+                    SymbolStyle symbol = (SymbolStyle) style;
+                    if (symbol.texture != null)
+                        throw new IOException("texture atlas not supported");
+                    addBitmap(symbol.bitmap);
+                } else if (style instanceof TextStyle) {
+                    TextStyle text = (TextStyle) style;
+                    if (text.texture != null)
+                        throw new IOException("texture atlas not supported");
+                    addBitmap(text.bitmap);
+                }
+            }
+            for (Rule subRule : rule.subRules)
+                collect(subRule);
+        }
+
+        private void addBitmap(Bitmap bitmap) {
+            if (bitmap != null && !bitmaps.containsKey(bitmap)) {
+                bitmaps.put(bitmap, bitmapList.size());
+                bitmapList.add(bitmap);
+            }
+        }
+
+        private void addTexture(TextureItem texture) throws IOException {
+            if (texture == null || textures.containsKey(texture))
+                return;
+            if (texture.bitmap == null)
+                throw new IOException("texture without bitmap");
+            addBitmap(texture.bitmap);
+            textures.put(texture, textureList.size());
+            textureList.add(texture);
+        }
+
+        private void writeRule(Rule rule) throws IOException {
+            out.writeByte(rule.getType().ordinal());
+            out.writeInt(rule.element);
+            out.writeInt(rule.zoom);
+            out.writeByte(rule.getSelector());
+            writeString(rule.cat);
+            writeStrings(rule.getKeys());
+            writeStrings(rule.getValues());
+
+            out.writeInt(rule.styles.length);
+            for (RenderStyle<?> style : rule.styles)
+                out.writeInt(styles.get(style));
+
+            out.writeInt(rule.subRules.length);
+            for (Rule subRule : rule.subRules)
+                writeRule(subRule);
+        }
+
+        private void writeStyle(RenderStyle<?> style) throws IOException {
+            if (style instanceof AreaStyle) {
+                AreaBuilder<?> b = AreaStyle.builder().set((AreaStyle) style);
+                out.writeByte(AREA);
+                writeCommon(b);
+                out.writeInt(b.fadeScale);
+                out.writeInt(b.blendColor);
+                out.writeInt(b.blendScale);
+                out.writeBoolean(b.mesh);
+                writeIndex(textures, b.texture);
+                out.writeFloat(b.heightOffset);
+                writeSymbolSize(b.symbolWidth, b.symbolHeight, b.symbolPercent);
+
+            } else if (style instanceof CircleStyle) {
+                CircleBuilder<?> b = CircleStyle.builder().set((CircleStyle) style);
+                out.writeByte(CIRCLE);
+                writeCommon(b);
+                out.writeFloat(b.radius);
+                out.writeBoolean(b.scaleRadius);
+
+            } else if (style instanceof ExtrusionStyle) {
+                ExtrusionBuilder<?> b = ExtrusionStyle.builder().set((ExtrusionStyle) style);
+                out.writeByte(EXTRUSION);
+                writeCommon(b);
+                out.writeInt(b.colorSide);
+                out.writeInt(b.colorTop);
+                out.writeInt(b.colorLine);
+                out.writeDouble(b.hsvHue);
+                out.writeDouble(b.hsvSaturation);
+                out.writeDouble(b.hsvValue);
+                out.writeInt(b.defaultHeight);
+
+            } else if (style instanceof LineStyle) {
+                LineBuilder<?> b = LineStyle.builder().set((LineStyle) style);
+                out.writeByte(LINE);
+                writeCommon(b);
+                out.writeByte(b.cap.ordinal());
+                out.writeBoolean(b.outline);
+                out.writeBoolean(b.fixed);
+                out.writeDouble(b.strokeIncrease);
+                out.writeInt(b.fadeScale);
+                out.writeFloat(b.blur);
+                out.writeInt(b.stipple);
+                out.writeInt(b.stippleColor);
+                out.writeFloat(b.stippleWidth);
+                writeIndex(textures, b.texture);
+                out.writeFloat(b.heightOffset);
+                out.writeBoolean(b.randomOffset);
+                writeSymbolSize(b.symbolWidth, b.symbolHeight, b.symbolPercent);
+                if (b.dashArray == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(b.dashArray.length);
+                    for (float f : b.dashArray)
+                        out.writeFloat(f);
+                }
+                out.writeFloat(b.repeatStart);
+                out.writeFloat(b.repeatGap);
+                out.writeBoolean(b.transparent);
+
+            } else if (style instanceof SymbolStyle) {
+                SymbolBuilder<?> b = SymbolStyle.builder().set((SymbolStyle) style);
+                out.writeByte(SYMBOL);
+                writeCommon(b);
+                writeIndex(bitmaps, b.bitmap);
+                out.writeInt(b.hash);
+                writeSymbolSize(b.symbolWidth, b.symbolHeight, b.symbolPercent);
+                out.writeBoolean(b.billboard);
+                out.writeBoolean(b.repeat);
+                out.writeFloat(b.repeatStart);
+                out.writeFloat(b.repeatGap);
+                out.writeBoolean(b.rotate);
+
+            } else if (style instanceof TextStyle) {
+                TextBuilder<?> b = TextStyle.builder().set((TextStyle) style);
+                out.writeByte(TEXT);
+                writeCommon(b);
+                out.writeFloat(b.fontSize);
+                writeString(b.textKey);
+                out.writeBoolean(b.caption);
+                out.writeFloat(b.dy);
+                out.writeInt(b.priority);
+                out.writeFloat(b.areaSize);
+                writeIndex(bitmaps, b.bitmap);
+                out.writeByte(b.fontFamily.ordinal());
+                out.writeByte(b.fontStyle.ordinal());
+                writeSymbolSize(b.symbolWidth, b.symbolHeight, b.symbolPercent);
+                out.writeInt(b.bgFillColor);
+
+            } else {
+                throw new IOException("unknown style: " + style.getClass().getName());
+            }
+        }
+
+        private void writeCommon(StyleBuilder<?> b) throws IOException {
+            writeString(b.cat);
+            writeString(b.style);
+            out.writeInt(b.level);
+            out.writeInt(b.fillColor);
+            out.writeInt(b.strokeColor);
+            out.writeFloat(b.strokeWidth);
+        }
+
+        private void writeSymbolSize(int width, int height, int percent) throws IOException {
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(percent);
+        }
+
+        private void writeIndex(IdentityHashMap<Object, Integer> index, Object obj) throws IOException {
+            out.writeInt(obj == null ? -1 : index.get(obj));
+        }
+
+        void writeMenu(XmlRenderThemeStyleMenu menu) throws IOException {
+            out.writeBoolean(menu != null);
+            if (menu == null) {
+                out.flush();
+                return;
+            }
+            writeString(menu.getId());
+            writeString(menu.getDefaultLanguage());
+            writeString(menu.getDefaultValue());
+
+            Map<String, XmlRenderThemeStyleLayer> layers = menu.getLayers();
+            out.writeInt(layers.size());
+            for (XmlRenderThemeStyleLayer layer : layers.values()) {
+                writeString(layer.getId());
+                out.writeBoolean(layer.isVisible());
+                out.writeBoolean(layer.isEnabled());
+                writeStrings(layer.getCategories().toArray(new String[0]));
+                out.writeInt(layer.getTitles().size());
+                for (Map.Entry<String, String> e : layer.getTitles().entrySet()) {
+                    writeString(e.getKey());
+                    writeString(e.getValue());
+                }
+            }
+            for (XmlRenderThemeStyleLayer layer : layers.values()) {
+                List<XmlRenderThemeStyleLayer> overlays = layer.getOverlays();
+                out.writeInt(overlays.size());
+                for (XmlRenderThemeStyleLayer overlay : overlays)
+                    writeString(overlay.getId());
+            }
+            out.flush();
+        }
+
+        private void writeStrings(String[] strings) throws IOException {
+            out.writeInt(strings.length);
+            for (String s : strings)
+                writeString(s);
+        }
+
+        private void writeString(String s) throws IOException {
+            out.writeBoolean(s != null);
+            if (s != null)
+                out.writeUTF(s);
+        }
+    }
+
+    /* -------------------------------------------------------------------- */
+
+    private static final class Reader {
+        private final DataInputStream in;
+        private Bitmap[] bitmaps;
+        private TextureItem[] textures;
+        private RenderStyle<?>[] styles;
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        RenderTheme readTheme(ThemeFile theme) throws IOException {
+            boolean mapsforgeTheme = in.readBoolean();
+            int mapBackground = in.readInt();
+            float baseTextSize = in.readFloat();
+            int levels = in.readInt();
+
+            Map<String, String> transformKeyMap = new HashMap<>();
+            for (int i = 0, n = in.readInt(); i < n; i++)
+                transformKeyMap.put(readString(), readString());
+            Map<Tag, Tag> transformTagMap = new HashMap<>();
+            for (int i = 0, n = in.readInt(); i < n; i++)
+                transformTagMap.put(new Tag(readString(), readString()),
+                        new Tag(readString(), readString()));
+
+            bitmaps = new Bitmap[in.readInt()];
+            for (int i = 0; i < bitmaps.length; i++) {
+                byte[] png = new byte[in.readInt()];
+                in.readFully(png);
+                bitmaps[i] = CanvasAdapter.decodeBitmap(new ByteArrayInputStream(png));
+                if (bitmaps[i] == null)
+                    throw new IOException("invalid bitmap");
+            }
+
+            textures = new TextureItem[in.readInt()];
+            for (int i = 0; i < textures.length; i++) {
+                Bitmap bitmap = bitmaps[in.readInt()];
+                textures[i] = new TextureItem(bitmap, in.readBoolean());
+                textures[i].mipmap = in.readBoolean();
+            }
+
+            styles = new RenderStyle<?>[in.readInt()];
+            for (int i = 0; i < styles.length; i++)
+                styles[i] = readStyle();
+
+            Rule[] rules = new Rule[in.readInt()];
+            for (int i = 0; i < rules.length; i++)
+                rules[i] = readRule().onComplete(null);
+
+            theme.setMapsforgeTheme(mapsforgeTheme);
+            return new RenderTheme(mapBackground, baseTextSize, rules, levels,
+                    transformKeyMap, transformTagMap, mapsforgeTheme);
+        }
+
+        private RuleBuilder readRule() throws IOException {
+            RuleType type = RuleType.values()[in.readByte()];
+            int element = in.readInt();
+            int zoom = in.readInt();
+            int selector = in.readByte();
+            String cat = readString();
+            String[] keys = readStrings();
+            String[] values = readStrings();
+
+            RuleBuilder b = new RuleBuilder(type, element, zoom, selector, keys, values)
+                    .cat(cat);
+            for (int i = 0, n = in.readInt(); i < n; i++)
+                b.addStyle(styles[in.readInt()]);
+            for (int i = 0, n = in.readInt(); i < n; i++)
+                b.addSubRule(readRule());
+            return b;
+        }
+
+        private RenderStyle<?> readStyle() throws IOException {
+            int type = in.readByte();
+            switch (type) {
+                case AREA: {
+                    AreaBuilder<?> b = AreaStyle.builder().reset();
+                    readCommon(b);
+                    b.fadeScale = in.readInt();
+                    b.blendColor = in.readInt();
+                    b.blendScale = in.readInt();
+                    b.mesh = in.readBoolean();
+                    b.texture = readTexture();
+                    b.heightOffset = in.readFloat();
+                    b.symbolWidth = in.readInt();
+                    b.symbolHeight = in.readInt();
+                    b.symbolPercent = in.readInt();
+                    return b.build();
+                }
+                case CIRCLE: {
+                    CircleBuilder<?> b = CircleStyle.builder().reset();
+                    readCommon(b);
+                    b.radius = in.readFloat();
+                    b.scaleRadius = in.readBoolean();
+                    return b.build();
+                }
+                case EXTRUSION: {
+                    ExtrusionBuilder<?> b = ExtrusionStyle.builder().reset();
+                    readCommon(b);
+                    b.colorSide = in.readInt();
+                    b.colorTop = in.readInt();
+                    b.colorLine = in.readInt();
+                    b.hsvHue = in.readDouble();
+                    b.hsvSaturation = in.readDouble();
+                    b.hsvValue = in.readDouble();
+                    b.defaultHeight = in.readInt();
+                    return b.build();
+                }
+                case LINE: {
+                    LineBuilder<?> b = LineStyle.builder().reset();
+                    readCommon(b);
+                    b.cap = Cap.values()[in.readByte()];
+                    b.outline = in.readBoolean();
+                    b.fixed = in.readBoolean();
+                    b.strokeIncrease = in.readDouble();
+                    b.fadeScale = in.readInt();
+                    b.blur = in.readFloat();
+                    b.stipple = in.readInt();
+                    b.stippleColor = in.readInt();
+                    b.stippleWidth = in.readFloat();
+                    b.texture = readTexture();
+                    b.heightOffset = in.readFloat();
+                    b.randomOffset = in.readBoolean();
+                    b.symbolWidth = in.readInt();
+                    b.symbolHeight = in.readInt();
+                    b.symbolPercent = in.readInt();
+                    int dashes = in.readInt();
+                    if (dashes >= 0) {
+                        b.dashArray = new float[dashes];
+                        for (int i = 0; i < dashes; i++)
+                            b.dashArray[i] = in.readFloat();
+                    }
+                    b.repeatStart = in.readFloat();
+                    b.repeatGap = in.readFloat();
+                    b.transparent = in.readBoolean();
+                    return b.build();
+                }
+                case SYMBOL: {
+                    SymbolBuilder<?> b = SymbolStyle.builder().reset();
+                    readCommon(b);
+                    b.bitmap = readBitmap();
+                    b.hash = in.readInt();
+                    b.symbolWidth = in.readInt();
+                    b.symbolHeight = in.readInt();
+                    b.symbolPercent = in.readInt();
+                    b.billboard = in.readBoolean();
+                    b.repeat = in.readBoolean();
+                    b.repeatStart = in.readFloat();
+                    b.repeatGap = in.readFloat();
+                    b.rotate = in.readBoolean();
+                    return b.build();
+                }
+                case TEXT: {
+                    TextBuilder<?> b = TextStyle.builder().reset();
+                    readCommon(b);
+                    b.fontSize = in.readFloat();
+                    b.textKey = readString();
+                    b.caption = in.readBoolean();
+                    b.dy = in.readFloat();
+                    b.priority = in.readInt();
+                    b.areaSize = in.readFloat();
+                    b.bitmap = readBitmap();
+                    b.fontFamily = FontFamily.values()[in.readByte()];
+                    b.fontStyle = FontStyle.values()[in.readByte()];
+                    b.symbolWidth = in.readInt();
+                    b.symbolHeight = in.readInt();
+                    b.symbolPercent = in.readInt();
+                    b.bgFillColor = in.readInt();
+                    return b.buildInternal();
+                }
+                default:
+                    throw new IOException("unknown style: " + type);
+            }
+        }
+
+        private void readCommon(StyleBuilder<?> b) throws IOException {
+            b.cat = readString();
+            b.style = readString();
+            b.level = in.readInt();
+            b.fillColor = in.readInt();
+            b.strokeColor = in.readInt();
+            b.strokeWidth = in.readFloat();
+        }
+
+        private Bitmap readBitmap() throws IOException {
+            int i = in.readInt();
+            return i < 0 ? null : bitmaps[i];
+        }
+
+        private TextureItem readTexture() throws IOException {
+            int i = in.readInt();
+            return i < 0 ? null : textures[i];
+        }
+
+        XmlRenderThemeStyleMenu readMenu() throws IOException {
+            if (!in.readBoolean())
+                return null;
+            XmlRenderThemeStyleMenu menu = new XmlRenderThemeStyleMenu(readString(),
+                    readString(), readString());
+
+            int n = in.readInt();
+            XmlRenderThemeStyleLayer[] layers = new XmlRenderThemeStyleLayer[n];
+            for (int i = 0; i < n; i++) {
+                String id = readString();
+                boolean visible = in.readBoolean();
+                boolean enabled = in.readBoolean();
+                layers[i] = menu.createLayer(id, visible, enabled);
+                for (String cat : readStrings())
+                    layers[i].addCategory(cat);
+                for (int j = 0, m = in.readInt(); j < m; j++)
+                    layers[i].addTranslation(readString(), readString());
+            }
+            for (int i = 0; i < n; i++) {
+                for (int j = 0, m = in.readInt(); j < m; j++) {
+                    XmlRenderThemeStyleLayer overlay = menu.getLayer(readString());
+                    if (overlay != null)
+                        layers[i].addOverlay(overlay);
+                }
+            }
+            return menu;
+        }
+
+        private String[] readStrings() throws IOException {
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++)
+                strings[i] = readString();
+            return strings;
+        }
+
+        private String readString() throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+    }
+}
@@ -25,6 +25,16 @@ import org.oscim.utils.Parameters;
 
 public class ThemeLoader {
 
+    private static IThemeCache sThemeCache;
+
+    /**
+     * Load themes through a cache of compiled themes, null to always parse
+     * the XML. Not used with theme callbacks or texture atlas.
+     */
+    public static void setThemeCache(IThemeCache themeCache) {
+        sThemeCache = themeCache;
+    }
+
     public static IRenderTheme load(String renderThemePath) throws ThemeException {
         return load(new ExternalRenderTheme(renderThemePath));
     }
@@ -46,7 +56,11 @@ public class ThemeLoader {
     }
 
     public static IRenderTheme load(ThemeFile theme, ThemeCallback themeCallback) throws ThemeException {
-        IRenderTheme t = Parameters.TEXTURE_ATLAS ? XmlAtlasThemeBuilder.read(theme, themeCallback) : XmlThemeBuilder.read(theme, themeCallback);
+        IRenderTheme t;
+        if (sThemeCache != null && themeCallback == null && !Parameters.TEXTURE_ATLAS)
+            t = sThemeCache.getTheme(theme);
+        else
+            t = Parameters.TEXTURE_ATLAS ? XmlAtlasThemeBuilder.read(theme, themeCallback) : XmlThemeBuilder.read(theme, themeCallback);
         if (t != null)
             t.scaleTextSize(CanvasAdapter.getScale() * CanvasAdapter.textScale);
         return t;
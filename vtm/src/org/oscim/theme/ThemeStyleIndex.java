@@ -0,0 +1,159 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.theme;
+
+import org.oscim.backend.GLAdapter;
+import org.oscim.theme.rule.Rule;
+import org.oscim.theme.rule.Rule.RuleVisitor;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.CircleStyle;
+import org.oscim.theme.styles.LineStyle;
+import org.oscim.theme.styles.RenderStyle;
+import org.oscim.theme.styles.SymbolStyle;
+import org.oscim.theme.styles.TextStyle;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * Assigns a stable index to each {@link RenderStyle} of a {@link RenderTheme},
+ * in the order of its rules. Allows to persist references to styles, e.g. of
+ * cached render buckets, and to restore them with the same theme.
+ * <p/>
+ * The {@link #getFingerprint() fingerprint} covers the rules and all style
+ * properties that are baked into tile geometry, so that two themes with the
+ * same fingerprint produce the same buckets and labels for a tile.
+ */
+public class ThemeStyleIndex {
+
+    private final ArrayList<RenderStyle<?>> mStyles = new ArrayList<>();
+    private final IdentityHashMap<Object, Integer> mIndex = new IdentityHashMap<>();
+    private final long mFingerprint;
+
+    public ThemeStyleIndex(RenderTheme theme) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(theme.getLevels()).append(GLAdapter.CIRCLE_QUADS);
+
+        theme.traverseRules(new RuleVisitor() {
+            @Override
+            public void apply(Rule r) {
+                sb.append('{').append(r);
+                for (RenderStyle<?> style : r.styles) {
+                    add(style);
+                    appendStyle(sb, style);
+                }
+                super.apply(r);
+                sb.append('}');
+            }
+        });
+        mFingerprint = hash(sb);
+    }
+
+    private void add(RenderStyle<?> style) {
+        if (mIndex.containsKey(style))
+            return;
+
+        Integer idx = mStyles.size();
+        mStyles.add(style);
+        mIndex.put(style, idx);
+
+        RenderStyle<?> current = style.current();
+        if (current != null && !mIndex.containsKey(current))
+            mIndex.put(current, idx);
+
+        if (style instanceof SymbolStyle) {
+            SymbolStyle symbol = (SymbolStyle) style;
+            if (symbol.bitmap != null)
+                mIndex.put(symbol.bitmap, idx);
+            if (symbol.texture != null)
+                mIndex.put(symbol.texture, idx);
+        }
+    }
+
+    /**
+     * @param obj a RenderStyle or the bitmap or texture of a SymbolStyle.
+     * @return the index of the style, or -1 when it is not part of the theme.
+     */
+    public int indexOf(Object obj) {
+        if (obj == null)
+            return -1;
+        Integer idx = mIndex.get(obj);
+        return idx == null ? -1 : idx;
+    }
+
+    /**
+     * @return the style at index, or null when index is out of range.
+     */
+    public RenderStyle<?> get(int index) {
+        if (index < 0 || index >= mStyles.size())
+            return null;
+        return mStyles.get(index);
+    }
+
+    public int size() {
+        return mStyles.size();
+    }
+
+    public long getFingerprint() {
+        return mFingerprint;
+    }
+
+    private static void appendStyle(StringBuilder sb, RenderStyle<?> style) {
+        sb.append('(').append(style.getClass().getSimpleName());
+
+        if (style instanceof LineStyle) {
+            LineStyle line = (LineStyle) style;
+            sb.append(line.cap)
+                    .append(',').append(line.outline)
+                    .append(',').append(line.fixed)
+                    .append(',').append(line.stipple)
+                    .append(',').append(line.texture != null);
+        } else if (style instanceof AreaStyle) {
+            AreaStyle area = (AreaStyle) style;
+            sb.append(area.strokeWidth)
+                    .append(',').append(area.fadeScale)
+                    .append(',').append(area.mesh);
+        } else if (style instanceof CircleStyle) {
+            CircleStyle circle = (CircleStyle) style;
+            sb.append(circle.radius);
+        } else if (style instanceof TextStyle) {
+            TextStyle text = (TextStyle) style;
+            sb.append(text.textKey)
+                    .append(',').append(text.areaSize)
+                    .append(',').append(text.caption);
+        } else if (style instanceof SymbolStyle) {
+            SymbolStyle symbol = (SymbolStyle) style;
+            sb.append(symbol.hash)
+                    .append(',').append(symbol.billboard)
+                    .append(',').append(symbol.repeat)
+                    .append(',').append(symbol.repeatStart)
+                    .append(',').append(symbol.repeatGap)
+                    .append(',').append(symbol.rotate);
+        }
+        sb.append(')');
+    }
+
+    /**
+     * 64 bit FNV-1a hash.
+     */
+    private static long hash(CharSequence s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
@@ -26,6 +26,7 @@
 package org.oscim.theme;
 
 import org.oscim.backend.CanvasAdapter;
+import org.oscim.backend.ISvgCache;
 import org.oscim.backend.canvas.Bitmap;
 import org.oscim.backend.canvas.Canvas;
 import org.oscim.backend.canvas.Color;
@@ -57,6 +58,7 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
@@ -74,6 +76,13 @@ public class XmlThemeBuilder {
         RENDER_THEME, RENDERING_INSTRUCTION, RULE, STYLE, ATLAS, RECT, RENDERING_STYLE, TAG_TRANSFORM
     }
 
+    /**
+     * Styles loading symbols, see {@link #symbolPercent(SymbolKind, int, boolean)}.
+     */
+    private enum SymbolKind {
+        SYMBOL, TEXT, AREA, LINE, LINE_SYMBOL
+    }
+
     private static final String ELEMENT_NAME_RENDER_THEME = "rendertheme";
     private static final String ELEMENT_NAME_STYLE_MENU = "stylemenu";
     private static final String ELEMENT_NAME_MATCH_MAPSFORGE = "rule";
@@ -112,7 +121,12 @@ public class XmlThemeBuilder {
         try {
             XmlPullParser pullParser = getXmlPullParserFactory().newPullParser();
             XmlThemeBuilder renderThemeHandler = new XmlThemeBuilder(theme, pullParser, themeCallback);
-            inputStream = theme.getRenderThemeAsStream();
+            if (CanvasAdapter.getSvgCache() != null) {
+                byte[] xml = ThemeCompiler.readXml(theme);
+                prefetchSymbols(theme, xml);
+                inputStream = new ByteArrayInputStream(xml);
+            } else
+                inputStream = theme.getRenderThemeAsStream();
             pullParser.setInput(inputStream, null);
             renderThemeHandler.processRenderTheme();
             return renderThemeHandler.mRenderTheme;
@@ -123,6 +137,102 @@ public class XmlThemeBuilder {
         }
     }
 
+    /**
+     * Start rasterizing the SVG symbols of the theme on the worker pool of the
+     * SVG cache, so that parsing finds them ready. Symbols inherited from
+     * styles or with other settings than the element attributes are rendered
+     * when parsed.
+     */
+    static void prefetchSymbols(ThemeFile theme, byte[] xml) {
+        if (CanvasAdapter.getSvgCache() == null)
+            return;
+
+        float scale = CanvasAdapter.getScale();
+        try {
+            XmlPullParser pullParser = getXmlPullParserFactory().newPullParser();
+            pullParser.setInput(new ByteArrayInputStream(xml), null);
+            for (int eventType = pullParser.getEventType(); eventType != XmlPullParser.END_DOCUMENT; eventType = pullParser.next()) {
+                if (eventType != XmlPullParser.START_TAG)
+                    continue;
+
+                String qName = pullParser.getName();
+                String src;
+                SymbolKind kind;
+                boolean repeat = false;
+                if ("symbol".equals(qName)) {
+                    src = pullParser.getAttributeValue(null, "src");
+                    kind = SymbolKind.SYMBOL;
+                    repeat = Boolean.parseBoolean(pullParser.getAttributeValue(null, "repeat"));
+                } else if ("caption".equals(qName) || "text".equals(qName)
+                        || "pathText".equals(qName) || "style-text".equals(qName)) {
+                    src = pullParser.getAttributeValue(null, "symbol");
+                    kind = SymbolKind.TEXT;
+                } else if ("area".equals(qName) || "style-area".equals(qName)) {
+                    src = pullParser.getAttributeValue(null, "src");
+                    kind = SymbolKind.AREA;
+                } else if ("line".equals(qName) || "style-line".equals(qName)) {
+                    src = pullParser.getAttributeValue(null, "src");
+                    kind = SymbolKind.LINE;
+                } else if ("lineSymbol".equals(qName)) {
+                    src = pullParser.getAttributeValue(null, "src");
+                    kind = SymbolKind.LINE_SYMBOL;
+                } else
+                    continue;
+
+                if (src == null || !src.toLowerCase(Locale.ENGLISH).endsWith(".svg"))
+                    continue;
+
+                String value = pullParser.getAttributeValue(null, "symbol-width");
+                int width = value == null ? 0 : (int) (Integer.parseInt(value) * scale);
+                value = pullParser.getAttributeValue(null, "symbol-height");
+                int height = value == null ? 0 : (int) (Integer.parseInt(value) * scale);
+                value = pullParser.getAttributeValue(null, "symbol-percent");
+                int percent = value == null ? 100 : Integer.parseInt(value);
+
+                CanvasAdapter.prefetchBitmapAsset(theme.getRelativePathPrefix(), src, theme.getResourceProvider(),
+                        width, height, symbolPercent(kind, percent, repeat));
+            }
+        } catch (Exception e) {
+            log.fine("Symbol prefetch: " + e);
+        }
+    }
+
+    /**
+     * @param kind    the style loading the symbol.
+     * @param percent the symbol-percent of the style.
+     * @param repeat  the symbol is repeated along lines.
+     * @return the size in percent to load the symbol with, with symbol scaling
+     * applied. Line textures are loaded at double size.
+     */
+    private static int symbolPercent(SymbolKind kind, int percent, boolean repeat) {
+        float symbolScale = 1;
+        switch (kind) {
+            case SYMBOL:
+                switch (Parameters.SYMBOL_SCALING) {
+                    case ALL:
+                        symbolScale = CanvasAdapter.symbolScale;
+                        break;
+                    case POI:
+                        if (!repeat)
+                            symbolScale = CanvasAdapter.symbolScale;
+                        break;
+                }
+                break;
+            case TEXT:
+                symbolScale = CanvasAdapter.symbolScale;
+                break;
+            case LINE_SYMBOL:
+                if (Parameters.SYMBOL_SCALING == Parameters.SymbolScaling.ALL)
+                    symbolScale = CanvasAdapter.symbolScale;
+                percent *= 2;
+                break;
+            case LINE:
+                percent *= 2;
+                break;
+        }
+        return (int) (percent * symbolScale);
+    }
+
     public static XmlPullParserFactory getXmlPullParserFactory() throws XmlPullParserException {
         if (xmlPullParserFactory == null) {
             xmlPullParserFactory = XmlPullParserFactory.newInstance();
@@ -177,12 +287,12 @@ public class XmlThemeBuilder {
 
     private final float mScale;
 
-    private Set<String> mCategories;
+    Set<String> mCategories;
     private XmlRenderThemeStyleLayer mCurrentLayer;
-    private XmlRenderThemeStyleMenu mRenderThemeStyleMenu;
+    XmlRenderThemeStyleMenu mRenderThemeStyleMenu;
 
-    private final Map<String, String> mTransformKeyMap = new HashMap<>();
-    private final Map<Tag, Tag> mTransformTagMap = new HashMap<>();
+    final Map<String, String> mTransformKeyMap = new HashMap<>();
+    final Map<Tag, Tag> mTransformTagMap = new HashMap<>();
 
     public XmlThemeBuilder(ThemeFile theme, XmlPullParser pullParser) {
         this(theme, pullParser, null);
@@ -196,20 +306,29 @@ public class XmlThemeBuilder {
     }
 
     public void processRenderTheme() throws XmlPullParserException, IOException {
-        int eventType = mPullParser.getEventType();
-        do {
-            if (eventType == XmlPullParser.START_DOCUMENT) {
-                // no-op
-            } else if (eventType == XmlPullParser.START_TAG) {
-                startElement();
-            } else if (eventType == XmlPullParser.END_TAG) {
-                endElement();
-            } else if (eventType == XmlPullParser.TEXT) {
-                // not implemented
-            }
-            eventType = mPullParser.next();
-        } while (eventType != XmlPullParser.END_DOCUMENT);
-        endDocument();
+        /* decode symbols used by several styles once */
+        ISvgCache svgCache = CanvasAdapter.getSvgCache();
+        if (svgCache != null)
+            svgCache.beginThemeLoad();
+        try {
+            int eventType = mPullParser.getEventType();
+            do {
+                if (eventType == XmlPullParser.START_DOCUMENT) {
+                    // no-op
+                } else if (eventType == XmlPullParser.START_TAG) {
+                    startElement();
+                } else if (eventType == XmlPullParser.END_TAG) {
+                    endElement();
+                } else if (eventType == XmlPullParser.TEXT) {
+                    // not implemented
+                }
+                eventType = mPullParser.next();
+            } while (eventType != XmlPullParser.END_DOCUMENT);
+            endDocument();
+        } finally {
+            if (svgCache != null)
+                svgCache.endThemeLoad();
+        }
     }
 
     public void endDocument() {
@@ -708,9 +827,8 @@ public class XmlThemeBuilder {
         } else {
             // Line symbol or pattern
             if (src != null) {
-                b.symbolPercent *= 2;
-                float symbolScale = hasSymbol && Parameters.SYMBOL_SCALING == Parameters.SymbolScaling.ALL ? CanvasAdapter.symbolScale : 1;
-                b.texture = Utils.loadTexture(mTheme.getRelativePathPrefix(), src, mTheme.getResourceProvider(), b.symbolWidth, b.symbolHeight, (int) (b.symbolPercent * symbolScale), mThemeCallback);
+                int percent = symbolPercent(hasSymbol ? SymbolKind.LINE_SYMBOL : SymbolKind.LINE, b.symbolPercent, false);
+                b.texture = Utils.loadTexture(mTheme.getRelativePathPrefix(), src, mTheme.getResourceProvider(), b.symbolWidth, b.symbolHeight, percent, mThemeCallback);
             }
             if (b.texture != null) {
                 int width = (int) (b.texture.width + (hasSymbol ? b.repeatGap : 0));
@@ -823,7 +941,7 @@ public class XmlThemeBuilder {
         }
 
         if (src != null)
-            b.texture = Utils.loadTexture(mTheme.getRelativePathPrefix(), src, mTheme.getResourceProvider(), b.symbolWidth, b.symbolHeight, b.symbolPercent, mThemeCallback);
+            b.texture = Utils.loadTexture(mTheme.getRelativePathPrefix(), src, mTheme.getResourceProvider(), b.symbolWidth, b.symbolHeight, symbolPercent(SymbolKind.AREA, b.symbolPercent, false), mThemeCallback);
 
         return b.build();
     }
@@ -1178,7 +1296,7 @@ public class XmlThemeBuilder {
             String lowValue = symbol.toLowerCase(Locale.ENGLISH);
             if (lowValue.endsWith(".png") || lowValue.endsWith(".svg")) {
                 try {
-                    b.bitmap = CanvasAdapter.getBitmapAsset(mTheme.getRelativePathPrefix(), symbol, mTheme.getResourceProvider(), b.symbolWidth, b.symbolHeight, (int) (b.symbolPercent * CanvasAdapter.symbolScale), mThemeCallback);
+                    b.bitmap = CanvasAdapter.getBitmapAsset(mTheme.getRelativePathPrefix(), symbol, mTheme.getResourceProvider(), b.symbolWidth, b.symbolHeight, symbolPercent(SymbolKind.TEXT, b.symbolPercent, false), mThemeCallback);
                 } catch (Exception e) {
                     log.severe(symbol + ": " + e);
                 }
@@ -1328,17 +1446,7 @@ public class XmlThemeBuilder {
         String lowSrc = b.src.toLowerCase(Locale.ENGLISH);
         if (lowSrc.endsWith(".png") || lowSrc.endsWith(".svg")) {
             try {
-                float symbolScale = 1;
-                switch (Parameters.SYMBOL_SCALING) {
-                    case ALL:
-                        symbolScale = CanvasAdapter.symbolScale;
-                        break;
-                    case POI:
-                        if (!b.repeat)
-                            symbolScale = CanvasAdapter.symbolScale;
-                        break;
-                }
-                Bitmap bitmap = CanvasAdapter.getBitmapAsset(mTheme.getRelativePathPrefix(), b.src, mTheme.getResourceProvider(), b.symbolWidth, b.symbolHeight, (int) (b.symbolPercent * symbolScale), mThemeCallback);
+                Bitmap bitmap = CanvasAdapter.getBitmapAsset(mTheme.getRelativePathPrefix(), b.src, mTheme.getResourceProvider(), b.symbolWidth, b.symbolHeight, symbolPercent(SymbolKind.SYMBOL, b.symbolPercent, b.repeat), mThemeCallback);
                 if (bitmap != null)
                     return buildSymbol(b, b.src, bitmap);
             } catch (Exception e) {
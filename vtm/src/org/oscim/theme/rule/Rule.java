@@ -22,6 +22,7 @@ import org.oscim.theme.rule.RuleBuilder.RuleType;
 import org.oscim.theme.styles.RenderStyle;
 import org.oscim.utils.Utils;
 
+import java.util.Arrays;
 import java.util.List;
 
 public class Rule {
@@ -130,6 +131,35 @@ public class Rule {
             subRule.scaleTextSize(scaleFactor);
     }
 
+    /**
+     * @return the selector bits, see {@link Selector}.
+     */
+    public int getSelector() {
+        return (selectFirstMatch ? Selector.FIRST : 0)
+                | (selectWhenMatched ? Selector.WHEN_MATCHED : 0);
+    }
+
+    /**
+     * @return the type of tag matching, see {@link RuleBuilder}.
+     */
+    public RuleType getType() {
+        return RuleType.POSITIVE;
+    }
+
+    /**
+     * @return the matched keys, empty when the rule matches any key.
+     */
+    public String[] getKeys() {
+        return RuleBuilder.EMPTY_KV;
+    }
+
+    /**
+     * @return the matched values, empty when the rule matches any value.
+     */
+    public String[] getValues() {
+        return RuleBuilder.EMPTY_KV;
+    }
+
     public Rule setCat(String cat) {
         this.cat = cat;
         return this;
@@ -178,6 +208,20 @@ public class Rule {
         v.apply(this);
     }
 
+    @Override
+    public String toString() {
+        return "Rule[e=" + element + ", z=" + zoom
+                + ", first=" + selectFirstMatch + ", matched=" + selectWhenMatched
+                + ", " + matcherString() + "]";
+    }
+
+    /**
+     * @return the tags matched by this rule, used by {@link #toString()}.
+     */
+    String matcherString() {
+        return "*";
+    }
+
     static class PositiveRuleK extends Rule {
         private final String mKey;
 
@@ -188,6 +232,16 @@ public class Rule {
             mKey = key;
         }
 
+        @Override
+        String matcherString() {
+            return "k=" + mKey;
+        }
+
+        @Override
+        public String[] getKeys() {
+            return new String[]{mKey};
+        }
+
         @Override
         public boolean matchesTags(Tag[] tags) {
             for (Tag tag : tags)
@@ -207,6 +261,16 @@ public class Rule {
             mValue = value;
         }
 
+        @Override
+        String matcherString() {
+            return "v=" + mValue;
+        }
+
+        @Override
+        public String[] getValues() {
+            return new String[]{mValue};
+        }
+
         @Override
         public boolean matchesTags(Tag[] tags) {
             for (Tag tag : tags)
@@ -229,6 +293,21 @@ public class Rule {
             mValue = value;
         }
 
+        @Override
+        String matcherString() {
+            return "k=" + mKey + " v=" + mValue;
+        }
+
+        @Override
+        public String[] getKeys() {
+            return new String[]{mKey};
+        }
+
+        @Override
+        public String[] getValues() {
+            return new String[]{mValue};
+        }
+
         @Override
         public boolean matchesTags(Tag[] tags) {
             for (Tag tag : tags)
@@ -259,6 +338,21 @@ public class Rule {
                 mValues = values;
         }
 
+        @Override
+        String matcherString() {
+            return "k=" + Arrays.toString(mKeys) + " v=" + Arrays.toString(mValues);
+        }
+
+        @Override
+        public String[] getKeys() {
+            return mKeys == null ? RuleBuilder.EMPTY_KV : mKeys;
+        }
+
+        @Override
+        public String[] getValues() {
+            return mValues == null ? RuleBuilder.EMPTY_KV : mValues;
+        }
+
         @Override
         public boolean matchesTags(Tag[] tags) {
             if (mKeys == null) {
@@ -313,6 +407,27 @@ public class Rule {
             this.exclusive = type == RuleType.EXCLUDE;
         }
 
+        @Override
+        String matcherString() {
+            return (exclusive ? "-" : "~") + "k=" + Arrays.toString(keys)
+                    + " v=" + Arrays.toString(values);
+        }
+
+        @Override
+        public RuleType getType() {
+            return exclusive ? RuleType.EXCLUDE : RuleType.NEGATIVE;
+        }
+
+        @Override
+        public String[] getKeys() {
+            return keys;
+        }
+
+        @Override
+        public String[] getValues() {
+            return values;
+        }
+
         @Override
         public boolean matchesTags(Tag[] tags) {
             if (!containsKeys(tags))
@@ -34,7 +34,7 @@ import java.util.List;
 
 public class RuleBuilder {
 
-    private static final String[] EMPTY_KV = {};
+    static final String[] EMPTY_KV = {};
 
     public enum RuleType {
         POSITIVE,
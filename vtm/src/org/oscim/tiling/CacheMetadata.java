@@ -0,0 +1,70 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling;
+
+/**
+ * Freshness metadata of a cached tile: when it was fetched, when it expires
+ * and the validators to revalidate it with a conditional request.
+ */
+public class CacheMetadata {
+
+    /**
+     * Time the tile was fetched, in ms since epoch.
+     */
+    public final long fetchTime;
+
+    /**
+     * Time the tile expires, in ms since epoch, 0 when it never expires.
+     */
+    public final long expires;
+
+    /**
+     * ETag of the response, may be null.
+     */
+    public final String etag;
+
+    /**
+     * Last-Modified date of the response as sent by the server, may be null.
+     */
+    public final String lastModified;
+
+    public CacheMetadata(long fetchTime, long expires, String etag, String lastModified) {
+        this.fetchTime = fetchTime;
+        this.expires = expires;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    public boolean isExpired(long now) {
+        return expires > 0 && now >= expires;
+    }
+
+    /**
+     * @return the metadata for a 304 Not Modified response, i.e. the new
+     * fetch time and expiry with the validators of this entry where the
+     * response has none.
+     */
+    public CacheMetadata refresh(CacheMetadata response) {
+        return new CacheMetadata(response.fetchTime, response.expires,
+                response.etag != null ? response.etag : etag,
+                response.lastModified != null ? response.lastModified : lastModified);
+    }
+
+    @Override
+    public String toString() {
+        return "[fetched:" + fetchTime + ", expires:" + expires
+                + ", etag:" + etag + ", modified:" + lastModified + "]";
+    }
+}
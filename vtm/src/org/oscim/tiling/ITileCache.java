@@ -43,10 +43,25 @@ public interface ITileCache {
      */
     void setCacheSize(long size);
 
+    /**
+     * Update the metadata of a stored tile, e.g. when the server confirmed
+     * an expired tile with 304 Not Modified.
+     */
+    default void updateMetadata(Tile tile, CacheMetadata metadata) {
+    }
+
     public interface TileReader {
         Tile getTile();
 
         InputStream getInputStream();
+
+        /**
+         * @return the metadata of the tile or null when the cache does not
+         * keep it, in which case the tile never expires.
+         */
+        default CacheMetadata getMetadata() {
+            return null;
+        }
     }
 
     public interface TileWriter {
@@ -54,6 +69,12 @@ public interface ITileCache {
 
         OutputStream getOutputStream();
 
+        /**
+         * Set the metadata to store with the tile, before {@link #complete(boolean)}.
+         */
+        default void setMetadata(CacheMetadata metadata) {
+        }
+
         void complete(boolean success);
     }
 }
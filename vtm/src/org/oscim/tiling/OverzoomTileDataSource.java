@@ -41,7 +41,7 @@ public class OverzoomTileDataSource implements ITileDataSource {
             ITileDataSink dataSink = sink;
             int diff = tile.zoomLevel - overZoom;
             if (diff > 0) {
-                mapTile = new MapTile(tile.node, tile.tileX >> diff, tile.tileY >> diff, overZoom);
+                mapTile = new ParentTile(tile, diff, overZoom);
                 dataSink = new OverzoomDataSink(sink, mapTile, tile);
             }
             tileDataSource.query(mapTile, dataSink);
@@ -50,6 +50,24 @@ public class OverzoomTileDataSource implements ITileDataSource {
         }
     }
 
+    /**
+     * Parent tile reporting the state of the requested tile,
+     * so that data sources can check for cancellation.
+     */
+    private static class ParentTile extends MapTile {
+        private final MapTile tile;
+
+        ParentTile(MapTile tile, int diff, int zoomLevel) {
+            super(tile.node, tile.tileX >> diff, tile.tileY >> diff, zoomLevel);
+            this.tile = tile;
+        }
+
+        @Override
+        public boolean state(int testState) {
+            return tile.state(testState);
+        }
+    }
+
     @Override
     public void dispose() {
         tileDataSource.dispose();
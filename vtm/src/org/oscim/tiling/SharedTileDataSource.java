@@ -0,0 +1,295 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.bitmap.PixelBitmap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import static org.oscim.layers.tile.MapTile.State.CANCEL;
+import static org.oscim.tiling.QueryResult.FAILED;
+import static org.oscim.tiling.QueryResult.SUCCESS;
+
+/**
+ * Coalesces the queries of the loaders of all layers sharing a
+ * {@link TileSource}, see {@link TileSource#setRequestSharing(boolean)}.
+ * <p/>
+ * The first loader querying a tile runs the query of its data source and
+ * records the decoded elements or pixels, loaders of other layers querying
+ * the same tile meanwhile wait for it and get a copy of the result. Loaded
+ * tiles are kept for {@link #HOLD_TIME} for layers that request them later.
+ * <p/>
+ * Tile images are only shared when the backend can read their pixels,
+ * otherwise waiting loaders query the tile themselves.
+ */
+public class SharedTileDataSource implements ITileDataSource {
+
+    /**
+     * Milliseconds to keep loaded tiles for other layers.
+     */
+    public static long HOLD_TIME = 2000;
+
+    /**
+     * Interval to check for canceled tiles while waiting for another loader.
+     */
+    private static final long WAIT_INTERVAL = 100;
+
+    /* guarded by itself */
+    private static final HashMap<Key, Request> sRequests = new HashMap<>();
+
+    private final TileSource mTileSource;
+    private final ITileDataSource mDataSource;
+
+    private volatile boolean mCanceled;
+
+    public SharedTileDataSource(TileSource tileSource, ITileDataSource dataSource) {
+        mTileSource = tileSource;
+        mDataSource = dataSource;
+    }
+
+    public ITileDataSource getDataSource() {
+        return mDataSource;
+    }
+
+    @Override
+    public void query(MapTile tile, ITileDataSink sink) {
+        try {
+            queryShared(tile, sink);
+        } finally {
+            /* a cancel applies to the current or the next query */
+            mCanceled = false;
+        }
+    }
+
+    private void queryShared(MapTile tile, ITileDataSink sink) {
+        Key key = new Key(mTileSource, tile);
+
+        while (true) {
+            Request request;
+            QueryResult result = null;
+            boolean load = false;
+
+            synchronized (sRequests) {
+                removeExpired(System.currentTimeMillis());
+
+                request = sRequests.get(key);
+                if (request == null) {
+                    request = new Request(key, sink);
+                    sRequests.put(key, request);
+                    load = true;
+                } else {
+                    while (request.result == null && !isCanceled(tile)) {
+                        try {
+                            sRequests.wait(WAIT_INTERVAL);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                    result = request.result;
+                }
+            }
+
+            if (load) {
+                try {
+                    mDataSource.query(tile, request);
+                } finally {
+                    /* the data source must complete the query */
+                    request.finish(FAILED);
+                }
+                return;
+            }
+
+            if (result == SUCCESS) {
+                if (request.unshared)
+                    mDataSource.query(tile, sink);
+                else
+                    request.replay(sink);
+                return;
+            }
+
+            if (result == null || isCanceled(tile)) {
+                sink.completed(FAILED);
+                return;
+            }
+
+            /* failed for the other loader, e.g. canceled: query again */
+        }
+    }
+
+    private boolean isCanceled(MapTile tile) {
+        return mCanceled || tile.state(CANCEL) || Thread.currentThread().isInterrupted();
+    }
+
+    @Override
+    public void dispose() {
+        mDataSource.dispose();
+        synchronized (sRequests) {
+            removeExpired(System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    public void cancel() {
+        mCanceled = true;
+        mDataSource.cancel();
+    }
+
+    /**
+     * Drop all loaded tiles.
+     */
+    public static void clear() {
+        synchronized (sRequests) {
+            removeExpired(Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * @return the number of tiles currently loading or kept.
+     */
+    public static int size() {
+        synchronized (sRequests) {
+            return sRequests.size();
+        }
+    }
+
+    private static void removeExpired(long now) {
+        Iterator<Request> it = sRequests.values().iterator();
+        while (it.hasNext()) {
+            Request r = it.next();
+            if (r.result != null && now - r.time >= HOLD_TIME)
+                it.remove();
+        }
+    }
+
+    /**
+     * Records the result of the loading loader and passes it on to its sink.
+     */
+    private static final class Request implements ITileDataSink {
+        final Key key;
+        final ITileDataSink sink;
+
+        final ArrayList<MapElement> elements = new ArrayList<>();
+        int[] pixels;
+        int width, height;
+
+        /* guarded by sRequests, null while loading */
+        QueryResult result;
+        long time;
+
+        /**
+         * The tile image cannot be copied, waiting loaders query the tile.
+         */
+        boolean unshared;
+
+        Request(Key key, ITileDataSink sink) {
+            this.key = key;
+            this.sink = sink;
+        }
+
+        @Override
+        public void process(MapElement element) {
+            /* copy before the sink modifies it */
+            elements.add(new MapElement(element));
+            sink.process(element);
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+            if (bitmap != null && bitmap.isValid()) {
+                width = bitmap.getWidth();
+                height = bitmap.getHeight();
+                int[] argb = bitmap.getPixels();
+                /* e.g. not implemented by the iOS backend */
+                if (argb != null && argb.length == width * height)
+                    pixels = PixelBitmap.pack(argb);
+                else
+                    unshared = true;
+            }
+            sink.setTileImage(bitmap);
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            /* let waiting loaders continue before the sink finishes the tile */
+            finish(result);
+            sink.completed(result);
+        }
+
+        void finish(QueryResult result) {
+            synchronized (sRequests) {
+                if (this.result != null)
+                    return;
+
+                this.result = result;
+                time = System.currentTimeMillis();
+                if (result != SUCCESS || unshared) {
+                    elements.clear();
+                    pixels = null;
+                    if (sRequests.get(key) == this)
+                        sRequests.remove(key);
+                }
+                sRequests.notifyAll();
+            }
+        }
+
+        /**
+         * Pass a copy of the recorded result to sink.
+         */
+        void replay(ITileDataSink sink) {
+            for (int i = 0, n = elements.size(); i < n; i++)
+                sink.process(new MapElement(elements.get(i)));
+            if (pixels != null)
+                sink.setTileImage(new PixelBitmap(width, height, pixels.clone()));
+            sink.completed(SUCCESS);
+        }
+    }
+
+    private static final class Key {
+        final TileSource source;
+        final int x, y, z;
+
+        Key(TileSource source, MapTile tile) {
+            this.source = source;
+            x = tile.tileX;
+            y = tile.tileY;
+            z = tile.zoomLevel;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return x == other.x && y == other.y && z == other.z
+                    && source == other.source;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(source);
+            result = 31 * result + x;
+            result = 31 * result + y;
+            return 31 * result + z;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import org.oscim.layers.tile.buildings.BuildingLayer;
 import org.oscim.map.Viewport;
 
 import java.util.HashMap;
+import java.util.TreeMap;
 
 public abstract class TileSource {
 
@@ -92,6 +93,7 @@ public abstract class TileSource {
 
     protected final Options options = new Options();
     public ITileCache tileCache;
+    private boolean mRequestSharing;
 
     protected TileSource() {
     }
@@ -118,6 +120,17 @@ public abstract class TileSource {
 
     public abstract ITileDataSource getDataSource();
 
+    /**
+     * @return the data source for a tile loader, sharing the loaded tiles
+     * with the loaders of other layers when enabled.
+     */
+    public ITileDataSource getLoaderDataSource() {
+        ITileDataSource dataSource = getDataSource();
+        if (mRequestSharing)
+            return new SharedTileDataSource(this, dataSource);
+        return dataSource;
+    }
+
     public abstract OpenResult open();
 
     public abstract void close();
@@ -133,6 +146,15 @@ public abstract class TileSource {
         tileCache = cache;
     }
 
+    /**
+     * Load each tile once for all layers using this TileSource, see
+     * {@link SharedTileDataSource}. MUST be set before TileSource is added
+     * to a TileLayer!
+     */
+    public void setRequestSharing(boolean enable) {
+        mRequestSharing = enable;
+    }
+
     public int getZoomLevelMax() {
         return mZoomMax;
     }
@@ -170,6 +192,16 @@ public abstract class TileSource {
         return options.get(key);
     }
 
+    /**
+     * Identifies the data served by this tile source, e.g. to key persistent
+     * caches of derived data. Sources should include the version of their
+     * data when it may change between sessions.
+     */
+    public String getVersion() {
+        return getClass().getName() + new TreeMap<>(options)
+                + "," + mZoomMin + "," + mZoomMax + "," + mOverZoom;
+    }
+
     public static class Options extends HashMap<String, String> {
 
         private static final long serialVersionUID = 1L;
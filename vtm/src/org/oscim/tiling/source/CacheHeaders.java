@@ -0,0 +1,91 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source;
+
+import org.oscim.tiling.CacheMetadata;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Parses the HTTP cache headers of a tile response into {@link CacheMetadata}.
+ */
+public final class CacheHeaders {
+
+    private static final String[] DATE_FORMATS = {
+            "EEE, dd MMM yyyy HH:mm:ss zzz", // RFC 1123
+            "EEEE, dd-MMM-yy HH:mm:ss zzz", // RFC 850
+            "EEE MMM d HH:mm:ss yyyy" // asctime
+    };
+
+    /**
+     * @param now          time of the response in ms since epoch.
+     * @param cacheControl the Cache-Control header, may be null.
+     * @param expires      the Expires header, may be null.
+     * @param etag         the ETag header, may be null.
+     * @param lastModified the Last-Modified header, may be null.
+     */
+    public static CacheMetadata parse(long now, String cacheControl, String expires,
+                                      String etag, String lastModified) {
+        long expireTime = -1;
+
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                directive = directive.trim().toLowerCase(Locale.ROOT);
+                if (directive.equals("no-cache") || directive.equals("no-store")) {
+                    expireTime = now;
+                    break;
+                }
+                if (directive.startsWith("max-age=")) {
+                    try {
+                        expireTime = now + 1000 * Long.parseLong(directive.substring(8).trim());
+                    } catch (NumberFormatException e) {
+                        /* ignore invalid max-age */
+                    }
+                }
+            }
+        }
+
+        if (expireTime < 0 && expires != null) {
+            long date = parseDate(expires);
+            /* invalid dates, e.g. "0", mean already expired */
+            expireTime = date > 0 ? date : now;
+        }
+
+        return new CacheMetadata(now, Math.max(expireTime, 0), etag, lastModified);
+    }
+
+    /**
+     * @return the HTTP date in ms since epoch or -1 when it cannot be parsed.
+     */
+    public static long parseDate(String date) {
+        for (String format : DATE_FORMATS) {
+            SimpleDateFormat f = new SimpleDateFormat(format, Locale.US);
+            f.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                return f.parse(date.trim()).getTime();
+            } catch (ParseException e) {
+                /* try next format */
+            }
+        }
+        return -1;
+    }
+
+    private CacheHeaders() {
+        throw new IllegalStateException();
+    }
+}
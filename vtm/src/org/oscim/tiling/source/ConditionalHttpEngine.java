@@ -0,0 +1,45 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source;
+
+import org.oscim.core.Tile;
+import org.oscim.tiling.CacheMetadata;
+
+import java.io.IOException;
+
+/**
+ * A HttpEngine that can revalidate cached tiles with conditional requests
+ * and reports the cache headers of its responses.
+ */
+public interface ConditionalHttpEngine extends HttpEngine {
+
+    /**
+     * Request the tile with If-None-Match and If-Modified-Since set from
+     * the validators of the cached tile. The response is available through
+     * {@link #read()}, an empty stream when the tile was not modified.
+     */
+    void sendRequest(Tile tile, CacheMetadata cached) throws IOException;
+
+    /**
+     * @return true when the server answered the last request with
+     * 304 Not Modified.
+     */
+    boolean isNotModified();
+
+    /**
+     * @return the metadata of the last response, see {@link CacheHeaders}.
+     */
+    CacheMetadata getResponseMetadata();
+}
@@ -18,17 +18,23 @@
 package org.oscim.tiling.source;
 
 import org.oscim.core.Tile;
+import org.oscim.tiling.CacheMetadata;
 import org.oscim.utils.ArrayUtils;
 import org.oscim.utils.IOUtils;
 
 import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URL;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map.Entry;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
@@ -36,40 +42,100 @@ import java.util.zip.GZIPInputStream;
 /**
  * Lightweight HTTP connection for tile loading. Does not do redirects,
  * https, full header parsing or other stuff.
+ * <p>
+ * Keep-alive connections are pooled per host and shared by all instances.
+ * Requests of concurrent loaders are pipelined on these connections, each
+ * instance reads its response when the responses before it are consumed.
+ * Requests are sent again on a new connection when a connection breaks
+ * before the response was received. Idle connections are closed after
+ * {@link #IDLE_TIMEOUT}.
  */
-public class LwHttp implements HttpEngine {
+public class LwHttp implements RangeHttpEngine, ConditionalHttpEngine {
     private static final Logger log = Logger.getLogger(LwHttp.class.getName());
     static final boolean dbg = false;
 
     private static final byte[] HEADER_HTTP_OK = "200 OK".getBytes();
+    private static final byte[] HEADER_HTTP_PARTIAL_CONTENT = "206 Partial Content".getBytes();
+    private static final byte[] HEADER_HTTP_NOT_MODIFIED = "304".getBytes();
+    private static final byte[] HEADER_HTTP_NO_CONTENT = "204".getBytes();
+    private static final byte[] HEADER_RANGE = "Range: bytes=".getBytes();
     private static final byte[] HEADER_CONTENT_LENGTH = "Content-Length".getBytes();
     private static final byte[] HEADER_CONNECTION_CLOSE = "Connection: close".getBytes();
     private static final byte[] HEADER_ENCODING_GZIP = "Content-Encoding: gzip".getBytes();
+    private static final byte[] HEADER_IF_NONE_MATCH = "If-None-Match: ".getBytes();
+    private static final byte[] HEADER_IF_MODIFIED_SINCE = "If-Modified-Since: ".getBytes();
+
+    /* cache headers, matched ignoring case */
+    private static final String HEADER_ETAG = "etag:";
+    private static final String HEADER_LAST_MODIFIED = "last-modified:";
+    private static final String HEADER_CACHE_CONTROL = "cache-control:";
+    private static final String HEADER_EXPIRES = "expires:";
 
     private static final int RESPONSE_EXPECTED_LIVES = 100;
     private static final long RESPONSE_TIMEOUT = (long) 10E9; // 10 second in nanosecond
 
+    /**
+     * Close connections that were not used for this time, in milliseconds.
+     */
+    public static long IDLE_TIMEOUT = 10000;
+
+    /**
+     * Double the learned requests per connection after this many
+     * connections reached the limit without being closed by the server.
+     */
+    private static final int LIMIT_PROBE_CONNECTIONS = 4;
+
     private static final int CONNECT_TIMEOUT = 15000; // 15 seconds
     private static final int SOCKET_TIMEOUT = 8000; // 8 seconds
 
     private static final int BUFFER_SIZE = 8192;
     private final byte[] buffer = new byte[BUFFER_SIZE];
 
+    /**
+     * Send requests again when the connection broke this often.
+     */
+    private static final int MAX_RETRIES = 2;
+
+    /**
+     * Max number of connections per host, shared by all instances.
+     */
+    public static int CONNECTIONS_PER_HOST = 2;
+
+    /**
+     * Max number of pipelined requests per connection, 1 to disable pipelining.
+     */
+    public static int PIPELINE_DEPTH = 4;
+
+    private static final HashMap<String, Pool> pools = new HashMap<>();
+    private static Thread reaper;
+
     private final String mHost;
-    private final int mPort;
+    private final Pool mPool;
 
-    private int mMaxRequests = 0;
-    private Socket mSocket;
-    private OutputStream mCommandStream;
-    private Buffer mResponseStream;
-    private long mLastRequest = 0;
-    private InetSocketAddress mSockAddr;
+    /**
+     * Connection of the current request
+     */
+    private volatile Connection mConnection;
+    private long mTicket;
+    private boolean mReading;
+    private boolean mHeaderRead;
+    private int mRequestLength;
 
     /**
      * Server requested to close the connection
      */
     private boolean mMustCloseConnection;
 
+    /**
+     * Cache headers of the last response
+     */
+    private boolean mNotModified;
+    private long mResponseTime;
+    private String mEtag;
+    private String mLastModified;
+    private String mCacheControl;
+    private String mExpires;
+
     private final byte[] REQUEST_GET_START;
     private final byte[] REQUEST_GET_END;
     private final byte[] mRequestBuffer;
@@ -89,7 +155,7 @@ public class LwHttp implements HttpEngine {
             port = 80;
 
         mHost = url.getHost();
-        mPort = port;
+        mPool = getPool(mHost, port);
 
         String path = url.getPath();
 
@@ -126,6 +192,11 @@ public class LwHttp implements HttpEngine {
         int marked = -1;
         int contentLength;
 
+        /**
+         * Bytes received over all responses, to detect progress of the reader
+         */
+        volatile long received;
+
         public Buffer(InputStream is) {
             super(is, BUFFER_SIZE);
         }
@@ -183,12 +254,14 @@ public class LwHttp implements HttpEngine {
                 sumSkipped += 1;
                 /* was incremented by read() */
                 bytesRead -= 1;
+                received -= 1;
             }
 
             if (dbg)
                 log.fine("skip:" + n + "/" + sumSkipped + " pos:" + bytesRead);
 
             bytesRead += sumSkipped;
+            received += sumSkipped;
             return sumSkipped;
         }
 
@@ -211,8 +284,10 @@ public class LwHttp implements HttpEngine {
 
             int data = super.read();
 
-            if (data >= 0)
+            if (data >= 0) {
                 bytesRead += 1;
+                received += 1;
+            }
 
             if (cache != null && bytesRead > bytesWrote) {
                 bytesWrote = bytesRead;
@@ -238,6 +313,7 @@ public class LwHttp implements HttpEngine {
                 return len;
 
             bytesRead += len;
+            received += len;
 
             if (cache != null && bytesRead > bytesWrote) {
                 int add = bytesRead - bytesWrote;
@@ -249,22 +325,401 @@ public class LwHttp implements HttpEngine {
         }
     }
 
-    private void checkSocket() throws IOException {
-        if (mSocket == null)
-            throw new IOException("No Socket");
+    /**
+     * A keep-alive connection. Requests get a ticket in the order they are
+     * written, responses are read in ticket order.
+     */
+    static final class Connection {
+        final Socket socket;
+        final OutputStream out;
+        final Buffer in;
+
+        /* guarded by the connection, writes are serialized per connection */
+        long sent;
+
+        /* guarded by the pool */
+        int pending;
+        int requests;
+        long current;
+        long lastUse;
+        volatile boolean broken;
+        boolean closing;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            out = socket.getOutputStream();
+            in = new Buffer(socket.getInputStream());
+            lastUse = System.nanoTime();
+        }
+
+        boolean isReusable(long now, int maxRequests) {
+            if (broken || closing || requests >= maxRequests)
+                return false;
+            if (pending > 0)
+                return true;
+            if (now - lastUse > RESPONSE_TIMEOUT)
+                return false;
+            try {
+                int n = in.available();
+                if (n > 0) {
+                    log.fine("left over bytes " + n);
+                    return false;
+                }
+            } catch (IOException e) {
+                log.fine(e.toString());
+                return false;
+            }
+            return true;
+        }
+
+        void close() {
+            IOUtils.closeQuietly(socket);
+        }
+    }
+
+    /**
+     * The connections to one host.
+     */
+    static final class Pool {
+        private final String mHost;
+        private final int mPort;
+        private final ArrayList<Connection> mConnections = new ArrayList<>();
+        private int mConnecting;
+        private InetSocketAddress mSockAddr;
+
+        /**
+         * Requests per connection, learned from connections closed by the
+         * server and raised again after {@link #LIMIT_PROBE_CONNECTIONS}
+         * connections reached it without being closed.
+         */
+        private int mMaxRequests = RESPONSE_EXPECTED_LIVES;
+        private int mCleanConnections;
+
+        Pool(String host, int port) {
+            mHost = host;
+            mPort = port;
+        }
+
+        /**
+         * @return a connection with a reserved request, an idle one when
+         * available, otherwise a new one or the least busy one.
+         */
+        Connection acquire() throws IOException {
+            synchronized (this) {
+                while (true) {
+                    long now = System.nanoTime();
+                    Connection best = null;
+                    for (Iterator<Connection> it = mConnections.iterator(); it.hasNext(); ) {
+                        Connection c = it.next();
+                        if (!c.isReusable(now, mMaxRequests)) {
+                            if (c.pending == 0) {
+                                if (!c.broken && !c.closing && c.requests >= mMaxRequests)
+                                    probeLimit();
+                                c.close();
+                                it.remove();
+                            }
+                            continue;
+                        }
+                        if (c.pending >= PIPELINE_DEPTH)
+                            continue;
+                        if (best == null || c.pending < best.pending)
+                            best = c;
+                    }
+                    if (best != null && best.pending == 0)
+                        return reserve(best);
+
+                    if (mConnections.size() + mConnecting < CONNECTIONS_PER_HOST) {
+                        mConnecting++;
+                        break;
+                    }
+                    if (best != null)
+                        return reserve(best);
+
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        throw new IOException("interrupted");
+                    }
+                }
+            }
+
+            Connection c = null;
+            try {
+                c = connect();
+            } finally {
+                synchronized (this) {
+                    mConnecting--;
+                    if (c != null) {
+                        mConnections.add(c);
+                        reserve(c);
+                    }
+                    notifyAll();
+                }
+            }
+            startReaper();
+            return c;
+        }
+
+        /**
+         * A connection reached the learned limit without the server closing it.
+         */
+        private void probeLimit() {
+            if (mMaxRequests >= RESPONSE_EXPECTED_LIVES)
+                return;
+            if (++mCleanConnections >= LIMIT_PROBE_CONNECTIONS) {
+                mCleanConnections = 0;
+                mMaxRequests = Math.min(mMaxRequests * 2, RESPONSE_EXPECTED_LIVES);
+            }
+        }
+
+        private Connection reserve(Connection c) {
+            c.pending++;
+            c.requests++;
+            return c;
+        }
+
+        private Connection connect() throws IOException {
+            InetSocketAddress sockAddr;
+            synchronized (this) {
+                if (mSockAddr == null || mSockAddr.isUnresolved())
+                    mSockAddr = new InetSocketAddress(mHost, mPort);
+                sockAddr = mSockAddr;
+            }
+            if (sockAddr.isUnresolved())
+                throw new UnknownHostException(mHost);
+
+            Socket socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(SOCKET_TIMEOUT);
+                socket.connect(sockAddr, CONNECT_TIMEOUT);
+                return new Connection(socket);
+            } catch (IOException e) {
+                IOUtils.closeQuietly(socket);
+                throw e;
+            }
+        }
+
+        /**
+         * Write the request on the reserved connection.
+         *
+         * @return the ticket of the response.
+         */
+        long write(Connection c, byte[] request, int length) throws IOException {
+            try {
+                synchronized (c) {
+                    if (c.broken)
+                        throw new IOException("connection lost");
+                    c.out.write(request, 0, length);
+                    return c.sent++;
+                }
+            } catch (IOException e) {
+                breakConnection(c);
+                throw e;
+            }
+        }
+
+        /**
+         * Wait until the responses before the ticket are consumed.
+         *
+         * @return false when the connection broke before.
+         */
+        synchronized boolean await(Connection c, long ticket) throws IOException {
+            long deadline = System.nanoTime() + RESPONSE_TIMEOUT;
+            long current = c.current;
+            long received = c.in.received;
+            while (!c.broken && c.current != ticket) {
+                /* responses before are still being received */
+                if (c.current != current || c.in.received != received) {
+                    current = c.current;
+                    received = c.in.received;
+                    deadline = System.nanoTime() + RESPONSE_TIMEOUT;
+                }
+                long wait = (deadline - System.nanoTime()) / 1000000;
+                if (wait <= 0) {
+                    /* the response before is stuck */
+                    breakConnection(c);
+                    throw new SocketTimeoutException("pipeline stalled");
+                }
+                try {
+                    wait(wait);
+                } catch (InterruptedException e) {
+                    throw new IOException("interrupted");
+                }
+            }
+            return !c.broken;
+        }
+
+        /**
+         * Release the reserved request.
+         *
+         * @param keep    the response was consumed, the next may be read.
+         * @param closing the server closes the connection.
+         */
+        synchronized void release(Connection c, boolean keep, boolean closing) {
+            c.pending--;
+            if (!keep) {
+                breakConnection(c);
+            } else {
+                c.current++;
+                c.lastUse = System.nanoTime();
+                if (closing) {
+                    c.closing = true;
+                    /* do not pipeline beyond on the next connections */
+                    if (c.current < mMaxRequests)
+                        mMaxRequests = (int) Math.max(c.current, 1);
+                    mCleanConnections = 0;
+                    /* pipelined requests will not be answered */
+                    if (c.pending > 0)
+                        breakConnection(c);
+                }
+            }
+            if ((c.broken || c.closing) && c.pending == 0) {
+                c.close();
+                mConnections.remove(c);
+            }
+            notifyAll();
+        }
+
+        /**
+         * Break the connection when only one request is pending on it.
+         */
+        synchronized void breakIfExclusive(Connection c) {
+            if (c.pending <= 1)
+                breakConnection(c);
+        }
+
+        synchronized void breakConnection(Connection c) {
+            if (!c.broken) {
+                c.broken = true;
+                c.close();
+            }
+            notifyAll();
+        }
+
+        /**
+         * Close connections without pending requests, unused for maxIdle.
+         *
+         * @return the number of remaining connections.
+         */
+        synchronized int closeIdle(long now, long maxIdle) {
+            for (Iterator<Connection> it = mConnections.iterator(); it.hasNext(); ) {
+                Connection c = it.next();
+                if (c.pending == 0 && now - c.lastUse >= maxIdle) {
+                    c.close();
+                    it.remove();
+                }
+            }
+            return mConnections.size();
+        }
+    }
+
+    private static Pool getPool(String host, int port) {
+        String key = host + ":" + port;
+        synchronized (pools) {
+            Pool pool = pools.get(key);
+            if (pool == null) {
+                pool = new Pool(host, port);
+                pools.put(key, pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Close the idle connections of all hosts.
+     */
+    public static void closeIdleConnections() {
+        closeIdle(System.nanoTime(), 0);
+    }
+
+    /**
+     * @return the number of remaining connections.
+     */
+    private static int closeIdle(long now, long maxIdle) {
+        int open = 0;
+        synchronized (pools) {
+            for (Pool pool : pools.values())
+                open += pool.closeIdle(now, maxIdle);
+        }
+        return open;
+    }
+
+    /**
+     * Start the thread closing connections after {@link #IDLE_TIMEOUT},
+     * it stops when no connections are left.
+     */
+    private static void startReaper() {
+        synchronized (pools) {
+            if (reaper != null)
+                return;
+            reaper = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (true) {
+                        long timeout = IDLE_TIMEOUT;
+                        try {
+                            Thread.sleep(Math.max(timeout / 2, 1));
+                        } catch (InterruptedException e) {
+                            break;
+                        }
+                        if (closeIdle(System.nanoTime(), timeout * 1000000) > 0)
+                            continue;
+                        synchronized (pools) {
+                            /* a connection might have been added meanwhile */
+                            if (closeIdle(System.nanoTime(), timeout * 1000000) == 0) {
+                                reaper = null;
+                                return;
+                            }
+                        }
+                    }
+                    synchronized (pools) {
+                        reaper = null;
+                    }
+                }
+            }, "LwHttpReaper");
+            reaper.setDaemon(true);
+            reaper.start();
+        }
     }
 
     @Override
     public synchronized InputStream read() throws IOException {
-        checkSocket();
+        for (int retry = 0; ; retry++) {
+            Connection conn = mConnection;
+            if (conn == null)
+                throw new IOException("No Socket");
 
-        Buffer is = mResponseStream;
+            if (mPool.await(conn, mTicket)) {
+                mReading = true;
+                try {
+                    return readResponse(conn.in);
+                } catch (EOFException e) {
+                    /* closed by the server before the response */
+                    if (retry >= MAX_RETRIES)
+                        throw e;
+                }
+            } else if (retry >= MAX_RETRIES) {
+                throw new IOException("connection lost");
+            }
+            log.fine("send request again");
+            mConnection = null;
+            mReading = false;
+            mPool.release(conn, false, false);
+            send();
+        }
+    }
+
+    private InputStream readResponse(Buffer is) throws IOException {
+        mHeaderRead = false;
         is.mark(BUFFER_SIZE);
         is.start(BUFFER_SIZE);
 
         byte[] buf = buffer;
         boolean first = true;
         boolean gzip = false;
+        String error = null;
+        boolean noContent = false;
 
         int read = 0;
         int pos = 0;
@@ -273,6 +728,13 @@ public class LwHttp implements HttpEngine {
 
         int contentLength = -1;
 
+        mNotModified = false;
+        mResponseTime = System.currentTimeMillis();
+        mEtag = null;
+        mLastModified = null;
+        mCacheControl = null;
+        mExpires = null;
+
         /* header may not be larger than BUFFER_SIZE for this to work */
         for (; (pos < read) || ((read < BUFFER_SIZE) &&
                 (len = is.read(buf, read, BUFFER_SIZE - read)) >= 0); len = 0) {
@@ -298,9 +760,13 @@ public class LwHttp implements HttpEngine {
             if (first) {
                 first = false;
                 /* check only for OK ("HTTP/1.? ".length == 9) */
-                if (!check(HEADER_HTTP_OK, buf, pos + 9, end)) {
-                    throw new IOException("HTTP Error: "
-                            + new String(buf, pos, end - pos - 1));
+                if (check(HEADER_HTTP_NOT_MODIFIED, buf, pos + 9, end)) {
+                    mNotModified = true;
+                } else if (!check(HEADER_HTTP_OK, buf, pos + 9, end)
+                        && !check(HEADER_HTTP_PARTIAL_CONTENT, buf, pos + 9, end)) {
+                    /* read the header to skip the content of the error */
+                    error = new String(buf, pos, end - pos - 1);
+                    noContent = check(HEADER_HTTP_NO_CONTENT, buf, pos + 9, end);
                 }
             } else if (check(HEADER_CONTENT_LENGTH, buf, pos, end)) {
                 /* parse Content-Length */
@@ -310,6 +776,14 @@ public class LwHttp implements HttpEngine {
                 gzip = true;
             } else if (check(HEADER_CONNECTION_CLOSE, buf, pos, end)) {
                 mMustCloseConnection = true;
+            } else if (checkIgnoreCase(HEADER_ETAG, buf, pos, end)) {
+                mEtag = headerValue(HEADER_ETAG, buf, pos, end);
+            } else if (checkIgnoreCase(HEADER_LAST_MODIFIED, buf, pos, end)) {
+                mLastModified = headerValue(HEADER_LAST_MODIFIED, buf, pos, end);
+            } else if (checkIgnoreCase(HEADER_CACHE_CONTROL, buf, pos, end)) {
+                mCacheControl = headerValue(HEADER_CACHE_CONTROL, buf, pos, end);
+            } else if (checkIgnoreCase(HEADER_EXPIRES, buf, pos, end)) {
+                mExpires = headerValue(HEADER_EXPIRES, buf, pos, end);
             }
 
             if (dbg) {
@@ -321,13 +795,27 @@ public class LwHttp implements HttpEngine {
             end = pos;
         }
 
+        if (read == 0)
+            throw new EOFException("connection closed");
+
+        /* a 304 or 204 response has no content */
+        if (mNotModified || noContent)
+            contentLength = 0;
+
         /* back to start of content */
         is.reset();
         is.mark(0);
         is.skip(end);
         is.start(contentLength);
 
-        if (gzip) {
+        if (error != null) {
+            /* the content can only be skipped when its length is known */
+            mHeaderRead = contentLength >= 0;
+            throw new IOException("HTTP Error: " + error);
+        }
+        mHeaderRead = true;
+
+        if (gzip && !mNotModified) {
             return new GZIPInputStream(is);
         }
         return is;
@@ -335,110 +823,158 @@ public class LwHttp implements HttpEngine {
 
     @Override
     public synchronized void sendRequest(Tile tile) throws IOException {
+        sendRequest(tile, -1, 0);
+    }
 
-        if (mSocket != null) {
-            if (--mMaxRequests < 0)
-                close();
-            else if (System.nanoTime() - mLastRequest > RESPONSE_TIMEOUT)
-                close();
-            else {
-                try {
-                    int n = mResponseStream.available();
-                    if (n > 0) {
-                        log.fine("left over bytes " + n);
-                        close();
-                    }
-                } catch (IOException e) {
-                    log.fine(e.toString());
-                    close();
-                }
-            }
-        }
+    @Override
+    public synchronized void sendRequest(Tile tile, long offset, int length) throws IOException {
+        sendRequest(tile, offset, length, null);
+    }
 
-        if (mSocket == null) {
-            /* might throw IOException */
-            lwHttpConnect();
+    @Override
+    public synchronized void sendRequest(Tile tile, CacheMetadata cached) throws IOException {
+        sendRequest(tile, -1, 0, cached);
+    }
 
-            /* TODO parse from header */
-            mMaxRequests = RESPONSE_EXPECTED_LIVES;
-        }
+    @Override
+    public synchronized boolean isNotModified() {
+        return mNotModified;
+    }
+
+    @Override
+    public synchronized CacheMetadata getResponseMetadata() {
+        return CacheHeaders.parse(mResponseTime, mCacheControl, mExpires, mEtag, mLastModified);
+    }
+
+    private void sendRequest(Tile tile, long offset, int length, CacheMetadata cached)
+            throws IOException {
+
+        /* previous request was not completed */
+        if (mConnection != null)
+            requestCompleted(false);
 
         int pos = REQUEST_GET_START.length;
         int len = REQUEST_GET_END.length;
 
         pos = formatTilePath(tile, mRequestBuffer, pos);
-        System.arraycopy(REQUEST_GET_END, 0, mRequestBuffer, pos, len);
+
+        byte[] etag = null;
+        byte[] modified = null;
+        if (cached != null) {
+            if (cached.etag != null)
+                etag = cached.etag.getBytes();
+            if (cached.lastModified != null)
+                modified = cached.lastModified.getBytes();
+
+            /* with range header and line ends */
+            int size = pos + len + 64
+                    + (etag == null ? 0 : HEADER_IF_NONE_MATCH.length + etag.length)
+                    + (modified == null ? 0 : HEADER_IF_MODIFIED_SINCE.length + modified.length);
+            if (size > mRequestBuffer.length) {
+                log.fine("validators too long " + cached);
+                etag = null;
+                modified = null;
+            }
+        }
+
+        if (offset >= 0 || etag != null || modified != null) {
+            /* insert headers before the empty line */
+            len -= 2;
+            System.arraycopy(REQUEST_GET_END, 0, mRequestBuffer, pos, len);
+            pos += len;
+            if (offset >= 0) {
+                System.arraycopy(HEADER_RANGE, 0, mRequestBuffer, pos, HEADER_RANGE.length);
+                pos += HEADER_RANGE.length;
+                pos = writeInt(offset, pos, mRequestBuffer);
+                mRequestBuffer[pos++] = '-';
+                pos = writeInt(offset + length - 1, pos, mRequestBuffer);
+                mRequestBuffer[pos++] = '\r';
+                mRequestBuffer[pos++] = '\n';
+            }
+            if (etag != null)
+                pos = writeHeader(HEADER_IF_NONE_MATCH, etag, pos, mRequestBuffer);
+            if (modified != null)
+                pos = writeHeader(HEADER_IF_MODIFIED_SINCE, modified, pos, mRequestBuffer);
+            len = 2;
+        }
+        System.arraycopy(REQUEST_GET_END, REQUEST_GET_END.length - len, mRequestBuffer, pos, len);
         len += pos;
 
         if (dbg)
             log.fine("request: " + new String(mRequestBuffer, 0, len));
 
-        try {
-            writeRequest(len);
-        } catch (IOException e) {
-            log.fine("recreate connection");
-            close();
-
-            lwHttpConnect();
-            writeRequest(len);
-        }
-    }
-
-    private void writeRequest(int length) throws IOException {
-        mCommandStream.write(mRequestBuffer, 0, length);
-        //mCommandStream.flush();
+        mRequestLength = len;
+        send();
     }
 
-    private synchronized void lwHttpConnect() throws IOException {
-        if (mSockAddr == null || mSockAddr.isUnresolved()) {
-            mSockAddr = new InetSocketAddress(mHost, mPort);
-            if (mSockAddr.isUnresolved())
-                throw new UnknownHostException(mHost);
-        }
-
-        try {
-            mSocket = new Socket();
-            mSocket.setTcpNoDelay(true);
-            mSocket.setSoTimeout(SOCKET_TIMEOUT);
-            mSocket.connect(mSockAddr, CONNECT_TIMEOUT);
-            mCommandStream = mSocket.getOutputStream();
-            mResponseStream = new Buffer(mSocket.getInputStream());
-
-            mMustCloseConnection = false;
-        } catch (IOException e) {
-            close();
-            throw e;
+    /**
+     * Write the request on a pooled connection.
+     */
+    private void send() throws IOException {
+        mMustCloseConnection = false;
+        for (int retry = 0; ; retry++) {
+            /* might throw IOException */
+            Connection conn = mPool.acquire();
+            try {
+                mTicket = mPool.write(conn, mRequestBuffer, mRequestLength);
+                mConnection = conn;
+                return;
+            } catch (IOException e) {
+                mPool.release(conn, false, false);
+                if (retry >= MAX_RETRIES)
+                    throw e;
+                log.fine("recreate connection");
+            }
         }
     }
 
+    /**
+     * Abort the current request. The connection is closed only when no
+     * other requests are pipelined on it, otherwise the response is skipped
+     * by {@link #requestCompleted(boolean)}.
+     */
     @Override
     public void close() {
-        IOUtils.closeQuietly(mSocket);
-        synchronized (this) {
-            mSocket = null;
-            mCommandStream = null;
-            mResponseStream = null;
-        }
+        Connection conn = mConnection;
+        if (conn != null)
+            mPool.breakIfExclusive(conn);
     }
 
     @Override
     public synchronized void setCache(OutputStream os) {
-        if (mSocket == null)
+        if (mConnection == null || !mReading)
             return;
 
-        mResponseStream.setCache(os);
+        mConnection.in.setCache(os);
     }
 
     @Override
     public synchronized boolean requestCompleted(boolean ok) {
-        if (mSocket == null)
+        Connection conn = mConnection;
+        if (conn == null)
             return false;
 
-        mLastRequest = System.nanoTime();
-        mResponseStream.setCache(null);
+        /* skip the unread response to keep the requests pipelined after it */
+        if (!mReading && !conn.broken && conn.pending > 1) {
+            try {
+                if (mPool.await(conn, mTicket)) {
+                    mReading = true;
+                    readResponse(conn.in);
+                }
+            } catch (IOException e) {
+                log.fine(e.toString());
+            }
+        }
 
-        if (!ok || mMustCloseConnection || !mResponseStream.finishedReading())
-            close();
+        /* only the response of this request may be drained */
+        boolean keep = false;
+        if (mReading) {
+            conn.in.setCache(null);
+            keep = mHeaderRead && !conn.broken && conn.in.finishedReading();
+        }
+        mConnection = null;
+        mReading = false;
+        mPool.release(conn, keep, mMustCloseConnection);
 
         return ok;
     }
@@ -446,14 +982,14 @@ public class LwHttp implements HttpEngine {
     /**
      * write (positive) integer to byte array
      */
-    private static int writeInt(int val, int pos, byte[] buf) {
+    private static int writeInt(long val, int pos, byte[] buf) {
         if (val == 0) {
             buf[pos] = '0';
             return pos + 1;
         }
 
         int i = 0;
-        for (int n = val; n > 0; n = n / 10, i++)
+        for (long n = val; n > 0; n = n / 10, i++)
             buf[pos + i] = (byte) ('0' + n % 10);
 
         ArrayUtils.reverse(buf, pos, pos + i, 1);
@@ -461,6 +997,16 @@ public class LwHttp implements HttpEngine {
         return pos + i;
     }
 
+    private static int writeHeader(byte[] name, byte[] value, int pos, byte[] buf) {
+        System.arraycopy(name, 0, buf, pos, name.length);
+        pos += name.length;
+        System.arraycopy(value, 0, buf, pos, value.length);
+        pos += value.length;
+        buf[pos++] = '\r';
+        buf[pos++] = '\n';
+        return pos;
+    }
+
     /**
      * parse (positive) integer from byte array
      */
@@ -487,6 +1033,35 @@ public class LwHttp implements HttpEngine {
         return true;
     }
 
+    /**
+     * @param name lower case header name including ':'
+     */
+    private static boolean checkIgnoreCase(String name, byte[] buffer,
+                                           int position, int available) {
+        int length = name.length();
+
+        if (available - position < length)
+            return false;
+
+        for (int i = 0; i < length; i++) {
+            int c = buffer[position + i];
+            if (c >= 'A' && c <= 'Z')
+                c += 'a' - 'A';
+            if (c != name.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the value of the header line from position to the line end.
+     */
+    private static String headerValue(String name, byte[] buffer, int position, int end) {
+        int start = position + name.length();
+        /* strip '\r' */
+        return new String(buffer, start, end - 1 - start).trim();
+    }
+
     /**
      * @param tile the Tile
      * @param buf  to write url string
@@ -0,0 +1,35 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source;
+
+import org.oscim.core.Tile;
+
+import java.io.IOException;
+
+/**
+ * A HttpEngine that can request byte ranges of a resource,
+ * e.g. to read tiles from a single file archive.
+ */
+public interface RangeHttpEngine extends HttpEngine {
+
+    /**
+     * Request 'length' bytes starting at 'offset'. The response is
+     * available through {@link #read()}.
+     *
+     * @param tile the tile used to format the url, may be null when
+     *             the tile source url does not depend on the tile.
+     */
+    void sendRequest(Tile tile, long offset, int length) throws IOException;
+}
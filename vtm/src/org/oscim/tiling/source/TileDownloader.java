@@ -0,0 +1,421 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source;
+
+import org.oscim.core.BoundingBox;
+import org.oscim.core.MercatorProjection;
+import org.oscim.core.Tile;
+import org.oscim.tiling.CacheMetadata;
+import org.oscim.tiling.ITileCache;
+import org.oscim.tiling.ITileCache.TileReader;
+import org.oscim.utils.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.logging.Logger;
+
+/**
+ * Downloads all tiles of a region into the {@link ITileCache} of a
+ * {@link UrlTileSource}, e.g. to prepare for areas without network.
+ * <p>
+ * Tiles are enumerated per zoom level, column by column, matching the key
+ * order of the tile caches. Tiles which are cached and not expired are
+ * skipped, expired tiles are revalidated when the {@link HttpEngine} is a
+ * {@link ConditionalHttpEngine}. With a progress file the download resumes
+ * where it was canceled, tiles that failed are fetched when the download is
+ * run again.
+ */
+public class TileDownloader {
+
+    private static final Logger log = Logger.getLogger(TileDownloader.class.getName());
+
+    /**
+     * Min time between progress updates and saves, in ms.
+     */
+    private static final long PROGRESS_INTERVAL = 1000;
+
+    public static class Progress {
+        /**
+         * Number of tiles in the region.
+         */
+        public long total;
+        /**
+         * Number of processed tiles, including those skipped and failed.
+         */
+        public long done;
+        /**
+         * Number of tiles that were already cached and fresh.
+         */
+        public long skipped;
+        /**
+         * Number of tiles that could not be fetched.
+         */
+        public long failed;
+        /**
+         * Bytes downloaded in this run.
+         */
+        public long bytes;
+        /**
+         * Tiles processed per second in this run.
+         */
+        public double tilesPerSecond;
+        /**
+         * Bytes downloaded per second in this run.
+         */
+        public double bytesPerSecond;
+
+        @Override
+        public String toString() {
+            return "[" + done + "/" + total + ", skipped:" + skipped + ", failed:" + failed
+                    + ", " + (int) tilesPerSecond + " tiles/s, " + (int) (bytesPerSecond / 1024) + " KB/s]";
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called from a download thread, at most once per second.
+         */
+        void onProgress(TileDownloader downloader, Progress progress);
+
+        /**
+         * Called once when all tiles are processed or the download was canceled.
+         */
+        void onFinished(TileDownloader downloader, Progress progress, boolean canceled);
+    }
+
+    private final UrlTileSource mTileSource;
+    private final int mZoomMin;
+    private final int mZoomMax;
+
+    /* tile range and first sequence number per zoom level */
+    private final int[] mMinX, mMinY, mMaxX, mMaxY;
+    private final long[] mStart;
+    private final long mTotal;
+
+    private int mThreads = 2;
+    private File mProgressFile;
+    private Listener mListener;
+
+    /* guarded by this */
+    private long mNext;
+    private long[] mActive;
+    private int mRunning;
+    private boolean mCanceled;
+    private final Progress mProgress = new Progress();
+    private long mStartTime;
+    private long mStartDone;
+    private long mLastReport;
+
+    public TileDownloader(UrlTileSource tileSource, BoundingBox bbox, int zoomMin, int zoomMax) {
+        if (zoomMin < 0 || zoomMin > zoomMax)
+            throw new IllegalArgumentException("invalid zoom range " + zoomMin + "-" + zoomMax);
+
+        mTileSource = tileSource;
+        mZoomMin = zoomMin;
+        mZoomMax = zoomMax;
+
+        int levels = zoomMax - zoomMin + 1;
+        mMinX = new int[levels];
+        mMinY = new int[levels];
+        mMaxX = new int[levels];
+        mMaxY = new int[levels];
+        mStart = new long[levels + 1];
+
+        for (int i = 0; i < levels; i++) {
+            byte z = (byte) (zoomMin + i);
+            mMinX[i] = MercatorProjection.longitudeToTileX(bbox.getMinLongitude(), z);
+            mMaxX[i] = MercatorProjection.longitudeToTileX(bbox.getMaxLongitude(), z);
+            /* tile y grows to the south */
+            mMinY[i] = MercatorProjection.latitudeToTileY(bbox.getMaxLatitude(), z);
+            mMaxY[i] = MercatorProjection.latitudeToTileY(bbox.getMinLatitude(), z);
+            mStart[i + 1] = mStart[i]
+                    + (long) (mMaxX[i] - mMinX[i] + 1) * (mMaxY[i] - mMinY[i] + 1);
+        }
+        mTotal = mStart[levels];
+        mProgress.total = mTotal;
+    }
+
+    /**
+     * @param threads number of concurrent requests, default 2.
+     */
+    public void setThreads(int threads) {
+        mThreads = Math.max(1, threads);
+    }
+
+    /**
+     * @param file to save the progress to, for resuming the download.
+     *             Deleted when the download is complete.
+     */
+    public void setProgressFile(File file) {
+        mProgressFile = file;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return number of tiles in the region.
+     */
+    public long getTileCount() {
+        return mTotal;
+    }
+
+    /**
+     * @return the tile with the sequence number n.
+     */
+    public Tile getTile(long n) {
+        int i = 0;
+        while (n >= mStart[i + 1])
+            i++;
+        long pos = n - mStart[i];
+        int rows = mMaxY[i] - mMinY[i] + 1;
+        return new Tile(mMinX[i] + (int) (pos / rows), mMinY[i] + (int) (pos % rows),
+                (byte) (mZoomMin + i));
+    }
+
+    /**
+     * Start the download threads, returns immediately.
+     */
+    public synchronized void start() {
+        if (mRunning > 0)
+            throw new IllegalStateException("download is running");
+        if (mTileSource.tileCache == null)
+            throw new IllegalStateException("tile source has no cache");
+
+        mCanceled = false;
+        mNext = loadProgress();
+        mProgress.done = mNext;
+        mProgress.skipped = 0;
+        mProgress.failed = 0;
+        mProgress.bytes = 0;
+        mStartTime = mLastReport = System.currentTimeMillis();
+        mStartDone = mNext;
+
+        mActive = new long[mThreads];
+        mRunning = mThreads;
+        for (int i = 0; i < mThreads; i++) {
+            final int id = i;
+            mActive[id] = -1;
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    download(id);
+                }
+            }, "TileDownloader" + i);
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            t.start();
+        }
+    }
+
+    /**
+     * Stop the download, running requests are completed. The progress is
+     * saved to resume the download later.
+     */
+    public synchronized void cancel() {
+        mCanceled = true;
+    }
+
+    public synchronized boolean isRunning() {
+        return mRunning > 0;
+    }
+
+    /**
+     * Wait for the download to finish.
+     */
+    public synchronized void await() throws InterruptedException {
+        while (mRunning > 0)
+            wait();
+    }
+
+    private void download(int id) {
+        HttpEngine conn = mTileSource.getHttpEngine();
+        ITileCache cache = mTileSource.tileCache;
+        byte[] buffer = new byte[8192];
+
+        try {
+            long n;
+            while ((n = next(id)) >= 0) {
+                Tile tile = getTile(n);
+                int size = -1;
+                boolean skipped = false;
+                try {
+                    CacheMetadata cached = null;
+                    TileReader reader = cache.getTile(tile);
+                    if (reader != null) {
+                        IOUtils.closeQuietly(reader.getInputStream());
+                        cached = reader.getMetadata();
+                        skipped = cached == null || !cached.isExpired(System.currentTimeMillis());
+                    }
+                    if (!skipped)
+                        size = TileRevalidator.fetch(conn, cache, tile, cached, buffer);
+                } catch (IOException e) {
+                    log.fine(tile + " Download: " + e);
+                } catch (Exception e) {
+                    log.fine(tile + " Download error: " + e);
+                }
+                completed(id, skipped, size);
+            }
+        } finally {
+            conn.close();
+            finished(id);
+        }
+    }
+
+    private synchronized long next(int id) {
+        mActive[id] = -1;
+        if (mCanceled || mNext >= mTotal)
+            return -1;
+        mActive[id] = mNext;
+        return mNext++;
+    }
+
+    private void completed(int id, boolean skipped, int size) {
+        Progress progress = null;
+        synchronized (this) {
+            mProgress.done++;
+            if (skipped)
+                mProgress.skipped++;
+            else if (size < 0)
+                mProgress.failed++;
+            else
+                mProgress.bytes += size;
+
+            long now = System.currentTimeMillis();
+            if (now - mLastReport >= PROGRESS_INTERVAL) {
+                mLastReport = now;
+                mActive[id] = -1;
+                saveProgress(position());
+                progress = progress(now);
+            }
+        }
+        if (progress != null && mListener != null)
+            mListener.onProgress(this, progress);
+    }
+
+    private void finished(int id) {
+        Progress progress;
+        boolean canceled;
+        synchronized (this) {
+            mActive[id] = -1;
+            if (--mRunning > 0)
+                return;
+
+            canceled = mCanceled && mNext < mTotal;
+            if (canceled)
+                saveProgress(position());
+            else if (mProgressFile != null && !mProgressFile.delete() && mProgressFile.exists())
+                log.fine("could not delete " + mProgressFile);
+
+            progress = progress(System.currentTimeMillis());
+            notifyAll();
+        }
+        if (mListener != null)
+            mListener.onFinished(this, progress, canceled);
+    }
+
+    /**
+     * @return the sequence number below which all tiles are processed.
+     */
+    private long position() {
+        long pos = mNext;
+        for (long n : mActive)
+            if (n >= 0 && n < pos)
+                pos = n;
+        return pos;
+    }
+
+    private Progress progress(long now) {
+        Progress p = new Progress();
+        p.total = mTotal;
+        p.done = mProgress.done;
+        p.skipped = mProgress.skipped;
+        p.failed = mProgress.failed;
+        p.bytes = mProgress.bytes;
+        double seconds = Math.max(now - mStartTime, 1) / 1000.0;
+        p.tilesPerSecond = (p.done - mStartDone) / seconds;
+        p.bytesPerSecond = p.bytes / seconds;
+        return p;
+    }
+
+    /**
+     * Identifies the download in the progress file.
+     */
+    private String getKey() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(mZoomMin).append('-').append(mZoomMax);
+        for (int i = 0; i < mMinX.length; i++)
+            sb.append(',').append(mMinX[i]).append(',').append(mMinY[i])
+                    .append(',').append(mMaxX[i]).append(',').append(mMaxY[i]);
+        return sb.toString();
+    }
+
+    private long loadProgress() {
+        if (mProgressFile == null || !mProgressFile.exists())
+            return 0;
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(mProgressFile), "UTF-8"));
+            String key = reader.readLine();
+            String position = reader.readLine();
+            if (getKey().equals(key) && position != null) {
+                long n = Long.parseLong(position.trim());
+                if (n >= 0 && n <= mTotal)
+                    return n;
+            }
+            log.fine("progress does not match download " + mProgressFile);
+        } catch (IOException e) {
+            log.fine(e.toString());
+        } catch (NumberFormatException e) {
+            log.fine(e.toString());
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+        return 0;
+    }
+
+    private void saveProgress(long position) {
+        if (mProgressFile == null)
+            return;
+
+        File tmp = new File(mProgressFile.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+            writer.write(getKey() + "\n" + position + "\n");
+            writer.close();
+            writer = null;
+            if (!tmp.renameTo(mProgressFile)) {
+                /* renameTo does not replace files on all platforms */
+                mProgressFile.delete();
+                if (!tmp.renameTo(mProgressFile))
+                    log.fine("could not save progress " + mProgressFile);
+            }
+        } catch (IOException e) {
+            log.fine(e.toString());
+        } finally {
+            IOUtils.closeQuietly(writer);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source;
+
+import org.oscim.core.Tile;
+import org.oscim.tiling.CacheMetadata;
+import org.oscim.tiling.ITileCache;
+import org.oscim.tiling.ITileCache.TileWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * Revalidates expired cached tiles in the background while the stale tiles
+ * are served (stale-while-revalidate). Sends conditional requests through
+ * its own {@link ConditionalHttpEngine}: a 304 response only refreshes the
+ * metadata, otherwise the new tile replaces the cached one and is used the
+ * next time the tile is loaded.
+ * <p/>
+ * The data sources of a tile source share one revalidator, see
+ * {@link #acquire(UrlTileSource)}.
+ */
+public class TileRevalidator {
+
+    private static final Logger log = Logger.getLogger(TileRevalidator.class.getName());
+
+    private static final Map<UrlTileSource, TileRevalidator> sRevalidators = new IdentityHashMap<>();
+
+    private final UrlTileSource mTileSource;
+    private final ExecutorService mExecutor;
+    private final HashSet<Tile> mQueued = new HashSet<>();
+    private final byte[] mBuffer = new byte[8192];
+
+    /* used by the executor thread only */
+    private HttpEngine mConn;
+
+    /* guarded by sRevalidators */
+    private int mRefs;
+
+    /**
+     * Get the revalidator shared by the data sources of the tile source.
+     * Call {@link #release()} when done.
+     */
+    public static TileRevalidator acquire(UrlTileSource tileSource) {
+        synchronized (sRevalidators) {
+            TileRevalidator revalidator = sRevalidators.get(tileSource);
+            if (revalidator == null) {
+                revalidator = new TileRevalidator(tileSource);
+                sRevalidators.put(tileSource, revalidator);
+            }
+            revalidator.mRefs++;
+            return revalidator;
+        }
+    }
+
+    /**
+     * Release a revalidator from {@link #acquire(UrlTileSource)}, it is
+     * disposed when no data source uses it anymore.
+     */
+    public void release() {
+        synchronized (sRevalidators) {
+            if (--mRefs > 0)
+                return;
+            if (sRevalidators.get(mTileSource) == this)
+                sRevalidators.remove(mTileSource);
+        }
+        dispose();
+    }
+
+    public TileRevalidator(UrlTileSource tileSource) {
+        mTileSource = tileSource;
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "TileRevalidator");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queue revalidation of the cached tile, unless it is already queued.
+     */
+    public void revalidate(Tile tile, final CacheMetadata cached) {
+        /* MapTiles are reused, keep a copy */
+        final Tile t = new Tile(tile.tileX, tile.tileY, tile.zoomLevel);
+
+        synchronized (mQueued) {
+            if (!mQueued.add(t))
+                return;
+        }
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        request(t, cached);
+                    } finally {
+                        synchronized (mQueued) {
+                            mQueued.remove(t);
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (mQueued) {
+                mQueued.remove(t);
+            }
+        }
+    }
+
+    private void request(Tile tile, CacheMetadata cached) {
+        ITileCache cache = mTileSource.tileCache;
+        if (cache == null)
+            return;
+
+        if (mConn == null)
+            mConn = mTileSource.getHttpEngine();
+        if (!(mConn instanceof ConditionalHttpEngine))
+            return;
+
+        try {
+            fetch(mConn, cache, tile, cached, mBuffer);
+        } catch (IOException e) {
+            log.fine(tile + " Revalidation: " + e);
+        } catch (Exception e) {
+            log.fine(tile + " Revalidation error: " + e);
+        }
+    }
+
+    /**
+     * Fetch the tile into the cache. When the engine is a
+     * {@link ConditionalHttpEngine} the request is conditional on the
+     * cached metadata, if any, and the response metadata is stored.
+     *
+     * @return the bytes written to the cache, 0 when the tile was not
+     * modified or -1 when the request failed.
+     */
+    static int fetch(HttpEngine conn, ITileCache cache, Tile tile, CacheMetadata cached,
+                     byte[] buffer) throws IOException {
+        ConditionalHttpEngine cconn = null;
+        if (conn instanceof ConditionalHttpEngine)
+            cconn = (ConditionalHttpEngine) conn;
+
+        TileWriter cacheWriter = null;
+        boolean ok = false;
+        int size = 0;
+        try {
+            if (cconn != null)
+                cconn.sendRequest(tile, cached);
+            else
+                conn.sendRequest(tile);
+
+            InputStream is = conn.read();
+            if (is == null)
+                throw new IOException("no response");
+
+            if (cconn != null && cconn.isNotModified()) {
+                if (cached != null)
+                    cache.updateMetadata(tile, cached.refresh(cconn.getResponseMetadata()));
+            } else {
+                cacheWriter = cache.writeTile(tile);
+                if (cconn != null)
+                    cacheWriter.setMetadata(cconn.getResponseMetadata());
+                OutputStream os = cacheWriter.getOutputStream();
+                for (int n; (n = is.read(buffer)) >= 0; size += n)
+                    os.write(buffer, 0, n);
+            }
+            ok = true;
+        } finally {
+            if (!conn.requestCompleted(ok))
+                ok = false;
+
+            if (cacheWriter != null)
+                cacheWriter.complete(ok);
+        }
+        return ok ? size : -1;
+    }
+
+    public void dispose() {
+        mExecutor.shutdownNow();
+        HttpEngine conn = mConn;
+        if (conn != null)
+            conn.close();
+    }
+}
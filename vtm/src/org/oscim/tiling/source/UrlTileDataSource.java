@@ -18,6 +18,10 @@
 package org.oscim.tiling.source;
 
 import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.TileMetrics;
+import org.oscim.layers.tile.TileMetrics.Counter;
+import org.oscim.layers.tile.TileMetrics.Stage;
+import org.oscim.tiling.CacheMetadata;
 import org.oscim.tiling.ITileCache;
 import org.oscim.tiling.ITileCache.TileReader;
 import org.oscim.tiling.ITileCache.TileWriter;
@@ -26,6 +30,7 @@ import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.QueryResult;
 import org.oscim.utils.IOUtils;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.SocketException;
@@ -42,6 +47,13 @@ public class UrlTileDataSource implements ITileDataSource {
     protected final UrlTileSource mTileSource;
     protected final boolean mUseCache;
 
+    private TileRevalidator mRevalidator;
+
+    /**
+     * Measures reading of the response while it is decoded, when metrics are enabled.
+     */
+    private final TimedInputStream mTimedStream = new TimedInputStream();
+
     public UrlTileDataSource(UrlTileSource tileSource, ITileDecoder tileDecoder, HttpEngine conn) {
         mTileDecoder = tileDecoder;
         mTileSource = tileSource;
@@ -56,9 +68,21 @@ public class UrlTileDataSource implements ITileDataSource {
         if (mUseCache) {
             TileReader c = cache.getTile(tile);
             if (c != null) {
+                TileMetrics.count(Counter.CACHE_HIT);
                 InputStream is = c.getInputStream();
                 try {
-                    if (mTileDecoder.decode(tile, sink, is)) {
+                    long time = TileMetrics.start();
+                    boolean ok = mTileDecoder.decode(tile, sink, is);
+                    TileMetrics.stop(Stage.DECODE, time);
+                    if (ok) {
+                        /* serve expired tiles while revalidating */
+                        CacheMetadata metadata = c.getMetadata();
+                        if (metadata != null && metadata.isExpired(System.currentTimeMillis())
+                                && mConn instanceof ConditionalHttpEngine) {
+                            if (mRevalidator == null)
+                                mRevalidator = TileRevalidator.acquire(mTileSource);
+                            mRevalidator.revalidate(tile, metadata);
+                        }
                         sink.completed(QueryResult.SUCCESS);
                         return;
                     }
@@ -67,6 +91,8 @@ public class UrlTileDataSource implements ITileDataSource {
                 } finally {
                     IOUtils.closeQuietly(is);
                 }
+            } else {
+                TileMetrics.count(Counter.CACHE_MISS);
             }
         }
 
@@ -74,14 +100,30 @@ public class UrlTileDataSource implements ITileDataSource {
 
         TileWriter cacheWriter = null;
         try {
+            long time = TileMetrics.start();
             mConn.sendRequest(tile);
             InputStream is = mConn.read();
+            long fetch = 0;
+            if (time != 0) {
+                fetch = System.nanoTime() - time;
+                /* the body is streamed into the decoder, account reading it to FETCH */
+                mTimedStream.start(is);
+                is = mTimedStream;
+            }
             if (mUseCache) {
                 cacheWriter = cache.writeTile(tile);
+                if (mConn instanceof ConditionalHttpEngine)
+                    cacheWriter.setMetadata(((ConditionalHttpEngine) mConn).getResponseMetadata());
                 mConn.setCache(cacheWriter.getOutputStream());
             }
+            long decode = TileMetrics.start();
             if (mTileDecoder.decode(tile, sink, is))
                 res = QueryResult.SUCCESS;
+            if (time != 0 && decode != 0) {
+                long read = mTimedStream.nanos;
+                TileMetrics.record(Stage.FETCH, fetch + read);
+                TileMetrics.record(Stage.DECODE, System.nanoTime() - decode - read);
+            }
         } catch (SocketException e) {
             log.fine(tile + " Socket Error: " + e);
         } catch (SocketTimeoutException e) {
@@ -98,12 +140,16 @@ public class UrlTileDataSource implements ITileDataSource {
         } finally {
             boolean ok = (res == QueryResult.SUCCESS);
 
-            if (!mConn.requestCompleted(ok) && ok)
+            if (!mConn.requestCompleted(ok) && ok) {
                 res = QueryResult.FAILED;
+                ok = false;
+            }
 
             if (cacheWriter != null)
                 cacheWriter.complete(ok);
 
+            mTimedStream.start(null);
+
             sink.completed(res);
         }
     }
@@ -111,10 +157,57 @@ public class UrlTileDataSource implements ITileDataSource {
     @Override
     public void dispose() {
         mConn.close();
+        if (mRevalidator != null) {
+            mRevalidator.release();
+            mRevalidator = null;
+        }
     }
 
     @Override
     public void cancel() {
         mConn.close();
     }
+
+    private static class TimedInputStream extends FilterInputStream {
+        long nanos;
+
+        TimedInputStream() {
+            super(null);
+        }
+
+        void start(InputStream is) {
+            in = is;
+            nanos = 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long time = System.nanoTime();
+            try {
+                return in.read();
+            } finally {
+                nanos += System.nanoTime() - time;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long time = System.nanoTime();
+            try {
+                return in.read(b, off, len);
+            } finally {
+                nanos += System.nanoTime() - time;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long time = System.nanoTime();
+            try {
+                return in.skip(n);
+            } finally {
+                nanos += System.nanoTime() - time;
+            }
+        }
+    }
 }
@@ -25,6 +25,7 @@ import org.oscim.tiling.source.LwHttp.LwHttpFactory;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Random;
@@ -146,6 +147,12 @@ public abstract class UrlTileSource extends TileSource {
         mApiKey = apiKey;
     }
 
+    @Override
+    public String getVersion() {
+        return super.getVersion() + "," + Arrays.toString(mUrls)
+                + Arrays.toString(mTilePath);
+    }
+
     public URL getUrl() {
         return mUrls[mRandom.nextInt(mUrls.length)];
     }
@@ -20,8 +20,10 @@ package org.oscim.tiling.source.bitmap;
 import org.oscim.backend.CanvasAdapter;
 import org.oscim.backend.canvas.Bitmap;
 import org.oscim.core.Tile;
+import org.oscim.renderer.bucket.BitmapPool;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.TileSource;
 import org.oscim.tiling.source.ITileDecoder;
 import org.oscim.tiling.source.UrlTileDataSource;
 import org.oscim.tiling.source.UrlTileSource;
@@ -79,20 +81,59 @@ public class BitmapTileSource extends UrlTileSource {
 
     @Override
     public ITileDataSource getDataSource() {
-        return new UrlTileDataSource(this, new TileDecoder(), getHttpEngine());
+        return new UrlTileDataSource(this, new TileDecoder(this), getHttpEngine());
     }
 
     public static class TileDecoder implements ITileDecoder {
 
+        private final TileSource mTileSource;
+        private Class<?> mType;
+
+        public TileDecoder() {
+            this(null);
+        }
+
+        /**
+         * @param tileSource the source to reuse released bitmaps of, see
+         *                   {@link BitmapPool}, or null.
+         */
+        public TileDecoder(TileSource tileSource) {
+            mTileSource = tileSource;
+        }
+
         @Override
         public boolean decode(Tile tile, ITileDataSink sink, InputStream is)
                 throws IOException {
 
-            Bitmap bitmap = CanvasAdapter.decodeBitmap(is);
+            /* decode into the pixels of a tile of the source no longer shown,
+             * with the type of the last decoded tile */
+            Object key = null;
+            Bitmap reuse = null;
+            if (mTileSource != null && mType != null) {
+                int size = mTileSource.getTileSize();
+                key = BitmapPool.get().findReusable(mTileSource, mType, size, size);
+                if (key != null)
+                    reuse = BitmapPool.get().get(key);
+            }
+            Bitmap bitmap = null;
+            try {
+                bitmap = CanvasAdapter.decodeBitmap(is, reuse);
+            } finally {
+                /* keep the pixels of the unused tile, unless
+                 * decoding into it failed */
+                if (reuse != null && reuse != bitmap) {
+                    if (bitmap != null)
+                        BitmapPool.get().release(key, reuse);
+                    else
+                        reuse.recycle();
+                }
+            }
+
             if (!bitmap.isValid()) {
                 log.fine(tile + " invalid bitmap");
                 return false;
             }
+            mType = bitmap.getClass();
             sink.setTileImage(bitmap);
 
             return true;
@@ -19,6 +19,7 @@ package org.oscim.tiling.source.mapfile;
 
 import org.oscim.tiling.source.mapfile.header.SubFileParameter;
 import org.oscim.utils.LRUCache;
+import org.oscim.utils.MemoryPressure;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -45,6 +46,7 @@ class IndexCache {
     private static final int SIZE_OF_INDEX_BLOCK = INDEX_ENTRIES_PER_BLOCK
             * SubFileParameter.BYTES_PER_INDEX_ENTRY;
 
+    private final LRUCache<IndexCacheEntryKey, byte[]> lruCache;
     private final Map<IndexCacheEntryKey, byte[]> map;
     private final FileChannel fileChannel;
 
@@ -55,7 +57,20 @@ class IndexCache {
      */
     IndexCache(FileChannel inputChannel, int capacity) {
         this.fileChannel = inputChannel;
-        this.map = Collections.synchronizedMap(new LRUCache<IndexCacheEntryKey, byte[]>(capacity));
+        this.lruCache = new LRUCache<>(capacity);
+        this.map = Collections.synchronizedMap(this.lruCache);
+    }
+
+    /**
+     * Remove the least recently used index blocks.
+     *
+     * @return the number of bytes released.
+     */
+    long trimMemory(MemoryPressure pressure) {
+        synchronized (this.map) {
+            return (long) this.lruCache.trimToSize(pressure.target(this.lruCache.size()))
+                    * SIZE_OF_INDEX_BLOCK;
+        }
     }
 
     /**
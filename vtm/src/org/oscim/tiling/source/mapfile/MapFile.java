@@ -83,6 +83,11 @@ public class MapFile implements ITileDataSource {
      */
     private static final String INVALID_FIRST_WAY_OFFSET = "invalid first way offset: ";
 
+    /**
+     * Check for cancellation every 64 POIs or ways.
+     */
+    private static final int CANCEL_CHECK_MASK = 0x3f;
+
     /**
      * Bitmask for the optional POI feature "elevation".
      */
@@ -203,6 +208,12 @@ public class MapFile implements ITileDataSource {
 
     private final MapElement mElem = new MapElement();
 
+    /**
+     * Tile of the current query, checked for cancellation between blocks.
+     */
+    private MapTile mTile;
+    private volatile boolean mCanceled;
+
     private int minDeltaLat, minDeltaLon;
 
     private final TileProjection mTileProjection;
@@ -254,6 +265,8 @@ public class MapFile implements ITileDataSource {
 
     @Override
     public void query(MapTile tile, ITileDataSink sink) {
+        mTile = tile;
+        mCanceled = false;
         try {
             if (mTileSource.fileHeader == null) {
                 sink.completed(QueryResult.FAILED);
@@ -309,10 +322,17 @@ public class MapFile implements ITileDataSource {
                 processBlocks(sink, queryParameters, subFileParameter, tile.getBoundingBox(), Selector.ALL, new MapReadResult());
             else
                 processBlocks(sink, queryParameters, subFileParameter);
-            sink.completed(QueryResult.SUCCESS);
+
+            /* release the loader, partial tiles must not be used */
+            if (isCanceled())
+                sink.completed(QueryResult.FAILED);
+            else
+                sink.completed(QueryResult.SUCCESS);
         } catch (Throwable t) {
             log.severe(t.toString());
             sink.completed(QueryResult.FAILED);
+        } finally {
+            mTile = null;
         }
     }
 
@@ -330,6 +350,18 @@ public class MapFile implements ITileDataSource {
 
     @Override
     public void cancel() {
+        mCanceled = true;
+    }
+
+    /**
+     * @return true when the current query was canceled by the loader or the
+     * tile was removed from TileManager.
+     */
+    private boolean isCanceled() {
+        if (mCanceled)
+            return true;
+        MapTile tile = mTile;
+        return tile != null && tile.state(MapTile.State.CANCEL);
     }
 
     /**
@@ -533,6 +565,9 @@ public class MapFile implements ITileDataSource {
         /* read and process all blocks from top to bottom and from left to right */
         for (long row = queryParams.fromBlockY; row <= queryParams.toBlockY; row++) {
             for (long column = queryParams.fromBlockX; column <= queryParams.toBlockX; column++) {
+                if (isCanceled())
+                    return;
+
                 setTileClipping(queryParams, subFileParameter,
                         row - queryParams.fromBlockY,
                         column - queryParams.fromBlockX);
@@ -663,6 +698,9 @@ public class MapFile implements ITileDataSource {
         MapElement e = mElem;
 
         for (int elementCounter = numberOfPois; elementCounter != 0; --elementCounter) {
+            if ((elementCounter & CANCEL_CHECK_MASK) == 0 && isCanceled())
+                return false;
+
             /* reset to common tag position */
             e.tags.clear();
 
@@ -905,6 +943,9 @@ public class MapFile implements ITileDataSource {
         //setTileClipping(queryParameters);
 
         for (int elementCounter = numberOfWays; elementCounter != 0; --elementCounter) {
+            if ((elementCounter & CANCEL_CHECK_MASK) == 0 && isCanceled())
+                return false;
+
             /* reset to common tag position */
             e.tags.clear();
 
@@ -1162,6 +1203,8 @@ public class MapFile implements ITileDataSource {
         if (mTileSource.fileHeader == null)
             return null;
 
+        mCanceled = false;
+
         MapReadResult mapReadResult = new MapReadResult();
 
         if (mIntBuffer == null)
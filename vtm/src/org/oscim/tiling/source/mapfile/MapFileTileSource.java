@@ -25,6 +25,8 @@ import org.oscim.tiling.OverzoomTileDataSource;
 import org.oscim.tiling.TileSource;
 import org.oscim.tiling.source.mapfile.header.MapFileHeader;
 import org.oscim.tiling.source.mapfile.header.MapFileInfo;
+import org.oscim.utils.MemoryPressure;
+import org.oscim.utils.Trimmable;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -32,7 +34,7 @@ import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.util.logging.Logger;
 
-public class MapFileTileSource extends TileSource implements IMapFileTileSource {
+public class MapFileTileSource extends TileSource implements IMapFileTileSource, Trimmable {
     private static final Logger log = Logger.getLogger(MapFileTileSource.class.getName());
 
     /**
@@ -222,10 +224,22 @@ public class MapFileTileSource extends TileSource implements IMapFileTileSource
         }
     }
 
+    @Override
+    public long trimMemory(MemoryPressure pressure) {
+        IndexCache indexCache = databaseIndexCache;
+        return indexCache != null ? indexCache.trimMemory(pressure) : 0;
+    }
+
     public MapInfo getMapInfo() {
         return fileInfo;
     }
 
+    @Override
+    public String getVersion() {
+        return super.getVersion() + "," + preferredLanguage
+                + "," + (fileInfo != null ? fileInfo.mapDate : 0);
+    }
+
     public interface Callback {
         /**
          * Extracts substring of preferred language from multilingual string.
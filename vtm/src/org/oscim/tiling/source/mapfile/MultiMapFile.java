@@ -34,6 +34,7 @@ public class MultiMapFile implements ITileDataSource {
 
     private final boolean deduplicate;
     private final List<MapFile> mapFiles = new ArrayList<>();
+    private volatile boolean mCanceled;
 
     public MultiMapFile() {
         this(false);
@@ -60,6 +61,7 @@ public class MultiMapFile implements ITileDataSource {
 
     @Override
     public void query(MapTile tile, ITileDataSink sink) {
+        mCanceled = false;
         try {
             boolean deduplicate = this.deduplicate;
             if (deduplicate) {
@@ -86,6 +88,10 @@ public class MultiMapFile implements ITileDataSource {
                     dataSink.level = i + 1;
                     dataSink.levels = n;
                     mapFile.query(tile, dataSink);
+                    if (mCanceled || tile.state(MapTile.State.CANCEL)) {
+                        sink.completed(QueryResult.FAILED);
+                        return;
+                    }
                 }
                 if (mapFile.supportsFullTile(tile)) {
                     isTileFilled = true;
@@ -107,6 +113,7 @@ public class MultiMapFile implements ITileDataSource {
 
     @Override
     public void cancel() {
+        mCanceled = true;
         for (MapFile mapFile : mapFiles) {
             mapFile.cancel();
         }
@@ -20,6 +20,8 @@ import org.oscim.map.Viewport;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.OverzoomTileDataSource;
 import org.oscim.tiling.TileSource;
+import org.oscim.utils.MemoryPressure;
+import org.oscim.utils.Trimmable;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -28,7 +30,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
-public class MultiMapFileTileSource extends TileSource implements IMapFileTileSource {
+public class MultiMapFileTileSource extends TileSource implements IMapFileTileSource, Trimmable {
 
     private static final Logger log = Logger.getLogger(MultiMapFileTileSource.class.getName());
 
@@ -106,6 +108,15 @@ public class MultiMapFileTileSource extends TileSource implements IMapFileTileSo
         }
     }
 
+    @Override
+    public long trimMemory(MemoryPressure pressure) {
+        long bytes = 0;
+        for (MapFileTileSource mapFileTileSource : mapFileTileSources) {
+            bytes += mapFileTileSource.trimMemory(pressure);
+        }
+        return bytes;
+    }
+
     @Override
     public void setCallback(MapFileTileSource.Callback callback) {
         for (MapFileTileSource mapFileTileSource : mapFileTileSources) {
@@ -113,6 +124,19 @@ public class MultiMapFileTileSource extends TileSource implements IMapFileTileSo
         }
     }
 
+    @Override
+    public String getVersion() {
+        StringBuilder sb = new StringBuilder(super.getVersion());
+        sb.append(',').append(deduplicate);
+        for (MapFileTileSource mapFileTileSource : mapFileTileSources) {
+            sb.append(',').append(mapFileTileSource.getVersion());
+            int[] zooms = zoomsByTileSource.get(mapFileTileSource);
+            if (zooms != null)
+                sb.append(',').append(zooms[0]).append('-').append(zooms[1]);
+        }
+        return sb.toString();
+    }
+
     public void setDeduplicate(boolean deduplicate) {
         this.deduplicate = deduplicate;
     }
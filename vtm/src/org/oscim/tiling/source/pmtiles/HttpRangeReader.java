@@ -0,0 +1,66 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.pmtiles;
+
+import org.oscim.tiling.source.HttpEngine;
+import org.oscim.tiling.source.RangeHttpEngine;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a remote archive with HTTP range requests. Not thread-safe,
+ * each data source uses its own reader.
+ */
+public class HttpRangeReader implements PMTilesArchive.RangeReader {
+
+    private final RangeHttpEngine mConn;
+
+    public HttpRangeReader(HttpEngine conn) {
+        if (!(conn instanceof RangeHttpEngine))
+            throw new IllegalArgumentException("HttpEngine does not support range requests");
+
+        mConn = (RangeHttpEngine) conn;
+    }
+
+    @Override
+    public byte[] read(long offset, int length) throws IOException {
+        boolean ok = false;
+        try {
+            mConn.sendRequest(null, offset, length);
+            InputStream is = mConn.read();
+            if (is == null)
+                throw new IOException("no response");
+
+            byte[] data = new byte[length];
+            int pos = 0;
+            while (pos < length) {
+                int n = is.read(data, pos, length - pos);
+                if (n < 0)
+                    throw new IOException("unexpected end of response " + pos + "/" + length);
+                pos += n;
+            }
+            ok = true;
+            return data;
+        } finally {
+            mConn.requestCompleted(ok);
+        }
+    }
+
+    @Override
+    public void close() {
+        mConn.close();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.pmtiles;
+
+import org.oscim.utils.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a local archive through memory mapped segments of the file. The reader
+ * is thread-safe and shared by all data sources of a tile source.
+ */
+public class MappedRangeReader implements PMTilesArchive.RangeReader {
+
+    /**
+     * Max size of one mapped segment, MappedByteBuffer is limited to int offsets.
+     */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer[] mSegments;
+
+    public MappedRangeReader(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = mFile.getChannel();
+            long size = channel.size();
+            int numSegments = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            mSegments = new MappedByteBuffer[numSegments];
+            for (int i = 0; i < numSegments; i++) {
+                long start = i * SEGMENT_SIZE;
+                mSegments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(SEGMENT_SIZE, size - start));
+            }
+        } catch (IOException e) {
+            IOUtils.closeQuietly(mFile);
+            throw e;
+        }
+    }
+
+    @Override
+    public byte[] read(long offset, int length) throws IOException {
+        byte[] data = new byte[length];
+        int pos = 0;
+        while (pos < length) {
+            long o = offset + pos;
+            int segment = (int) (o / SEGMENT_SIZE);
+            if (segment >= mSegments.length)
+                throw new IOException("read beyond end of file: " + o);
+
+            /* duplicate to not share the position between threads */
+            ByteBuffer buf = mSegments[segment].duplicate();
+            buf.position((int) (o - segment * SEGMENT_SIZE));
+            int n = Math.min(length - pos, buf.remaining());
+            if (n <= 0)
+                throw new IOException("read beyond end of file: " + o);
+            buf.get(data, pos, n);
+            pos += n;
+        }
+        return data;
+    }
+
+    @Override
+    public void close() {
+        IOUtils.closeQuietly(mFile);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.pmtiles;
+
+import org.oscim.utils.LRUCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Directory lookup of a PMTiles version 3 archive. Shared by all data sources
+ * of a {@link PMTilesTileSource}, the bytes are read through the
+ * {@link RangeReader} of the calling data source.
+ */
+public class PMTilesArchive {
+
+    /**
+     * Amount of leaf directories to keep decoded.
+     */
+    private static final int DIRECTORY_CACHE_SIZE = 64;
+
+    /**
+     * Max depth of leaf directories, as defined by the specification.
+     */
+    private static final int MAX_DEPTH = 4;
+
+    /**
+     * Random access to the bytes of an archive.
+     */
+    public interface RangeReader {
+        byte[] read(long offset, int length) throws IOException;
+
+        void close();
+    }
+
+    private final PMTilesHeader mHeader;
+    private final PMTilesDirectory mRootDirectory;
+    private final LRUCache<Long, PMTilesDirectory> mDirectoryCache =
+            new LRUCache<>(DIRECTORY_CACHE_SIZE);
+
+    public PMTilesArchive(RangeReader reader) throws IOException {
+        mHeader = new PMTilesHeader(reader.read(0, PMTilesHeader.HEADER_LENGTH));
+
+        if (!isSupported(mHeader.internalCompression))
+            throw new IOException("unsupported directory compression: " + mHeader.internalCompression);
+        if (!isSupported(mHeader.tileCompression))
+            throw new IOException("unsupported tile compression: " + mHeader.tileCompression);
+
+        mRootDirectory = readDirectory(reader, mHeader.rootDirectoryOffset,
+                (int) mHeader.rootDirectoryLength);
+    }
+
+    public PMTilesHeader getHeader() {
+        return mHeader;
+    }
+
+    /**
+     * @return the JSON metadata of the archive.
+     */
+    public String getMetadata(RangeReader reader) throws IOException {
+        if (mHeader.metadataLength == 0)
+            return null;
+        byte[] data = decompress(reader.read(mHeader.metadataOffset,
+                (int) mHeader.metadataLength), mHeader.internalCompression);
+        return new String(data, "UTF-8");
+    }
+
+    /**
+     * @return the tile data as stored in the archive, i.e. still compressed
+     * with {@link PMTilesHeader#tileCompression}, or null when the archive
+     * does not contain the tile.
+     */
+    public byte[] readTile(int z, int x, int y, RangeReader reader) throws IOException {
+        long tileId = zxyToTileId(z, x, y);
+
+        PMTilesDirectory dir = mRootDirectory;
+        for (int depth = 0; depth < MAX_DEPTH; depth++) {
+            int i = dir.find(tileId);
+            if (i < 0)
+                return null;
+
+            if (dir.runLengths[i] > 0) {
+                return reader.read(mHeader.tileDataOffset + dir.offsets[i],
+                        dir.lengths[i]);
+            }
+
+            long offset = mHeader.leafDirectoriesOffset + dir.offsets[i];
+            int length = dir.lengths[i];
+            synchronized (mDirectoryCache) {
+                dir = mDirectoryCache.get(offset);
+            }
+            if (dir == null) {
+                dir = readDirectory(reader, offset, length);
+                synchronized (mDirectoryCache) {
+                    mDirectoryCache.put(offset, dir);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Wrap the stored tile data to be readable by an ITileDecoder.
+     */
+    public InputStream getTileInputStream(byte[] data) throws IOException {
+        InputStream is = new ByteArrayInputStream(data);
+        if (mHeader.tileCompression == PMTilesHeader.COMPRESSION_GZIP)
+            return new GZIPInputStream(is);
+        return is;
+    }
+
+    private PMTilesDirectory readDirectory(RangeReader reader, long offset, int length)
+            throws IOException {
+        byte[] data = reader.read(offset, length);
+        return new PMTilesDirectory(decompress(data, mHeader.internalCompression));
+    }
+
+    private static boolean isSupported(int compression) {
+        return compression == PMTilesHeader.COMPRESSION_NONE
+                || compression == PMTilesHeader.COMPRESSION_GZIP
+                || compression == PMTilesHeader.COMPRESSION_UNKNOWN;
+    }
+
+    private static byte[] decompress(byte[] data, int compression) throws IOException {
+        if (compression != PMTilesHeader.COMPRESSION_GZIP)
+            return data;
+
+        GZIPInputStream is = new GZIPInputStream(new ByteArrayInputStream(data));
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+        byte[] buf = new byte[8192];
+        for (int n; (n = is.read(buf)) >= 0; )
+            out.write(buf, 0, n);
+        is.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Convert tile coordinates to the tile id on the hilbert curve of the archive.
+     */
+    public static long zxyToTileId(int z, int x, int y) {
+        if (z > 26)
+            throw new IllegalArgumentException("zoom level exceeds limit: " + z);
+
+        long n = 1L << z;
+        if (x < 0 || y < 0 || x >= n || y >= n)
+            throw new IllegalArgumentException("tile out of bounds: " + z + "/" + x + "/" + y);
+
+        /* number of tiles on all lower zoom levels */
+        long acc = ((1L << (2 * z)) - 1) / 3;
+
+        long tx = x;
+        long ty = y;
+        long d = 0;
+        for (long s = n >> 1; s > 0; s >>= 1) {
+            long rx = (tx & s) > 0 ? 1 : 0;
+            long ry = (ty & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+
+            /* rotate */
+            if (ry == 0) {
+                if (rx == 1) {
+                    tx = n - 1 - tx;
+                    ty = n - 1 - ty;
+                }
+                long t = tx;
+                tx = ty;
+                ty = t;
+            }
+        }
+        return acc + d;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.pmtiles;
+
+import java.io.IOException;
+
+/**
+ * A decoded PMTiles directory. Entries are kept in parallel primitive
+ * arrays sorted by tile id.
+ */
+public class PMTilesDirectory {
+
+    final long[] tileIds;
+    final long[] offsets;
+    final int[] lengths;
+    final int[] runLengths;
+
+    /**
+     * @param data the uncompressed, varint encoded directory.
+     */
+    public PMTilesDirectory(byte[] data) throws IOException {
+        int[] pos = new int[1];
+
+        int numEntries = (int) readVarint(data, pos);
+
+        tileIds = new long[numEntries];
+        offsets = new long[numEntries];
+        lengths = new int[numEntries];
+        runLengths = new int[numEntries];
+
+        long lastId = 0;
+        for (int i = 0; i < numEntries; i++) {
+            lastId += readVarint(data, pos);
+            tileIds[i] = lastId;
+        }
+        for (int i = 0; i < numEntries; i++)
+            runLengths[i] = (int) readVarint(data, pos);
+
+        for (int i = 0; i < numEntries; i++)
+            lengths[i] = (int) readVarint(data, pos);
+
+        for (int i = 0; i < numEntries; i++) {
+            long v = readVarint(data, pos);
+            if (v == 0 && i > 0)
+                offsets[i] = offsets[i - 1] + lengths[i - 1];
+            else
+                offsets[i] = v - 1;
+        }
+    }
+
+    public int size() {
+        return tileIds.length;
+    }
+
+    /**
+     * @return the index of the entry containing tileId, or -1 when the
+     * directory has no such entry. Entries with a run length of 0 point
+     * to leaf directories.
+     */
+    public int find(long tileId) {
+        int m = 0;
+        int n = tileIds.length - 1;
+        while (m <= n) {
+            int k = (n + m) >>> 1;
+            long cmp = tileId - tileIds[k];
+            if (cmp > 0)
+                m = k + 1;
+            else if (cmp < 0)
+                n = k - 1;
+            else
+                return k;
+        }
+        /* at this point m > n */
+        if (n >= 0) {
+            if (runLengths[n] == 0)
+                return n;
+            if (tileId - tileIds[n] < runLengths[n])
+                return n;
+        }
+        return -1;
+    }
+
+    private static long readVarint(byte[] data, int[] pos) throws IOException {
+        long val = 0;
+        int p = pos[0];
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (p >= data.length)
+                throw new IOException("truncated directory");
+            int b = data[p++];
+            val |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                pos[0] = p;
+                return val;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.pmtiles;
+
+import org.oscim.core.BoundingBox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The fixed size header of a PMTiles version 3 archive.
+ *
+ * @see <a href="https://github.com/protomaps/PMTiles/blob/main/spec/v3/spec.md">Specification</a>
+ */
+public class PMTilesHeader {
+
+    public static final int HEADER_LENGTH = 127;
+
+    private static final byte[] MAGIC = "PMTiles".getBytes();
+    private static final int VERSION = 3;
+
+    public static final int COMPRESSION_UNKNOWN = 0;
+    public static final int COMPRESSION_NONE = 1;
+    public static final int COMPRESSION_GZIP = 2;
+    public static final int COMPRESSION_BROTLI = 3;
+    public static final int COMPRESSION_ZSTD = 4;
+
+    public static final int TILE_TYPE_UNKNOWN = 0;
+    public static final int TILE_TYPE_MVT = 1;
+    public static final int TILE_TYPE_PNG = 2;
+    public static final int TILE_TYPE_JPEG = 3;
+    public static final int TILE_TYPE_WEBP = 4;
+    public static final int TILE_TYPE_AVIF = 5;
+
+    public final long rootDirectoryOffset;
+    public final long rootDirectoryLength;
+    public final long metadataOffset;
+    public final long metadataLength;
+    public final long leafDirectoriesOffset;
+    public final long leafDirectoriesLength;
+    public final long tileDataOffset;
+    public final long tileDataLength;
+    public final long numAddressedTiles;
+    public final long numTileEntries;
+    public final long numTileContents;
+    public final boolean clustered;
+    public final int internalCompression;
+    public final int tileCompression;
+    public final int tileType;
+    public final int minZoom;
+    public final int maxZoom;
+    public final int minLonE7;
+    public final int minLatE7;
+    public final int maxLonE7;
+    public final int maxLatE7;
+    public final int centerZoom;
+    public final int centerLonE7;
+    public final int centerLatE7;
+
+    /**
+     * @param data at least {@link #HEADER_LENGTH} bytes from the start of the archive.
+     * @throws IOException when data is not a PMTiles version 3 header.
+     */
+    public PMTilesHeader(byte[] data) throws IOException {
+        if (data.length < HEADER_LENGTH)
+            throw new IOException("invalid header length: " + data.length);
+
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i])
+                throw new IOException("not a PMTiles archive");
+        }
+        if (data[7] != VERSION)
+            throw new IOException("unsupported PMTiles version: " + data[7]);
+
+        ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        rootDirectoryOffset = buf.getLong(8);
+        rootDirectoryLength = buf.getLong(16);
+        metadataOffset = buf.getLong(24);
+        metadataLength = buf.getLong(32);
+        leafDirectoriesOffset = buf.getLong(40);
+        leafDirectoriesLength = buf.getLong(48);
+        tileDataOffset = buf.getLong(56);
+        tileDataLength = buf.getLong(64);
+        numAddressedTiles = buf.getLong(72);
+        numTileEntries = buf.getLong(80);
+        numTileContents = buf.getLong(88);
+        clustered = data[96] == 1;
+        internalCompression = data[97] & 0xff;
+        tileCompression = data[98] & 0xff;
+        tileType = data[99] & 0xff;
+        minZoom = data[100] & 0xff;
+        maxZoom = data[101] & 0xff;
+        minLonE7 = buf.getInt(102);
+        minLatE7 = buf.getInt(106);
+        maxLonE7 = buf.getInt(110);
+        maxLatE7 = buf.getInt(114);
+        centerZoom = data[118] & 0xff;
+        centerLonE7 = buf.getInt(119);
+        centerLatE7 = buf.getInt(123);
+    }
+
+    public BoundingBox getBoundingBox() {
+        return new BoundingBox(minLatE7 / 1e7, minLonE7 / 1e7, maxLatE7 / 1e7, maxLonE7 / 1e7);
+    }
+
+    public boolean isRaster() {
+        return tileType == TILE_TYPE_PNG
+                || tileType == TILE_TYPE_JPEG
+                || tileType == TILE_TYPE_WEBP
+                || tileType == TILE_TYPE_AVIF;
+    }
+
+    @Override
+    public String toString() {
+        return "PMTilesHeader [tileType=" + tileType
+                + ", tileCompression=" + tileCompression
+                + ", zoom=" + minZoom + "-" + maxZoom
+                + ", tiles=" + numAddressedTiles + "]";
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.pmtiles;
+
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.source.ITileDecoder;
+import org.oscim.utils.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Logger;
+
+/**
+ * A tile data source for PMTiles archives.
+ */
+public class PMTilesTileDataSource implements ITileDataSource {
+
+    private static final Logger log = Logger.getLogger(PMTilesTileDataSource.class.getName());
+
+    private final PMTilesArchive mArchive;
+    private final PMTilesArchive.RangeReader mReader;
+    private final ITileDecoder mTileDecoder;
+    private final boolean mOwnsReader;
+
+    /**
+     * @param ownsReader whether the reader is closed with this data source,
+     *                   false for readers shared by all data sources.
+     */
+    public PMTilesTileDataSource(PMTilesArchive archive, PMTilesArchive.RangeReader reader,
+                                 ITileDecoder tileDecoder, boolean ownsReader) {
+        mArchive = archive;
+        mReader = reader;
+        mTileDecoder = tileDecoder;
+        mOwnsReader = ownsReader;
+    }
+
+    @Override
+    public void query(MapTile tile, ITileDataSink sink) {
+        QueryResult res = QueryResult.FAILED;
+        InputStream is = null;
+        try {
+            byte[] data = mArchive.readTile(tile.zoomLevel, tile.tileX, tile.tileY, mReader);
+            if (data == null) {
+                res = QueryResult.TILE_NOT_FOUND;
+                return;
+            }
+            is = mArchive.getTileInputStream(data);
+            if (mTileDecoder.decode(tile, sink, is))
+                res = QueryResult.SUCCESS;
+        } catch (IOException e) {
+            log.fine(tile + " " + e);
+        } catch (Exception e) {
+            log.severe(tile + " " + e);
+        } finally {
+            IOUtils.closeQuietly(is);
+            sink.completed(res);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if (mOwnsReader)
+            mReader.close();
+    }
+
+    @Override
+    public void cancel() {
+        if (mOwnsReader)
+            mReader.close();
+    }
+}
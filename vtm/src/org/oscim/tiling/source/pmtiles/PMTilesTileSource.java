@@ -0,0 +1,209 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.pmtiles;
+
+import org.oscim.core.BoundingBox;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.OverzoomTileDataSource;
+import org.oscim.tiling.TileSource;
+import org.oscim.tiling.source.HttpEngine;
+import org.oscim.tiling.source.ITileDecoder;
+import org.oscim.tiling.source.UrlTileSource;
+import org.oscim.tiling.source.bitmap.BitmapTileSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * A tile source for PMTiles version 3 archives, read from a memory mapped
+ * local file or with HTTP range requests.
+ * <p/>
+ * Raster archives are decoded as bitmaps by default. Vector archives need a
+ * {@link DecoderFactory}, e.g. creating the MVT TileDecoder of vtm-mvt.
+ */
+public class PMTilesTileSource extends TileSource {
+    private static final Logger log = Logger.getLogger(PMTilesTileSource.class.getName());
+
+    public interface DecoderFactory {
+        /**
+         * @return a new decoder, decoders are used by one loader thread each.
+         */
+        ITileDecoder create();
+    }
+
+    public static class Builder<T extends Builder<T>> extends TileSource.Builder<T> {
+        private String file;
+        private String url;
+        private HttpEngine.Factory engineFactory;
+        private DecoderFactory decoderFactory;
+
+        public T file(String file) {
+            this.file = file;
+            return self();
+        }
+
+        public T url(String url) {
+            this.url = url;
+            return self();
+        }
+
+        public T httpFactory(HttpEngine.Factory factory) {
+            this.engineFactory = factory;
+            return self();
+        }
+
+        public T decoderFactory(DecoderFactory decoderFactory) {
+            this.decoderFactory = decoderFactory;
+            return self();
+        }
+
+        @Override
+        public PMTilesTileSource build() {
+            return new PMTilesTileSource(this);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static Builder<?> builder() {
+        return new Builder();
+    }
+
+    /**
+     * Used to create HttpEngines for the archive url.
+     */
+    private static class ArchiveUrlSource extends UrlTileSource {
+        ArchiveUrlSource(String url) {
+            super(url, "");
+        }
+
+        @Override
+        public ITileDataSource getDataSource() {
+            return null;
+        }
+    }
+
+    private final String mFile;
+    private final ArchiveUrlSource mUrlSource;
+    private DecoderFactory mDecoderFactory;
+
+    private PMTilesArchive mArchive;
+    private PMTilesArchive.RangeReader mSharedReader;
+
+    protected PMTilesTileSource(Builder<?> builder) {
+        super(builder);
+        mFile = builder.file;
+        mDecoderFactory = builder.decoderFactory;
+
+        if (builder.url != null) {
+            mUrlSource = new ArchiveUrlSource(builder.url);
+            if (builder.engineFactory != null)
+                mUrlSource.setHttpEngine(builder.engineFactory);
+        } else
+            mUrlSource = null;
+    }
+
+    public PMTilesTileSource(String file) {
+        this(builder().file(file));
+    }
+
+    @Override
+    public OpenResult open() {
+        if (mFile == null && mUrlSource == null)
+            return new OpenResult("no file or url set");
+
+        PMTilesArchive.RangeReader reader = null;
+        try {
+            if (mFile != null) {
+                File file = new File(mFile);
+                if (!file.exists()) {
+                    return new OpenResult("file does not exist: " + file);
+                } else if (!file.isFile()) {
+                    return new OpenResult("not a file: " + file);
+                } else if (!file.canRead()) {
+                    return new OpenResult("cannot read file: " + file);
+                }
+                reader = new MappedRangeReader(file);
+            } else
+                reader = new HttpRangeReader(mUrlSource.getHttpEngine());
+
+            PMTilesArchive archive = new PMTilesArchive(reader);
+            PMTilesHeader header = archive.getHeader();
+
+            if (mDecoderFactory == null) {
+                if (!header.isRaster())
+                    return new OpenResult("no decoder for tile type: " + header.tileType);
+                mDecoderFactory = new DecoderFactory() {
+                    @Override
+                    public ITileDecoder create() {
+                        return new BitmapTileSource.TileDecoder(PMTilesTileSource.this);
+                    }
+                };
+            }
+
+            /* scale the deepest level of the archive */
+            mOverZoom = Math.min(mOverZoom, header.maxZoom);
+
+            if (mFile != null) {
+                mSharedReader = reader;
+                reader = null;
+            }
+            mArchive = archive;
+
+            log.fine(header.toString());
+            return OpenResult.SUCCESS;
+        } catch (IOException e) {
+            log.severe(e.toString());
+            return new OpenResult(e.toString());
+        } finally {
+            if (reader != null)
+                reader.close();
+        }
+    }
+
+    @Override
+    public ITileDataSource getDataSource() {
+        ITileDataSource dataSource;
+        if (mSharedReader != null)
+            dataSource = new PMTilesTileDataSource(mArchive, mSharedReader,
+                    mDecoderFactory.create(), false);
+        else
+            dataSource = new PMTilesTileDataSource(mArchive,
+                    new HttpRangeReader(mUrlSource.getHttpEngine()),
+                    mDecoderFactory.create(), true);
+
+        return new OverzoomTileDataSource(dataSource, mOverZoom);
+    }
+
+    @Override
+    public void close() {
+        if (mSharedReader != null) {
+            mSharedReader.close();
+            mSharedReader = null;
+        }
+        mArchive = null;
+    }
+
+    /**
+     * @return the header of the opened archive.
+     */
+    public PMTilesHeader getHeader() {
+        return mArchive != null ? mArchive.getHeader() : null;
+    }
+
+    public BoundingBox getBounds() {
+        return mArchive != null ? mArchive.getHeader().getBoundingBox() : null;
+    }
+}
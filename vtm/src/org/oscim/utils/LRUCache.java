@@ -16,6 +16,7 @@
  */
 package org.oscim.utils;
 
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -50,6 +51,23 @@ public class LRUCache<K, V> extends LinkedHashMap<K, V> {
         this.capacity = capacity;
     }
 
+    /**
+     * Remove the least recently used mappings.
+     *
+     * @param size the number of mappings to keep.
+     * @return the number of removed mappings.
+     */
+    public int trimToSize(int size) {
+        int removed = 0;
+        Iterator<K> it = keySet().iterator();
+        while (size() > size && it.hasNext()) {
+            it.next();
+            it.remove();
+            removed++;
+        }
+        return removed;
+    }
+
     @Override
     protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
         return size() > this.capacity;
@@ -0,0 +1,148 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with a fixed relative precision,
+ * similar to HdrHistogram: each power of two is divided into
+ * {@link #SUB_BUCKETS} linear buckets, i.e. values are recorded with an
+ * error of at most 1/16.
+ * <p/>
+ * Recording is thread-safe and does not allocate.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * Largest recordable magnitude, 2^40 ns are about 18 minutes.
+     * Larger values are counted in the last bucket.
+     */
+    private static final int MAX_MAGNITUDE = 40;
+
+    private static final int NUM_BUCKETS =
+            SUB_BUCKETS + (MAX_MAGNITUDE - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mTotal = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+
+        mBuckets.incrementAndGet(bucketIndex(value));
+        mCount.incrementAndGet();
+        mTotal.addAndGet(value);
+
+        long max = mMax.get();
+        while (value > max && !mMax.compareAndSet(max, value))
+            max = mMax.get();
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * @return the sum of all recorded values.
+     */
+    public long getTotal() {
+        return mTotal.get();
+    }
+
+    public long getMax() {
+        return mMax.get();
+    }
+
+    public double getMean() {
+        long count = mCount.get();
+        return count == 0 ? 0 : (double) mTotal.get() / count;
+    }
+
+    /**
+     * @param percentile in the range of 0 to 100.
+     * @return the upper bound of the bucket containing the percentile,
+     * or 0 when nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long count = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++)
+            count += mBuckets.get(i);
+        if (count == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(count * Math.min(Math.max(percentile, 0), 100) / 100);
+        if (rank < 1)
+            rank = 1;
+
+        long sum = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            sum += mBuckets.get(i);
+            if (sum >= rank)
+                return Math.min(bucketUpperBound(i), mMax.get());
+        }
+        return mMax.get();
+    }
+
+    /**
+     * Not atomic with concurrent {@link #record(long)} calls.
+     */
+    public void reset() {
+        for (int i = 0; i < NUM_BUCKETS; i++)
+            mBuckets.set(i, 0);
+        mCount.set(0);
+        mTotal.set(0);
+        mMax.set(0);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude > MAX_MAGNITUDE)
+            return NUM_BUCKETS - 1;
+
+        int shift = magnitude - SUB_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        if (index == NUM_BUCKETS - 1)
+            return Long.MAX_VALUE;
+
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount()
+                + " mean=" + (long) getMean()
+                + " p50=" + getPercentile(50)
+                + " p99=" + getPercentile(99)
+                + " max=" + getMax();
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils;
+
+/**
+ * Level of memory pressure signaled by the system,
+ * see {@link org.oscim.map.Map#trimMemory(MemoryPressure)}.
+ */
+public enum MemoryPressure {
+    /**
+     * Release half of the idle pooled and cached items.
+     */
+    MODERATE,
+
+    /**
+     * Release all items that are not currently in use.
+     */
+    CRITICAL;
+
+    /**
+     * @param size the current number of idle items.
+     * @return the number of idle items to keep.
+     */
+    public int target(int size) {
+        return this == CRITICAL ? 0 : size / 2;
+    }
+}
@@ -28,6 +28,18 @@ public final class Parameters {
      */
     public static boolean ANIMATOR2 = true;
 
+    /**
+     * Number of decoded raster tiles kept for reuse, shared by all bitmap layers,
+     * 0 to disable. Not supported by the web backend.
+     */
+    public static int BITMAP_POOL_SIZE = 0;
+
+    /**
+     * Number of rendered frames after which pooled native buffers and buffer
+     * objects that were not used in between are released, 0 to keep them.
+     */
+    public static int BUFFER_IDLE_FRAMES = 300;
+
     /**
      * Allow custom scale factor for short vertices instead of the calculated one.
      */
@@ -82,6 +94,12 @@ public final class Parameters {
      */
     public static boolean POLY_LABEL = false;
 
+    /**
+     * Number of optimal label positions on polygons to keep for reloaded tiles,
+     * 0 to disable. Must be set before creating label layers.
+     */
+    public static int POLY_LABEL_CACHE = 0;
+
     /**
      * Placement of symbols on polygons.
      */
@@ -0,0 +1,30 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils;
+
+/**
+ * A cache or pool that can release memory on memory pressure,
+ * see {@link org.oscim.map.Map#trimMemory(MemoryPressure)}.
+ */
+public interface Trimmable {
+
+    /**
+     * Release idle items down to the target of the pressure level.
+     *
+     * @return the approximate number of bytes released, including GL objects
+     * that are deleted with the next frame.
+     */
+    long trimMemory(MemoryPressure pressure);
+}
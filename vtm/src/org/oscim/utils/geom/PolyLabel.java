@@ -21,11 +21,18 @@ package org.oscim.utils.geom;
 
 import org.oscim.core.GeometryBuffer;
 import org.oscim.core.PointF;
+import org.oscim.core.Tile;
+import org.oscim.utils.pool.Inlist;
+import org.oscim.utils.pool.SyncPool;
 
-import java.util.Comparator;
-import java.util.PriorityQueue;
-
-public class PolyLabel {
+/**
+ * Pole of inaccessibility of polygons.
+ * <p/>
+ * Instances keep the cells of the search in a primitive heap and are
+ * reused through the {@link #pool}, so that computing a label position
+ * does not allocate.
+ */
+public class PolyLabel extends Inlist<PolyLabel> {
     /**
      * Calculation precision.
      */
@@ -33,6 +40,28 @@ public class PolyLabel {
 
     private static final float SQRT2 = (float) Math.sqrt(2);
 
+    private static final int MAX_POOL = 16;
+
+    public static final SyncPool<PolyLabel> pool = new SyncPool<PolyLabel>(MAX_POOL) {
+        @Override
+        protected PolyLabel createItem() {
+            return new PolyLabel();
+        }
+    };
+
+    /**
+     * Max-heap of cells ordered by mMax, i.e. their potential
+     * max distance to the polygon.
+     */
+    private float[] mX = new float[64];
+    private float[] mY = new float[64];
+    private float[] mH = new float[64];
+    private float[] mD = new float[64];
+    private float[] mMax = new float[64];
+    private int mSize;
+
+    private final PointF mPoint = new PointF();
+
     /**
      * Returns pole of inaccessibility, the most distant internal point from the polygon outline.
      *
@@ -40,19 +69,71 @@ public class PolyLabel {
      * @return optimal label placement point
      */
     public static PointF get(GeometryBuffer polygon) {
-        // find the bounding box of the outer ring
-        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = Float.MIN_VALUE, maxY = Float.MIN_VALUE;
+        PolyLabel polyLabel = pool.get();
+        PointF p = polyLabel.get(polygon, null, null);
+        PointF result = new PointF(p.x, p.y);
+        polyLabel = pool.release(polyLabel);
+        return result;
+    }
+
+    /**
+     * Returns pole of inaccessibility, the most distant internal point from the polygon outline.
+     *
+     * @param polygon polygon geometry
+     * @param tile    the tile of polygon, used as key of cache
+     * @param cache   label positions of previously processed polygons, may be null
+     * @return optimal label placement point, owned by this instance and
+     * valid until the next call
+     */
+    public PointF get(GeometryBuffer polygon, Tile tile, PolyLabelCache cache) {
+        long key = 0;
+        if (cache != null) {
+            key = PolyLabelCache.key(tile, polygon);
+            if (cache.get(key, mPoint))
+                return mPoint;
+        }
+
+        compute(polygon);
+
+        if (cache != null)
+            cache.put(key, mPoint.x, mPoint.y);
+
+        return mPoint;
+    }
+
+    private void compute(GeometryBuffer polygon) {
+        mSize = 0;
 
         // take centroid as the first best guess
-        Cell bestCell = getCentroidCell(polygon);
+        float area = 0f;
+        float bestX = 0f;
+        float bestY = 0f;
+
+        for (int i = 0, n = polygon.index[0], j = n - 2; i < n; j = i, i += 2) {
+            float ax = polygon.points[i];
+            float ay = polygon.points[i + 1];
+            float bx = polygon.points[j];
+            float by = polygon.points[j + 1];
+            float f = ax * by - bx * ay;
+            bestX += (ax + bx) * f;
+            bestY += (ay + by) * f;
+            area += f * 3;
+        }
+        bestX /= area;
+        bestY /= area;
 
         // if polygon is clipped to a line, return invalid label point
-        if (Float.isNaN(bestCell.x) || Float.isNaN(bestCell.y))
-            return new PointF(-1f, -1f);
+        if (Float.isNaN(bestX) || Float.isNaN(bestY)) {
+            mPoint.x = -1f;
+            mPoint.y = -1f;
+            return;
+        }
+        float bestD = pointToPolygonDist(bestX, bestY, polygon);
 
-        int n = polygon.index[0];
+        // find the bounding box of the outer ring
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
 
-        for (int i = 0; i < n; ) {
+        for (int i = 0, n = polygon.index[0]; i < n; ) {
             float x = polygon.points[i++];
             float y = polygon.points[i++];
             if (x < minX) minX = x;
@@ -66,63 +147,115 @@ public class PolyLabel {
         float cellSize = Math.min(width, height);
         float h = cellSize / 2;
 
-        // a priority queue of cells in order of their "potential" (max distance to polygon)
-        PriorityQueue<Cell> cellQueue = new PriorityQueue<>(1, new MaxComparator());
-
         // cover polygon with initial cells
-        for (float x = minX; x < maxX; x += cellSize) {
-            for (float y = minY; y < maxY; y += cellSize) {
-                cellQueue.add(new Cell(x + h, y + h, h, polygon));
+        if (cellSize > 0) {
+            for (float x = minX; x < maxX; x += cellSize) {
+                for (float y = minY; y < maxY; y += cellSize) {
+                    push(x + h, y + h, h, polygon);
+                }
             }
         }
 
         // special case for rectangular polygons
-        Cell bboxCell = new Cell(minX + width / 2, minY + height / 2, 0, polygon);
-        if (bboxCell.d > bestCell.d) bestCell = bboxCell;
+        float cx = minX + width / 2;
+        float cy = minY + height / 2;
+        float d = pointToPolygonDist(cx, cy, polygon);
+        if (d > bestD) {
+            bestX = cx;
+            bestY = cy;
+            bestD = d;
+        }
 
-        while (!cellQueue.isEmpty()) {
+        while (mSize > 0) {
             // pick the most promising cell from the queue
-            Cell cell = cellQueue.remove();
+            float x = mX[0];
+            float y = mY[0];
+            d = mD[0];
+            float max = mMax[0];
+            h = mH[0] / 2;
+            pop();
 
             // update the best cell if we found a better one
-            if (cell.d > bestCell.d)
-                bestCell = cell;
+            if (d > bestD) {
+                bestX = x;
+                bestY = y;
+                bestD = d;
+            }
 
             // do not drill down further if there's no chance of a better solution
-            if (cell.max - bestCell.d <= PRECISION) continue;
+            if (max - bestD <= PRECISION) continue;
 
             // split the cell into four cells
-            h = cell.h / 2;
-            cellQueue.add(new Cell(cell.x - h, cell.y - h, h, polygon));
-            cellQueue.add(new Cell(cell.x + h, cell.y - h, h, polygon));
-            cellQueue.add(new Cell(cell.x - h, cell.y + h, h, polygon));
-            cellQueue.add(new Cell(cell.x + h, cell.y + h, h, polygon));
+            push(x - h, y - h, h, polygon);
+            push(x + h, y - h, h, polygon);
+            push(x - h, y + h, h, polygon);
+            push(x + h, y + h, h, polygon);
         }
 
-        return new PointF(bestCell.x, bestCell.y);
+        mPoint.x = bestX;
+        mPoint.y = bestY;
     }
 
-    private static class MaxComparator implements Comparator<Cell> {
-        @Override
-        public int compare(Cell a, Cell b) {
-            return Float.compare(b.max, a.max);
+    private void push(float x, float y, float h, GeometryBuffer polygon) {
+        if (mSize == mX.length) {
+            int size = mSize * 2;
+            mX = copyOf(mX, size);
+            mY = copyOf(mY, size);
+            mH = copyOf(mH, size);
+            mD = copyOf(mD, size);
+            mMax = copyOf(mMax, size);
+        }
+
+        float d = pointToPolygonDist(x, y, polygon); // distance from cell center to polygon
+        float max = d + h * SQRT2; // max distance to polygon within a cell
+
+        // sift up
+        int i = mSize++;
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (mMax[parent] >= max)
+                break;
+            set(i, parent);
+            i = parent;
         }
+        mX[i] = x;
+        mY[i] = y;
+        mH[i] = h;
+        mD[i] = d;
+        mMax[i] = max;
     }
 
-    private static class Cell {
-        final float x;
-        final float y;
-        final float h;
-        final float d;
-        final float max;
-
-        Cell(float x, float y, float h, GeometryBuffer polygon) {
-            this.x = x; // cell center x
-            this.y = y; // cell center y
-            this.h = h; // half the cell size
-            this.d = pointToPolygonDist(x, y, polygon); // distance from cell center to polygon
-            this.max = this.d + this.h * SQRT2; // max distance to polygon within a cell
+    private void pop() {
+        int last = --mSize;
+        if (last == 0)
+            return;
+
+        float max = mMax[last];
+
+        // sift down
+        int i = 0;
+        for (int child; (child = 2 * i + 1) < last; i = child) {
+            if (child + 1 < last && mMax[child + 1] > mMax[child])
+                child++;
+            if (mMax[child] <= max)
+                break;
+            set(i, child);
         }
+        set(i, last);
+    }
+
+    private void set(int to, int from) {
+        mX[to] = mX[from];
+        mY[to] = mY[from];
+        mH[to] = mH[from];
+        mD[to] = mD[from];
+        mMax[to] = mMax[from];
+    }
+
+    private static float[] copyOf(float[] array, int size) {
+        float[] tmp = new float[size];
+        System.arraycopy(array, 0, tmp, 0, array.length);
+        return tmp;
     }
 
     // signed distance from point to polygon outline (negative if point is outside)
@@ -156,25 +289,6 @@ public class PolyLabel {
         return (float) ((inside ? 1 : -1) * Math.sqrt(minDistSq));
     }
 
-    // get polygon centroid
-    private static Cell getCentroidCell(GeometryBuffer polygon) {
-        float area = 0f;
-        float x = 0f;
-        float y = 0f;
-
-        for (int i = 0, n = polygon.index[0], j = n - 2; i < n; j = i, i += 2) {
-            float ax = polygon.points[i];
-            float ay = polygon.points[i + 1];
-            float bx = polygon.points[j];
-            float by = polygon.points[j + 1];
-            float f = ax * by - bx * ay;
-            x += (ax + bx) * f;
-            y += (ay + by) * f;
-            area += f * 3;
-        }
-        return new Cell(x / area, y / area, 0f, polygon);
-    }
-
     // get squared distance from a point to a segment
     private static float getSegDistSq(float px, float py, float ax, float ay, float bx, float by) {
 
@@ -0,0 +1,97 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils.geom;
+
+import org.oscim.core.GeometryBuffer;
+import org.oscim.core.PointF;
+import org.oscim.core.Tile;
+
+/**
+ * Label positions of polygons, computed by {@link PolyLabel}, keyed by
+ * tile and a hash of the polygon geometry. Reloading or restyling a tile
+ * then reuses the positions instead of searching again.
+ * <p/>
+ * Entries are kept in a direct-mapped table, colliding entries replace
+ * each other. Thread-safe and does not allocate.
+ */
+public class PolyLabelCache {
+
+    private final long[] mKeys;
+    private final float[] mX;
+    private final float[] mY;
+    private final int mMask;
+
+    /**
+     * @param size max number of label positions, rounded up to a power of two.
+     */
+    public PolyLabelCache(int size) {
+        int capacity = Integer.highestOneBit(Math.max(size, 2) - 1) << 1;
+        mKeys = new long[capacity];
+        mX = new float[capacity];
+        mY = new float[capacity];
+        mMask = capacity - 1;
+    }
+
+    /**
+     * @return hash of tile coordinates and all rings of polygon, never 0.
+     */
+    public static long key(Tile tile, GeometryBuffer polygon) {
+        long h = tile.zoomLevel;
+        h = mix(h, tile.tileX);
+        h = mix(h, tile.tileY);
+
+        int pos = 0;
+        for (int k = 0; k < polygon.index.length; k++) {
+            int n = polygon.index[k];
+            if (n < 0)
+                break;
+            h = mix(h, n);
+            for (int i = pos, end = pos + n; i < end; i++)
+                h = mix(h, Float.floatToIntBits(polygon.points[i]));
+            pos += n;
+        }
+        h ^= h >>> 31;
+        return h == 0 ? 1 : h;
+    }
+
+    private static long mix(long h, int value) {
+        return (h ^ value) * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * @return true when the label position for key was found and copied to out.
+     */
+    public synchronized boolean get(long key, PointF out) {
+        int i = (int) (key ^ (key >>> 32)) & mMask;
+        if (mKeys[i] != key)
+            return false;
+
+        out.x = mX[i];
+        out.y = mY[i];
+        return true;
+    }
+
+    public synchronized void put(long key, float x, float y) {
+        int i = (int) (key ^ (key >>> 32)) & mMask;
+        mKeys[i] = key;
+        mX[i] = x;
+        mY[i] = y;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < mKeys.length; i++)
+            mKeys[i] = 0;
+    }
+}
@@ -57,6 +57,25 @@ public abstract class SyncPool<T extends Inlist<?>> {
         }
     }
 
+    /**
+     * Free pooled items.
+     *
+     * @param fill the number of items to keep.
+     * @return the number of freed items.
+     */
+    public synchronized int trim(int fill) {
+        int freed = 0;
+        while (mPool != null && mFill > fill) {
+            T item = mPool;
+            mPool = (T) item.next;
+            item.next = null;
+            freeItem(item);
+            mFill--;
+            freed++;
+        }
+        return freed;
+    }
+
     /**
      * @param item set initial state
      * @return 'true' when item should be added back to pool,